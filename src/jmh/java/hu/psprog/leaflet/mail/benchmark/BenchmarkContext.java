@@ -0,0 +1,50 @@
+package hu.psprog.leaflet.mail.benchmark;
+
+import hu.psprog.leaflet.mail.client.renderer.impl.ThymeleafMailRenderer;
+import hu.psprog.leaflet.mail.config.MailComponentConfig;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates a mail component application context sending mails to the given {@link SMTPSink}.
+ *
+ * @author Peter Smith
+ */
+public final class BenchmarkContext {
+
+    private static final String PROPERTY_SOURCE_NAME = "benchmark";
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Creates and starts the application context.
+     *
+     * @param smtpSink {@link SMTPSink} to send the mails to
+     * @param additionalProperties configuration properties overriding the defaults
+     * @return started {@link AnnotationConfigApplicationContext}
+     */
+    public static AnnotationConfigApplicationContext create(SMTPSink smtpSink, Map<String, Object> additionalProperties) {
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("mail.smtp.host", smtpSink.getHost());
+        properties.put("mail.smtp.port", smtpSink.getPort());
+        properties.put("mail.smtp.username", "benchmark");
+        properties.put("mail.smtp.password", "benchmark");
+        properties.put("mail.notification", "admin@dev.local");
+        properties.put("mail.sender.address", "noreply@dev.local");
+        properties.put("mail.sender.name", "Benchmark");
+        properties.put("mail.renderer", ThymeleafMailRenderer.class.getName());
+        properties.putAll(additionalProperties);
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME, properties));
+        context.register(MailComponentConfig.class);
+        context.refresh();
+
+        return context;
+    }
+}
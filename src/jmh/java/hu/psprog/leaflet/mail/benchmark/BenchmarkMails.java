@@ -0,0 +1,91 @@
+package hu.psprog.leaflet.mail.benchmark;
+
+import hu.psprog.leaflet.mail.client.renderer.impl.ThymeleafMailRenderer;
+import hu.psprog.leaflet.mail.config.MailComponentConfig;
+import hu.psprog.leaflet.mail.config.TemplateConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.springframework.context.support.StaticMessageSource;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Test mails and renderer used by the benchmarks.
+ * All mails are rendered by the 'benchmark' template (see src/jmh/resources/mail).
+ *
+ * @author Peter Smith
+ */
+public final class BenchmarkMails {
+
+    public static final String TEMPLATE = "benchmark";
+    public static final String RECIPIENT = "recipient@dev.local";
+
+    private static final String SUBJECT = "Benchmark mail";
+    private static final int TEMPLATE_CACHE_SIZE = 100;
+
+    private BenchmarkMails() {
+    }
+
+    /**
+     * Content size of the test mail.
+     */
+    public enum ContentSize {
+
+        /**
+         * A handful of variables, like a typical notification mail.
+         */
+        SMALL(5),
+
+        /**
+         * Hundreds of variables, like a digest or report mail.
+         */
+        LARGE(500);
+
+        private final int itemCount;
+
+        ContentSize(int itemCount) {
+            this.itemCount = itemCount;
+        }
+    }
+
+    /**
+     * Creates a test mail with the given content size.
+     *
+     * @param contentSize {@link ContentSize} of the mail
+     * @return created {@link Mail}
+     */
+    public static Mail createMail(ContentSize contentSize) {
+
+        Map<String, Object> items = new LinkedHashMap<>();
+        for (int index = 0; index < contentSize.itemCount; index++) {
+            items.put("key-" + index, "Value <" + index + "> & some text to be escaped");
+        }
+
+        Map<String, Object> contentMap = new HashMap<>();
+        contentMap.put("title", "Benchmark");
+        contentMap.put("greeting", "Hello, Benchmark User!");
+        contentMap.put("items", items);
+        contentMap.put("footer", "<em>Sent by the mail benchmark</em>");
+
+        return Mail.getBuilder()
+                .withRecipient(RECIPIENT)
+                .withSubject(SUBJECT)
+                .withTemplate(TEMPLATE)
+                .withContentMap(contentMap)
+                .build();
+    }
+
+    /**
+     * Creates a {@link ThymeleafMailRenderer} with the same template engine configuration as the mail component.
+     *
+     * @param cacheEnabled whether parsed templates should be cached
+     * @return created {@link ThymeleafMailRenderer}
+     */
+    public static ThymeleafMailRenderer createMailRenderer(boolean cacheEnabled) {
+
+        TemplateConfigurationProperties templateConfigurationProperties = new TemplateConfigurationProperties(cacheEnabled, TEMPLATE_CACHE_SIZE, 0, "", false);
+
+        return new ThymeleafMailRenderer(new MailComponentConfig().emailTemplateEngine(new StaticMessageSource(), templateConfigurationProperties));
+    }
+}
@@ -0,0 +1,34 @@
+package hu.psprog.leaflet.mail.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ * Accepts the standard JMH command line options, and always attaches the GC profiler,
+ * so allocation rate (gc.alloc.rate.norm, bytes per operation) is reported next to the throughput.
+ *
+ * Usage:
+ *  mvn -P benchmark package -DskipTests
+ *  java -jar target/leaflet-mailer-component-[version]-benchmarks.jar [JMH options] [benchmark regexp]
+ *
+ * @author Peter Smith
+ */
+public final class MailBenchmarkRunner {
+
+    private MailBenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,286 @@
+package hu.psprog.leaflet.mail.benchmark;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process SMTP server accepting and discarding every message.
+ * Listens on a random loopback port and serves every connection on its own (daemon) thread.
+ * For load testing, the sink is able to delay its replies and to inject failures:
+ *  - command latency: delays the reply of every (or a specific) command, including the greeting of new connections
+ *  - transient failure rate: ratio of messages rejected with a 451 reply at the end of the data transfer
+ *  - permanent failure rate: ratio of recipients rejected with a 550 reply
+ *  - connection drop rate: ratio of transactions where the connection is closed without reply on MAIL command
+ *
+ * @author Peter Smith
+ */
+public class SMTPSink implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SMTPSink.class);
+
+    private static final String END_OF_DATA = ".";
+    private static final String GREETING = "CONNECT";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final long defaultLatency;
+    private final Map<String, Long> commandLatencies;
+    private final double transientFailureRate;
+    private final double permanentFailureRate;
+    private final double connectionDropRate;
+    private final AtomicLong receivedMessageCount = new AtomicLong();
+    private final AtomicLong injectedFailureCount = new AtomicLong();
+
+    private SMTPSink(ServerSocket serverSocket, SMTPSinkBuilder builder) {
+        this.serverSocket = serverSocket;
+        this.defaultLatency = builder.defaultLatency;
+        this.commandLatencies = new HashMap<>(builder.commandLatencies);
+        this.transientFailureRate = builder.transientFailureRate;
+        this.permanentFailureRate = builder.permanentFailureRate;
+        this.connectionDropRate = builder.connectionDropRate;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "smtp-sink");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a new sink on a random loopback port, without any latency or failure injection.
+     *
+     * @return started {@link SMTPSink}
+     * @throws IOException if the server socket could not be opened
+     */
+    public static SMTPSink start() throws IOException {
+        return getBuilder().start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getReceivedMessageCount() {
+        return receivedMessageCount.get();
+    }
+
+    public long getInjectedFailureCount() {
+        return injectedFailureCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.warn("SMTP sink failed to accept connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1))) {
+
+            delay(GREETING);
+            reply(writer, "220 localhost SMTP sink ready");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String command = line.length() < 4
+                        ? line.toUpperCase(Locale.ROOT)
+                        : line.substring(0, 4).toUpperCase(Locale.ROOT);
+                delay(command);
+                switch (command) {
+                    case "EHLO":
+                    case "HELO":
+                        reply(writer, "250 localhost");
+                        break;
+                    case "MAIL":
+                        if (inject(connectionDropRate)) {
+                            return;
+                        }
+                        reply(writer, "250 OK");
+                        break;
+                    case "RCPT":
+                        reply(writer, inject(permanentFailureRate)
+                                ? "550 5.1.1 Mailbox unavailable (injected)"
+                                : "250 OK");
+                        break;
+                    case "DATA":
+                        reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+                        skipData(reader);
+                        if (inject(transientFailureRate)) {
+                            reply(writer, "451 4.3.0 Temporary failure (injected)");
+                        } else {
+                            receivedMessageCount.incrementAndGet();
+                            reply(writer, "250 OK queued");
+                        }
+                        break;
+                    case "QUIT":
+                        reply(writer, "221 Bye");
+                        return;
+                    case "RSET":
+                    case "NOOP":
+                        reply(writer, "250 OK");
+                        break;
+                    default:
+                        reply(writer, "502 Command not implemented");
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("SMTP sink connection closed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void delay(String command) throws InterruptedException {
+
+        long latency = commandLatencies.getOrDefault(command, defaultLatency);
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+    }
+
+    private boolean inject(double rate) {
+
+        boolean inject = rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+        if (inject) {
+            injectedFailureCount.incrementAndGet();
+        }
+
+        return inject;
+    }
+
+    private void skipData(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null && !END_OF_DATA.equals(line)) {
+            // message content is discarded
+        }
+    }
+
+    private void reply(Writer writer, String reply) throws IOException {
+        writer.write(reply);
+        writer.write("\r\n");
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("port", getPort())
+                .append("defaultLatency", defaultLatency)
+                .append("commandLatencies", commandLatencies)
+                .append("transientFailureRate", transientFailureRate)
+                .append("permanentFailureRate", permanentFailureRate)
+                .append("connectionDropRate", connectionDropRate)
+                .toString();
+    }
+
+    public static SMTPSinkBuilder getBuilder() {
+        return new SMTPSinkBuilder();
+    }
+
+    /**
+     * Builder for {@link SMTPSink}.
+     */
+    public static final class SMTPSinkBuilder {
+        private long defaultLatency;
+        private final Map<String, Long> commandLatencies = new HashMap<>();
+        private double transientFailureRate;
+        private double permanentFailureRate;
+        private double connectionDropRate;
+
+        private SMTPSinkBuilder() {
+        }
+
+        /**
+         * Sets the latency (in milliseconds) of every reply, unless overridden for the given command.
+         *
+         * @param defaultLatency latency in milliseconds
+         * @return builder
+         */
+        public SMTPSinkBuilder withLatency(long defaultLatency) {
+            this.defaultLatency = defaultLatency;
+            return this;
+        }
+
+        /**
+         * Sets the latency (in milliseconds) of the reply of the given command.
+         * Command is identified by its (4 character) verb, like MAIL, RCPT or DATA, or CONNECT for the greeting.
+         * Latency of DATA is applied before the data transfer is accepted.
+         *
+         * @param command SMTP command verb
+         * @param latency latency in milliseconds
+         * @return builder
+         */
+        public SMTPSinkBuilder withCommandLatency(String command, long latency) {
+            this.commandLatencies.put(command.toUpperCase(Locale.ROOT), latency);
+            return this;
+        }
+
+        public SMTPSinkBuilder withTransientFailureRate(double transientFailureRate) {
+            this.transientFailureRate = transientFailureRate;
+            return this;
+        }
+
+        public SMTPSinkBuilder withPermanentFailureRate(double permanentFailureRate) {
+            this.permanentFailureRate = permanentFailureRate;
+            return this;
+        }
+
+        public SMTPSinkBuilder withConnectionDropRate(double connectionDropRate) {
+            this.connectionDropRate = connectionDropRate;
+            return this;
+        }
+
+        /**
+         * Starts a new sink on a random loopback port.
+         *
+         * @return started {@link SMTPSink}
+         * @throws IOException if the server socket could not be opened
+         */
+        public SMTPSink start() throws IOException {
+
+            SMTPSink smtpSink = new SMTPSink(new ServerSocket(0, 128, InetAddress.getLoopbackAddress()), this);
+            smtpSink.executor.execute(smtpSink::acceptConnections);
+
+            return smtpSink;
+        }
+    }
+}
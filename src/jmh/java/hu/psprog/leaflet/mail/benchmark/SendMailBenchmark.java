@@ -0,0 +1,74 @@
+package hu.psprog.leaflet.mail.benchmark;
+
+import hu.psprog.leaflet.mail.client.MailClient;
+import hu.psprog.leaflet.mail.domain.Mail;
+import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the full {@link MailClient#sendMail(Mail)} flow (validation, rendering, MIME assembly and SMTP transmission)
+ * against an in-process {@link SMTPSink}, with and without SMTP connection pooling.
+ *
+ * @author Peter Smith
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SendMailBenchmark {
+
+    @Param({"SMALL", "LARGE"})
+    private BenchmarkMails.ContentSize contentSize;
+
+    @Param({"false", "true"})
+    private boolean poolEnabled;
+
+    private SMTPSink smtpSink;
+    private AnnotationConfigApplicationContext context;
+    private MailClient mailClient;
+    private Mail mail;
+
+    @Setup
+    public void setup() throws IOException {
+
+        smtpSink = SMTPSink.start();
+        context = BenchmarkContext.create(smtpSink, Collections.singletonMap("mail.smtp.pool.enabled", poolEnabled));
+        mailClient = context.getBean(MailClient.class);
+        mail = BenchmarkMails.createMail(contentSize);
+
+        MailDeliveryStatus mailDeliveryStatus = sendMail().getMailDeliveryStatus();
+        if (mailDeliveryStatus != MailDeliveryStatus.DELIVERED) {
+            throw new IllegalStateException("Benchmark mail could not be delivered: " + mailDeliveryStatus);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        smtpSink.close();
+    }
+
+    @Benchmark
+    public MailDeliveryInfo sendMail() {
+        return mailClient.sendMail(mail).blockingFirst();
+    }
+}
@@ -0,0 +1,95 @@
+package hu.psprog.leaflet.mail.benchmark;
+
+import hu.psprog.leaflet.mail.client.renderer.impl.BulkMailRenderer;
+import hu.psprog.leaflet.mail.client.renderer.impl.BulkRenderingPlanCache;
+import hu.psprog.leaflet.mail.client.renderer.impl.CachingMailRenderer;
+import hu.psprog.leaflet.mail.client.renderer.impl.RenderedMailCache;
+import hu.psprog.leaflet.mail.client.renderer.impl.ThymeleafMailRenderer;
+import hu.psprog.leaflet.mail.config.BulkRenderingConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RenderCacheConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ThymeleafMailRenderer#renderMail(Mail)} with small and large content,
+ * with and without template caching, the same mail rendered repeatedly through {@link CachingMailRenderer},
+ * and mails differing only in a personalized greeting rendered through {@link BulkMailRenderer}.
+ *
+ * @author Peter Smith
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThymeleafMailRendererBenchmark {
+
+    @Param({"SMALL", "LARGE"})
+    private BenchmarkMails.ContentSize contentSize;
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private static final String ALL_TEMPLATES = "*";
+    private static final long RENDER_CACHE_MAX_WEIGHT = 4 * 1024 * 1024;
+    private static final int MAX_BULK_RENDERING_PLANS = 1;
+    private static final String GREETING = "greeting";
+
+    private ThymeleafMailRenderer thymeleafMailRenderer;
+    private CachingMailRenderer cachingMailRenderer;
+    private BulkMailRenderer bulkMailRenderer;
+    private Mail mail;
+    private Mail personalizedMail;
+    private Map<String, Object> personalizedContentMap;
+    private long recipientIndex;
+
+    @Setup
+    public void setup() {
+        thymeleafMailRenderer = BenchmarkMails.createMailRenderer(cacheEnabled);
+        cachingMailRenderer = new CachingMailRenderer(thymeleafMailRenderer,
+                new RenderedMailCache(new RenderCacheConfigurationProperties(true, ALL_TEMPLATES, RENDER_CACHE_MAX_WEIGHT)));
+        bulkMailRenderer = new BulkMailRenderer(thymeleafMailRenderer,
+                new BulkRenderingPlanCache(new BulkRenderingConfigurationProperties(true, MAX_BULK_RENDERING_PLANS)));
+        mail = BenchmarkMails.createMail(contentSize);
+        personalizedContentMap = new HashMap<>(mail.getContentMap());
+        personalizedMail = Mail.getBuilder()
+                .withRecipient(mail.getRecipient())
+                .withSubject(mail.getSubject())
+                .withTemplate(mail.getTemplate())
+                .withContentMap(personalizedContentMap)
+                .withPersonalizedContentKeys(Set.of(GREETING))
+                .build();
+    }
+
+    @Benchmark
+    public String renderMail() {
+        return thymeleafMailRenderer.renderMail(mail);
+    }
+
+    @Benchmark
+    public String renderMailThroughRenderCache() {
+        return cachingMailRenderer.renderMail(mail);
+    }
+
+    @Benchmark
+    public String renderPersonalizedMailInBulk() {
+        personalizedContentMap.put(GREETING, "Hello, Recipient #" + recipientIndex++);
+        return bulkMailRenderer.renderMail(personalizedMail);
+    }
+}
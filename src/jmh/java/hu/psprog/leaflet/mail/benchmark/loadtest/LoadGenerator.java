@@ -0,0 +1,119 @@
+package hu.psprog.leaflet.mail.benchmark.loadtest;
+
+import hu.psprog.leaflet.mail.client.MailClient;
+import hu.psprog.leaflet.mail.client.metrics.LatencyHistogram;
+import hu.psprog.leaflet.mail.domain.Mail;
+import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open-loop load generator pushing mails through {@link MailClient} at a fixed target rate.
+ * Sending is paced by a single thread according to a precomputed schedule, while the (blocking) sends are executed
+ * by a fixed pool of client threads. Latency is measured from the scheduled start time of each mail, not from the actual one,
+ * so when the component cannot keep up, the time mails spend waiting for a free client thread is reported too
+ * (avoiding coordinated omission).
+ *
+ * @author Peter Smith
+ */
+public class LoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long COMPLETION_TIMEOUT_MINUTES = 10;
+
+    private final MailClient mailClient;
+    private final Supplier<Mail> mailSupplier;
+    private final int concurrency;
+
+    public LoadGenerator(MailClient mailClient, Supplier<Mail> mailSupplier, int concurrency) {
+        this.mailClient = mailClient;
+        this.mailSupplier = mailSupplier;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sends mails at the given rate for the given duration, then waits for all of them to be completed.
+     *
+     * @param rate target rate in mails per second
+     * @param duration duration of the load generation
+     * @return {@link LoadTestReport} of the run
+     * @throws InterruptedException if interrupted while pacing or waiting for completion
+     */
+    public LoadTestReport run(double rate, Duration duration) throws InterruptedException {
+
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        Map<MailDeliveryStatus, LongAdder> statusCounters = new EnumMap<>(MailDeliveryStatus.class);
+        for (MailDeliveryStatus mailDeliveryStatus : MailDeliveryStatus.values()) {
+            statusCounters.put(mailDeliveryStatus, new LongAdder());
+        }
+        LongAdder errorCounter = new LongAdder();
+        AtomicLong lastCompletionTime = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "load-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long mailCount = (long) (rate * duration.toNanos() / NANOS_PER_SECOND);
+        long startTime = System.nanoTime();
+        for (long index = 0; index < mailCount; index++) {
+
+            long scheduledTime = startTime + (long) (index * NANOS_PER_SECOND / rate);
+            long waitTime;
+            while ((waitTime = scheduledTime - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitTime);
+                if (Thread.interrupted()) {
+                    executor.shutdownNow();
+                    throw new InterruptedException();
+                }
+            }
+
+            Mail mail = mailSupplier.get();
+            executor.execute(() -> {
+                try {
+                    MailDeliveryInfo mailDeliveryInfo = mailClient.sendMail(mail).blockingFirst();
+                    statusCounters.get(mailDeliveryInfo.getMailDeliveryStatus()).increment();
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Mail sending failed", e);
+                    errorCounter.increment();
+                }
+                long completionTime = System.nanoTime();
+                latencyHistogram.record(completionTime - scheduledTime);
+                lastCompletionTime.accumulateAndGet(completionTime, Math::max);
+            });
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(COMPLETION_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+            LOGGER.warn("Not all mails completed in {} minutes", COMPLETION_TIMEOUT_MINUTES);
+            executor.shutdownNow();
+        }
+
+        Map<MailDeliveryStatus, Long> statusCounts = new EnumMap<>(MailDeliveryStatus.class);
+        statusCounters.forEach((mailDeliveryStatus, counter) -> statusCounts.put(mailDeliveryStatus, counter.sum()));
+
+        return LoadTestReport.getBuilder()
+                .withTargetRate(rate)
+                .withScheduledCount(mailCount)
+                .withElapsedNanos(Math.max(lastCompletionTime.get() - startTime, 1))
+                .withLatencyHistogram(latencyHistogram)
+                .withStatusCounts(statusCounts)
+                .withErrorCount(errorCounter.sum())
+                .build();
+    }
+}
@@ -0,0 +1,149 @@
+package hu.psprog.leaflet.mail.benchmark.loadtest;
+
+import hu.psprog.leaflet.mail.benchmark.BenchmarkContext;
+import hu.psprog.leaflet.mail.benchmark.BenchmarkMails;
+import hu.psprog.leaflet.mail.benchmark.SMTPSink;
+import hu.psprog.leaflet.mail.client.MailClient;
+import hu.psprog.leaflet.mail.client.metrics.LatencyHistogram;
+import hu.psprog.leaflet.mail.client.metrics.MailPipelineStage;
+import hu.psprog.leaflet.mail.client.metrics.impl.InMemoryMailMetricsListener;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of {@link MailClient} against an in-process {@link SMTPSink}.
+ * Every argument is a key=value pair, keys starting with 'mail.' are passed to the mail component as configuration properties,
+ * so any execution mode, pooling or resilience setting can be load tested. Other supported keys:
+ *  - rate: target rate in mails per second (defaults to 100)
+ *  - duration: duration of the measurement in seconds (defaults to 30)
+ *  - warmup: duration of the warmup (not reported) in seconds (defaults to 5)
+ *  - concurrency: number of client threads calling the mail client (defaults to 64)
+ *  - content: content size of the mails, SMALL or LARGE (defaults to SMALL)
+ *  - sink.latency: latency of every SMTP reply in milliseconds (defaults to 0)
+ *  - sink.latency.[COMMAND]: latency of the reply of the given SMTP command (e.g. sink.latency.DATA=50)
+ *  - sink.transient-failure-rate: ratio of messages rejected with 451 (defaults to 0)
+ *  - sink.permanent-failure-rate: ratio of recipients rejected with 550 (defaults to 0)
+ *  - sink.connection-drop-rate: ratio of transactions aborted by closing the connection (defaults to 0)
+ *
+ * Usage:
+ *  mvn -P benchmark package -DskipTests
+ *  java -cp target/leaflet-mailer-component-[version]-benchmarks.jar hu.psprog.leaflet.mail.benchmark.loadtest.LoadTest \
+ *      rate=500 duration=60 sink.latency=20 mail.execution.mode=QUEUED mail.smtp.pool.enabled=true
+ *
+ * @author Peter Smith
+ */
+public final class LoadTest {
+
+    private static final String MAIL_PROPERTY_PREFIX = "mail.";
+    private static final String SINK_COMMAND_LATENCY_PREFIX = "sink.latency.";
+    private static final double NANOS_PER_MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> arguments = parseArguments(args);
+        Map<String, Object> mailProperties = new HashMap<>();
+        arguments.forEach((key, value) -> {
+            if (key.startsWith(MAIL_PROPERTY_PREFIX)) {
+                mailProperties.put(key, value);
+            }
+        });
+
+        double rate = Double.parseDouble(arguments.getOrDefault("rate", "100"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(arguments.getOrDefault("duration", "30")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(arguments.getOrDefault("warmup", "5")));
+        int concurrency = Integer.parseInt(arguments.getOrDefault("concurrency", "64"));
+        Mail mail = BenchmarkMails.createMail(BenchmarkMails.ContentSize.valueOf(arguments.getOrDefault("content", "SMALL")));
+
+        try (SMTPSink smtpSink = createSMTPSink(arguments);
+             AnnotationConfigApplicationContext context = BenchmarkContext.create(smtpSink, mailProperties)) {
+
+            System.out.printf("Load test: %.1f mails/s for %d s (warmup %d s), %d client threads%n",
+                    rate, duration.getSeconds(), warmup.getSeconds(), concurrency);
+            System.out.printf("SMTP sink: %s%n", smtpSink);
+            System.out.printf("Mail properties: %s%n%n", mailProperties);
+
+            LoadGenerator loadGenerator = new LoadGenerator(context.getBean(MailClient.class), () -> mail, concurrency);
+            if (!warmup.isZero()) {
+                loadGenerator.run(rate, warmup);
+            }
+
+            Map<MailPipelineStage, long[]> stagesBeforeRun = snapshotStages(context);
+            long receivedBeforeRun = smtpSink.getReceivedMessageCount();
+            long injectedBeforeRun = smtpSink.getInjectedFailureCount();
+
+            loadGenerator.run(rate, duration).print(System.out);
+
+            System.out.printf("%nSMTP sink: %d messages received, %d failures injected%n",
+                    smtpSink.getReceivedMessageCount() - receivedBeforeRun, smtpSink.getInjectedFailureCount() - injectedBeforeRun);
+            printStages(context, stagesBeforeRun);
+        }
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+
+        Map<String, String> arguments = new HashMap<>();
+        for (String argument : args) {
+            String[] keyValue = argument.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException(String.format("Invalid argument [%s], expected key=value", argument));
+            }
+            arguments.put(keyValue[0], keyValue[1]);
+        }
+
+        return arguments;
+    }
+
+    private static SMTPSink createSMTPSink(Map<String, String> arguments) throws IOException {
+
+        SMTPSink.SMTPSinkBuilder builder = SMTPSink.getBuilder()
+                .withLatency(Long.parseLong(arguments.getOrDefault("sink.latency", "0")))
+                .withTransientFailureRate(Double.parseDouble(arguments.getOrDefault("sink.transient-failure-rate", "0")))
+                .withPermanentFailureRate(Double.parseDouble(arguments.getOrDefault("sink.permanent-failure-rate", "0")))
+                .withConnectionDropRate(Double.parseDouble(arguments.getOrDefault("sink.connection-drop-rate", "0")));
+        arguments.forEach((key, value) -> {
+            if (key.startsWith(SINK_COMMAND_LATENCY_PREFIX)) {
+                builder.withCommandLatency(key.substring(SINK_COMMAND_LATENCY_PREFIX.length()), Long.parseLong(value));
+            }
+        });
+
+        return builder.start();
+    }
+
+    private static Map<MailPipelineStage, long[]> snapshotStages(AnnotationConfigApplicationContext context) {
+
+        // stage histograms are cumulative, so the warmup is excluded from the mean by recording the counts and totals before the run
+        InMemoryMailMetricsListener metrics = context.getBean(InMemoryMailMetricsListener.class);
+        Map<MailPipelineStage, long[]> snapshot = new EnumMap<>(MailPipelineStage.class);
+        for (MailPipelineStage stage : MailPipelineStage.values()) {
+            LatencyHistogram histogram = metrics.getStageHistogram(stage);
+            snapshot.put(stage, new long[] {histogram.getCount(), histogram.getTotal()});
+        }
+
+        return snapshot;
+    }
+
+    private static void printStages(AnnotationConfigApplicationContext context, Map<MailPipelineStage, long[]> stagesBeforeRun) {
+
+        InMemoryMailMetricsListener metrics = context.getBean(InMemoryMailMetricsListener.class);
+        System.out.println("Pipeline stages (mean during run):");
+        for (MailPipelineStage stage : MailPipelineStage.values()) {
+            LatencyHistogram histogram = metrics.getStageHistogram(stage);
+            long[] before = stagesBeforeRun.get(stage);
+            long count = histogram.getCount() - before[0];
+            double mean = count == 0
+                    ? 0
+                    : (histogram.getTotal() - before[1]) / (double) count;
+            System.out.printf("  %-14s %10d calls, mean %8.3f ms%n", stage, count, mean / NANOS_PER_MILLISECOND);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package hu.psprog.leaflet.mail.benchmark.loadtest;
+
+import hu.psprog.leaflet.mail.client.metrics.LatencyHistogram;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a {@link LoadGenerator} run.
+ *
+ * @author Peter Smith
+ */
+public class LoadTestReport {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double NANOS_PER_MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private double targetRate;
+    private long scheduledCount;
+    private long elapsedNanos;
+    private LatencyHistogram latencyHistogram;
+    private Map<MailDeliveryStatus, Long> statusCounts;
+    private long errorCount;
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public long getScheduledCount() {
+        return scheduledCount;
+    }
+
+    public long getCompletedCount() {
+        return latencyHistogram.getCount();
+    }
+
+    /**
+     * Returns the achieved throughput, i.e. the number of completed mails per second,
+     * measured from the start of the run until the completion of the last mail.
+     *
+     * @return achieved throughput in mails per second
+     */
+    public double getThroughput() {
+        return getCompletedCount() * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * Returns the number of mails sent successfully per second.
+     *
+     * @return achieved goodput in mails per second
+     */
+    public double getGoodput() {
+        return statusCounts.getOrDefault(MailDeliveryStatus.DELIVERED, 0L) * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    public Map<MailDeliveryStatus, Long> getStatusCounts() {
+        return statusCounts;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Prints the report in human readable form.
+     *
+     * @param out {@link PrintStream} to print to
+     */
+    public void print(PrintStream out) {
+
+        out.printf("Target rate:      %10.1f mails/s%n", targetRate);
+        out.printf("Throughput:       %10.1f mails/s (%d of %d mails completed in %.1f s)%n",
+                getThroughput(), getCompletedCount(), scheduledCount, elapsedNanos / NANOS_PER_SECOND);
+        out.printf("Goodput:          %10.1f mails/s%n", getGoodput());
+        out.printf("Latency p50:      %10.2f ms%n", toMillis(latencyHistogram.getValueAtPercentile(50)));
+        out.printf("Latency p99:      %10.2f ms%n", toMillis(latencyHistogram.getValueAtPercentile(99)));
+        out.printf("Latency p99.9:    %10.2f ms%n", toMillis(latencyHistogram.getValueAtPercentile(99.9)));
+        out.printf("Latency max:      %10.2f ms%n", toMillis(latencyHistogram.getMax()));
+        out.println("Delivery status distribution:");
+        statusCounts.forEach((mailDeliveryStatus, count) -> {
+            if (count > 0) {
+                out.printf("  %-20s %10d (%5.1f%%)%n", mailDeliveryStatus, count, 100.0 * count / Math.max(getCompletedCount(), 1));
+            }
+        });
+        if (errorCount > 0) {
+            out.printf("  %-20s %10d%n", "(exception)", errorCount);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / NANOS_PER_MILLISECOND;
+    }
+
+    public static LoadTestReportBuilder getBuilder() {
+        return new LoadTestReportBuilder();
+    }
+
+    /**
+     * Builder for {@link LoadTestReport}.
+     */
+    public static final class LoadTestReportBuilder {
+        private double targetRate;
+        private long scheduledCount;
+        private long elapsedNanos;
+        private LatencyHistogram latencyHistogram;
+        private Map<MailDeliveryStatus, Long> statusCounts;
+        private long errorCount;
+
+        private LoadTestReportBuilder() {
+        }
+
+        public LoadTestReportBuilder withTargetRate(double targetRate) {
+            this.targetRate = targetRate;
+            return this;
+        }
+
+        public LoadTestReportBuilder withScheduledCount(long scheduledCount) {
+            this.scheduledCount = scheduledCount;
+            return this;
+        }
+
+        public LoadTestReportBuilder withElapsedNanos(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+            return this;
+        }
+
+        public LoadTestReportBuilder withLatencyHistogram(LatencyHistogram latencyHistogram) {
+            this.latencyHistogram = latencyHistogram;
+            return this;
+        }
+
+        public LoadTestReportBuilder withStatusCounts(Map<MailDeliveryStatus, Long> statusCounts) {
+            this.statusCounts = statusCounts;
+            return this;
+        }
+
+        public LoadTestReportBuilder withErrorCount(long errorCount) {
+            this.errorCount = errorCount;
+            return this;
+        }
+
+        public LoadTestReport build() {
+            LoadTestReport loadTestReport = new LoadTestReport();
+            loadTestReport.targetRate = this.targetRate;
+            loadTestReport.scheduledCount = this.scheduledCount;
+            loadTestReport.elapsedNanos = this.elapsedNanos;
+            loadTestReport.latencyHistogram = this.latencyHistogram;
+            loadTestReport.statusCounts = this.statusCounts;
+            loadTestReport.errorCount = this.errorCount;
+            return loadTestReport;
+        }
+    }
+}
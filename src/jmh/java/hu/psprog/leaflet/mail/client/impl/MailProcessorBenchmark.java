@@ -0,0 +1,129 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import hu.psprog.leaflet.mail.benchmark.BenchmarkMails;
+import hu.psprog.leaflet.mail.client.inline.InlineResourceRegistry;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.renderer.impl.BulkRenderingPlanCache;
+import hu.psprog.leaflet.mail.client.renderer.impl.RenderedMailCache;
+import hu.psprog.leaflet.mail.client.renderer.impl.ThymeleafMailRenderer;
+import hu.psprog.leaflet.mail.client.routing.SMTPRouter;
+import hu.psprog.leaflet.mail.config.BulkRenderingConfigurationProperties;
+import hu.psprog.leaflet.mail.config.InlineResourceConfigurationProperties;
+import hu.psprog.leaflet.mail.config.MailProcessorConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RecipientGroupingConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RenderCacheConfigurationProperties;
+import hu.psprog.leaflet.mail.config.SMTPRoutingConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks MIME assembly of {@link MailProcessor} with pre-rendered content,
+ * both on its own, and followed by writing the message in its wire format (as done during SMTP transmission),
+ * as well as rendering and assembly followed by writing the message, with and without streaming rendering.
+ *
+ * @author Peter Smith
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MailProcessorBenchmark {
+
+    @Param({"SMALL", "LARGE"})
+    private BenchmarkMails.ContentSize contentSize;
+
+    @Param({"true", "false"})
+    private boolean streamingRendering;
+
+    private JavaMailSenderImpl javaMailSender;
+    private MailProcessor mailProcessor;
+    private Mail mail;
+    private String content;
+
+    @Setup
+    public void setup() {
+
+        MailProcessorConfigurationProperties mailProcessorConfigurationProperties = new MailProcessorConfigurationProperties(
+                "admin@dev.local", "noreply@dev.local", "Benchmark", ThymeleafMailRenderer.class, 50, streamingRendering);
+        ThymeleafMailRenderer mailRenderer = BenchmarkMails.createMailRenderer(true);
+
+        javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setDefaultEncoding("UTF-8");
+        mailProcessor = new MailProcessor(Collections.singletonList(mailRenderer), mailProcessorConfigurationProperties, javaMailSender,
+                new SMTPRouter(Collections.emptyList(), new SMTPRoutingConfigurationProperties("", null, 1, 0), null),
+                new MailMetrics(Collections.emptyList()), new RenderedMailCache(new RenderCacheConfigurationProperties(false, "", 0)),
+                new BulkRenderingPlanCache(new BulkRenderingConfigurationProperties(false, 1)),
+                new InlineResourceRegistry(new InlineResourceConfigurationProperties(false, "")),
+                new RecipientGroupingConfigurationProperties(false, 1));
+        mailProcessor.initialize();
+
+        mail = BenchmarkMails.createMail(contentSize);
+        content = mailRenderer.renderMail(mail);
+    }
+
+    @Benchmark
+    public MimeMessage prepareMessage() throws MessagingException {
+
+        MimeMessage message = javaMailSender.createMimeMessage();
+        mailProcessor.prepareMessage(mail, message, content, Collections.emptyList());
+
+        return message;
+    }
+
+    @Benchmark
+    public void prepareAndWriteMessage(Blackhole blackhole) throws MessagingException, IOException {
+
+        MimeMessage message = prepareMessage();
+        message.saveChanges();
+        message.writeTo(new BlackholeOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public void renderAndWriteMessage(Blackhole blackhole) throws MessagingException, IOException {
+
+        MimeMessage message = mailProcessor.createMessage(mail);
+        message.saveChanges();
+        message.writeTo(new BlackholeOutputStream(blackhole));
+    }
+
+    private static final class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        private BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int value) {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            blackhole.consume(buffer);
+            blackhole.consume(length);
+        }
+    }
+}
@@ -2,8 +2,16 @@ package hu.psprog.leaflet.mail.client;
 
 import hu.psprog.leaflet.mail.domain.Mail;
 import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
+import hu.psprog.leaflet.mail.domain.MailLifecycleEvent;
+import hu.psprog.leaflet.mail.domain.MailLifecycleStage;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
 
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Mail sender client for Leaflet backend service.
  * Validates and sends given {@link Mail} object.
@@ -22,4 +30,75 @@ public interface MailClient {
      * @return delivery information as {@link Observable}.
      */
     Observable<MailDeliveryInfo> sendMail(Mail mail);
+
+    /**
+     * Sends given {@link Mail} object.
+     * Sending is started immediately, the returned {@link CompletionStage} is completed with the delivery information
+     * once the mail is processed, so the result can be consumed without blocking or subscribing.
+     * By default, the stage is completed with the first emission of {@link #sendMail(Mail)}, which is not required to complete.
+     *
+     * @param mail mail object to be sent
+     * @return delivery information as {@link CompletionStage}.
+     */
+    default CompletionStage<MailDeliveryInfo> sendMailAsync(Mail mail) {
+
+        CompletableFuture<MailDeliveryInfo> mailDeliveryInfo = new CompletableFuture<>();
+        sendMail(mail)
+                .firstOrError()
+                .subscribe(mailDeliveryInfo::complete, mailDeliveryInfo::completeExceptionally);
+
+        return mailDeliveryInfo;
+    }
+
+    /**
+     * Sends given {@link Mail} object, emitting a timestamped {@link MailLifecycleEvent} for each stage the mail passes through.
+     * Stream completes after emitting the event of a terminal stage (DELIVERED, QUEUED or FAILED), which carries the delivery information.
+     * Admin notifications coalesced into a digest mail skip the RENDERED and SUBMITTED stages.
+     * By default, only the ACCEPTED and the terminal stages are reported, latter one for the first emission of {@link #sendMail(Mail)}.
+     *
+     * @param mail mail object to be sent
+     * @return lifecycle events of the mail as {@link Observable}.
+     */
+    default Observable<MailLifecycleEvent> sendMailTracked(Mail mail) {
+        return Observable.defer(() -> Observable.just(MailLifecycleEvent.getBuilder()
+                        .withMail(mail)
+                        .withStage(MailLifecycleStage.ACCEPTED)
+                        .withTimestamp(Instant.now())
+                        .build())
+                .concatWith(sendMail(mail).take(1).map(mailDeliveryInfo -> MailLifecycleEvent.getBuilder()
+                        .withMail(mail)
+                        .withStage(MailLifecycleStage.ofDeliveryStatus(mailDeliveryInfo.getMailDeliveryStatus()))
+                        .withTimestamp(Instant.now())
+                        .withMailDeliveryInfo(mailDeliveryInfo)
+                        .build())));
+    }
+
+    /**
+     * Sends given {@link Mail} objects in batches.
+     * Mails of a batch are validated and rendered first, then sent within a single SMTP session.
+     * Exactly one {@link MailDeliveryInfo} is emitted for every mail, in the order of the given mails.
+     * By default, mails are sent one by one via {@link #sendMail(Mail)}, taking its first emission
+     * (as the stream returned by {@link #sendMail(Mail)} is not required to complete).
+     *
+     * @param mails mail objects to be sent
+     * @return delivery information of each mail as {@link Observable}.
+     */
+    default Observable<MailDeliveryInfo> sendMails(Iterable<Mail> mails) {
+        return Observable.fromIterable(mails)
+                .concatMap(mail -> sendMail(mail).take(1));
+    }
+
+    /**
+     * Sends {@link Mail} objects emitted by the given {@link Flowable} in batches.
+     * Mails of a batch are validated and rendered first, then sent within a single SMTP session.
+     * Exactly one {@link MailDeliveryInfo} is emitted for every mail, in the order of the source emissions.
+     * By default, mails are sent one by one via {@link #sendMail(Mail)}, taking its first emission
+     * (as the stream returned by {@link #sendMail(Mail)} is not required to complete).
+     *
+     * @param mails mail objects to be sent as {@link Flowable}
+     * @return delivery information of each mail as {@link Flowable}.
+     */
+    default Flowable<MailDeliveryInfo> sendMails(Flowable<Mail> mails) {
+        return mails.concatMap(mail -> sendMail(mail).take(1).toFlowable(BackpressureStrategy.BUFFER));
+    }
 }
@@ -0,0 +1,26 @@
+package hu.psprog.leaflet.mail.client.deduplication;
+
+/**
+ * Available idempotency key deduplication strategies.
+ *
+ * @author Peter Smith
+ */
+public enum DeduplicationStrategy {
+
+    /**
+     * Idempotency keys are not tracked, every mail is considered unique.
+     */
+    NONE,
+
+    /**
+     * Idempotency keys are stored as-is in a set split into time buckets, expired buckets are dropped as a whole.
+     * Exact, but memory usage grows with the number of keys (up to the configured limit).
+     */
+    TIME_BUCKETED,
+
+    /**
+     * Idempotency keys are recorded in a pair of rotating Bloom filters of fixed size.
+     * Memory usage is independent of the number of keys, but a small (configured) ratio of unique mails is reported as duplicate.
+     */
+    BLOOM_FILTER
+}
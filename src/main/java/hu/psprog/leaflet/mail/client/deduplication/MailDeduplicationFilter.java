@@ -0,0 +1,36 @@
+package hu.psprog.leaflet.mail.client.deduplication;
+
+/**
+ * Mail deduplication filter interface.
+ * Remembers the idempotency keys of accepted mails for a configured time window, so repeated sending attempts
+ * of the same mail can be detected before it is rendered or sent.
+ * A key is acquired before processing the mail, then either committed (mail is delivered or queued)
+ * or released (delivery failed, so the mail may be sent again).
+ *
+ * @author Peter Smith
+ */
+public interface MailDeduplicationFilter {
+
+    /**
+     * Acquires given idempotency key.
+     * Fails if the key is already being processed, or has been committed within the deduplication window.
+     *
+     * @param idempotencyKey idempotency key of the mail
+     * @return {@code true} if the key has been acquired, {@code false} if the mail is a duplicate
+     */
+    boolean tryAcquire(String idempotencyKey);
+
+    /**
+     * Commits a previously acquired idempotency key, so it is remembered for the deduplication window.
+     *
+     * @param idempotencyKey idempotency key of the mail
+     */
+    void commit(String idempotencyKey);
+
+    /**
+     * Releases a previously acquired idempotency key, so the mail can be sent again.
+     *
+     * @param idempotencyKey idempotency key of the mail
+     */
+    void release(String idempotencyKey);
+}
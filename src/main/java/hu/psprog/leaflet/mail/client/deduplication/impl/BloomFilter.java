@@ -0,0 +1,82 @@
+package hu.psprog.leaflet.mail.client.deduplication.impl;
+
+/**
+ * Fixed size Bloom filter of strings.
+ * Bit positions are derived from a single 64-bit hash by double hashing (h1 + i * h2).
+ * Not thread-safe.
+ *
+ * @author Peter Smith
+ */
+class BloomFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Creates a Bloom filter sized for the given number of elements and false positive probability.
+     *
+     * @param expectedElements expected number of inserted elements
+     * @param falsePositiveProbability tolerated false positive probability at the expected number of elements
+     */
+    BloomFilter(int expectedElements, double falsePositiveProbability) {
+
+        int elements = Math.max(1, expectedElements);
+        long optimalBitCount = (long) Math.ceil(-elements * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.words = new long[(int) Math.max(1, (optimalBitCount + Long.SIZE - 1) / Long.SIZE)];
+        this.bitCount = (long) words.length * Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / elements * Math.log(2)));
+    }
+
+    void put(String element) {
+
+        long hash = hash(element);
+        for (int index = 0; index < hashCount; index++) {
+            long bit = bitIndex(hash, index);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(String element) {
+
+        long hash = hash(element);
+        for (int index = 0; index < hashCount; index++) {
+            long bit = bitIndex(hash, index);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    long getBitCount() {
+        return bitCount;
+    }
+
+    private long bitIndex(long hash, int index) {
+        long combinedHash = (int) hash + (long) index * (int) (hash >>> 32);
+        return Math.floorMod(combinedHash, bitCount);
+    }
+
+    private static long hash(String element) {
+
+        long hash = FNV_OFFSET_BASIS;
+        for (int index = 0; index < element.length(); index++) {
+            hash ^= element.charAt(index);
+            hash *= FNV_PRIME;
+        }
+
+        // final avalanche step (from MurmurHash3), as FNV alone spreads short keys poorly in the upper bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
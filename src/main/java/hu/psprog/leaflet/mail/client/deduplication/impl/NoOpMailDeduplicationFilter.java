@@ -0,0 +1,26 @@
+package hu.psprog.leaflet.mail.client.deduplication.impl;
+
+import hu.psprog.leaflet.mail.client.deduplication.MailDeduplicationFilter;
+
+/**
+ * {@link MailDeduplicationFilter} implementation not tracking idempotency keys at all.
+ *
+ * @author Peter Smith
+ */
+public class NoOpMailDeduplicationFilter implements MailDeduplicationFilter {
+
+    @Override
+    public boolean tryAcquire(String idempotencyKey) {
+        return true;
+    }
+
+    @Override
+    public void commit(String idempotencyKey) {
+        // nothing to remember
+    }
+
+    @Override
+    public void release(String idempotencyKey) {
+        // nothing to forget
+    }
+}
@@ -0,0 +1,89 @@
+package hu.psprog.leaflet.mail.client.deduplication.impl;
+
+import hu.psprog.leaflet.mail.client.deduplication.MailDeduplicationFilter;
+import hu.psprog.leaflet.mail.config.DeduplicationConfigurationProperties;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link MailDeduplicationFilter} implementation recording the idempotency keys in two rotating Bloom filters.
+ * Committed keys are put into the current filter; once per deduplication window, the previous filter is dropped
+ * and the current one takes its place, so every key is remembered for at least one, and at most two windows.
+ * Memory usage is fixed (sized by the expected number of keys per window), at the cost of reporting
+ * a small ratio of unique mails as duplicate. As Bloom filters cannot forget keys, acquired (in-flight) keys
+ * are tracked in a separate set until they are committed or released.
+ *
+ * @author Peter Smith
+ */
+public class RotatingBloomMailDeduplicationFilter implements MailDeduplicationFilter {
+
+    private final long window;
+    private final int expectedKeys;
+    private final double falsePositiveProbability;
+    private final LongSupplier clock;
+    private final Set<String> pendingKeys = new HashSet<>();
+
+    private BloomFilter currentFilter;
+    private BloomFilter previousFilter;
+    private long rotationTime;
+
+    public RotatingBloomMailDeduplicationFilter(DeduplicationConfigurationProperties deduplicationConfigurationProperties) {
+        this(deduplicationConfigurationProperties, System::currentTimeMillis);
+    }
+
+    RotatingBloomMailDeduplicationFilter(DeduplicationConfigurationProperties deduplicationConfigurationProperties, LongSupplier clock) {
+        this.window = deduplicationConfigurationProperties.getWindow();
+        this.expectedKeys = deduplicationConfigurationProperties.getExpectedKeys();
+        this.falsePositiveProbability = deduplicationConfigurationProperties.getFalsePositiveProbability();
+        this.clock = clock;
+        this.currentFilter = createFilter();
+        this.previousFilter = createFilter();
+        this.rotationTime = clock.getAsLong() + window;
+    }
+
+    @Override
+    public synchronized boolean tryAcquire(String idempotencyKey) {
+
+        rotate(clock.getAsLong());
+        if (currentFilter.mightContain(idempotencyKey) || previousFilter.mightContain(idempotencyKey)) {
+            return false;
+        }
+
+        return pendingKeys.add(idempotencyKey);
+    }
+
+    @Override
+    public synchronized void commit(String idempotencyKey) {
+        if (pendingKeys.remove(idempotencyKey)) {
+            rotate(clock.getAsLong());
+            currentFilter.put(idempotencyKey);
+        }
+    }
+
+    @Override
+    public synchronized void release(String idempotencyKey) {
+        pendingKeys.remove(idempotencyKey);
+    }
+
+    private void rotate(long currentTime) {
+
+        if (currentTime < rotationTime) {
+            return;
+        }
+
+        if (currentTime < rotationTime + window) {
+            previousFilter = currentFilter;
+        } else {
+            // more than a full window passed without activity, so the current filter has expired as well
+            previousFilter = createFilter();
+        }
+        currentFilter = createFilter();
+        rotationTime = currentTime + window;
+    }
+
+    private BloomFilter createFilter() {
+        return new BloomFilter(expectedKeys, falsePositiveProbability);
+    }
+}
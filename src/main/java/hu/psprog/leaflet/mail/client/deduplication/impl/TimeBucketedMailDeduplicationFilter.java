@@ -0,0 +1,121 @@
+package hu.psprog.leaflet.mail.client.deduplication.impl;
+
+import hu.psprog.leaflet.mail.client.deduplication.MailDeduplicationFilter;
+import hu.psprog.leaflet.mail.config.DeduplicationConfigurationProperties;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link MailDeduplicationFilter} implementation storing the idempotency keys in a set split into time buckets.
+ * Committed keys are added to the current bucket; once the newest key of a bucket is older than the deduplication window,
+ * the whole bucket is dropped, so expiration never requires scanning the individual keys.
+ * Memory usage of committed keys is bounded by the configured maximum number of keys: above it, the oldest buckets are dropped early.
+ * Acquired (in-flight) keys are tracked in a separate set until they are committed or released, so they are neither expired
+ * nor dropped while their mail is being processed, and the deduplication window starts when the key is committed.
+ *
+ * @author Peter Smith
+ */
+public class TimeBucketedMailDeduplicationFilter implements MailDeduplicationFilter {
+
+    private final long window;
+    private final long bucketDuration;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final ArrayDeque<KeyBucket> buckets = new ArrayDeque<>();
+    private final Set<String> pendingKeys = new HashSet<>();
+
+    private int size;
+
+    public TimeBucketedMailDeduplicationFilter(DeduplicationConfigurationProperties deduplicationConfigurationProperties) {
+        this(deduplicationConfigurationProperties, System::currentTimeMillis);
+    }
+
+    TimeBucketedMailDeduplicationFilter(DeduplicationConfigurationProperties deduplicationConfigurationProperties, LongSupplier clock) {
+        this.window = deduplicationConfigurationProperties.getWindow();
+        this.bucketDuration = Math.max(1, window / Math.max(1, deduplicationConfigurationProperties.getBuckets()));
+        this.maxKeys = deduplicationConfigurationProperties.getMaxKeys();
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized boolean tryAcquire(String idempotencyKey) {
+
+        expire(clock.getAsLong());
+        if (pendingKeys.contains(idempotencyKey) || contains(idempotencyKey)) {
+            return false;
+        }
+
+        return pendingKeys.add(idempotencyKey);
+    }
+
+    @Override
+    public synchronized void commit(String idempotencyKey) {
+
+        if (!pendingKeys.remove(idempotencyKey)) {
+            return;
+        }
+
+        long currentTime = clock.getAsLong();
+        expire(currentTime);
+        while (size >= maxKeys && !buckets.isEmpty()) {
+            size -= buckets.removeFirst().keys.size();
+        }
+        currentBucket(currentTime).keys.add(idempotencyKey);
+        size++;
+    }
+
+    @Override
+    public synchronized void release(String idempotencyKey) {
+        pendingKeys.remove(idempotencyKey);
+    }
+
+    /**
+     * Returns the number of currently remembered (committed and in-flight) keys.
+     *
+     * @return number of remembered keys
+     */
+    public synchronized int getSize() {
+        return size + pendingKeys.size();
+    }
+
+    private void expire(long currentTime) {
+        while (!buckets.isEmpty() && buckets.peekFirst().startTime + bucketDuration + window <= currentTime) {
+            size -= buckets.removeFirst().keys.size();
+        }
+    }
+
+    private boolean contains(String idempotencyKey) {
+
+        for (KeyBucket bucket : buckets) {
+            if (bucket.keys.contains(idempotencyKey)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private KeyBucket currentBucket(long currentTime) {
+
+        KeyBucket bucket = buckets.peekLast();
+        if (bucket == null || bucket.startTime + bucketDuration <= currentTime) {
+            bucket = new KeyBucket(currentTime - Math.floorMod(currentTime, bucketDuration));
+            buckets.addLast(bucket);
+        }
+
+        return bucket;
+    }
+
+    private static final class KeyBucket {
+
+        private final long startTime;
+        private final Set<String> keys = new HashSet<>();
+
+        private KeyBucket(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package hu.psprog.leaflet.mail.client.digest;
+
+import hu.psprog.leaflet.mail.config.AdminDigestConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.SingleSubject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces bursts of admin notifications (mails without any recipient) into digest mails.
+ * The first buffered notification opens a window, which is closed either when its time elapses,
+ * or when the maximum number of notifications is reached. Notifications of a closed window are sent as a single mail,
+ * rendered once from the digest template, which receives the buffered {@link Mail} objects as the {@value #NOTIFICATIONS}
+ * content map entry (and their number as {@value #NOTIFICATION_COUNT}). A window holding a single notification sends it unchanged.
+ * Every buffered notification is completed with the delivery status of the mail it has been sent in.
+ * Elapsed windows are sent on the {@link Schedulers#io()} scheduler, as sending might block (e.g. waiting for rate limits).
+ *
+ * @author Peter Smith
+ */
+@Component
+public class AdminDigestCoalescer {
+
+    /**
+     * Content map key of the list of notifications included in the digest.
+     */
+    public static final String NOTIFICATIONS = "notifications";
+
+    /**
+     * Content map key of the number of notifications included in the digest.
+     */
+    public static final String NOTIFICATION_COUNT = "notificationCount";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdminDigestCoalescer.class);
+
+    private final AdminDigestConfigurationProperties adminDigestConfigurationProperties;
+    private final Scheduler scheduler;
+
+    private List<PendingNotification> pendingNotifications = new ArrayList<>();
+    private Function<Mail, Single<MailDeliveryInfo>> windowMailSender;
+    private long windowCounter;
+
+    @Autowired
+    public AdminDigestCoalescer(AdminDigestConfigurationProperties adminDigestConfigurationProperties) {
+        this(adminDigestConfigurationProperties, Schedulers.io());
+    }
+
+    AdminDigestCoalescer(AdminDigestConfigurationProperties adminDigestConfigurationProperties, Scheduler scheduler) {
+        this.adminDigestConfigurationProperties = adminDigestConfigurationProperties;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Checks if the given mail is an admin notification to be coalesced.
+     * Mails with attachments are never coalesced, as the digest only includes their content.
+     *
+     * @param mail {@link Mail} to check
+     * @return {@code true} if coalescing is enabled and the mail has no recipients and attachments
+     */
+    public boolean isCoalescable(Mail mail) {
+        return adminDigestConfigurationProperties.isEnabled()
+                && Objects.isNull(mail.getRecipient())
+                && isEmpty(mail.getTo())
+                && isEmpty(mail.getCc())
+                && isEmpty(mail.getBcc())
+                && isEmpty(mail.getAttachments());
+    }
+
+    /**
+     * Buffers the given notification until its window is closed.
+     * The window is sent by the mail sender of the notification opening it.
+     *
+     * @param mail admin notification
+     * @param mailSender function sending the digest (or the single notification of a window) and providing its delivery info
+     * @return delivery info of the notification, emitted once the mail including it is sent
+     */
+    public Single<MailDeliveryInfo> submit(Mail mail, Function<Mail, Single<MailDeliveryInfo>> mailSender) {
+
+        SingleSubject<MailDeliveryInfo> deliveryInfo = SingleSubject.create();
+        Window closedWindow = null;
+        synchronized (this) {
+            if (pendingNotifications.isEmpty()) {
+                windowMailSender = mailSender;
+                long windowId = ++windowCounter;
+                scheduler.scheduleDirect(() -> flush(windowId), adminDigestConfigurationProperties.getWindow(), TimeUnit.MILLISECONDS);
+            }
+            pendingNotifications.add(new PendingNotification(mail, deliveryInfo));
+            if (pendingNotifications.size() >= adminDigestConfigurationProperties.getMaxMails()) {
+                closedWindow = closeWindow();
+            }
+        }
+
+        if (Objects.nonNull(closedWindow)) {
+            send(closedWindow);
+        }
+
+        return deliveryInfo;
+    }
+
+    /**
+     * Closes the current window and sends its notifications without waiting for the window to elapse.
+     */
+    public void flush() {
+
+        Window closedWindow;
+        synchronized (this) {
+            closedWindow = closeWindow();
+        }
+
+        send(closedWindow);
+    }
+
+    private void flush(long windowId) {
+
+        Window closedWindow;
+        synchronized (this) {
+            // window might have been closed by reaching the maximum number of notifications, and a new one opened since
+            if (windowId != windowCounter) {
+                return;
+            }
+            closedWindow = closeWindow();
+        }
+
+        send(closedWindow);
+    }
+
+    private Window closeWindow() {
+
+        Window closedWindow = new Window(pendingNotifications, windowMailSender);
+        pendingNotifications = new ArrayList<>();
+        windowMailSender = null;
+
+        return closedWindow;
+    }
+
+    private void send(Window window) {
+
+        List<PendingNotification> notifications = window.notifications;
+        if (notifications.isEmpty()) {
+            return;
+        }
+
+        Mail mail = notifications.size() == 1
+                ? notifications.get(0).mail
+                : createDigest(notifications);
+
+        window.mailSender.apply(mail).subscribe(
+                deliveryInfo -> notifications.forEach(notification -> notification.deliveryInfo.onSuccess(copyDeliveryInfo(notification.mail, deliveryInfo))),
+                failure -> {
+                    LOGGER.error("Failed to send digest of {} admin notifications", notifications.size(), failure);
+                    notifications.forEach(notification -> notification.deliveryInfo.onError(failure));
+                });
+    }
+
+    private Mail createDigest(List<PendingNotification> notifications) {
+
+        Map<String, Object> contentMap = new HashMap<>();
+        contentMap.put(NOTIFICATIONS, notifications.stream()
+                .map(notification -> notification.mail)
+                .collect(Collectors.toList()));
+        contentMap.put(NOTIFICATION_COUNT, notifications.size());
+
+        return Mail.getBuilder()
+                .withTemplate(adminDigestConfigurationProperties.getTemplate())
+                .withSubject(String.format(adminDigestConfigurationProperties.getSubject(), notifications.size()))
+                .withContentMap(contentMap)
+                .build();
+    }
+
+    private MailDeliveryInfo copyDeliveryInfo(Mail mail, MailDeliveryInfo deliveryInfo) {
+        return MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withMailDeliveryStatus(deliveryInfo.getMailDeliveryStatus())
+                .withConstraintViolations(deliveryInfo.getConstraintViolations())
+                .withSMTPEndpoint(deliveryInfo.getSMTPEndpoint())
+                .withRecipientStatuses(deliveryInfo.getRecipientStatuses())
+                .withMessageId(deliveryInfo.getMessageId())
+                .build();
+    }
+
+    private static boolean isEmpty(List<?> list) {
+        return Objects.isNull(list) || list.isEmpty();
+    }
+
+    private static final class Window {
+
+        private final List<PendingNotification> notifications;
+        private final Function<Mail, Single<MailDeliveryInfo>> mailSender;
+
+        private Window(List<PendingNotification> notifications, Function<Mail, Single<MailDeliveryInfo>> mailSender) {
+            this.notifications = notifications;
+            this.mailSender = mailSender;
+        }
+    }
+
+    private static final class PendingNotification {
+
+        private final Mail mail;
+        private final SingleSubject<MailDeliveryInfo> deliveryInfo;
+
+        private PendingNotification(Mail mail, SingleSubject<MailDeliveryInfo> deliveryInfo) {
+            this.mail = mail;
+            this.deliveryInfo = deliveryInfo;
+        }
+    }
+}
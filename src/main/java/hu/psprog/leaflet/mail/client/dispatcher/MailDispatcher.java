@@ -0,0 +1,76 @@
+package hu.psprog.leaflet.mail.client.dispatcher;
+
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import io.reactivex.Single;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Mail dispatcher interface.
+ * Implementations decide on which thread (and when) a mail delivery task is executed.
+ *
+ * @author Peter Smith
+ */
+public interface MailDispatcher {
+
+    /**
+     * Dispatches given delivery task for execution.
+     * Delivery task is executed when the returned {@link Single} is subscribed to.
+     * In case the task cannot be accepted for execution, result of the given rejection handler is emitted instead.
+     *
+     * @param deliveryTask task to be executed
+     * @param rejectionHandler provides the result in case the task is rejected
+     * @param <T> type of the delivery result
+     * @return delivery result as {@link Single}
+     */
+    <T> Single<T> dispatch(Callable<T> deliveryTask, Supplier<T> rejectionHandler);
+
+    /**
+     * Dispatches given delivery task for execution with the given priority.
+     * Dispatchers without priority lanes ignore the priority.
+     *
+     * @param priority {@link MailPriority} of the delivered mail(s)
+     * @param deliveryTask task to be executed
+     * @param rejectionHandler provides the result in case the task is rejected
+     * @param <T> type of the delivery result
+     * @return delivery result as {@link Single}
+     */
+    default <T> Single<T> dispatch(MailPriority priority, Callable<T> deliveryTask, Supplier<T> rejectionHandler) {
+        return dispatch(deliveryTask, rejectionHandler);
+    }
+
+    /**
+     * Dispatches given asynchronous delivery task for execution with the given priority.
+     * The task itself only starts the delivery, returning the {@link Single} of its result, which is subscribed to on the executing
+     * thread. Thus, the executing thread is released as soon as a non-blocking delivery is started, and the delivery result is
+     * emitted by the thread completing it.
+     *
+     * @param priority {@link MailPriority} of the delivered mail(s)
+     * @param deliveryTask task starting the delivery
+     * @param rejectionHandler provides the result in case the task is rejected
+     * @param <T> type of the delivery result
+     * @return delivery result as {@link Single}
+     */
+    default <T> Single<T> dispatchAsync(MailPriority priority, Callable<Single<T>> deliveryTask, Supplier<T> rejectionHandler) {
+        return dispatch(priority, deliveryTask, () -> Single.just(rejectionHandler.get()))
+                .flatMap(deliveryResult -> deliveryResult);
+    }
+
+    /**
+     * Returns the number of delivery tasks this dispatcher is able to execute concurrently.
+     *
+     * @return number of concurrently executed delivery tasks
+     */
+    int getConcurrencyLevel();
+
+    /**
+     * Returns the number of delivery tasks waiting for execution.
+     * Dispatchers executing the tasks on the calling thread never have waiting tasks.
+     *
+     * @return number of waiting delivery tasks
+     */
+    default int getQueueDepth() {
+        return 0;
+    }
+}
@@ -0,0 +1,39 @@
+package hu.psprog.leaflet.mail.client.dispatcher;
+
+/**
+ * Available mail execution modes.
+ *
+ * @author Peter Smith
+ */
+public enum MailExecutionMode {
+
+    /**
+     * Mails are validated, rendered and sent on the subscribing thread.
+     */
+    SYNCHRONOUS,
+
+    /**
+     * Mails are placed in a bounded in-memory queue and processed by a dedicated worker pool.
+     */
+    QUEUED,
+
+    /**
+     * Mails are placed in bounded in-memory queues by their priority, and processed by a dedicated worker pool
+     * dequeueing the lanes by weighted fair scheduling, with a part of the workers reserved for high priority mails.
+     */
+    PRIORITY_QUEUED,
+
+    /**
+     * Mails are processed on their own virtual thread, with a capped number of concurrent sends.
+     * Requires Java 21 or newer runtime.
+     */
+    VIRTUAL_THREAD,
+
+    /**
+     * Mails are validated and durably appended to an on-disk outbox on the subscribing thread,
+     * then sent by a background drainer.
+     * Mails are stored by Java serialization, so their content values must be serializable,
+     * otherwise they are reported with VALIDATION_ERROR status.
+     */
+    OUTBOX
+}
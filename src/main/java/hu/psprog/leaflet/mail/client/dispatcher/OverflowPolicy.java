@@ -0,0 +1,24 @@
+package hu.psprog.leaflet.mail.client.dispatcher;
+
+/**
+ * Policies applied when the mail queue of a queued dispatcher is full.
+ *
+ * @author Peter Smith
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Subscribing thread is blocked until there is free space in the queue.
+     */
+    BLOCK,
+
+    /**
+     * New mail is rejected.
+     */
+    REJECT,
+
+    /**
+     * Oldest queued mail is rejected in favor of the new one.
+     */
+    DROP_OLDEST
+}
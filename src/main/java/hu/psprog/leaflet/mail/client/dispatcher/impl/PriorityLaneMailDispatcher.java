@@ -0,0 +1,331 @@
+package hu.psprog.leaflet.mail.client.dispatcher.impl;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailDispatcher;
+import hu.psprog.leaflet.mail.client.dispatcher.OverflowPolicy;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.config.ExecutionConfigurationProperties;
+import hu.psprog.leaflet.mail.config.PriorityLaneConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * {@link MailDispatcher} implementation placing delivery tasks in a bounded in-memory queue (lane) per {@link MailPriority},
+ * processed by a dedicated, fixed size worker pool.
+ * General workers dequeue the lanes by smooth weighted round-robin: while multiple lanes have waiting tasks,
+ * each lane is served proportionally to its configured weight, evenly interleaved, so bulk sends never starve
+ * the other lanes, and an idle lane leaves its share to the others. Reserved workers only serve the {@link MailPriority#HIGH} lane,
+ * so latency-sensitive mails always have free capacity (workers, and the SMTP connections used by them), even under bulk load.
+ * Time spent by each task in its lane is recorded by {@link MailMetrics}.
+ * When a lane is full, the configured {@link OverflowPolicy} is applied within the lane.
+ *
+ * @author Peter Smith
+ */
+public class PriorityLaneMailDispatcher implements MailDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PriorityLaneMailDispatcher.class);
+
+    private static final String THREAD_NAME_PREFIX = "mail-worker-";
+    private static final String RESERVED_THREAD_NAME_PREFIX = "mail-priority-worker-";
+
+    private final ExecutionConfigurationProperties executionConfigurationProperties;
+    private final MailMetrics mailMetrics;
+    private final Lane[] lanes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private boolean running = true;
+
+    public PriorityLaneMailDispatcher(ExecutionConfigurationProperties executionConfigurationProperties,
+                                      PriorityLaneConfigurationProperties priorityLaneConfigurationProperties, MailMetrics mailMetrics) {
+        this.executionConfigurationProperties = executionConfigurationProperties;
+        this.mailMetrics = mailMetrics;
+        this.lanes = createLanes(priorityLaneConfigurationProperties);
+        startWorkers(priorityLaneConfigurationProperties.getReservedWorkers());
+    }
+
+    @Override
+    public <T> Single<T> dispatch(Callable<T> deliveryTask, Supplier<T> rejectionHandler) {
+        return dispatch(MailPriority.NORMAL, deliveryTask, rejectionHandler);
+    }
+
+    @Override
+    public <T> Single<T> dispatch(MailPriority priority, Callable<T> deliveryTask, Supplier<T> rejectionHandler) {
+        return Single.create(emitter -> enqueue(new DeliveryTask<>(Objects.isNull(priority) ? MailPriority.NORMAL : priority,
+                deliveryTask, rejectionHandler, emitter)));
+    }
+
+    @Override
+    public int getConcurrencyLevel() {
+        return executionConfigurationProperties.getWorkers();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Returns the number of delivery tasks waiting in the lane of the given priority.
+     *
+     * @param priority {@link MailPriority} of the lane
+     * @return number of waiting delivery tasks
+     */
+    public int getQueueDepth(MailPriority priority) {
+
+        lock.lock();
+        try {
+            return lanes[priority.ordinal()].tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting new delivery tasks and waits for the queued ones to be processed up to the configured shutdown timeout.
+     * Tasks still waiting after the timeout are rejected.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+
+        lock.lock();
+        try {
+            running = false;
+            taskAvailable.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(executionConfigurationProperties.getShutdownTimeout());
+        for (Thread worker : workers) {
+            TimeUnit.NANOSECONDS.timedJoin(worker, Math.max(1L, deadline - System.nanoTime()));
+        }
+
+        List<DeliveryTask<?>> remainingTasks = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                remainingTasks.addAll(lane.tasks);
+                lane.tasks.clear();
+            }
+            queueDepth.set(0);
+        } finally {
+            lock.unlock();
+        }
+
+        if (!remainingTasks.isEmpty()) {
+            LOGGER.warn("Mail queue could not be drained in time, rejecting remaining mails");
+            remainingTasks.forEach(DeliveryTask::reject);
+            workers.forEach(Thread::interrupt);
+        }
+    }
+
+    private Lane[] createLanes(PriorityLaneConfigurationProperties priorityLaneConfigurationProperties) {
+
+        Lane[] createdLanes = new Lane[MailPriority.values().length];
+        for (MailPriority priority : MailPriority.values()) {
+            createdLanes[priority.ordinal()] = new Lane(priorityLaneConfigurationProperties.getWeights().get(priority));
+        }
+
+        return createdLanes;
+    }
+
+    private void startWorkers(int reservedWorkers) {
+
+        // at least one general worker is kept, otherwise the lower priority lanes would never be served
+        int workerCount = executionConfigurationProperties.getWorkers();
+        int reservedWorkerCount = Math.max(0, Math.min(reservedWorkers, workerCount - 1));
+        CustomizableThreadFactory threadFactory = createThreadFactory(THREAD_NAME_PREFIX);
+        CustomizableThreadFactory reservedThreadFactory = createThreadFactory(RESERVED_THREAD_NAME_PREFIX);
+        for (int index = 0; index < workerCount; index++) {
+            boolean reserved = index < reservedWorkerCount;
+            Thread worker = reserved
+                    ? reservedThreadFactory.newThread(() -> processTasks(true))
+                    : threadFactory.newThread(() -> processTasks(false));
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    private CustomizableThreadFactory createThreadFactory(String threadNamePrefix) {
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+
+        return threadFactory;
+    }
+
+    private void enqueue(DeliveryTask<?> task) {
+
+        DeliveryTask<?> rejectedTask = null;
+        lock.lock();
+        try {
+            Lane lane = lanes[task.priority.ordinal()];
+            while (running && Objects.isNull(rejectedTask) && lane.tasks.size() >= executionConfigurationProperties.getQueueCapacity()) {
+                rejectedTask = handleOverflow(task, lane);
+            }
+
+            if (!running) {
+                rejectedTask = task;
+            } else if (Objects.isNull(rejectedTask) || rejectedTask != task) {
+                lane.tasks.addLast(task);
+                queueDepth.incrementAndGet();
+                // reserved workers only take high priority tasks, so all of them are woken up
+                taskAvailable.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (Objects.nonNull(rejectedTask)) {
+            rejectedTask.reject();
+        }
+    }
+
+    private DeliveryTask<?> handleOverflow(DeliveryTask<?> task, Lane lane) {
+
+        DeliveryTask<?> rejectedTask = null;
+        switch (executionConfigurationProperties.getOverflowPolicy()) {
+            case BLOCK:
+                try {
+                    spaceAvailable.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejectedTask = task;
+                }
+                break;
+            case DROP_OLDEST:
+                LOGGER.warn("Mail queue of {} priority is full, dropping oldest queued mail", task.priority);
+                rejectedTask = lane.tasks.pollFirst();
+                queueDepth.decrementAndGet();
+                break;
+            case REJECT:
+            default:
+                LOGGER.warn("Mail queue of {} priority is full, rejecting mail", task.priority);
+                rejectedTask = task;
+                break;
+        }
+
+        return rejectedTask;
+    }
+
+    private void processTasks(boolean reserved) {
+
+        while (true) {
+            DeliveryTask<?> task;
+            lock.lock();
+            try {
+                task = nextTask(reserved);
+                while (Objects.isNull(task)) {
+                    if (!running) {
+                        return;
+                    }
+                    taskAvailable.await();
+                    task = nextTask(reserved);
+                }
+                queueDepth.decrementAndGet();
+                spaceAvailable.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            mailMetrics.recordQueueingDelay(task.priority, System.nanoTime() - task.enqueueTime);
+            task.run();
+        }
+    }
+
+    private DeliveryTask<?> nextTask(boolean reserved) {
+
+        if (reserved) {
+            return lanes[MailPriority.HIGH.ordinal()].tasks.pollFirst();
+        }
+
+        Lane selectedLane = null;
+        int totalWeight = 0;
+        for (Lane lane : lanes) {
+            if (!lane.tasks.isEmpty()) {
+                lane.currentWeight += lane.weight;
+                totalWeight += lane.weight;
+                if (Objects.isNull(selectedLane) || lane.currentWeight > selectedLane.currentWeight) {
+                    selectedLane = lane;
+                }
+            }
+        }
+
+        if (Objects.isNull(selectedLane)) {
+            return null;
+        }
+        selectedLane.currentWeight -= totalWeight;
+
+        return selectedLane.tasks.pollFirst();
+    }
+
+    private static final class Lane {
+
+        private final int weight;
+        private final ArrayDeque<DeliveryTask<?>> tasks = new ArrayDeque<>();
+
+        private int currentWeight;
+
+        private Lane(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class DeliveryTask<T> implements Runnable {
+
+        private final MailPriority priority;
+        private final Callable<T> deliveryTask;
+        private final Supplier<T> rejectionHandler;
+        private final SingleEmitter<T> emitter;
+        private final long enqueueTime = System.nanoTime();
+
+        private DeliveryTask(MailPriority priority, Callable<T> deliveryTask, Supplier<T> rejectionHandler, SingleEmitter<T> emitter) {
+            this.priority = priority;
+            this.deliveryTask = deliveryTask;
+            this.rejectionHandler = rejectionHandler;
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void run() {
+
+            if (emitter.isDisposed()) {
+                return;
+            }
+
+            try {
+                emitter.onSuccess(deliveryTask.call());
+            } catch (Exception e) {
+                emitter.tryOnError(e);
+            }
+        }
+
+        private void reject() {
+            emitter.onSuccess(rejectionHandler.get());
+        }
+    }
+}
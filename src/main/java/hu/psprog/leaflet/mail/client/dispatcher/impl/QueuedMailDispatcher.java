@@ -0,0 +1,163 @@
+package hu.psprog.leaflet.mail.client.dispatcher.impl;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailDispatcher;
+import hu.psprog.leaflet.mail.client.dispatcher.OverflowPolicy;
+import hu.psprog.leaflet.mail.config.ExecutionConfigurationProperties;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * {@link MailDispatcher} implementation placing delivery tasks in a bounded in-memory queue,
+ * processed by a dedicated, fixed size worker pool.
+ * Subscribing to the returned {@link Single} only enqueues the task, result is emitted on the worker thread.
+ * When the queue is full, the configured {@link OverflowPolicy} is applied.
+ *
+ * @author Peter Smith
+ */
+public class QueuedMailDispatcher implements MailDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueuedMailDispatcher.class);
+
+    private static final String THREAD_NAME_PREFIX = "mail-worker-";
+
+    private final ExecutionConfigurationProperties executionConfigurationProperties;
+    private final ThreadPoolExecutor executor;
+
+    public QueuedMailDispatcher(ExecutionConfigurationProperties executionConfigurationProperties) {
+        this.executionConfigurationProperties = executionConfigurationProperties;
+        this.executor = createExecutor();
+    }
+
+    @Override
+    public <T> Single<T> dispatch(Callable<T> deliveryTask, Supplier<T> rejectionHandler) {
+        return Single.create(emitter -> executor.execute(new DeliveryTask<>(deliveryTask, rejectionHandler, emitter)));
+    }
+
+    @Override
+    public int getConcurrencyLevel() {
+        return executionConfigurationProperties.getWorkers();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting new delivery tasks and waits for the queued ones to be processed up to the configured shutdown timeout.
+     * Tasks still waiting after the timeout are rejected.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+
+        executor.shutdown();
+        if (!executor.awaitTermination(executionConfigurationProperties.getShutdownTimeout(), TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Mail queue could not be drained in time, rejecting remaining mails");
+            executor.shutdownNow().forEach(this::reject);
+        }
+    }
+
+    private ThreadPoolExecutor createExecutor() {
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+        threadFactory.setDaemon(true);
+
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(executionConfigurationProperties.getWorkers(),
+                executionConfigurationProperties.getWorkers(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(executionConfigurationProperties.getQueueCapacity()), threadFactory, this::handleOverflow);
+        threadPoolExecutor.prestartAllCoreThreads();
+
+        return threadPoolExecutor;
+    }
+
+    private void handleOverflow(Runnable task, ThreadPoolExecutor threadPoolExecutor) {
+
+        if (threadPoolExecutor.isShutdown()) {
+            reject(task);
+            return;
+        }
+
+        switch (executionConfigurationProperties.getOverflowPolicy()) {
+            case BLOCK:
+                enqueueBlocking(task, threadPoolExecutor.getQueue());
+                break;
+            case DROP_OLDEST:
+                enqueueDroppingOldest(task, threadPoolExecutor.getQueue());
+                break;
+            case REJECT:
+            default:
+                LOGGER.warn("Mail queue is full, rejecting mail");
+                reject(task);
+                break;
+        }
+    }
+
+    private void enqueueBlocking(Runnable task, BlockingQueue<Runnable> queue) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(task);
+        }
+    }
+
+    private void enqueueDroppingOldest(Runnable task, BlockingQueue<Runnable> queue) {
+        while (!queue.offer(task)) {
+            Runnable oldestTask = queue.poll();
+            if (oldestTask != null) {
+                LOGGER.warn("Mail queue is full, dropping oldest queued mail");
+                reject(oldestTask);
+            }
+        }
+    }
+
+    private void reject(Runnable task) {
+        if (task instanceof DeliveryTask) {
+            ((DeliveryTask<?>) task).reject();
+        }
+    }
+
+    private static final class DeliveryTask<T> implements Runnable {
+
+        private final Callable<T> deliveryTask;
+        private final Supplier<T> rejectionHandler;
+        private final SingleEmitter<T> emitter;
+
+        private DeliveryTask(Callable<T> deliveryTask, Supplier<T> rejectionHandler, SingleEmitter<T> emitter) {
+            this.deliveryTask = deliveryTask;
+            this.rejectionHandler = rejectionHandler;
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void run() {
+
+            if (emitter.isDisposed()) {
+                return;
+            }
+
+            try {
+                emitter.onSuccess(deliveryTask.call());
+            } catch (Exception e) {
+                emitter.tryOnError(e);
+            }
+        }
+
+        private void reject() {
+            emitter.onSuccess(rejectionHandler.get());
+        }
+    }
+}
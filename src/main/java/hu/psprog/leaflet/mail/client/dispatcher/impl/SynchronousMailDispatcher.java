@@ -0,0 +1,25 @@
+package hu.psprog.leaflet.mail.client.dispatcher.impl;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailDispatcher;
+import io.reactivex.Single;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * {@link MailDispatcher} implementation executing delivery tasks on the subscribing thread.
+ *
+ * @author Peter Smith
+ */
+public class SynchronousMailDispatcher implements MailDispatcher {
+
+    @Override
+    public <T> Single<T> dispatch(Callable<T> deliveryTask, Supplier<T> rejectionHandler) {
+        return Single.fromCallable(deliveryTask);
+    }
+
+    @Override
+    public int getConcurrencyLevel() {
+        return 1;
+    }
+}
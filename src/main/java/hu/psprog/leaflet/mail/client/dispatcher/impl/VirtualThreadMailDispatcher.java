@@ -0,0 +1,119 @@
+package hu.psprog.leaflet.mail.client.dispatcher.impl;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailDispatcher;
+import hu.psprog.leaflet.mail.config.ExecutionConfigurationProperties;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * {@link MailDispatcher} implementation executing every delivery task on its own virtual thread.
+ * Number of concurrently executed delivery tasks is capped by a semaphore,
+ * so tasks above the configured concurrency limit park their (cheap) virtual thread instead of flooding the SMTP server.
+ * Virtual threads are available from Java 21 - as the component is built for Java 11,
+ * the virtual thread executor is looked up reflectively and initialization fails if the runtime does not support it.
+ *
+ * @author Peter Smith
+ */
+public class VirtualThreadMailDispatcher implements MailDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadMailDispatcher.class);
+
+    private static final String VIRTUAL_THREAD_EXECUTOR_FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    private final ExecutionConfigurationProperties executionConfigurationProperties;
+    private final ExecutorService executor;
+    private final Semaphore concurrencyLimit;
+
+    public VirtualThreadMailDispatcher(ExecutionConfigurationProperties executionConfigurationProperties) {
+        this(executionConfigurationProperties, createVirtualThreadExecutor());
+    }
+
+    VirtualThreadMailDispatcher(ExecutionConfigurationProperties executionConfigurationProperties, ExecutorService executor) {
+        this.executionConfigurationProperties = executionConfigurationProperties;
+        this.executor = executor;
+        this.concurrencyLimit = new Semaphore(executionConfigurationProperties.getMaxConcurrency(), true);
+    }
+
+    @Override
+    public <T> Single<T> dispatch(Callable<T> deliveryTask, Supplier<T> rejectionHandler) {
+        return Single.create(emitter -> {
+            try {
+                executor.execute(() -> execute(deliveryTask, rejectionHandler, emitter));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Virtual thread executor is shut down, rejecting mail");
+                emitter.onSuccess(rejectionHandler.get());
+            }
+        });
+    }
+
+    @Override
+    public int getConcurrencyLevel() {
+        return executionConfigurationProperties.getMaxConcurrency();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return concurrencyLimit.getQueueLength();
+    }
+
+    /**
+     * Stops accepting new delivery tasks and waits for the running ones up to the configured shutdown timeout.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+
+        executor.shutdown();
+        if (!executor.awaitTermination(executionConfigurationProperties.getShutdownTimeout(), TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Running mail deliveries could not be finished in time, interrupting them");
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> void execute(Callable<T> deliveryTask, Supplier<T> rejectionHandler, SingleEmitter<T> emitter) {
+
+        try {
+            concurrencyLimit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.onSuccess(rejectionHandler.get());
+            return;
+        }
+
+        try {
+            if (!emitter.isDisposed()) {
+                emitter.onSuccess(deliveryTask.call());
+            }
+        } catch (Exception e) {
+            emitter.tryOnError(e);
+        } finally {
+            concurrencyLimit.release();
+        }
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+
+        try {
+            Method factoryMethod = Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR_FACTORY_METHOD);
+            return (ExecutorService) factoryMethod.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads are not supported by the current Java runtime (Java 21+ required).", e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor.", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import hu.psprog.leaflet.mail.domain.MailAttachment;
+
+import javax.activation.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Read-only {@link DataSource} adapter of a {@link MailAttachment}, opening its source on every read,
+ * so the attachment content is streamed while the message is being written.
+ *
+ * @author Peter Smith
+ */
+class MailAttachmentDataSource implements DataSource {
+
+    private final MailAttachment mailAttachment;
+    private final String contentType;
+
+    MailAttachmentDataSource(MailAttachment mailAttachment, String contentType) {
+        this.mailAttachment = mailAttachment;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return mailAttachment.getSource().openStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("Mail attachments are read-only");
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return mailAttachment.getFilename();
+    }
+}
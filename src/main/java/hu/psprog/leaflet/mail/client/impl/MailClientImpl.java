@@ -1,25 +1,83 @@
 package hu.psprog.leaflet.mail.client.impl;
 
 import hu.psprog.leaflet.mail.client.MailClient;
+import hu.psprog.leaflet.mail.client.deduplication.MailDeduplicationFilter;
+import hu.psprog.leaflet.mail.client.digest.AdminDigestCoalescer;
+import hu.psprog.leaflet.mail.client.dispatcher.MailDispatcher;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.metrics.MailPipelineStage;
+import hu.psprog.leaflet.mail.client.outbox.MailOutbox;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitExceededException;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitMode;
+import hu.psprog.leaflet.mail.client.ratelimit.SMTPRateLimiter;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreakerOpenException;
+import hu.psprog.leaflet.mail.config.MailProcessorConfigurationProperties;
 import hu.psprog.leaflet.mail.domain.Mail;
 import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
 import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import hu.psprog.leaflet.mail.domain.MailLifecycleEvent;
+import hu.psprog.leaflet.mail.domain.MailLifecycleStage;
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import javax.mail.Address;
 import javax.mail.MessagingException;
 import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Default implementation of {@link MailClient}.
+ * If a {@link MailOutbox} is available (OUTBOX execution mode), valid mails are only appended to the outbox
+ * and reported as {@link MailDeliveryStatus#QUEUED}, actual sending is done by {@link OutboxDrainer}.
+ * As mails are serialized into the outbox, mails having non-serializable content values are reported as
+ * {@link MailDeliveryStatus#VALIDATION_ERROR} in this mode.
+ * Valid mails having an idempotency key are checked against the {@link MailDeduplicationFilter} first,
+ * and duplicates are reported as {@link MailDeliveryStatus#DUPLICATE} without being rendered or sent.
+ * Valid, non-duplicate mails reserve a permit per recipient (to, cc and bcc, as resolved by {@link MailRecipients}) from the
+ * rate limit of its domain (see {@link SMTPRateLimiter}) within the delivery task, right before sending
+ * (in OUTBOX mode, permits are reserved by {@link OutboxDrainer} instead, when the mail is actually sent):
+ * mails exceeding it are reported as {@link MailDeliveryStatus#THROTTLED}, delayed mails are either waited for
+ * on the delivery thread (DELAY mode) or dispatched again later by a timer (QUEUE mode).
+ * If admin digest is enabled, admin notifications sent one by one are validated, then buffered by {@link AdminDigestCoalescer},
+ * and sent together as a digest mail.
+ * Delivery tasks are dispatched with the {@link MailPriority} of the mail (batches with the highest priority among their mails).
+ * If the SMTP transport supports it (see {@link MailProcessor#isAsyncSendSupported()}), mails are delivered asynchronously:
+ * the delivery thread is released as soon as the messages are handed over to the transport, and failed attempts are retried by a timer.
+ * Mails sent one by one can report their lifecycle stages through a {@link MailLifecycleListener}, which is passed along
+ * the pipeline down to {@link MailProcessor}.
  *
  * @author Peter Smith
  */
@@ -28,46 +86,498 @@ class MailClientImpl implements MailClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MailClientImpl.class);
 
+    private static final String CONTENT_MAP_ENTRY = "contentMap[%s]";
+    private static final String NOT_SERIALIZABLE_CONTENT = "must be serializable in OUTBOX execution mode, but is [%s]";
+
     private MailProcessor mailProcessor;
+    private ResilientDeliveryExecutor resilientDeliveryExecutor;
     private Validator validator;
+    private MailProcessorConfigurationProperties mailProcessorConfigurationProperties;
+    private MailDispatcher mailDispatcher;
+    private Optional<MailOutbox> mailOutbox;
+    private MailMetrics mailMetrics;
+    private MailDeduplicationFilter mailDeduplicationFilter;
+    private SMTPRateLimiter smtpRateLimiter;
+    private AdminDigestCoalescer adminDigestCoalescer;
 
     @Autowired
-    public MailClientImpl(MailProcessor mailProcessor, Validator validator) {
+    public MailClientImpl(MailProcessor mailProcessor, ResilientDeliveryExecutor resilientDeliveryExecutor, Validator validator,
+                          MailProcessorConfigurationProperties mailProcessorConfigurationProperties, MailDispatcher mailDispatcher,
+                          Optional<MailOutbox> mailOutbox, MailMetrics mailMetrics, MailDeduplicationFilter mailDeduplicationFilter,
+                          SMTPRateLimiter smtpRateLimiter, AdminDigestCoalescer adminDigestCoalescer) {
         this.mailProcessor = mailProcessor;
+        this.resilientDeliveryExecutor = resilientDeliveryExecutor;
         this.validator = validator;
+        this.mailProcessorConfigurationProperties = mailProcessorConfigurationProperties;
+        this.mailDispatcher = mailDispatcher;
+        this.mailOutbox = mailOutbox;
+        this.mailMetrics = mailMetrics;
+        this.mailDeduplicationFilter = mailDeduplicationFilter;
+        this.smtpRateLimiter = smtpRateLimiter;
+        this.adminDigestCoalescer = adminDigestCoalescer;
+    }
+
+    /**
+     * Sends the buffered admin notifications on shutdown, without waiting for their window to elapse.
+     */
+    @PreDestroy
+    public void flushAdminDigest() {
+        adminDigestCoalescer.flush();
     }
 
     @Override
     public Observable<MailDeliveryInfo> sendMail(Mail mail) {
+        return send(mail, MailLifecycleListener.NO_OP).toObservable();
+    }
 
+    @Override
+    public Observable<MailLifecycleEvent> sendMailTracked(Mail mail) {
         return Observable.create(emitter -> {
-            MailDeliveryInfo.MailDeliveryInfoBuilder mailDeliveryInfo = MailDeliveryInfo.getBuilder()
-                    .withMail(mail);
-
-            Set<ConstraintViolation<Mail>> validationResult = validator.validate(mail);
-
-            if (validationResult.isEmpty()) {
-                try {
-                    mailProcessor.process(mail);
-                    mailDeliveryInfo.withMailDeliveryStatus(MailDeliveryStatus.DELIVERED);
-                } catch (SendFailedException e) {
-                    LOGGER.error("Invalid recipient", e);
-                    mailDeliveryInfo.withMailDeliveryStatus(MailDeliveryStatus.INVALID_RECIPIENT);
-                } catch (MessagingException e) {
-                    LOGGER.error("Failed to send message", e);
-                    mailDeliveryInfo.withMailDeliveryStatus(MailDeliveryStatus.COMMUNICATION_ERROR);
-                } catch (Exception e) {
-                    LOGGER.error("Unknown exception occurred while processing mail", e);
-                    mailDeliveryInfo.withMailDeliveryStatus(MailDeliveryStatus.UNKNOWN_ERROR);
-                }
-            } else {
+            // stages are reported from the caller, the dispatcher and the timer threads
+            ObservableEmitter<MailLifecycleEvent> serializedEmitter = emitter.serialize();
+            emitter.setDisposable(send(mail, stage -> serializedEmitter.onNext(createLifecycleEvent(mail, stage, null)))
+                    .subscribe(mailDeliveryInfo -> {
+                        serializedEmitter.onNext(createLifecycleEvent(mail,
+                                MailLifecycleStage.ofDeliveryStatus(mailDeliveryInfo.getMailDeliveryStatus()), mailDeliveryInfo));
+                        serializedEmitter.onComplete();
+                    }, serializedEmitter::tryOnError));
+        });
+    }
+
+    @Override
+    public Observable<MailDeliveryInfo> sendMails(Iterable<Mail> mails) {
+        return sendMails(Flowable.fromIterable(mails)).toObservable();
+    }
+
+    @Override
+    public Flowable<MailDeliveryInfo> sendMails(Flowable<Mail> mails) {
+        return mails.buffer(mailProcessorConfigurationProperties.getBatchSize())
+                .concatMapEager(batch -> Single.defer(() -> dispatchBatch(batch))
+                                .doOnSuccess(deliveryInfos -> deliveryInfos.forEach(this::recordDeliveryStatus))
+                                .toFlowable(),
+                        mailDispatcher.getConcurrencyLevel(), 1)
+                .concatMapIterable(deliveryInfos -> deliveryInfos);
+    }
+
+    private Single<MailDeliveryInfo> send(Mail mail, MailLifecycleListener mailLifecycleListener) {
+
+        Single<MailDeliveryInfo> mailDeliveryInfo = adminDigestCoalescer.isCoalescable(mail)
+                ? Single.defer(() -> coalesce(mail, mailLifecycleListener))
+                : Single.defer(() -> dispatch(mail, mailLifecycleListener));
+
+        return mailDeliveryInfo
+                .doOnSubscribe(disposable -> mailLifecycleListener.onStage(MailLifecycleStage.ACCEPTED))
+                .doOnSuccess(this::recordDeliveryStatus);
+    }
+
+    private Single<MailDeliveryInfo> coalesce(Mail mail, MailLifecycleListener mailLifecycleListener) {
+
+        Set<ConstraintViolation<Mail>> validationResult = validate(mail);
+        if (!validationResult.isEmpty()) {
+            LOGGER.error("Invalid mail structure.");
+            return Single.just(invalid(mail, validationResult));
+        }
+
+        Map<String, String> contentViolations = validateOutboxContent(mail);
+        if (!contentViolations.isEmpty()) {
+            return Single.just(invalid(mail, contentViolations));
+        }
+
+        mailLifecycleListener.onStage(MailLifecycleStage.VALIDATED);
+        if (isDuplicate(mail)) {
+            return Single.just(duplicate(mail));
+        }
+
+        return adminDigestCoalescer.submit(mail, digest -> Single.defer(() -> dispatch(digest, MailLifecycleListener.NO_OP)))
+                .map(this::completeDeduplication);
+    }
+
+    private Single<MailDeliveryInfo> dispatch(Mail mail, MailLifecycleListener mailLifecycleListener) {
+        return mailDispatcher.dispatchAsync(mail.getPriority(), () -> deliver(mail, mailLifecycleListener), () -> reject(mail));
+    }
+
+    private Single<List<MailDeliveryInfo>> dispatchBatch(List<Mail> mails) {
+        return mailDispatcher.dispatchAsync(getHighestPriority(mails), () -> deliverBatch(mails), () -> rejectBatch(mails));
+    }
+
+    private <T> Single<T> processAfter(long delay, MailPriority priority, Callable<Single<T>> processingTask, Supplier<T> rejectionHandler) {
+
+        Single<T> result;
+        if (delay > 0 && smtpRateLimiter.getMode() == RateLimitMode.QUEUE) {
+            // no thread is held while waiting, the processing task is dispatched again by the timer
+            result = mailDispatcher.dispatchAsync(priority, processingTask, rejectionHandler)
+                    .delaySubscription(delay, TimeUnit.NANOSECONDS, Schedulers.io());
+        } else {
+            result = Single.defer(() -> {
+                smtpRateLimiter.await(delay);
+                return processingTask.call();
+            });
+        }
+
+        return result;
+    }
+
+    private MailPriority getHighestPriority(List<Mail> mails) {
+
+        // a batch is sent as a single delivery task, so it is queued in the lane of its most urgent mail
+        return mails.stream()
+                .map(Mail::getPriority)
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElse(MailPriority.NORMAL);
+    }
+
+    private Single<MailDeliveryInfo> deliver(Mail mail, MailLifecycleListener mailLifecycleListener) {
+
+        mailMetrics.recordQueueDepth(mailDispatcher.getQueueDepth());
+        Set<ConstraintViolation<Mail>> validationResult = validate(mail);
+        Map<String, String> contentViolations = validationResult.isEmpty()
+                ? validateOutboxContent(mail)
+                : Collections.emptyMap();
+
+        MailDeliveryInfo mailDeliveryInfo;
+        if (!validationResult.isEmpty()) {
+            LOGGER.error("Invalid mail structure.");
+            mailDeliveryInfo = invalid(mail, validationResult);
+        } else if (!contentViolations.isEmpty()) {
+            mailDeliveryInfo = invalid(mail, contentViolations);
+        } else if (isDuplicate(mail)) {
+            mailLifecycleListener.onStage(MailLifecycleStage.VALIDATED);
+            mailDeliveryInfo = duplicate(mail);
+        } else if (mailOutbox.isPresent()) {
+            // recipient domain permits are reserved by the outbox drainer when the mail is actually sent
+            mailLifecycleListener.onStage(MailLifecycleStage.VALIDATED);
+            mailDeliveryInfo = completeDeduplication(enqueue(mail));
+        } else {
+            mailLifecycleListener.onStage(MailLifecycleStage.VALIDATED);
+            long delay = smtpRateLimiter.reserveRecipientDomains(getRecipients(mail));
+            if (delay == SMTPRateLimiter.RATE_LIMIT_EXCEEDED) {
+                return Single.just(completeDeduplication(throttle(mail)));
+            }
+            return processAfter(delay, mail.getPriority(), () -> processMail(mail, mailLifecycleListener).map(this::completeDeduplication),
+                    () -> completeDeduplication(reject(mail)));
+        }
+
+        return Single.just(mailDeliveryInfo);
+    }
+
+    private Single<List<MailDeliveryInfo>> deliverBatch(List<Mail> mails) {
+
+        mailMetrics.recordQueueDepth(mailDispatcher.getQueueDepth());
+        MailDeliveryInfo[] mailDeliveryInfos = new MailDeliveryInfo[mails.size()];
+        List<Mail> validMails = new ArrayList<>(mails.size());
+        List<Integer> validMailIndices = new ArrayList<>(mails.size());
+
+        for (int index = 0; index < mails.size(); index++) {
+            Mail mail = mails.get(index);
+            Set<ConstraintViolation<Mail>> validationResult = validate(mail);
+            Map<String, String> contentViolations = validationResult.isEmpty()
+                    ? validateOutboxContent(mail)
+                    : Collections.emptyMap();
+            if (!validationResult.isEmpty()) {
                 LOGGER.error("Invalid mail structure.");
-                mailDeliveryInfo.withConstraintViolations(prepareConstraintViolations(validationResult));
-                mailDeliveryInfo.withMailDeliveryStatus(MailDeliveryStatus.VALIDATION_ERROR);
+                mailDeliveryInfos[index] = invalid(mail, validationResult);
+            } else if (!contentViolations.isEmpty()) {
+                mailDeliveryInfos[index] = invalid(mail, contentViolations);
+            } else if (isDuplicate(mail)) {
+                mailDeliveryInfos[index] = duplicate(mail);
+            } else if (mailOutbox.isPresent()) {
+                mailDeliveryInfos[index] = completeDeduplication(enqueue(mail));
+            } else {
+                validMails.add(mail);
+                validMailIndices.add(index);
+            }
+        }
+
+        List<Mail> permittedMails = new ArrayList<>(validMails.size());
+        long delay = 0L;
+        for (int validIndex = 0; validIndex < validMails.size(); validIndex++) {
+            Mail mail = validMails.get(validIndex);
+            long mailDelay = smtpRateLimiter.reserveRecipientDomains(getRecipients(mail));
+            if (mailDelay == SMTPRateLimiter.RATE_LIMIT_EXCEEDED) {
+                mailDeliveryInfos[validMailIndices.get(validIndex)] = completeDeduplication(throttle(mail));
+            } else {
+                permittedMails.add(mail);
+                delay = Math.max(delay, mailDelay);
+            }
+        }
+
+        if (permittedMails.isEmpty()) {
+            return Single.just(Arrays.asList(mailDeliveryInfos));
+        }
+
+        return processAfter(delay, getHighestPriority(permittedMails), () -> processBatch(permittedMails),
+                () -> rejectBatch(permittedMails).stream()
+                        .map(this::completeDeduplication)
+                        .collect(Collectors.toList()))
+                .map(permittedDeliveryInfos -> mergeDeliveryInfos(mailDeliveryInfos, permittedDeliveryInfos));
+    }
+
+    private List<MailDeliveryInfo> mergeDeliveryInfos(MailDeliveryInfo[] mailDeliveryInfos, List<MailDeliveryInfo> permittedDeliveryInfos) {
+
+        Iterator<MailDeliveryInfo> permittedDeliveryInfoIterator = permittedDeliveryInfos.iterator();
+        for (int index = 0; index < mailDeliveryInfos.length; index++) {
+            if (Objects.isNull(mailDeliveryInfos[index])) {
+                mailDeliveryInfos[index] = permittedDeliveryInfoIterator.next();
+            }
+        }
+
+        return Arrays.asList(mailDeliveryInfos);
+    }
+
+    private Single<MailDeliveryInfo> processMail(Mail mail, MailLifecycleListener mailLifecycleListener) {
+
+        // asynchronous processing releases the delivery thread as soon as the message is handed over to the SMTP engine
+        Single<MailProcessingResult> processingResult = mailProcessor.isAsyncSendSupported()
+                ? fromFuture(() -> resilientDeliveryExecutor.executeAsync(() -> mailProcessor.processAsync(mail, mailLifecycleListener)))
+                : Single.fromCallable(() -> resilientDeliveryExecutor.execute(() -> mailProcessor.process(mail, mailLifecycleListener)));
+
+        return processingResult
+                .map(this::prepareMailDeliveryInfo)
+                .onErrorResumeNext(failure -> failure instanceof Exception
+                        ? Single.just(fail(mail, (Exception) failure))
+                        : Single.error(failure));
+    }
+
+    private Single<List<MailDeliveryInfo>> processBatch(List<Mail> mails) {
+
+        Single<List<MailProcessingResult>> processingResults = mailProcessor.isAsyncSendSupported()
+                ? fromFuture(() -> resilientDeliveryExecutor.executeBatchAsync(mails, mailProcessor::processBatchAsync))
+                : Single.fromCallable(() -> resilientDeliveryExecutor.executeBatch(mails, mailProcessor::processBatch));
+
+        return processingResults.map(results -> results.stream()
+                .map(this::prepareMailDeliveryInfo)
+                .map(this::completeDeduplication)
+                .collect(Collectors.toList()));
+    }
+
+    private <T> Single<T> fromFuture(Supplier<CompletableFuture<T>> futureSupplier) {
+        return Single.create(emitter -> futureSupplier.get().whenComplete((result, failure) -> {
+            if (Objects.isNull(failure)) {
+                emitter.onSuccess(result);
+            } else {
+                emitter.tryOnError(failure instanceof CompletionException && Objects.nonNull(failure.getCause())
+                        ? failure.getCause()
+                        : failure);
             }
+        }));
+    }
+
+    private MailDeliveryInfo enqueue(Mail mail) {
+
+        MailDeliveryInfo.MailDeliveryInfoBuilder mailDeliveryInfo = MailDeliveryInfo.getBuilder()
+                .withMail(mail);
+        try {
+            mailOutbox.get().append(mail);
+            mailDeliveryInfo.withMailDeliveryStatus(MailDeliveryStatus.QUEUED);
+        } catch (Exception e) {
+            mailDeliveryInfo.withMailDeliveryStatus(resolveFailureStatus(e));
+        }
+
+        return mailDeliveryInfo.build();
+    }
+
+    private Set<ConstraintViolation<Mail>> validate(Mail mail) {
+
+        long startTime = System.nanoTime();
+        try {
+            return validator.validate(mail);
+        } finally {
+            mailMetrics.recordStage(MailPipelineStage.VALIDATION, startTime);
+        }
+    }
 
-            emitter.onNext(mailDeliveryInfo.build());
+    private Map<String, String> validateOutboxContent(Mail mail) {
+
+        if (mailOutbox.isEmpty() || Objects.isNull(mail.getContentMap())) {
+            return Collections.emptyMap();
+        }
+
+        // only the content values themselves are checked here, non-serializable nested objects are reported when appending
+        Map<String, String> contentViolations = new LinkedHashMap<>();
+        mail.getContentMap().forEach((key, value) -> {
+            if (Objects.nonNull(value) && !(value instanceof Serializable)) {
+                contentViolations.put(String.format(CONTENT_MAP_ENTRY, key), String.format(NOT_SERIALIZABLE_CONTENT, value.getClass().getName()));
+            }
         });
+
+        if (!contentViolations.isEmpty()) {
+            LOGGER.error("Mail content can not be stored in the outbox: {}", contentViolations);
+        }
+
+        return contentViolations;
+    }
+
+    private boolean isDuplicate(Mail mail) {
+
+        boolean duplicate = Objects.nonNull(mail.getIdempotencyKey()) && !mailDeduplicationFilter.tryAcquire(mail.getIdempotencyKey());
+        if (duplicate) {
+            LOGGER.warn("Mail with idempotency key [{}] has already been accepted, skipping duplicate.", mail.getIdempotencyKey());
+        }
+
+        return duplicate;
+    }
+
+    private MailDeliveryInfo completeDeduplication(MailDeliveryInfo mailDeliveryInfo) {
+
+        String idempotencyKey = mailDeliveryInfo.getMail().getIdempotencyKey();
+        if (Objects.nonNull(idempotencyKey)) {
+            MailDeliveryStatus mailDeliveryStatus = mailDeliveryInfo.getMailDeliveryStatus();
+            if (mailDeliveryStatus == MailDeliveryStatus.DELIVERED || mailDeliveryStatus == MailDeliveryStatus.PARTIALLY_DELIVERED
+                    || mailDeliveryStatus == MailDeliveryStatus.QUEUED) {
+                mailDeduplicationFilter.commit(idempotencyKey);
+            } else {
+                mailDeduplicationFilter.release(idempotencyKey);
+            }
+        }
+
+        return mailDeliveryInfo;
+    }
+
+    private void recordDeliveryStatus(MailDeliveryInfo mailDeliveryInfo) {
+        mailMetrics.recordDeliveryStatus(mailDeliveryInfo.getMailDeliveryStatus());
+    }
+
+    private MailLifecycleEvent createLifecycleEvent(Mail mail, MailLifecycleStage stage, MailDeliveryInfo mailDeliveryInfo) {
+        return MailLifecycleEvent.getBuilder()
+                .withMail(mail)
+                .withStage(stage)
+                .withTimestamp(Instant.now())
+                .withMailDeliveryInfo(mailDeliveryInfo)
+                .build();
+    }
+
+    private MailDeliveryInfo invalid(Mail mail, Set<ConstraintViolation<Mail>> validationResult) {
+        return invalid(mail, prepareConstraintViolations(validationResult));
+    }
+
+    private MailDeliveryInfo invalid(Mail mail, Map<String, String> constraintViolations) {
+        return MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withConstraintViolations(constraintViolations)
+                .withMailDeliveryStatus(MailDeliveryStatus.VALIDATION_ERROR)
+                .build();
+    }
+
+    private MailDeliveryInfo duplicate(Mail mail) {
+        return MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withMailDeliveryStatus(MailDeliveryStatus.DUPLICATE)
+                .build();
+    }
+
+    private MailDeliveryInfo fail(Mail mail, Exception failure) {
+        return MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withMailDeliveryStatus(resolveFailureStatus(failure))
+                .build();
+    }
+
+    private MailDeliveryInfo reject(Mail mail) {
+        return MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withMailDeliveryStatus(MailDeliveryStatus.REJECTED)
+                .build();
+    }
+
+    private MailDeliveryInfo throttle(Mail mail) {
+
+        LOGGER.warn("Mail to {} is not sent as the rate limit of a recipient domain is exceeded", getRecipients(mail));
+
+        return MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withMailDeliveryStatus(MailDeliveryStatus.THROTTLED)
+                .build();
+    }
+
+    private List<String> getRecipients(Mail mail) {
+        return MailRecipients.getAllRecipients(mail, mailProcessorConfigurationProperties.getAdminNotificationAddress());
+    }
+
+    private List<MailDeliveryInfo> rejectBatch(List<Mail> mails) {
+        return mails.stream()
+                .map(this::reject)
+                .collect(Collectors.toList());
+    }
+
+    private MailDeliveryInfo prepareMailDeliveryInfo(MailProcessingResult processingResult) {
+
+        MailDeliveryInfo.MailDeliveryInfoBuilder mailDeliveryInfo = MailDeliveryInfo.getBuilder()
+                .withMail(processingResult.getMail());
+        applyProcessingResult(mailDeliveryInfo, processingResult);
+
+        return mailDeliveryInfo.build();
+    }
+
+    private void applyProcessingResult(MailDeliveryInfo.MailDeliveryInfoBuilder mailDeliveryInfo, MailProcessingResult processingResult) {
+
+        MailDeliveryStatus mailDeliveryStatus;
+        if (processingResult.isPartiallySuccessful()) {
+            LOGGER.warn("Mail is delivered only to a part of its recipients", processingResult.getPartialFailure());
+            mailDeliveryInfo.withRecipientStatuses(prepareRecipientStatuses(processingResult.getPartialFailure()));
+            mailDeliveryStatus = MailDeliveryStatus.PARTIALLY_DELIVERED;
+        } else if (processingResult.isSuccessful()) {
+            mailDeliveryStatus = MailDeliveryStatus.DELIVERED;
+        } else {
+            mailDeliveryStatus = resolveFailureStatus(processingResult.getFailure());
+        }
+
+        mailDeliveryInfo.withMailDeliveryStatus(mailDeliveryStatus)
+                .withSMTPEndpoint(processingResult.getSMTPEndpoint())
+                .withMessageId(processingResult.getMessageId());
+    }
+
+    private Map<String, MailDeliveryStatus> prepareRecipientStatuses(SendFailedException partialFailure) {
+
+        Map<String, MailDeliveryStatus> recipientStatuses = new LinkedHashMap<>();
+        putRecipientStatuses(recipientStatuses, partialFailure.getValidSentAddresses(), MailDeliveryStatus.DELIVERED);
+        putRecipientStatuses(recipientStatuses, partialFailure.getValidUnsentAddresses(), MailDeliveryStatus.COMMUNICATION_ERROR);
+        putRecipientStatuses(recipientStatuses, partialFailure.getInvalidAddresses(), MailDeliveryStatus.INVALID_RECIPIENT);
+
+        return recipientStatuses;
+    }
+
+    private void putRecipientStatuses(Map<String, MailDeliveryStatus> recipientStatuses, Address[] addresses, MailDeliveryStatus mailDeliveryStatus) {
+
+        if (Objects.isNull(addresses)) {
+            return;
+        }
+
+        for (Address address : addresses) {
+            recipientStatuses.put(address instanceof InternetAddress
+                    ? ((InternetAddress) address).getAddress()
+                    : address.toString(), mailDeliveryStatus);
+        }
+    }
+
+    private MailDeliveryStatus resolveFailureStatus(Exception exception) {
+
+        MailDeliveryStatus mailDeliveryStatus;
+        if (exception instanceof CircuitBreakerOpenException) {
+            LOGGER.error("Mail is not sent as SMTP server is unavailable");
+            mailDeliveryStatus = MailDeliveryStatus.SERVICE_UNAVAILABLE;
+        } else if (exception instanceof RateLimitExceededException) {
+            LOGGER.error("Mail is not sent as the rate limit of the SMTP relays is exceeded");
+            mailDeliveryStatus = MailDeliveryStatus.THROTTLED;
+        } else if (exception instanceof NotSerializableException) {
+            LOGGER.error("Mail content can not be stored in the outbox, as it contains a non-serializable object", exception);
+            mailDeliveryStatus = MailDeliveryStatus.VALIDATION_ERROR;
+        } else if (exception instanceof SendFailedException) {
+            LOGGER.error("Invalid recipient", exception);
+            mailDeliveryStatus = MailDeliveryStatus.INVALID_RECIPIENT;
+        } else if (exception instanceof MessagingException) {
+            LOGGER.error("Failed to send message", exception);
+            mailDeliveryStatus = MailDeliveryStatus.COMMUNICATION_ERROR;
+        } else if (exception instanceof MailException && exception.getCause() instanceof Exception) {
+            mailDeliveryStatus = resolveFailureStatus((Exception) exception.getCause());
+        } else if (exception instanceof MailSendException && ((MailSendException) exception).getMessageExceptions().length > 0) {
+            mailDeliveryStatus = resolveFailureStatus(((MailSendException) exception).getMessageExceptions()[0]);
+        } else {
+            LOGGER.error("Unknown exception occurred while processing mail", exception);
+            mailDeliveryStatus = MailDeliveryStatus.UNKNOWN_ERROR;
+        }
+
+        return mailDeliveryStatus;
     }
 
     private Map<String, String> prepareConstraintViolations(Set<ConstraintViolation<Mail>> validationResult) {
@@ -0,0 +1,26 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import hu.psprog.leaflet.mail.domain.MailLifecycleStage;
+
+/**
+ * Receives the lifecycle stage transitions of a single mail while it is being sent.
+ * Stages of the delivery attempt (rendering and submitting) are reported again on every retry.
+ *
+ * @author Peter Smith
+ */
+@FunctionalInterface
+interface MailLifecycleListener {
+
+    /**
+     * Listener ignoring all stage transitions.
+     */
+    MailLifecycleListener NO_OP = stage -> {
+    };
+
+    /**
+     * Called when the mail reaches the given stage.
+     *
+     * @param stage {@link MailLifecycleStage} reached by the mail
+     */
+    void onStage(MailLifecycleStage stage);
+}
@@ -0,0 +1,94 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.mail.SendFailedException;
+import java.util.Objects;
+
+/**
+ * Processing result of a single {@link Mail} object.
+ * Mails delivered to some of their recipients only are considered successful (as they must not be sent again),
+ * with the rejected and unsent recipients available from their partial failure.
+ *
+ * @author Peter Smith
+ */
+class MailProcessingResult {
+
+    private final Mail mail;
+    private final Exception failure;
+    private final String smtpEndpoint;
+    private final SendFailedException partialFailure;
+    private final String messageId;
+
+    private MailProcessingResult(Mail mail, Exception failure, String smtpEndpoint, SendFailedException partialFailure, String messageId) {
+        this.mail = mail;
+        this.failure = failure;
+        this.smtpEndpoint = smtpEndpoint;
+        this.partialFailure = partialFailure;
+        this.messageId = messageId;
+    }
+
+    public Mail getMail() {
+        return mail;
+    }
+
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public String getSMTPEndpoint() {
+        return smtpEndpoint;
+    }
+
+    public SendFailedException getPartialFailure() {
+        return partialFailure;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public boolean isSuccessful() {
+        return Objects.isNull(failure);
+    }
+
+    public boolean isPartiallySuccessful() {
+        return Objects.nonNull(partialFailure);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("mail", mail)
+                .append("failure", failure)
+                .append("smtpEndpoint", smtpEndpoint)
+                .append("partialFailure", partialFailure)
+                .append("messageId", messageId)
+                .toString();
+    }
+
+    static MailProcessingResult success(Mail mail) {
+        return success(mail, null);
+    }
+
+    static MailProcessingResult success(Mail mail, String smtpEndpoint) {
+        return success(mail, smtpEndpoint, null);
+    }
+
+    static MailProcessingResult success(Mail mail, String smtpEndpoint, String messageId) {
+        return new MailProcessingResult(mail, null, smtpEndpoint, null, messageId);
+    }
+
+    static MailProcessingResult partialSuccess(Mail mail, SendFailedException partialFailure) {
+        return partialSuccess(mail, partialFailure, null, null);
+    }
+
+    static MailProcessingResult partialSuccess(Mail mail, SendFailedException partialFailure, String smtpEndpoint, String messageId) {
+        return new MailProcessingResult(mail, null, smtpEndpoint, partialFailure, messageId);
+    }
+
+    static MailProcessingResult failure(Mail mail, Exception failure) {
+        return new MailProcessingResult(mail, failure, null, null, null);
+    }
+}
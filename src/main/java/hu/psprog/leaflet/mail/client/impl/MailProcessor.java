@@ -1,25 +1,63 @@
 package hu.psprog.leaflet.mail.client.impl;
 
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import hu.psprog.leaflet.mail.client.inline.InlineResource;
+import hu.psprog.leaflet.mail.client.inline.InlineResourceRegistry;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.metrics.MailPipelineStage;
 import hu.psprog.leaflet.mail.client.renderer.MailRenderer;
+import hu.psprog.leaflet.mail.client.renderer.impl.BulkMailRenderer;
+import hu.psprog.leaflet.mail.client.renderer.impl.BulkRenderingPlanCache;
+import hu.psprog.leaflet.mail.client.renderer.impl.CachingMailRenderer;
+import hu.psprog.leaflet.mail.client.renderer.impl.LruCache;
+import hu.psprog.leaflet.mail.client.renderer.impl.RenderedMailCache;
+import hu.psprog.leaflet.mail.client.routing.RoutedMailSendException;
+import hu.psprog.leaflet.mail.client.routing.SMTPRouter;
+import hu.psprog.leaflet.mail.client.routing.SMTPRoutingResult;
 import hu.psprog.leaflet.mail.config.MailProcessorConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RecipientGroupingConfigurationProperties;
 import hu.psprog.leaflet.mail.domain.Mail;
+import hu.psprog.leaflet.mail.domain.MailAttachment;
+import hu.psprog.leaflet.mail.domain.MailLifecycleStage;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
 import javax.annotation.PostConstruct;
 import javax.mail.Address;
+import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.SendFailedException;
+import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
+import javax.mail.util.ByteArrayDataSource;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Processes and sends mails.
@@ -33,17 +71,48 @@ class MailProcessor {
 
     private static final String NO_MAIL_RENDERER_PROVIDED = "No mail renderer provided.";
     private static final String SELECTED_MAIL_RENDERER_NOT_AVAILABLE = "Selected mail renderer [%s] not available.";
+    private static final String STREAMED_CONTENT_TYPE = "text/html; charset=UTF-8";
+    private static final String CONTENT_TRANSFER_ENCODING_HEADER = "Content-Transfer-Encoding";
+    private static final String BASE64_ENCODING = "base64";
+    private static final int RENDER_BUFFER_POOL_SIZE = 16;
+    private static final int RENDER_BUFFER_INITIAL_CAPACITY = 16 * 1024;
+    private static final int RENDER_BUFFER_MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final int MIME_SKELETON_CACHE_SIZE = 100;
+    private static final String TO_HEADER = "To";
+    private static final String UNDISCLOSED_RECIPIENTS = "undisclosed-recipients:;";
+    private static final String DOMAIN_SEPARATOR = "@";
+    private static final String MESSAGE_NOT_SENT_TO_RECIPIENT = "Grouped message not sent to valid recipient [%s]";
+    private static final SMTPRoutingResult NOT_ROUTED = new SMTPRoutingResult(Collections.emptyMap());
+
+    private final BlockingQueue<RenderBuffer> renderBufferPool = new ArrayBlockingQueue<>(RENDER_BUFFER_POOL_SIZE);
+    private final LruCache<String, MimeSkeleton> mimeSkeletons = new LruCache<>(MIME_SKELETON_CACHE_SIZE, null);
 
     private List<MailRenderer> availableMailRendererList;
     private MailRenderer mailRenderer;
     private MailProcessorConfigurationProperties mailProcessorConfigurationProperties;
     private JavaMailSender javaMailSender;
+    private SMTPRouter smtpRouter;
+    private MailMetrics mailMetrics;
+    private RenderedMailCache renderedMailCache;
+    private BulkRenderingPlanCache bulkRenderingPlanCache;
+    private InlineResourceRegistry inlineResourceRegistry;
+    private RecipientGroupingConfigurationProperties recipientGroupingConfigurationProperties;
     private Address sender;
 
     @Autowired
-    public MailProcessor(List<MailRenderer> mailRendererList, MailProcessorConfigurationProperties mailProcessorConfigurationProperties, JavaMailSender javaMailSender) {
+    public MailProcessor(List<MailRenderer> mailRendererList, MailProcessorConfigurationProperties mailProcessorConfigurationProperties,
+                         JavaMailSender javaMailSender, SMTPRouter smtpRouter, MailMetrics mailMetrics,
+                         RenderedMailCache renderedMailCache, BulkRenderingPlanCache bulkRenderingPlanCache,
+                         InlineResourceRegistry inlineResourceRegistry,
+                         RecipientGroupingConfigurationProperties recipientGroupingConfigurationProperties) {
         this.mailProcessorConfigurationProperties = mailProcessorConfigurationProperties;
         this.javaMailSender = javaMailSender;
+        this.smtpRouter = smtpRouter;
+        this.mailMetrics = mailMetrics;
+        this.renderedMailCache = renderedMailCache;
+        this.bulkRenderingPlanCache = bulkRenderingPlanCache;
+        this.inlineResourceRegistry = inlineResourceRegistry;
+        this.recipientGroupingConfigurationProperties = recipientGroupingConfigurationProperties;
         this.availableMailRendererList = mailRendererList;
     }
 
@@ -55,18 +124,433 @@ class MailProcessor {
 
     /**
      * Processes given {@link Mail} object by transforming it into a {@link MimeMessage}.
-     * Implementation uses {@link JavaMailSender} to prepare and send the mail.
+     * Implementation uses {@link JavaMailSender} to prepare the mail and {@link SMTPRouter} to send it.
+     * The message is prepared once for all the recipients (To, Cc and Bcc) of the mail, and sent within a single SMTP transaction.
+     * If only some of the recipients are rejected by the server, the mail is still delivered to the rest of them,
+     * and returned as partially successful.
      *
      * @param mail {@link Mail} object
+     * @return processing result of the mail, including the name of the SMTP endpoint the mail has been sent through
      * @throws MessagingException if an error occurred during sending the mail
      */
-    public void process(Mail mail) throws MessagingException {
+    public MailProcessingResult process(Mail mail) throws MessagingException {
+        return process(mail, MailLifecycleListener.NO_OP);
+    }
+
+    /**
+     * Processes given {@link Mail} object the same way as {@link #process(Mail)},
+     * reporting the {@link MailLifecycleStage#RENDERED} and {@link MailLifecycleStage#SUBMITTED} stages to the given listener.
+     *
+     * @param mail {@link Mail} object
+     * @param mailLifecycleListener {@link MailLifecycleListener} to report the stages of processing to
+     * @return processing result of the mail, including the name of the SMTP endpoint and the Message-ID of the sent message
+     * @throws MessagingException if an error occurred during sending the mail
+     */
+    MailProcessingResult process(Mail mail, MailLifecycleListener mailLifecycleListener) throws MessagingException {
+
+        MimeMessage message = createMessage(mail);
+        mailLifecycleListener.onStage(MailLifecycleStage.RENDERED);
+        long startTime = System.nanoTime();
+        try {
+            mailLifecycleListener.onStage(MailLifecycleStage.SUBMITTED);
+            SMTPRoutingResult routingResult = smtpRouter.send(message);
+            return MailProcessingResult.success(mail, routingResult.getSMTPEndpoint(message), readMessageId(message));
+        } catch (MailSendException e) {
+            return resolveSendFailure(mail, message, e);
+        } finally {
+            mailMetrics.recordStage(MailPipelineStage.TRANSMISSION, startTime);
+        }
+    }
+
+    /**
+     * Processes given {@link Mail} object the same way as {@link #process(Mail, MailLifecycleListener)}, but the message is sent
+     * by {@link SMTPRouter#sendAsync(MimeMessage...)}, so the calling thread is released once the message is rendered and handed over.
+     * Only supported if {@link #isAsyncSendSupported()} returns {@code true}.
+     *
+     * @param mail {@link Mail} object
+     * @param mailLifecycleListener {@link MailLifecycleListener} to report the stages of processing to
+     * @return {@link CompletableFuture} of the processing result of the mail, failed with the exception
+     * {@link #process(Mail, MailLifecycleListener)} would throw
+     */
+    CompletableFuture<MailProcessingResult> processAsync(Mail mail, MailLifecycleListener mailLifecycleListener) {
+
+        MimeMessage message;
+        try {
+            message = createMessage(mail);
+        } catch (MessagingException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        mailLifecycleListener.onStage(MailLifecycleStage.RENDERED);
+
+        long startTime = System.nanoTime();
+        mailLifecycleListener.onStage(MailLifecycleStage.SUBMITTED);
+        return smtpRouter.sendAsync(message).handle((routingResult, failure) -> {
+            mailMetrics.recordStage(MailPipelineStage.TRANSMISSION, startTime);
+            Throwable cause = unwrap(failure);
+            if (Objects.isNull(cause)) {
+                return MailProcessingResult.success(mail, routingResult.getSMTPEndpoint(message), readMessageId(message));
+            } else if (cause instanceof MailSendException) {
+                return resolveSendFailure(mail, message, (MailSendException) cause);
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    /**
+     * Checks if mails can be processed asynchronously (see {@link SMTPRouter#isAsyncSendSupported()}).
+     *
+     * @return {@code true} if {@link #processAsync(Mail, MailLifecycleListener)} and {@link #processBatchAsync(List)} are supported
+     */
+    boolean isAsyncSendSupported() {
+        return smtpRouter.isAsyncSendSupported();
+    }
+
+    /**
+     * Processes given list of {@link Mail} objects by transforming them into {@link MimeMessage} objects,
+     * then sending all of them at once, so they are delivered within a single SMTP session.
+     * If recipient grouping is enabled, mails with identical content addressed to the same recipient domain
+     * are sent as a single message (one MAIL FROM with multiple RCPT TO commands), with the recipients hidden as Bcc.
+     * Failures are not thrown, but returned as part of the processing result of the affected mail - for grouped messages,
+     * the recipients rejected by the server are failed individually, while the accepted ones are still delivered.
+     *
+     * @param mails list of {@link Mail} objects
+     * @return processing result of each mail, in the order of the given mails
+     */
+    public List<MailProcessingResult> processBatch(List<Mail> mails) {
+
+        PreparedBatch batch = prepareBatch(mails);
+        Map<Object, Exception> failedMessages = new IdentityHashMap<>();
+        SMTPRoutingResult routingResult = sendMessages(batch.messages, failedMessages);
+
+        return resolveBatchResults(mails, batch, routingResult, failedMessages);
+    }
+
+    /**
+     * Processes given list of {@link Mail} objects the same way as {@link #processBatch(List)}, but the messages are sent
+     * by {@link SMTPRouter#sendAsync(MimeMessage...)}, so the calling thread is released once the messages are rendered and handed over.
+     * Only supported if {@link #isAsyncSendSupported()} returns {@code true}.
+     *
+     * @param mails list of {@link Mail} objects
+     * @return {@link CompletableFuture} of the processing result of each mail, in the order of the given mails
+     */
+    CompletableFuture<List<MailProcessingResult>> processBatchAsync(List<Mail> mails) {
+
+        PreparedBatch batch = prepareBatch(mails);
+        Map<Object, Exception> failedMessages = new IdentityHashMap<>();
+
+        return sendMessagesAsync(batch.messages, failedMessages)
+                .thenApply(routingResult -> resolveBatchResults(mails, batch, routingResult, failedMessages));
+    }
+
+    private PreparedBatch prepareBatch(List<Mail> mails) {
+
+        PreparedBatch batch = new PreparedBatch(mails.size());
+        for (RecipientGroup recipientGroup : groupRecipients(mails)) {
+            try {
+                batch.messages.add(createMessage(mails, recipientGroup));
+                batch.messageGroups.add(recipientGroup);
+            } catch (Exception e) {
+                for (int memberIndex = 0; memberIndex < recipientGroup.size(); memberIndex++) {
+                    int index = recipientGroup.getMailIndex(memberIndex);
+                    batch.results[index] = MailProcessingResult.failure(mails.get(index), e);
+                }
+            }
+        }
+
+        return batch;
+    }
+
+    private List<MailProcessingResult> resolveBatchResults(List<Mail> mails, PreparedBatch batch, SMTPRoutingResult routingResult,
+                                                           Map<Object, Exception> failedMessages) {
+
+        MailProcessingResult[] results = batch.results;
+        List<MimeMessage> messages = batch.messages;
+        for (int messageIndex = 0; messageIndex < messages.size(); messageIndex++) {
+            RecipientGroup recipientGroup = batch.messageGroups.get(messageIndex);
+            MimeMessage message = messages.get(messageIndex);
+            Exception failure = failedMessages.get(message);
+            String smtpEndpoint = routingResult.getSMTPEndpoint(message);
+            String messageId = readMessageId(message);
+            for (int memberIndex = 0; memberIndex < recipientGroup.size(); memberIndex++) {
+                int index = recipientGroup.getMailIndex(memberIndex);
+                results[index] = recipientGroup.isGrouped()
+                        ? resolveGroupedResult(mails.get(index), recipientGroup.getRecipient(memberIndex), failure, smtpEndpoint, messageId)
+                        : resolveResult(mails.get(index), failure, smtpEndpoint, messageId);
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private List<RecipientGroup> groupRecipients(List<Mail> mails) {
+
+        List<RecipientGroup> recipientGroups = new ArrayList<>(mails.size());
+        Map<List<Object>, RecipientGroup> openGroups = new HashMap<>();
+        for (int index = 0; index < mails.size(); index++) {
+            Mail mail = mails.get(index);
+            InternetAddress recipient = recipientGroupingConfigurationProperties.isEnabled()
+                    ? parseGroupableRecipient(mail)
+                    : null;
+
+            RecipientGroup recipientGroup;
+            if (Objects.isNull(recipient)) {
+                recipientGroup = new RecipientGroup();
+                recipientGroups.add(recipientGroup);
+            } else {
+                List<Object> groupKey = Arrays.asList(mail.getTemplate(), mail.getSubject(), mail.getReplyTo(), mail.getContentMap(),
+                        StringUtils.substringAfterLast(recipient.getAddress(), DOMAIN_SEPARATOR).toLowerCase());
+                recipientGroup = openGroups.get(groupKey);
+                if (Objects.isNull(recipientGroup) || recipientGroup.size() >= recipientGroupingConfigurationProperties.getMaxRecipients()) {
+                    recipientGroup = new RecipientGroup();
+                    openGroups.put(groupKey, recipientGroup);
+                    recipientGroups.add(recipientGroup);
+                }
+            }
+            recipientGroup.add(index, recipient);
+        }
+
+        return recipientGroups;
+    }
+
+    private InternetAddress parseGroupableRecipient(Mail mail) {
+
+        // personalized content and attachments make the message unique to its recipient, while additional recipients
+        // make it unique to the mail
+        if (hasAttachments(mail) || MailRecipients.hasAdditionalRecipients(mail)
+                || (Objects.nonNull(mail.getPersonalizedContentKeys()) && !mail.getPersonalizedContentKeys().isEmpty())) {
+            return null;
+        }
+
+        try {
+            return new InternetAddress(MailRecipients.getSingleRecipient(mail, mailProcessorConfigurationProperties.getAdminNotificationAddress()), true);
+        } catch (AddressException e) {
+            return null;
+        }
+    }
+
+    private MimeMessage createMessage(List<Mail> mails, RecipientGroup recipientGroup) throws MessagingException {
+
+        MimeMessage message = createMessage(mails.get(recipientGroup.getMailIndex(0)));
+        if (recipientGroup.isGrouped()) {
+            message.setHeader(TO_HEADER, UNDISCLOSED_RECIPIENTS);
+            message.setRecipients(Message.RecipientType.BCC, recipientGroup.getRecipients());
+        }
+
+        return message;
+    }
+
+    private MailProcessingResult resolveSendFailure(Mail mail, MimeMessage message, MailSendException exception) {
+
+        Exception failure = exception.getFailedMessages().get(message);
+        if (isPartialFailure(failure)) {
+            String smtpEndpoint = resolveRoutingResult(exception).getSMTPEndpoint(message);
+            return MailProcessingResult.partialSuccess(mail, (SendFailedException) failure, smtpEndpoint, readMessageId(message));
+        }
+
+        throw exception;
+    }
+
+    private MailProcessingResult resolveResult(Mail mail, Exception failure, String smtpEndpoint, String messageId) {
+
+        MailProcessingResult result;
+        if (Objects.isNull(failure)) {
+            result = MailProcessingResult.success(mail, smtpEndpoint, messageId);
+        } else if (isPartialFailure(failure)) {
+            result = MailProcessingResult.partialSuccess(mail, (SendFailedException) failure, smtpEndpoint, messageId);
+        } else {
+            result = MailProcessingResult.failure(mail, failure);
+        }
+
+        return result;
+    }
+
+    private String readMessageId(MimeMessage message) {
+
+        try {
+            return message.getMessageID();
+        } catch (MessagingException e) {
+            LOGGER.warn("Failed to read Message-ID of sent message", e);
+            return null;
+        }
+    }
+
+    private boolean isPartialFailure(Exception failure) {
+        return failure instanceof SendFailedException
+                && Objects.nonNull(((SendFailedException) failure).getValidSentAddresses())
+                && ((SendFailedException) failure).getValidSentAddresses().length > 0;
+    }
+
+    private MailProcessingResult resolveGroupedResult(Mail mail, InternetAddress recipient, Exception failure, String smtpEndpoint,
+                                                      String messageId) {
+
+        if (!(failure instanceof SendFailedException)) {
+            return resolveResult(mail, failure, smtpEndpoint, messageId);
+        }
+
+        SendFailedException sendFailedException = (SendFailedException) failure;
+        MailProcessingResult result;
+        if (containsAddress(sendFailedException.getInvalidAddresses(), recipient)) {
+            result = MailProcessingResult.failure(mail, findAddressFailure(sendFailedException, recipient));
+        } else if (containsAddress(sendFailedException.getValidSentAddresses(), recipient)) {
+            result = MailProcessingResult.success(mail, smtpEndpoint, messageId);
+        } else if (containsAddress(sendFailedException.getValidUnsentAddresses(), recipient)) {
+            result = MailProcessingResult.failure(mail,
+                    new MessagingException(String.format(MESSAGE_NOT_SENT_TO_RECIPIENT, recipient.getAddress()), sendFailedException));
+        } else {
+            result = MailProcessingResult.failure(mail, sendFailedException);
+        }
+
+        return result;
+    }
+
+    private boolean containsAddress(Address[] addresses, InternetAddress recipient) {
+        return Objects.nonNull(addresses) && Arrays.asList(addresses).contains(recipient);
+    }
+
+    private Exception findAddressFailure(SendFailedException sendFailedException, InternetAddress recipient) {
+
+        Exception nextException = sendFailedException.getNextException();
+        while (nextException instanceof MessagingException) {
+            if (nextException instanceof SMTPAddressFailedException
+                    && recipient.equals(((SMTPAddressFailedException) nextException).getAddress())) {
+                return nextException;
+            }
+            nextException = ((MessagingException) nextException).getNextException();
+        }
 
-        MimeMessage message = javaMailSender.createMimeMessage();
-        message.setFrom(sender);
-        prepareMessage(mail, message);
+        return sendFailedException;
+    }
+
+    MimeMessage createMessage(Mail mail) throws MessagingException {
+
+        if (mailProcessorConfigurationProperties.isStreamingRendering()) {
+            byte[] content = renderMailIntoBuffer(mail);
+            return assembleMessage(message -> prepareMessage(mail, message, new ByteArrayDataSource(content, STREAMED_CONTENT_TYPE),
+                    inlineResourceRegistry.findReferencedResources(content)));
+        }
 
-        javaMailSender.send(message);
+        String content = renderMail(mail);
+        return assembleMessage(message -> prepareMessage(mail, message, content, inlineResourceRegistry.findReferencedResources(content)));
+    }
+
+    private MimeMessage assembleMessage(MessagePreparator messagePreparator) throws MessagingException {
+
+        long startTime = System.nanoTime();
+        try {
+            MimeMessage message = javaMailSender.createMimeMessage();
+            messagePreparator.prepare(message);
+
+            return message;
+        } finally {
+            mailMetrics.recordStage(MailPipelineStage.MIME_ASSEMBLY, startTime);
+        }
+    }
+
+    private String renderMail(Mail mail) {
+
+        long startTime = System.nanoTime();
+        try {
+            return mailRenderer.renderMail(mail);
+        } finally {
+            mailMetrics.recordTemplateRendered(mail.getTemplate(), System.nanoTime() - startTime);
+        }
+    }
+
+    private byte[] renderMailIntoBuffer(Mail mail) throws MessagingException {
+
+        RenderBuffer renderBuffer = acquireRenderBuffer();
+        long startTime = System.nanoTime();
+        try {
+            mailRenderer.renderMail(mail, renderBuffer.getWriter());
+            return renderBuffer.toByteArray();
+        } catch (IOException e) {
+            throw new MessagingException("Failed to render mail content", e);
+        } finally {
+            mailMetrics.recordTemplateRendered(mail.getTemplate(), System.nanoTime() - startTime);
+            releaseRenderBuffer(renderBuffer);
+        }
+    }
+
+    private RenderBuffer acquireRenderBuffer() {
+
+        RenderBuffer renderBuffer = renderBufferPool.poll();
+
+        return Objects.isNull(renderBuffer)
+                ? new RenderBuffer(RENDER_BUFFER_INITIAL_CAPACITY, StandardCharsets.UTF_8)
+                : renderBuffer;
+    }
+
+    private void releaseRenderBuffer(RenderBuffer renderBuffer) {
+
+        // buffers grown by exceptionally large mails are dropped, so they are not retained for good
+        if (renderBuffer.getCapacity() <= RENDER_BUFFER_MAX_RETAINED_CAPACITY) {
+            renderBuffer.reset();
+            renderBufferPool.offer(renderBuffer);
+        }
+    }
+
+    private SMTPRoutingResult sendMessages(List<MimeMessage> messages, Map<Object, Exception> failedMessages) {
+
+        SMTPRoutingResult routingResult = NOT_ROUTED;
+        if (messages.isEmpty()) {
+            return routingResult;
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            routingResult = smtpRouter.send(messages.toArray(new MimeMessage[0]));
+        } catch (MailException e) {
+            routingResult = collectFailedMessages(messages, e, failedMessages);
+        } finally {
+            mailMetrics.recordStage(MailPipelineStage.TRANSMISSION, startTime);
+        }
+
+        return routingResult;
+    }
+
+    private CompletableFuture<SMTPRoutingResult> sendMessagesAsync(List<MimeMessage> messages, Map<Object, Exception> failedMessages) {
+
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(NOT_ROUTED);
+        }
+
+        long startTime = System.nanoTime();
+        return smtpRouter.sendAsync(messages.toArray(new MimeMessage[0])).handle((routingResult, failure) -> {
+            mailMetrics.recordStage(MailPipelineStage.TRANSMISSION, startTime);
+            Throwable cause = unwrap(failure);
+            if (Objects.isNull(cause)) {
+                return routingResult;
+            } else if (cause instanceof MailException) {
+                return collectFailedMessages(messages, (MailException) cause, failedMessages);
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    private SMTPRoutingResult collectFailedMessages(List<MimeMessage> messages, MailException exception, Map<Object, Exception> failedMessages) {
+
+        SMTPRoutingResult routingResult = NOT_ROUTED;
+        if (exception instanceof MailSendException) {
+            MailSendException mailSendException = (MailSendException) exception;
+            routingResult = resolveRoutingResult(mailSendException);
+            if (mailSendException.getFailedMessages().isEmpty()) {
+                LOGGER.warn("Batch of {} messages sent, but closing the connection failed", messages.size(), exception);
+            } else {
+                failedMessages.putAll(mailSendException.getFailedMessages());
+            }
+        } else {
+            for (MimeMessage message : messages) {
+                failedMessages.put(message, exception);
+            }
+        }
+
+        return routingResult;
+    }
+
+    private SMTPRoutingResult resolveRoutingResult(MailSendException exception) {
+        return exception instanceof RoutedMailSendException
+                ? ((RoutedMailSendException) exception).getRoutingResult()
+                : NOT_ROUTED;
     }
 
     private void prepareSender() {
@@ -78,20 +562,116 @@ class MailProcessor {
         }
     }
 
-    private void prepareMessage(Mail mail, MimeMessage message) throws MessagingException {
-        MimeMessageHelper mimeMessageHelper = new MimeMessageHelper(message);
-        mimeMessageHelper.setTo(getRecipient(mail));
-        mimeMessageHelper.setSubject(mail.getSubject());
-        mimeMessageHelper.setText(mailRenderer.renderMail(mail), true);
+    void prepareMessage(Mail mail, MimeMessage message, String content, List<InlineResource> inlineResources) throws MessagingException {
+        MimeMessageHelper mimeMessageHelper = prepareHeaders(mail, message, inlineResources);
+        mimeMessageHelper.setText(content, true);
+        addInlineResources(inlineResources, mimeMessageHelper);
+        addAttachments(mail, mimeMessageHelper);
+    }
+
+    void prepareMessage(Mail mail, MimeMessage message, DataSource content, List<InlineResource> inlineResources) throws MessagingException {
+        MimeMessageHelper mimeMessageHelper = prepareHeaders(mail, message, inlineResources);
+        if (mimeMessageHelper.isMultipart()) {
+            MimeBodyPart bodyPart = new MimeBodyPart();
+            bodyPart.setDataHandler(new DataHandler(content));
+            mimeMessageHelper.getMimeMultipart().addBodyPart(bodyPart);
+        } else {
+            message.setDataHandler(new DataHandler(content));
+        }
+        addInlineResources(inlineResources, mimeMessageHelper);
+        addAttachments(mail, mimeMessageHelper);
+    }
+
+    private MimeMessageHelper prepareHeaders(Mail mail, MimeMessage message, List<InlineResource> inlineResources) throws MessagingException {
+        MimeMessageHelper mimeMessageHelper = new MimeMessageHelper(message, selectMultipartMode(mail, inlineResources));
+        getMimeSkeleton(mail.getTemplate(), mimeMessageHelper.getEncoding()).apply(message, mail.getSubject());
+        setRecipients(mail, message, mimeMessageHelper);
 
         if (Objects.nonNull(mail.getReplyTo())) {
             mimeMessageHelper.setReplyTo(mail.getReplyTo());
         }
+
+        return mimeMessageHelper;
     }
 
-    private String getRecipient(Mail mail) {
-        return Optional.ofNullable(mail.getRecipient())
-                .orElse(mailProcessorConfigurationProperties.getAdminNotificationAddress());
+    private MimeSkeleton getMimeSkeleton(String template, String encoding) {
+
+        MimeSkeleton mimeSkeleton = mimeSkeletons.get(template);
+        if (Objects.isNull(mimeSkeleton)) {
+            mimeSkeleton = MimeSkeleton.create(sender, encoding);
+            mimeSkeletons.put(template, mimeSkeleton);
+        }
+
+        return mimeSkeleton;
+    }
+
+    private int selectMultipartMode(Mail mail, List<InlineResource> inlineResources) {
+
+        int multipartMode;
+        if (hasAttachments(mail)) {
+            multipartMode = inlineResources.isEmpty()
+                    ? MimeMessageHelper.MULTIPART_MODE_MIXED
+                    : MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED;
+        } else {
+            multipartMode = inlineResources.isEmpty()
+                    ? MimeMessageHelper.MULTIPART_MODE_NO
+                    : MimeMessageHelper.MULTIPART_MODE_RELATED;
+        }
+
+        return multipartMode;
+    }
+
+    private void addInlineResources(List<InlineResource> inlineResources, MimeMessageHelper mimeMessageHelper) throws MessagingException {
+        for (InlineResource inlineResource : inlineResources) {
+            mimeMessageHelper.getMimeMultipart().addBodyPart(inlineResource.createBodyPart());
+        }
+    }
+
+    private boolean hasAttachments(Mail mail) {
+        return Objects.nonNull(mail.getAttachments()) && !mail.getAttachments().isEmpty();
+    }
+
+    private void addAttachments(Mail mail, MimeMessageHelper mimeMessageHelper) throws MessagingException {
+
+        if (!hasAttachments(mail)) {
+            return;
+        }
+
+        for (MailAttachment attachment : mail.getAttachments()) {
+            String contentType = Objects.nonNull(attachment.getContentType())
+                    ? attachment.getContentType()
+                    : mimeMessageHelper.getFileTypeMap().getContentType(attachment.getFilename());
+
+            MimeBodyPart attachmentPart = new MimeBodyPart();
+            attachmentPart.setDisposition(Part.ATTACHMENT);
+            attachmentPart.setFileName(attachment.getFilename());
+            attachmentPart.setDataHandler(new DataHandler(new MailAttachmentDataSource(attachment, contentType)));
+            // fixed transfer encoding, so the content is not read an extra time to choose one before sending
+            attachmentPart.setHeader(CONTENT_TRANSFER_ENCODING_HEADER, BASE64_ENCODING);
+            mimeMessageHelper.getRootMimeMultipart().addBodyPart(attachmentPart);
+        }
+    }
+
+    private void setRecipients(Mail mail, MimeMessage message, MimeMessageHelper mimeMessageHelper) throws MessagingException {
+
+        if (!MailRecipients.hasAdditionalRecipients(mail)) {
+            mimeMessageHelper.setTo(MailRecipients.getSingleRecipient(mail, mailProcessorConfigurationProperties.getAdminNotificationAddress()));
+            return;
+        }
+
+        List<String> toRecipients = MailRecipients.getToRecipients(mail);
+        if (toRecipients.isEmpty()) {
+            message.setHeader(TO_HEADER, UNDISCLOSED_RECIPIENTS);
+        } else {
+            mimeMessageHelper.setTo(toRecipients.toArray(new String[0]));
+        }
+
+        if (MailRecipients.isNotEmpty(mail.getCc())) {
+            mimeMessageHelper.setCc(mail.getCc().toArray(new String[0]));
+        }
+        if (MailRecipients.isNotEmpty(mail.getBcc())) {
+            mimeMessageHelper.setBcc(mail.getBcc().toArray(new String[0]));
+        }
     }
 
     private void selectMailRenderer(List<MailRenderer> availableMailRendererList) {
@@ -102,5 +682,40 @@ class MailProcessor {
                 .filter(renderer -> renderer.getClass().isAssignableFrom(mailProcessorConfigurationProperties.getRenderer()))
                 .findFirst()
                 .orElseThrow(() -> new IllegalArgumentException(String.format(SELECTED_MAIL_RENDERER_NOT_AVAILABLE, mailProcessorConfigurationProperties.getRenderer().getName())));
+
+        if (bulkRenderingPlanCache.isEnabled()) {
+            mailRenderer = new BulkMailRenderer(mailRenderer, bulkRenderingPlanCache);
+        }
+
+        if (renderedMailCache.isEnabled()) {
+            mailRenderer = new CachingMailRenderer(mailRenderer, renderedMailCache);
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && Objects.nonNull(failure.getCause())
+                ? failure.getCause()
+                : failure;
+    }
+
+    /**
+     * Messages of a batch prepared for sending, along with the results of the mails that could not be prepared.
+     */
+    private static final class PreparedBatch {
+
+        private final MailProcessingResult[] results;
+        private final List<MimeMessage> messages;
+        private final List<RecipientGroup> messageGroups;
+
+        private PreparedBatch(int size) {
+            this.results = new MailProcessingResult[size];
+            this.messages = new ArrayList<>(size);
+            this.messageGroups = new ArrayList<>(size);
+        }
+    }
+
+    @FunctionalInterface
+    private interface MessagePreparator {
+        void prepare(MimeMessage message) throws MessagingException;
     }
 }
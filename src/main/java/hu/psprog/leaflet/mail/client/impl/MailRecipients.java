@@ -0,0 +1,92 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import hu.psprog.leaflet.mail.domain.Mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Recipient resolution of {@link Mail} objects, shared by message assembly and recipient domain rate limiting,
+ * so both see the same recipients. Mails having only a single recipient (or none, in case of admin notifications,
+ * which are sent to the admin notification address) have no additional recipients. Otherwise, the single recipient
+ * and the to, cc and bcc lists are all recipients of the mail, and the admin notification address is not used.
+ *
+ * @author Peter Smith
+ */
+final class MailRecipients {
+
+    private MailRecipients() {
+    }
+
+    /**
+     * Checks if the given mail has any to, cc or bcc recipients.
+     *
+     * @param mail {@link Mail} object to check
+     * @return {@code true} if the mail has additional recipients
+     */
+    static boolean hasAdditionalRecipients(Mail mail) {
+        return isNotEmpty(mail.getTo()) || isNotEmpty(mail.getCc()) || isNotEmpty(mail.getBcc());
+    }
+
+    /**
+     * Returns the single recipient of the given mail, falling back to the admin notification address.
+     *
+     * @param mail {@link Mail} object
+     * @param adminNotificationAddress address of admin notifications
+     * @return single recipient of the mail
+     */
+    static String getSingleRecipient(Mail mail, String adminNotificationAddress) {
+        return Objects.nonNull(mail.getRecipient())
+                ? mail.getRecipient()
+                : adminNotificationAddress;
+    }
+
+    /**
+     * Returns the recipients of the To header of the given mail having additional recipients.
+     *
+     * @param mail {@link Mail} object
+     * @return single recipient (if any) followed by the to recipients
+     */
+    static List<String> getToRecipients(Mail mail) {
+
+        List<String> toRecipients = new ArrayList<>();
+        if (Objects.nonNull(mail.getRecipient())) {
+            toRecipients.add(mail.getRecipient());
+        }
+        if (isNotEmpty(mail.getTo())) {
+            toRecipients.addAll(mail.getTo());
+        }
+
+        return toRecipients;
+    }
+
+    /**
+     * Returns all envelope recipients of the given mail.
+     *
+     * @param mail {@link Mail} object
+     * @param adminNotificationAddress address of admin notifications
+     * @return single recipient, if the mail has no additional recipients, otherwise all to, cc and bcc recipients
+     */
+    static List<String> getAllRecipients(Mail mail, String adminNotificationAddress) {
+
+        if (!hasAdditionalRecipients(mail)) {
+            return Collections.singletonList(getSingleRecipient(mail, adminNotificationAddress));
+        }
+
+        List<String> recipients = getToRecipients(mail);
+        if (isNotEmpty(mail.getCc())) {
+            recipients.addAll(mail.getCc());
+        }
+        if (isNotEmpty(mail.getBcc())) {
+            recipients.addAll(mail.getBcc());
+        }
+
+        return recipients;
+    }
+
+    static boolean isNotEmpty(List<String> recipients) {
+        return Objects.nonNull(recipients) && !recipients.isEmpty();
+    }
+}
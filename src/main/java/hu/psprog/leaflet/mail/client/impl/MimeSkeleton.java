@@ -0,0 +1,89 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeUtility;
+import java.io.UnsupportedEncodingException;
+import java.util.Objects;
+
+/**
+ * Pre-encoded MIME header values shared by the messages of a template.
+ * Sender (From) header is encoded once, on creation, while the encoded subject is kept until a different subject is used,
+ * as messages of the same template typically share their subject. Headers are set as-is, the same way
+ * {@link MimeMessage#setFrom(Address)} and {@link MimeMessage#setSubject(String, String)} would set them.
+ *
+ * @author Peter Smith
+ */
+final class MimeSkeleton {
+
+    private static final String FROM_HEADER = "From";
+    private static final String SUBJECT_HEADER = "Subject";
+    private static final int HEADER_NAME_SEPARATOR_LENGTH = 2;
+
+    private final String encodedFrom;
+    private final String encoding;
+
+    private volatile EncodedSubject lastSubject;
+
+    private MimeSkeleton(String encodedFrom, String encoding) {
+        this.encodedFrom = encodedFrom;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Creates a skeleton for the given sender.
+     *
+     * @param sender sender address
+     * @param encoding character encoding of the headers (platform default if null)
+     * @return created {@link MimeSkeleton}
+     */
+    static MimeSkeleton create(Address sender, String encoding) {
+        return new MimeSkeleton(InternetAddress.toString(new Address[] {sender}, FROM_HEADER.length() + HEADER_NAME_SEPARATOR_LENGTH), encoding);
+    }
+
+    /**
+     * Sets the pre-encoded sender and subject headers of the given message.
+     *
+     * @param message {@link MimeMessage} to fill
+     * @param subject subject of the message
+     * @throws MessagingException if the headers could not be set
+     */
+    void apply(MimeMessage message, String subject) throws MessagingException {
+
+        message.setHeader(FROM_HEADER, encodedFrom);
+        if (Objects.isNull(subject)) {
+            message.removeHeader(SUBJECT_HEADER);
+        } else {
+            message.setHeader(SUBJECT_HEADER, encodeSubject(subject));
+        }
+    }
+
+    private String encodeSubject(String subject) throws MessagingException {
+
+        EncodedSubject encodedSubject = lastSubject;
+        if (Objects.isNull(encodedSubject) || !encodedSubject.subject.equals(subject)) {
+            try {
+                encodedSubject = new EncodedSubject(subject, MimeUtility.fold(SUBJECT_HEADER.length() + HEADER_NAME_SEPARATOR_LENGTH,
+                        MimeUtility.encodeText(subject, encoding, null)));
+            } catch (UnsupportedEncodingException e) {
+                throw new MessagingException("Failed to encode subject", e);
+            }
+            lastSubject = encodedSubject;
+        }
+
+        return encodedSubject.encoded;
+    }
+
+    private static final class EncodedSubject {
+
+        private final String subject;
+        private final String encoded;
+
+        private EncodedSubject(String subject, String encoded) {
+            this.subject = subject;
+            this.encoded = encoded;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import hu.psprog.leaflet.mail.client.outbox.MailOutbox;
+import hu.psprog.leaflet.mail.client.outbox.OutboxRecord;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitExceededException;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitScope;
+import hu.psprog.leaflet.mail.client.ratelimit.SMTPRateLimiter;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreakerOpenException;
+import hu.psprog.leaflet.mail.client.resilience.RetryPolicy;
+import hu.psprog.leaflet.mail.config.MailProcessorConfigurationProperties;
+import hu.psprog.leaflet.mail.config.OutboxConfigurationProperties;
+import hu.psprog.leaflet.mail.config.OutboxEnabledCondition;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Background drainer of {@link MailOutbox}.
+ * Reads the outbox records sequentially on a dedicated thread, passes them to {@link MailProcessor} (via {@link ResilientDeliveryExecutor}),
+ * then acknowledges them once they are delivered or failed permanently (as classified by {@link RetryPolicy}, e.g. by a permanent SMTP reply
+ * or an invalid recipient - such failures are logged). Records which can not be deserialized are skipped by the outbox itself.
+ * A record is only acknowledged after its processing has finished, so a crash in between results in redelivery.
+ * Right before sending a mail, a permit per recipient is reserved from the rate limit of its domain (see {@link SMTPRateLimiter}),
+ * waiting on the drainer thread if the send is delayed.
+ * While the SMTP circuit breaker is open, the SMTP relay or recipient domain rate limits are exceeded, or the delivery failed with a retryable or server failure
+ * (even after the retries of {@link ResilientDeliveryExecutor}), the current record is held back and retried after the poll interval.
+ *
+ * @author Peter Smith
+ */
+@Component
+@Conditional(OutboxEnabledCondition.class)
+class OutboxDrainer implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxDrainer.class);
+
+    private static final String THREAD_NAME = "mail-outbox-drainer";
+
+    private final MailOutbox mailOutbox;
+    private final MailProcessor mailProcessor;
+    private final ResilientDeliveryExecutor resilientDeliveryExecutor;
+    private final RetryPolicy retryPolicy;
+    private final SMTPRateLimiter smtpRateLimiter;
+    private final MailProcessorConfigurationProperties mailProcessorConfigurationProperties;
+    private final OutboxConfigurationProperties outboxConfigurationProperties;
+
+    private volatile boolean running;
+    private Thread drainerThread;
+    private OutboxRecord pendingRecord;
+
+    @Autowired
+    public OutboxDrainer(MailOutbox mailOutbox, MailProcessor mailProcessor, ResilientDeliveryExecutor resilientDeliveryExecutor,
+                         RetryPolicy retryPolicy, SMTPRateLimiter smtpRateLimiter,
+                         MailProcessorConfigurationProperties mailProcessorConfigurationProperties,
+                         OutboxConfigurationProperties outboxConfigurationProperties) {
+        this.mailOutbox = mailOutbox;
+        this.mailProcessor = mailProcessor;
+        this.resilientDeliveryExecutor = resilientDeliveryExecutor;
+        this.retryPolicy = retryPolicy;
+        this.smtpRateLimiter = smtpRateLimiter;
+        this.mailProcessorConfigurationProperties = mailProcessorConfigurationProperties;
+        this.outboxConfigurationProperties = outboxConfigurationProperties;
+    }
+
+    /**
+     * Starts the drainer thread.
+     */
+    @PostConstruct
+    public void start() {
+
+        running = true;
+        drainerThread = new Thread(this, THREAD_NAME);
+        drainerThread.setDaemon(true);
+        drainerThread.start();
+    }
+
+    /**
+     * Stops the drainer thread, waiting for the currently processed mail to be finished.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+
+        running = false;
+        drainerThread.interrupt();
+        drainerThread.join();
+    }
+
+    @Override
+    public void run() {
+
+        while (running) {
+            try {
+                if (!drainNext()) {
+                    Thread.sleep(outboxConfigurationProperties.getPollInterval());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (IOException e) {
+                LOGGER.error("Failed to access mail outbox", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * Processes the next outbox record, if there is any.
+     *
+     * @return {@code true} if a record has been processed, {@code false} if the outbox is empty or the record is held back
+     * @throws IOException if the outbox could not be read or the record could not be acknowledged
+     */
+    boolean drainNext() throws IOException {
+
+        OutboxRecord outboxRecord = Objects.nonNull(pendingRecord)
+                ? pendingRecord
+                : mailOutbox.next();
+        if (outboxRecord == null) {
+            return false;
+        }
+
+        pendingRecord = null;
+        try {
+            MailProcessingResult processingResult = resilientDeliveryExecutor.execute(() -> {
+                reserveRecipientDomains(outboxRecord.getMail());
+                return mailProcessor.process(outboxRecord.getMail());
+            });
+            if (processingResult.isPartiallySuccessful()) {
+                LOGGER.warn("Mail from outbox at offset [{}] is delivered only to a part of its recipients",
+                        outboxRecord.getOffset(), processingResult.getPartialFailure());
+            }
+        } catch (CircuitBreakerOpenException e) {
+            LOGGER.warn("SMTP server is unavailable, holding back mail from outbox at offset [{}]", outboxRecord.getOffset());
+            pendingRecord = outboxRecord;
+            return false;
+        } catch (RateLimitExceededException e) {
+            LOGGER.warn("SMTP rate limit exceeded, holding back mail from outbox at offset [{}]", outboxRecord.getOffset());
+            pendingRecord = outboxRecord;
+            return false;
+        } catch (Exception e) {
+            if (retryPolicy.isRetryable(e) || retryPolicy.isServerFailure(e)) {
+                LOGGER.warn("Failed to deliver mail from outbox at offset [{}], holding it back", outboxRecord.getOffset(), e);
+                pendingRecord = outboxRecord;
+                return false;
+            }
+            LOGGER.error("Failed to deliver mail from outbox at offset [{}], dropping it as the failure is permanent", outboxRecord.getOffset(), e);
+        }
+        mailOutbox.acknowledge(outboxRecord);
+
+        return true;
+    }
+
+    private void reserveRecipientDomains(Mail mail) throws InterruptedException {
+
+        List<String> recipients = MailRecipients.getAllRecipients(mail, mailProcessorConfigurationProperties.getAdminNotificationAddress());
+        long delay = smtpRateLimiter.reserveRecipientDomains(recipients);
+        if (delay == SMTPRateLimiter.RATE_LIMIT_EXCEEDED) {
+            throw new RateLimitExceededException(RateLimitScope.RECIPIENT_DOMAIN, String.join(", ", recipients));
+        }
+
+        // records are drained sequentially, so waiting on the drainer thread holds back the rest of the outbox anyway
+        if (!smtpRateLimiter.await(delay)) {
+            throw new InterruptedException("Interrupted while waiting for recipient domain rate limit");
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(outboxConfigurationProperties.getPollInterval());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
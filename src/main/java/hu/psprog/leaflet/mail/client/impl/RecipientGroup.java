@@ -0,0 +1,51 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import javax.mail.Address;
+import javax.mail.internet.InternetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mails of a batch sent as a single message, within a single SMTP transaction.
+ * Mails with identical content addressed to the same recipient domain are grouped, so their recipients
+ * are added to the same envelope, while every other mail forms a group of its own.
+ * Members are tracked by their index in the batch, paired with their parsed recipient address.
+ *
+ * @author Peter Smith
+ */
+final class RecipientGroup {
+
+    private final List<Integer> mailIndices = new ArrayList<>();
+    private final List<InternetAddress> recipients = new ArrayList<>();
+
+    /**
+     * Adds a mail to the group.
+     *
+     * @param mailIndex index of the mail in the batch
+     * @param recipient parsed recipient address of the mail (null for mails not eligible for grouping)
+     */
+    void add(int mailIndex, InternetAddress recipient) {
+        mailIndices.add(mailIndex);
+        recipients.add(recipient);
+    }
+
+    int getMailIndex(int memberIndex) {
+        return mailIndices.get(memberIndex);
+    }
+
+    InternetAddress getRecipient(int memberIndex) {
+        return recipients.get(memberIndex);
+    }
+
+    Address[] getRecipients() {
+        return recipients.toArray(new Address[0]);
+    }
+
+    int size() {
+        return mailIndices.size();
+    }
+
+    boolean isGrouped() {
+        return mailIndices.size() > 1;
+    }
+}
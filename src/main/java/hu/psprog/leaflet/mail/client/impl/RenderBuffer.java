@@ -0,0 +1,92 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reusable, growable byte buffer mails are rendered into through its {@link Writer}, encoding the content on the fly.
+ * Backing array is kept between uses (see {@link #reset()}), so rendering does not need to build and copy
+ * intermediate Strings, and (once grown) does not need to grow the buffer again.
+ * Not thread-safe, a buffer should be used by a single thread at a time.
+ *
+ * @author Peter Smith
+ */
+class RenderBuffer extends OutputStream {
+
+    private static final int WRITER_BUFFER_SIZE = 8192;
+
+    private final Writer writer;
+
+    private byte[] buffer;
+    private int count;
+
+    RenderBuffer(int initialCapacity, Charset charset) {
+        this.buffer = new byte[initialCapacity];
+        this.writer = new BufferedWriter(new OutputStreamWriter(this, charset), WRITER_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the {@link Writer} encoding characters into the buffer.
+     *
+     * @return writer of the buffer
+     */
+    Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Flushes the writer and returns an exact size copy of the buffered content.
+     *
+     * @return buffered content
+     */
+    byte[] toByteArray() {
+        flushWriter();
+        return Arrays.copyOf(buffer, count);
+    }
+
+    int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Discards the buffered content (including characters still pending in the writer), keeping the backing array.
+     */
+    void reset() {
+        flushWriter();
+        count = 0;
+    }
+
+    @Override
+    public void write(int value) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) value;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    private void flushWriter() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            // writer only encodes into this buffer, which never fails
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void ensureCapacity(int requiredCapacity) {
+        if (requiredCapacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(requiredCapacity, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreaker;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreakerOpenException;
+import hu.psprog.leaflet.mail.client.resilience.RetryPolicy;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Executes mail deliveries guarded by {@link CircuitBreaker} and retried according to {@link RetryPolicy}.
+ * Waiting between attempts blocks the executing thread, except for asynchronous deliveries, which are retried by a timer.
+ *
+ * @author Peter Smith
+ */
+@Component
+class ResilientDeliveryExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResilientDeliveryExecutor.class);
+
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+
+    @Autowired
+    public ResilientDeliveryExecutor(RetryPolicy retryPolicy, CircuitBreaker circuitBreaker) {
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Executes given delivery action, retrying it on retryable failures.
+     *
+     * @param deliveryAction delivery action to execute
+     * @param <T> type of the result of the delivery action
+     * @return result of the successful attempt
+     * @throws CircuitBreakerOpenException if the delivery is not attempted as the circuit is open
+     * @throws Exception failure of the last attempt, if none of the attempts succeeded
+     */
+    public <T> T execute(DeliveryAction<T> deliveryAction) throws Exception {
+
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            if (!circuitBreaker.tryAcquirePermission()) {
+                throw new CircuitBreakerOpenException();
+            }
+
+            try {
+                T result = deliveryAction.deliver();
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (Exception e) {
+                recordFailure(e);
+                if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(e) || !waitBeforeRetry(attempt, e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes given asynchronous delivery action the same way as {@link #execute(DeliveryAction)},
+     * but without blocking the calling thread: retries are started by a timer once their backoff delay elapses.
+     *
+     * @param deliveryAction delivery action starting the delivery and returning its future
+     * @param <T> type of the result of the delivery action
+     * @return {@link CompletableFuture} of the result of the successful attempt, failed with {@link CircuitBreakerOpenException}
+     * if the delivery is not attempted as the circuit is open, or with the failure of the last attempt if none of the attempts succeeded
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> deliveryAction) {
+        return executeAsync(deliveryAction, 1);
+    }
+
+    /**
+     * Executes given batch delivery, retrying the retryable failed mails of the batch (as a smaller batch).
+     * Mails not attempted because of an open circuit are failed with {@link CircuitBreakerOpenException}.
+     *
+     * @param mails {@link Mail} objects to deliver
+     * @param batchDelivery batch delivery function returning processing result of each mail, in the order of the given mails
+     * @return processing result of each mail, in the order of the given mails
+     */
+    public List<MailProcessingResult> executeBatch(List<Mail> mails, Function<List<Mail>, List<MailProcessingResult>> batchDelivery) {
+
+        BatchExecution execution = new BatchExecution(mails);
+        boolean attempting = execution.startAttempt();
+        while (attempting) {
+            attempting = execution.completeAttempt(batchDelivery.apply(execution.getPendingMails()))
+                    && waitBeforeRetry(execution.getRetryDelay())
+                    && execution.startAttempt();
+        }
+
+        return execution.getResults();
+    }
+
+    /**
+     * Executes given asynchronous batch delivery the same way as {@link #executeBatch(List, Function)},
+     * but without blocking the calling thread: retries are started by a timer once their backoff delay elapses.
+     *
+     * @param mails {@link Mail} objects to deliver
+     * @param batchDelivery batch delivery function returning the future of the processing result of each mail,
+     *                      in the order of the given mails
+     * @return {@link CompletableFuture} of the processing result of each mail, in the order of the given mails
+     */
+    public CompletableFuture<List<MailProcessingResult>> executeBatchAsync(List<Mail> mails,
+                                                                           Function<List<Mail>, CompletableFuture<List<MailProcessingResult>>> batchDelivery) {
+
+        BatchExecution execution = new BatchExecution(mails);
+
+        return execution.startAttempt()
+                ? executeBatchAttemptAsync(execution, batchDelivery)
+                : CompletableFuture.completedFuture(execution.getResults());
+    }
+
+    private <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> deliveryAction, int attempt) {
+
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(new CircuitBreakerOpenException());
+        }
+
+        CompletableFuture<T> result;
+        try {
+            result = deliveryAction.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        return result.handle((value, failure) -> {
+            if (Objects.isNull(failure)) {
+                circuitBreaker.onSuccess();
+                return CompletableFuture.completedFuture(value);
+            }
+
+            Throwable cause = failure instanceof CompletionException && Objects.nonNull(failure.getCause())
+                    ? failure.getCause()
+                    : failure;
+            if (!(cause instanceof Exception)) {
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+
+            Exception exception = (Exception) cause;
+            recordFailure(exception);
+            if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(exception)) {
+                return CompletableFuture.<T>failedFuture(exception);
+            }
+
+            return CompletableFuture.supplyAsync(() -> executeAsync(deliveryAction, attempt + 1),
+                    CompletableFuture.delayedExecutor(getRetryDelay(attempt, exception), TimeUnit.MILLISECONDS))
+                    .thenCompose(Function.identity());
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<List<MailProcessingResult>> executeBatchAttemptAsync(BatchExecution execution,
+                                                                                   Function<List<Mail>, CompletableFuture<List<MailProcessingResult>>> batchDelivery) {
+
+        return batchDelivery.apply(execution.getPendingMails()).thenCompose(attemptResults -> {
+            if (!execution.completeAttempt(attemptResults)) {
+                return CompletableFuture.completedFuture(execution.getResults());
+            }
+
+            return CompletableFuture.supplyAsync(() -> execution.startAttempt()
+                            ? executeBatchAttemptAsync(execution, batchDelivery)
+                            : CompletableFuture.completedFuture(execution.getResults()),
+                    CompletableFuture.delayedExecutor(execution.getRetryDelay(), TimeUnit.MILLISECONDS))
+                    .thenCompose(Function.identity());
+        });
+    }
+
+    private void recordFailure(Exception failure) {
+        if (retryPolicy.isServerFailure(failure)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onIgnored();
+        }
+    }
+
+    private void recordBatchOutcome(List<MailProcessingResult> results) {
+
+        if (results.stream().anyMatch(MailProcessingResult::isSuccessful)) {
+            circuitBreaker.onSuccess();
+        } else if (results.stream().anyMatch(result -> retryPolicy.isServerFailure(result.getFailure()))) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onIgnored();
+        }
+    }
+
+    private boolean waitBeforeRetry(int failedAttempts, Exception failure) {
+        return waitBeforeRetry(getRetryDelay(failedAttempts, failure));
+    }
+
+    private boolean waitBeforeRetry(long delay) {
+
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private long getRetryDelay(int failedAttempts, Exception failure) {
+
+        long delay = retryPolicy.getBackoffDelay(failedAttempts, failure);
+        LOGGER.warn("Mail delivery attempt #{} failed ({}), retrying in {} ms", failedAttempts, failure.getMessage(), delay);
+
+        return delay;
+    }
+
+    /**
+     * State of executing a batch delivery, attempt by attempt.
+     */
+    private final class BatchExecution {
+
+        private final List<Mail> mails;
+        private final MailProcessingResult[] results;
+
+        private List<Integer> pendingIndices;
+        private Exception lastRetryableFailure;
+        private int attempt;
+
+        private BatchExecution(List<Mail> mails) {
+            this.mails = mails;
+            this.results = new MailProcessingResult[mails.size()];
+            this.pendingIndices = new ArrayList<>(mails.size());
+            for (int index = 0; index < mails.size(); index++) {
+                pendingIndices.add(index);
+            }
+        }
+
+        /**
+         * Starts the next attempt, if there are pending mails and the circuit allows it.
+         * Pending mails are failed with {@link CircuitBreakerOpenException} otherwise.
+         *
+         * @return {@code true} if the pending mails are to be delivered, {@code false} if the execution is over
+         */
+        private boolean startAttempt() {
+
+            if (pendingIndices.isEmpty()) {
+                return false;
+            }
+
+            attempt++;
+            if (!circuitBreaker.tryAcquirePermission()) {
+                pendingIndices.forEach(index -> results[index] = MailProcessingResult.failure(mails.get(index), new CircuitBreakerOpenException()));
+                return false;
+            }
+
+            return true;
+        }
+
+        private List<Mail> getPendingMails() {
+            return pendingIndices.stream()
+                    .map(mails::get)
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Records the results of the current attempt, keeping the retryable failed mails pending.
+         *
+         * @param attemptResults processing result of each pending mail, in the order of the pending mails
+         * @return {@code true} if the failed mails are to be retried, {@code false} if the execution is over
+         */
+        private boolean completeAttempt(List<MailProcessingResult> attemptResults) {
+
+            recordBatchOutcome(attemptResults);
+
+            List<Integer> retryableIndices = new ArrayList<>();
+            for (int pendingIndex = 0; pendingIndex < pendingIndices.size(); pendingIndex++) {
+                MailProcessingResult result = attemptResults.get(pendingIndex);
+                results[pendingIndices.get(pendingIndex)] = result;
+                if (!result.isSuccessful() && retryPolicy.isRetryable(result.getFailure())) {
+                    retryableIndices.add(pendingIndices.get(pendingIndex));
+                    lastRetryableFailure = result.getFailure();
+                }
+            }
+            pendingIndices = retryableIndices;
+
+            return !retryableIndices.isEmpty() && attempt < retryPolicy.getMaxAttempts();
+        }
+
+        private long getRetryDelay() {
+            return ResilientDeliveryExecutor.this.getRetryDelay(attempt, lastRetryableFailure);
+        }
+
+        private List<MailProcessingResult> getResults() {
+            return Arrays.asList(results);
+        }
+    }
+
+    /**
+     * Single mail delivery action.
+     *
+     * @param <T> type of the result of the delivery
+     */
+    @FunctionalInterface
+    interface DeliveryAction<T> {
+
+        /**
+         * Delivers the mail.
+         *
+         * @return result of the delivery
+         * @throws Exception if the delivery failed
+         */
+        T deliver() throws Exception;
+    }
+}
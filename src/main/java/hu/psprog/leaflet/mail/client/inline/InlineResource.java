@@ -0,0 +1,77 @@
+package hu.psprog.leaflet.mail.client.inline;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.activation.DataHandler;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.PreencodedMimeBodyPart;
+import javax.mail.util.ByteArrayDataSource;
+
+/**
+ * Inline resource (e.g. an image) referenced by mail templates by its content ID (as cid:content-id).
+ * Content is base64 encoded once, on loading, and shared by the body parts of every message embedding the resource.
+ *
+ * @author Peter Smith
+ */
+public class InlineResource {
+
+    private static final String BASE64_ENCODING = "base64";
+    private static final String CONTENT_TRANSFER_ENCODING_HEADER = "Content-Transfer-Encoding";
+
+    private final String contentId;
+    private final String contentType;
+    private final byte[] encodedContent;
+
+    InlineResource(String contentId, String contentType, byte[] encodedContent) {
+        this.contentId = contentId;
+        this.contentType = contentType;
+        this.encodedContent = encodedContent;
+    }
+
+    public String getContentId() {
+        return contentId;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the size of the base64 encoded content in bytes.
+     *
+     * @return encoded size
+     */
+    public int getEncodedSize() {
+        return encodedContent.length;
+    }
+
+    /**
+     * Creates an inline body part of the resource, backed by the pre-encoded content (written as-is).
+     *
+     * @return created {@link MimeBodyPart}
+     * @throws MessagingException if the body part could not be created
+     */
+    public MimeBodyPart createBodyPart() throws MessagingException {
+
+        PreencodedMimeBodyPart bodyPart = new PreencodedMimeBodyPart(BASE64_ENCODING);
+        bodyPart.setDisposition(Part.INLINE);
+        bodyPart.setContentID("<" + contentId + ">");
+        bodyPart.setFileName(contentId);
+        bodyPart.setDataHandler(new DataHandler(new ByteArrayDataSource(encodedContent, contentType)));
+        // present header spares scanning the content to choose a transfer encoding
+        bodyPart.setHeader(CONTENT_TRANSFER_ENCODING_HEADER, BASE64_ENCODING);
+
+        return bodyPart;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("contentId", contentId)
+                .append("contentType", contentType)
+                .append("encodedSize", encodedContent.length)
+                .toString();
+    }
+}
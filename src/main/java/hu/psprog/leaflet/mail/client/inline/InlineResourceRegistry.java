@@ -0,0 +1,179 @@
+package hu.psprog.leaflet.mail.client.inline;
+
+import hu.psprog.leaflet.mail.config.InlineResourceConfigurationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.mail.javamail.ConfigurableMimeFileTypeMap;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeUtility;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Registry of {@link InlineResource}s, loaded from the configured location (by default /mail/inline, next to the templates).
+ * Content ID of a resource is its file name, so templates can embed e.g. /mail/inline/logo.png as {@code <img src="cid:logo.png">}.
+ * Resources are base64 encoded once, on loading, and only the resources actually referenced by a rendered mail are embedded in it.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class InlineResourceRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InlineResourceRegistry.class);
+
+    private static final String CID_SCHEME = "cid:";
+    private static final String BASE64_ENCODING = "base64";
+
+    private final InlineResourceConfigurationProperties inlineResourceConfigurationProperties;
+    private final Map<String, InlineResource> resources = new HashMap<>();
+
+    @Autowired
+    public InlineResourceRegistry(InlineResourceConfigurationProperties inlineResourceConfigurationProperties) {
+        this.inlineResourceConfigurationProperties = inlineResourceConfigurationProperties;
+    }
+
+    @PostConstruct
+    public void load() throws IOException, MessagingException {
+
+        if (!inlineResourceConfigurationProperties.isEnabled()) {
+            return;
+        }
+
+        ConfigurableMimeFileTypeMap fileTypeMap = new ConfigurableMimeFileTypeMap();
+        fileTypeMap.afterPropertiesSet();
+
+        Resource[] foundResources = new PathMatchingResourcePatternResolver().getResources(inlineResourceConfigurationProperties.getLocation());
+        for (Resource resource : foundResources) {
+            String contentId = resource.getFilename();
+            if (Objects.isNull(contentId) || contentId.isEmpty() || !resource.isReadable()) {
+                continue;
+            }
+            if (resources.containsKey(contentId)) {
+                LOGGER.warn("Inline resource [{}] is already registered, skipping [{}]", contentId, resource);
+                continue;
+            }
+            resources.put(contentId, new InlineResource(contentId, fileTypeMap.getContentType(contentId), encode(resource)));
+        }
+
+        LOGGER.info("Inline resources registered: {}", resources.keySet());
+    }
+
+    /**
+     * Returns the registered resource of the given content ID.
+     *
+     * @param contentId content ID of the resource
+     * @return {@link InlineResource} or {@code null} if no resource is registered with the given content ID
+     */
+    public InlineResource getResource(String contentId) {
+        return resources.get(contentId);
+    }
+
+    public Collection<InlineResource> getResources() {
+        return Collections.unmodifiableCollection(resources.values());
+    }
+
+    /**
+     * Returns the registered resources referenced (as cid:content-id) by the given rendered content.
+     *
+     * @param content rendered content
+     * @return list of referenced {@link InlineResource}s in the order of their first reference
+     */
+    public List<InlineResource> findReferencedResources(CharSequence content) {
+        return findReferencedResources(content.length(), content::charAt);
+    }
+
+    /**
+     * Returns the registered resources referenced (as cid:content-id) by the given UTF-8 (or other ASCII compatible) encoded content.
+     *
+     * @param content encoded rendered content
+     * @return list of referenced {@link InlineResource}s in the order of their first reference
+     */
+    public List<InlineResource> findReferencedResources(byte[] content) {
+        // references are ASCII, which never occurs within multi-byte sequences, so bytes can be scanned as characters
+        return findReferencedResources(content.length, index -> content[index]);
+    }
+
+    private List<InlineResource> findReferencedResources(int length, IntUnaryOperator characterAt) {
+
+        if (resources.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<String, InlineResource> referencedResources = new LinkedHashMap<>();
+        int position = 0;
+        while (position <= length - CID_SCHEME.length()) {
+            if (!isSchemeAt(position, characterAt)) {
+                position++;
+                continue;
+            }
+
+            int start = position + CID_SCHEME.length();
+            int end = start;
+            while (end < length && !isReferenceDelimiter(characterAt.applyAsInt(end))) {
+                end++;
+            }
+
+            InlineResource resource = resources.get(toString(start, end, characterAt));
+            if (Objects.nonNull(resource)) {
+                referencedResources.putIfAbsent(resource.getContentId(), resource);
+            }
+            position = end;
+        }
+
+        return new ArrayList<>(referencedResources.values());
+    }
+
+    private boolean isSchemeAt(int position, IntUnaryOperator characterAt) {
+
+        for (int index = 0; index < CID_SCHEME.length(); index++) {
+            if (Character.toLowerCase(characterAt.applyAsInt(position + index)) != CID_SCHEME.charAt(index)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isReferenceDelimiter(int character) {
+        return character == '"' || character == '\'' || character == ')' || character == '>' || character == '<'
+                || Character.isWhitespace(character);
+    }
+
+    private String toString(int start, int end, IntUnaryOperator characterAt) {
+
+        StringBuilder reference = new StringBuilder(end - start);
+        for (int index = start; index < end; index++) {
+            reference.append((char) characterAt.applyAsInt(index));
+        }
+
+        return reference.toString();
+    }
+
+    private byte[] encode(Resource resource) throws IOException, MessagingException {
+
+        ByteArrayOutputStream encodedContent = new ByteArrayOutputStream();
+        try (InputStream inputStream = resource.getInputStream();
+             OutputStream encoder = MimeUtility.encode(encodedContent, BASE64_ENCODING)) {
+            inputStream.transferTo(encoder);
+        }
+
+        return encodedContent.toByteArray();
+    }
+}
@@ -0,0 +1,143 @@
+package hu.psprog.leaflet.mail.client.metrics;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, fixed size latency histogram with log-linear buckets (in the spirit of HdrHistogram).
+ * Values below 128 are counted exactly, above that every power-of-two range is split into 64 linear sub-buckets,
+ * so the relative error of reported percentiles stays below 1.6%.
+ * Values are expected in nanoseconds, anything above ~18 minutes is counted in the last bucket.
+ * Recording is wait-free (a single atomic increment per value), reading is weakly consistent under concurrent updates.
+ *
+ * @author Peter Smith
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKET_COUNT = 2 * SUB_BUCKET_COUNT;
+    private static final int LINEAR_BUCKET_BITS = SUB_BUCKET_BITS + 1;
+    private static final int HIGHEST_TRACKABLE_BITS = 40;
+    private static final long HIGHEST_TRACKABLE_VALUE = (1L << HIGHEST_TRACKABLE_BITS) - 1;
+    private static final int BUCKET_COUNT = LINEAR_BUCKET_COUNT + (HIGHEST_TRACKABLE_BITS - LINEAR_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records the given value.
+     * Negative values are recorded as 0.
+     *
+     * @param value value to record (in nanoseconds)
+     */
+    public void record(long value) {
+
+        long boundedValue = Math.min(Math.max(value, 0), HIGHEST_TRACKABLE_VALUE);
+        counts.incrementAndGet(bucketIndex(boundedValue));
+        totalCount.increment();
+        totalValue.add(boundedValue);
+        if (boundedValue > maxValue.get()) {
+            maxValue.accumulateAndGet(boundedValue, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getTotal() {
+        return totalValue.sum();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return mean value, or 0 if no value has been recorded
+     */
+    public double getMean() {
+
+        long count = getCount();
+
+        return count == 0
+                ? 0
+                : (double) getTotal() / count;
+    }
+
+    /**
+     * Returns the value at the given percentile, i.e. the (upper bound of the) bucket containing
+     * the given percentage of the recorded values.
+     *
+     * @param percentile requested percentile between 0 and 100 (e.g. 99.9)
+     * @return value at the given percentile, or 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            snapshot[index] = counts.get(index);
+            count += snapshot[index];
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long targetCount = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long cumulativeCount = 0;
+        int index = 0;
+        while (index < BUCKET_COUNT - 1 && (cumulativeCount += snapshot[index]) < targetCount) {
+            index++;
+        }
+
+        return Math.min(bucketUpperBound(index), getMax());
+    }
+
+    private static int bucketIndex(long value) {
+
+        if (value < LINEAR_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+
+        return LINEAR_BUCKET_COUNT + (highestBit - LINEAR_BUCKET_BITS) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    private static long bucketUpperBound(int index) {
+
+        if (index < LINEAR_BUCKET_COUNT) {
+            return index;
+        }
+
+        int octave = (index - LINEAR_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long subBucket = (index - LINEAR_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        int shift = octave + 1;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("count", getCount())
+                .append("meanMicros", TimeUnit.NANOSECONDS.toMicros((long) getMean()))
+                .append("p50Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(50)))
+                .append("p99Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99)))
+                .append("p999Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99.9)))
+                .append("maxMicros", TimeUnit.NANOSECONDS.toMicros(getMax()))
+                .toString();
+    }
+}
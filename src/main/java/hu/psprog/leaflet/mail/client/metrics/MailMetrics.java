@@ -0,0 +1,111 @@
+package hu.psprog.leaflet.mail.client.metrics;
+
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitScope;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Entry point of metrics recording, forwarding every measurement to the registered {@link MailMetricsListener}s.
+ * Failing listeners are logged and otherwise ignored, so metrics recording never affects mail delivery.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class MailMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailMetrics.class);
+
+    private final MailMetricsListener[] listeners;
+
+    @Autowired
+    public MailMetrics(List<MailMetricsListener> listeners) {
+        this.listeners = new ArrayList<>(listeners).toArray(new MailMetricsListener[0]);
+    }
+
+    /**
+     * Records the completion of the given pipeline stage.
+     *
+     * @param stage completed {@link MailPipelineStage}
+     * @param startTime start time of the stage, as returned by {@link System#nanoTime()}
+     */
+    public void recordStage(MailPipelineStage stage, long startTime) {
+        long duration = System.nanoTime() - startTime;
+        notifyListeners(listener -> listener.onStageCompleted(stage, duration));
+    }
+
+    /**
+     * Records the rendering of the given template.
+     *
+     * @param template name of the rendered template
+     * @param durationNanos duration of the rendering in nanoseconds
+     */
+    public void recordTemplateRendered(String template, long durationNanos) {
+        notifyListeners(listener -> listener.onStageCompleted(MailPipelineStage.RENDERING, durationNanos));
+        notifyListeners(listener -> listener.onTemplateRendered(template, durationNanos));
+    }
+
+    /**
+     * Records the delivery status of a mail.
+     *
+     * @param mailDeliveryStatus resulting {@link MailDeliveryStatus}
+     */
+    public void recordDeliveryStatus(MailDeliveryStatus mailDeliveryStatus) {
+        notifyListeners(listener -> listener.onDeliveryCompleted(mailDeliveryStatus));
+    }
+
+    /**
+     * Records the current depth of the dispatcher queue.
+     *
+     * @param queueDepth number of waiting delivery tasks
+     */
+    public void recordQueueDepth(int queueDepth) {
+        notifyListeners(listener -> listener.onQueueDepthSampled(queueDepth));
+    }
+
+    /**
+     * Records the time a delivery task spent waiting in the dispatcher lane of the given priority.
+     *
+     * @param priority {@link MailPriority} of the lane
+     * @param delayNanos waiting time of the task in nanoseconds
+     */
+    public void recordQueueingDelay(MailPriority priority, long delayNanos) {
+        notifyListeners(listener -> listener.onQueueingDelay(priority, delayNanos));
+    }
+
+    /**
+     * Records a send delayed by rate limiting.
+     *
+     * @param scope {@link RateLimitScope} of the limit delaying the send
+     * @param delayNanos delay of the send in nanoseconds
+     */
+    public void recordSendDelayed(RateLimitScope scope, long delayNanos) {
+        notifyListeners(listener -> listener.onSendDelayed(scope, delayNanos));
+    }
+
+    /**
+     * Records a send rejected by rate limiting.
+     *
+     * @param scope {@link RateLimitScope} of the limit rejecting the send
+     */
+    public void recordSendRejected(RateLimitScope scope) {
+        notifyListeners(listener -> listener.onSendRejected(scope));
+    }
+
+    private void notifyListeners(Consumer<MailMetricsListener> notification) {
+        for (MailMetricsListener listener : listeners) {
+            try {
+                notification.accept(listener);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Mail metrics listener [{}] failed", listener.getClass().getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package hu.psprog.leaflet.mail.client.metrics;
+
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitScope;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import hu.psprog.leaflet.mail.domain.MailPriority;
+
+/**
+ * Listener interface for mail pipeline metrics.
+ * Every Spring bean implementing this interface is notified by {@link MailMetrics}.
+ * Methods are called on the sending threads, so implementations must be thread-safe and should not block.
+ *
+ * @author Peter Smith
+ */
+public interface MailMetricsListener {
+
+    /**
+     * Called when a pipeline stage has been completed (either successfully or not).
+     *
+     * @param stage completed {@link MailPipelineStage}
+     * @param durationNanos duration of the stage in nanoseconds
+     */
+    default void onStageCompleted(MailPipelineStage stage, long durationNanos) {
+    }
+
+    /**
+     * Called when a mail template has been rendered.
+     *
+     * @param template name of the rendered template
+     * @param durationNanos duration of the rendering in nanoseconds
+     */
+    default void onTemplateRendered(String template, long durationNanos) {
+    }
+
+    /**
+     * Called when the delivery status of a mail has been determined.
+     *
+     * @param mailDeliveryStatus resulting {@link MailDeliveryStatus}
+     */
+    default void onDeliveryCompleted(MailDeliveryStatus mailDeliveryStatus) {
+    }
+
+    /**
+     * Called when a delivery task is started, with the number of tasks still waiting in the dispatcher.
+     *
+     * @param queueDepth number of waiting delivery tasks
+     */
+    default void onQueueDepthSampled(int queueDepth) {
+    }
+
+    /**
+     * Called when a delivery task is taken from a priority lane of the dispatcher.
+     *
+     * @param priority {@link MailPriority} of the lane
+     * @param delayNanos time the task spent waiting in the lane, in nanoseconds
+     */
+    default void onQueueingDelay(MailPriority priority, long delayNanos) {
+    }
+
+    /**
+     * Called when a send has been delayed by rate limiting.
+     *
+     * @param scope {@link RateLimitScope} of the limit delaying the send
+     * @param delayNanos delay of the send in nanoseconds
+     */
+    default void onSendDelayed(RateLimitScope scope, long delayNanos) {
+    }
+
+    /**
+     * Called when a send has been rejected by rate limiting.
+     *
+     * @param scope {@link RateLimitScope} of the limit rejecting the send
+     */
+    default void onSendRejected(RateLimitScope scope) {
+    }
+}
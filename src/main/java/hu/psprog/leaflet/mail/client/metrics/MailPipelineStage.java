@@ -0,0 +1,29 @@
+package hu.psprog.leaflet.mail.client.metrics;
+
+/**
+ * Measured stages of the mail sending pipeline.
+ *
+ * @author Peter Smith
+ */
+public enum MailPipelineStage {
+
+    /**
+     * Bean validation of the {@link hu.psprog.leaflet.mail.domain.Mail} object.
+     */
+    VALIDATION,
+
+    /**
+     * Rendering the mail content by the selected mail renderer.
+     */
+    RENDERING,
+
+    /**
+     * Assembling the MIME message (excluding rendering).
+     */
+    MIME_ASSEMBLY,
+
+    /**
+     * Transmitting the message(s) to the SMTP server.
+     */
+    TRANSMISSION
+}
@@ -0,0 +1,177 @@
+package hu.psprog.leaflet.mail.client.metrics.impl;
+
+import hu.psprog.leaflet.mail.client.metrics.LatencyHistogram;
+import hu.psprog.leaflet.mail.client.metrics.MailMetricsListener;
+import hu.psprog.leaflet.mail.client.metrics.MailPipelineStage;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitScope;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default {@link MailMetricsListener} implementation, keeping all metrics in memory without any locking.
+ * Records a {@link LatencyHistogram} for every {@link MailPipelineStage} and rendered template,
+ * counts the mails by {@link MailDeliveryStatus}, and tracks the current and the highest observed dispatcher queue depth.
+ * Sends delayed by rate limiting are recorded in a {@link LatencyHistogram} of delays, rejected sends are counted, both by {@link RateLimitScope}.
+ * Waiting times in the dispatcher priority lanes are recorded in a {@link LatencyHistogram} by {@link MailPriority}.
+ * Counting starts at application startup, metrics are never reset.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class InMemoryMailMetricsListener implements MailMetricsListener {
+
+    private final Map<MailPipelineStage, LatencyHistogram> stageHistograms = new EnumMap<>(MailPipelineStage.class);
+    private final Map<MailDeliveryStatus, LongAdder> deliveryStatusCounters = new EnumMap<>(MailDeliveryStatus.class);
+    private final ConcurrentMap<String, LatencyHistogram> templateHistograms = new ConcurrentHashMap<>();
+    private final Map<RateLimitScope, LatencyHistogram> throttleDelayHistograms = new EnumMap<>(RateLimitScope.class);
+    private final Map<RateLimitScope, LongAdder> rejectedSendCounters = new EnumMap<>(RateLimitScope.class);
+    private final Map<MailPriority, LatencyHistogram> queueingDelayHistograms = new EnumMap<>(MailPriority.class);
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public InMemoryMailMetricsListener() {
+        for (MailPipelineStage stage : MailPipelineStage.values()) {
+            stageHistograms.put(stage, new LatencyHistogram());
+        }
+        for (MailDeliveryStatus mailDeliveryStatus : MailDeliveryStatus.values()) {
+            deliveryStatusCounters.put(mailDeliveryStatus, new LongAdder());
+        }
+        for (RateLimitScope scope : RateLimitScope.values()) {
+            throttleDelayHistograms.put(scope, new LatencyHistogram());
+            rejectedSendCounters.put(scope, new LongAdder());
+        }
+        for (MailPriority priority : MailPriority.values()) {
+            queueingDelayHistograms.put(priority, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void onStageCompleted(MailPipelineStage stage, long durationNanos) {
+        stageHistograms.get(stage).record(durationNanos);
+    }
+
+    @Override
+    public void onTemplateRendered(String template, long durationNanos) {
+        templateHistograms.computeIfAbsent(template, key -> new LatencyHistogram()).record(durationNanos);
+    }
+
+    @Override
+    public void onDeliveryCompleted(MailDeliveryStatus mailDeliveryStatus) {
+        deliveryStatusCounters.get(mailDeliveryStatus).increment();
+    }
+
+    @Override
+    public void onQueueDepthSampled(int queueDepth) {
+        this.queueDepth.set(queueDepth);
+        if (queueDepth > maxQueueDepth.get()) {
+            maxQueueDepth.accumulateAndGet(queueDepth, Math::max);
+        }
+    }
+
+    @Override
+    public void onQueueingDelay(MailPriority priority, long delayNanos) {
+        queueingDelayHistograms.get(priority).record(delayNanos);
+    }
+
+    @Override
+    public void onSendDelayed(RateLimitScope scope, long delayNanos) {
+        throttleDelayHistograms.get(scope).record(delayNanos);
+    }
+
+    @Override
+    public void onSendRejected(RateLimitScope scope) {
+        rejectedSendCounters.get(scope).increment();
+    }
+
+    /**
+     * Returns the latency histogram of the given pipeline stage.
+     *
+     * @param stage {@link MailPipelineStage} to return histogram of
+     * @return {@link LatencyHistogram} of the stage (in nanoseconds)
+     */
+    public LatencyHistogram getStageHistogram(MailPipelineStage stage) {
+        return stageHistograms.get(stage);
+    }
+
+    /**
+     * Returns the rendering latency histograms of every rendered template, by template name.
+     *
+     * @return rendering {@link LatencyHistogram}s (in nanoseconds) by template name
+     */
+    public Map<String, LatencyHistogram> getTemplateHistograms() {
+        return Collections.unmodifiableMap(templateHistograms);
+    }
+
+    /**
+     * Returns the number of mails finished with the given delivery status.
+     *
+     * @param mailDeliveryStatus {@link MailDeliveryStatus} to return count of
+     * @return number of mails
+     */
+    public long getDeliveryStatusCount(MailDeliveryStatus mailDeliveryStatus) {
+        return deliveryStatusCounters.get(mailDeliveryStatus).sum();
+    }
+
+    /**
+     * Returns the histogram of delays caused by the rate limits of the given scope.
+     * Count of the histogram is the number of delayed sends.
+     *
+     * @param scope {@link RateLimitScope} to return histogram of
+     * @return {@link LatencyHistogram} of delays (in nanoseconds)
+     */
+    public LatencyHistogram getThrottleDelayHistogram(RateLimitScope scope) {
+        return throttleDelayHistograms.get(scope);
+    }
+
+    /**
+     * Returns the number of sends rejected by the rate limits of the given scope.
+     *
+     * @param scope {@link RateLimitScope} to return count of
+     * @return number of rejected sends
+     */
+    public long getRejectedSendCount(RateLimitScope scope) {
+        return rejectedSendCounters.get(scope).sum();
+    }
+
+    /**
+     * Returns the histogram of the times delivery tasks spent waiting in the dispatcher lane of the given priority.
+     *
+     * @param priority {@link MailPriority} of the lane to return histogram of
+     * @return {@link LatencyHistogram} of waiting times (in nanoseconds)
+     */
+    public LatencyHistogram getQueueingDelayHistogram(MailPriority priority) {
+        return queueingDelayHistograms.get(priority);
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("stageHistograms", stageHistograms)
+                .append("templateHistograms", templateHistograms)
+                .append("deliveryStatusCounters", deliveryStatusCounters)
+                .append("throttleDelayHistograms", throttleDelayHistograms)
+                .append("rejectedSendCounters", rejectedSendCounters)
+                .append("queueingDelayHistograms", queueingDelayHistograms)
+                .append("queueDepth", queueDepth)
+                .append("maxQueueDepth", maxQueueDepth)
+                .toString();
+    }
+}
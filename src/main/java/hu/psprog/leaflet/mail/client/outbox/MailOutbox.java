@@ -0,0 +1,48 @@
+package hu.psprog.leaflet.mail.client.outbox;
+
+import hu.psprog.leaflet.mail.domain.Mail;
+
+import java.io.IOException;
+
+/**
+ * Durable outbox of {@link Mail} objects waiting for delivery.
+ * Mails are appended by the sending side and consumed sequentially by a single background drainer,
+ * which acknowledges every record after it has been processed.
+ * Records not acknowledged before a restart are redelivered.
+ *
+ * @author Peter Smith
+ */
+public interface MailOutbox {
+
+    /**
+     * Durably appends given {@link Mail} to the outbox.
+     *
+     * @param mail {@link Mail} object to append
+     * @throws IOException if the mail could not be serialized (e.g. {@link java.io.NotSerializableException} for non-serializable
+     *                     content values) or written
+     */
+    void append(Mail mail) throws IOException;
+
+    /**
+     * Returns the next unread record of the outbox.
+     *
+     * @return next {@link OutboxRecord} or {@code null} if there is no unread record
+     * @throws IOException if the outbox could not be read
+     */
+    OutboxRecord next() throws IOException;
+
+    /**
+     * Acknowledges processing of given record (and all records before it).
+     *
+     * @param outboxRecord processed {@link OutboxRecord}
+     * @throws IOException if the acknowledgement could not be persisted
+     */
+    void acknowledge(OutboxRecord outboxRecord) throws IOException;
+
+    /**
+     * Returns the size of the not yet acknowledged part of the outbox in bytes.
+     *
+     * @return size of the outbox backlog in bytes
+     */
+    long getBacklogSize();
+}
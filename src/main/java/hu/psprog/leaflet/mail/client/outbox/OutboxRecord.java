@@ -0,0 +1,43 @@
+package hu.psprog.leaflet.mail.client.outbox;
+
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Single record read from {@link MailOutbox}.
+ *
+ * @author Peter Smith
+ */
+public class OutboxRecord {
+
+    private final long offset;
+    private final long nextOffset;
+    private final Mail mail;
+
+    public OutboxRecord(long offset, long nextOffset, Mail mail) {
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+        this.mail = mail;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public Mail getMail() {
+        return mail;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("offset", offset)
+                .append("nextOffset", nextOffset)
+                .append("mail", mail)
+                .toString();
+    }
+}
@@ -0,0 +1,238 @@
+package hu.psprog.leaflet.mail.client.outbox.impl;
+
+import hu.psprog.leaflet.mail.client.outbox.MailOutbox;
+import hu.psprog.leaflet.mail.client.outbox.OutboxRecord;
+import hu.psprog.leaflet.mail.config.OutboxConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * {@link MailOutbox} implementation backed by an append-only journal of memory-mapped, fixed size segment files.
+ * Every record is addressed by a global offset, segment files are named after the offset of their first byte.
+ * Acknowledged offset is persisted in a separate, memory-mapped file, and segments fully behind it are deleted.
+ * On startup, reading continues from the acknowledged offset, so unacknowledged records are redelivered,
+ * while the torn tail of the last segment (if any) is truncated.
+ *
+ * @author Peter Smith
+ */
+public class MappedFileMailOutbox implements MailOutbox {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileMailOutbox.class);
+
+    private static final String SEGMENT_FILE_SUFFIX = ".segment";
+    private static final String SEGMENT_FILE_NAME_PATTERN = "%020d" + SEGMENT_FILE_SUFFIX;
+    private static final String ACK_FILE_NAME = "outbox.ack";
+
+    private final OutboxConfigurationProperties outboxConfigurationProperties;
+    private final TreeMap<Long, OutboxSegment> segments = new TreeMap<>();
+
+    private Path directory;
+    private FileChannel ackFileChannel;
+    private MappedByteBuffer ackBuffer;
+    private long writeOffset;
+    private long readOffset;
+    private long ackOffset;
+
+    public MappedFileMailOutbox(OutboxConfigurationProperties outboxConfigurationProperties) {
+        this.outboxConfigurationProperties = outboxConfigurationProperties;
+    }
+
+    /**
+     * Opens (or creates) the outbox in the configured directory.
+     *
+     * @throws IOException if the outbox files could not be opened
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+
+        directory = Paths.get(outboxConfigurationProperties.getDirectory());
+        Files.createDirectories(directory);
+
+        ackFileChannel = FileChannel.open(directory.resolve(ACK_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ackBuffer = ackFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        ackOffset = ackBuffer.getLong(0);
+
+        loadSegments();
+        if (segments.isEmpty()) {
+            createSegment(ackOffset);
+            writeOffset = ackOffset;
+        } else {
+            OutboxSegment lastSegment = segments.lastEntry().getValue();
+            writeOffset = lastSegment.getBaseOffset() + lastSegment.recover();
+        }
+        readOffset = Math.max(ackOffset, segments.firstKey());
+        compact();
+
+        LOGGER.info("Mail outbox opened in [{}] with {} bytes of backlog", directory.toAbsolutePath(), getBacklogSize());
+    }
+
+    @Override
+    public synchronized void append(Mail mail) throws IOException {
+
+        byte[] payload = serialize(mail);
+        int recordSize = OutboxSegment.RECORD_HEADER_SIZE + payload.length;
+        if (recordSize > outboxConfigurationProperties.getSegmentSize()) {
+            throw new IOException(String.format("Mail of %d bytes exceeds outbox segment size", recordSize));
+        }
+
+        OutboxSegment segment = segments.lastEntry().getValue();
+        if (writeOffset + recordSize > segment.getEndOffset()) {
+            segment = createSegment(segment.getEndOffset());
+            writeOffset = segment.getBaseOffset();
+        }
+
+        segment.write((int) (writeOffset - segment.getBaseOffset()), payload);
+        if (outboxConfigurationProperties.isSyncOnWrite()) {
+            segment.force();
+        }
+        writeOffset += recordSize;
+    }
+
+    @Override
+    public synchronized OutboxRecord next() {
+
+        OutboxRecord outboxRecord = null;
+        while (outboxRecord == null && readOffset < writeOffset) {
+
+            OutboxSegment segment = segments.floorEntry(readOffset).getValue();
+            int position = (int) (readOffset - segment.getBaseOffset());
+            int length = segment.readLength(position);
+
+            if (length <= 0 || position + OutboxSegment.RECORD_HEADER_SIZE + length > segment.getSize()) {
+                readOffset = segment.getEndOffset();
+                continue;
+            }
+
+            long nextOffset = readOffset + OutboxSegment.RECORD_HEADER_SIZE + length;
+            Mail mail = deserialize(segment.readPayload(position, length));
+            if (mail == null) {
+                LOGGER.error("Skipping corrupt mail outbox record at offset [{}]", readOffset);
+            } else {
+                outboxRecord = new OutboxRecord(readOffset, nextOffset, mail);
+            }
+            readOffset = nextOffset;
+        }
+
+        return outboxRecord;
+    }
+
+    @Override
+    public synchronized void acknowledge(OutboxRecord outboxRecord) throws IOException {
+
+        if (outboxRecord.getNextOffset() <= ackOffset) {
+            return;
+        }
+
+        ackOffset = outboxRecord.getNextOffset();
+        ackBuffer.putLong(0, ackOffset);
+        if (outboxConfigurationProperties.isSyncOnWrite()) {
+            ackBuffer.force();
+        }
+        compact();
+    }
+
+    @Override
+    public synchronized long getBacklogSize() {
+        return writeOffset - ackOffset;
+    }
+
+    /**
+     * Flushes and closes all outbox files.
+     *
+     * @throws IOException if the outbox files could not be closed
+     */
+    @PreDestroy
+    public synchronized void close() throws IOException {
+
+        for (OutboxSegment segment : segments.values()) {
+            segment.force();
+            segment.close();
+        }
+        segments.clear();
+
+        ackBuffer.force();
+        ackFileChannel.close();
+    }
+
+    private void loadSegments() throws IOException {
+
+        try (Stream<Path> segmentFiles = Files.list(directory)) {
+            Iterator<Path> iterator = segmentFiles
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_FILE_SUFFIX))
+                    .iterator();
+            while (iterator.hasNext()) {
+                Path segmentFile = iterator.next();
+                String fileName = segmentFile.getFileName().toString();
+                long baseOffset = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+                segments.put(baseOffset, OutboxSegment.open(segmentFile, baseOffset));
+            }
+        }
+    }
+
+    private OutboxSegment createSegment(long baseOffset) throws IOException {
+
+        Path segmentFile = directory.resolve(String.format(SEGMENT_FILE_NAME_PATTERN, baseOffset));
+        OutboxSegment segment = OutboxSegment.create(segmentFile, baseOffset, outboxConfigurationProperties.getSegmentSize());
+        segments.put(baseOffset, segment);
+
+        return segment;
+    }
+
+    private void compact() throws IOException {
+
+        Iterator<Map.Entry<Long, OutboxSegment>> iterator = segments.headMap(segments.lastKey(), false).entrySet().iterator();
+        while (iterator.hasNext()) {
+            OutboxSegment segment = iterator.next().getValue();
+            if (segment.getEndOffset() > ackOffset) {
+                break;
+            }
+            LOGGER.debug("Deleting fully acknowledged mail outbox segment [{}]", segment);
+            segment.delete();
+            iterator.remove();
+        }
+    }
+
+    private byte[] serialize(Mail mail) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+            objectOutputStream.writeObject(mail);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    private Mail deserialize(byte[] payload) {
+
+        if (payload == null) {
+            return null;
+        }
+
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (Mail) objectInputStream.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOGGER.error("Failed to deserialize mail outbox record", e);
+            return null;
+        }
+    }
+}
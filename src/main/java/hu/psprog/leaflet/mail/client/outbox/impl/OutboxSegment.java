@@ -0,0 +1,181 @@
+package hu.psprog.leaflet.mail.client.outbox.impl;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped, fixed size segment file of {@link MappedFileMailOutbox}.
+ * Each record is stored as [payload length (int)][CRC32 checksum of payload (int)][payload].
+ * A zero length marks the end of the written records, as new segment files are zero-filled.
+ *
+ * @author Peter Smith
+ */
+class OutboxSegment {
+
+    static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final int ZERO_FILL_CHUNK_SIZE = 8192;
+
+    private final long baseOffset;
+    private final Path path;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer buffer;
+
+    private OutboxSegment(long baseOffset, Path path, FileChannel fileChannel, int size) throws IOException {
+        this.baseOffset = baseOffset;
+        this.path = path;
+        this.fileChannel = fileChannel;
+        this.buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Creates a new, zero-filled segment file.
+     *
+     * @param path path of the segment file
+     * @param baseOffset global offset of the first byte of the segment
+     * @param size size of the segment in bytes
+     * @return created {@link OutboxSegment}
+     * @throws IOException if the segment file could not be created
+     */
+    static OutboxSegment create(Path path, long baseOffset, int size) throws IOException {
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new OutboxSegment(baseOffset, path, fileChannel, size);
+    }
+
+    /**
+     * Opens an existing segment file.
+     *
+     * @param path path of the segment file
+     * @param baseOffset global offset of the first byte of the segment
+     * @return opened {@link OutboxSegment}
+     * @throws IOException if the segment file could not be opened
+     */
+    static OutboxSegment open(Path path, long baseOffset) throws IOException {
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new OutboxSegment(baseOffset, path, fileChannel, (int) fileChannel.size());
+    }
+
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    long getEndOffset() {
+        return baseOffset + getSize();
+    }
+
+    int getSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Writes a record at the given position.
+     * Length field is written last, so a partially written record is never considered complete.
+     *
+     * @param position position of the record within the segment
+     * @param payload record payload
+     */
+    void write(int position, byte[] payload) {
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.put(payload);
+        buffer.putInt(position + Integer.BYTES, checksum(payload));
+        buffer.putInt(position, payload.length);
+    }
+
+    /**
+     * Reads the payload length of the record at the given position.
+     *
+     * @param position position of the record within the segment
+     * @return payload length, or 0 if there is no record at the given position
+     */
+    int readLength(int position) {
+        return position + RECORD_HEADER_SIZE <= getSize()
+                ? buffer.getInt(position)
+                : 0;
+    }
+
+    /**
+     * Reads and verifies the payload of the record at the given position.
+     *
+     * @param position position of the record within the segment
+     * @param length payload length of the record
+     * @return record payload, or {@code null} if the record is incomplete or its checksum does not match
+     */
+    byte[] readPayload(int position, int length) {
+
+        if (length <= 0 || position + RECORD_HEADER_SIZE + length > getSize()) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(payload);
+
+        return buffer.getInt(position + Integer.BYTES) == checksum(payload)
+                ? payload
+                : null;
+    }
+
+    /**
+     * Scans the segment for the end of the last complete record.
+     * Any incomplete (torn) record and the data after it is zeroed out, so it can be safely overwritten.
+     *
+     * @return position after the last complete record
+     */
+    int recover() {
+
+        int position = 0;
+        int length;
+        while ((length = readLength(position)) > 0 && readPayload(position, length) != null) {
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        byte[] zeros = new byte[Math.min(ZERO_FILL_CHUNK_SIZE, view.remaining())];
+        while (view.hasRemaining()) {
+            view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+        }
+
+        return position;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        fileChannel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    private int checksum(byte[] payload) {
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+
+        return (int) crc32.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("baseOffset", baseOffset)
+                .append("path", path)
+                .toString();
+    }
+}
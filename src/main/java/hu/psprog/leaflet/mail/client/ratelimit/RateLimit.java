@@ -0,0 +1,77 @@
+package hu.psprog.leaflet.mail.client.ratelimit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Rate limit definition: sustained rate and burst size of a token bucket.
+ * Can be parsed from "rate" or "rate/burst" format, where rate is the number of permits per second.
+ *
+ * @author Peter Smith
+ */
+public class RateLimit {
+
+    private static final String BURST_SEPARATOR = "/";
+    private static final String INVALID_RATE_LIMIT_DEFINITION = "Invalid rate limit definition [%s], expected rate or rate/burst.";
+
+    private final double rate;
+    private final int burst;
+
+    public RateLimit(double rate, int burst) {
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * Parses a rate limit definition.
+     *
+     * @param definition rate limit definition in "rate" or "rate/burst" format
+     * @param defaultBurst burst size to use if not specified by the definition
+     * @return parsed {@link RateLimit}
+     */
+    public static RateLimit parse(String definition, int defaultBurst) {
+
+        String[] parts = StringUtils.split(definition.trim(), BURST_SEPARATOR);
+        try {
+            if (parts.length == 1) {
+                return new RateLimit(Double.parseDouble(parts[0].trim()), defaultBurst);
+            } else if (parts.length == 2) {
+                return new RateLimit(Double.parseDouble(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(INVALID_RATE_LIMIT_DEFINITION, definition), e);
+        }
+
+        throw new IllegalArgumentException(String.format(INVALID_RATE_LIMIT_DEFINITION, definition));
+    }
+
+    /**
+     * Returns the sustained rate.
+     *
+     * @return number of permits per second, zero (or negative) means unlimited
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Returns the burst size.
+     *
+     * @return number of permits available at once after an idle period
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    public boolean isUnlimited() {
+        return rate <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("rate", rate)
+                .append("burst", burst)
+                .toString();
+    }
+}
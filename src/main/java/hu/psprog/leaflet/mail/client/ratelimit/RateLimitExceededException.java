@@ -0,0 +1,19 @@
+package hu.psprog.leaflet.mail.client.ratelimit;
+
+import org.springframework.mail.MailException;
+
+/**
+ * Exception thrown when a send is not attempted as it would exceed the configured rate limits.
+ *
+ * @author Peter Smith
+ */
+public class RateLimitExceededException extends MailException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MESSAGE = "Send is not attempted as it would exceed the %s rate limit of [%s]";
+
+    public RateLimitExceededException(RateLimitScope scope, String key) {
+        super(String.format(MESSAGE, scope, key));
+    }
+}
@@ -0,0 +1,25 @@
+package hu.psprog.leaflet.mail.client.ratelimit;
+
+/**
+ * Available behaviors of {@link SMTPRateLimiter} on sends exceeding the configured rate limits.
+ *
+ * @author Peter Smith
+ */
+public enum RateLimitMode {
+
+    /**
+     * Permits are reserved in advance and the sending thread waits until they become available (up to the configured maximum delay).
+     */
+    DELAY,
+
+    /**
+     * Permits are reserved in advance and the delivery is postponed until they become available (up to the configured maximum delay),
+     * without holding a thread while waiting. Relay limits are applied when the relay is selected, so waiting for them always blocks.
+     */
+    QUEUE,
+
+    /**
+     * Sends exceeding the rate limits are not attempted, but reported as {@link hu.psprog.leaflet.mail.domain.MailDeliveryStatus#THROTTLED}.
+     */
+    REJECT
+}
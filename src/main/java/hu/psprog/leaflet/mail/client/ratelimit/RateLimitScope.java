@@ -0,0 +1,19 @@
+package hu.psprog.leaflet.mail.client.ratelimit;
+
+/**
+ * Scopes of the rate limits applied by {@link SMTPRateLimiter}.
+ *
+ * @author Peter Smith
+ */
+public enum RateLimitScope {
+
+    /**
+     * Limits the number of messages sent through a single SMTP endpoint (relay).
+     */
+    RELAY,
+
+    /**
+     * Limits the number of messages sent to a single recipient domain.
+     */
+    RECIPIENT_DOMAIN
+}
@@ -0,0 +1,255 @@
+package hu.psprog.leaflet.mail.client.ratelimit;
+
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.config.RateLimitConfigurationProperties;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limiter of outgoing messages, keeping a lock-free {@link TokenBucket} per SMTP relay and per recipient domain.
+ * Permits are reserved in advance: the returned delay is the time the caller has to wait before sending,
+ * which is never longer than the configured maximum delay (or zero in {@link RateLimitMode#REJECT} mode).
+ * Sends not fitting into the maximum delay are not reserved at all, so they do not consume permits.
+ * Every delayed and rejected send is recorded by {@link MailMetrics}.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class SMTPRateLimiter {
+
+    /**
+     * Returned by the reservation methods when the permits are not reserved as they would exceed the maximum delay.
+     */
+    public static final long RATE_LIMIT_EXCEEDED = -1L;
+
+    private static final String DOMAIN_SEPARATOR = "@";
+    private static final String ADDRESS_DECORATION = " <>";
+
+    private final RateLimitConfigurationProperties rateLimitConfigurationProperties;
+    private final MailMetrics mailMetrics;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, TokenBucket> relayBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> domainBuckets = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SMTPRateLimiter(RateLimitConfigurationProperties rateLimitConfigurationProperties, MailMetrics mailMetrics) {
+        this(rateLimitConfigurationProperties, mailMetrics, System::nanoTime);
+    }
+
+    SMTPRateLimiter(RateLimitConfigurationProperties rateLimitConfigurationProperties, MailMetrics mailMetrics, LongSupplier clock) {
+        this.rateLimitConfigurationProperties = rateLimitConfigurationProperties;
+        this.mailMetrics = mailMetrics;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return rateLimitConfigurationProperties.isEnabled();
+    }
+
+    public RateLimitMode getMode() {
+        return rateLimitConfigurationProperties.getMode();
+    }
+
+    /**
+     * Reserves permits for sending given number of messages through the given relay.
+     *
+     * @param relay name of the SMTP relay (as host:port)
+     * @param permits number of messages to send
+     * @return time to wait in nanoseconds before sending, or {@link #RATE_LIMIT_EXCEEDED}
+     */
+    public long reserveRelay(String relay, int permits) {
+
+        if (!isEnabled()) {
+            return 0L;
+        }
+
+        return reserve(RateLimitScope.RELAY, getRelayBucket(relay), permits);
+    }
+
+    /**
+     * Releases permits previously reserved by {@link #reserveRelay(String, int)}, if they could not be used.
+     *
+     * @param relay name of the SMTP relay (as host:port)
+     * @param permits number of reserved permits not used
+     */
+    public void releaseRelay(String relay, int permits) {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        TokenBucket bucket = getRelayBucket(relay);
+        if (bucket != null) {
+            bucket.release(permits);
+        }
+    }
+
+    /**
+     * Returns the maximum number of messages a single reservation of the given relay can be granted,
+     * i.e. its burst along with the messages permitted within the maximum delay. Larger batches have to be split up.
+     *
+     * @param relay name of the SMTP relay (as host:port)
+     * @return maximum number of permits per reservation ({@link Integer#MAX_VALUE} if the relay is not limited)
+     */
+    public int getRelayCapacity(String relay) {
+
+        if (!isEnabled()) {
+            return Integer.MAX_VALUE;
+        }
+
+        TokenBucket bucket = getRelayBucket(relay);
+
+        return bucket == null
+                ? Integer.MAX_VALUE
+                : bucket.getCapacity(getMaxDelay());
+    }
+
+    /**
+     * Checks if the given relay is able to send a message without waiting, without reserving any permits.
+     *
+     * @param relay name of the SMTP relay (as host:port)
+     * @return {@code true} if a message can be sent immediately
+     */
+    public boolean isRelayAvailable(String relay) {
+
+        if (!isEnabled()) {
+            return true;
+        }
+
+        TokenBucket bucket = getRelayBucket(relay);
+
+        return bucket == null || bucket.isAvailable(clock.getAsLong());
+    }
+
+    /**
+     * Reserves a permit for sending a message to the domain of the given recipient.
+     *
+     * @param recipient email address of the recipient
+     * @return time to wait in nanoseconds before sending, or {@link #RATE_LIMIT_EXCEEDED}
+     */
+    public long reserveRecipientDomain(String recipient) {
+        return reserveRecipientDomains(Collections.singletonList(recipient));
+    }
+
+    /**
+     * Reserves a permit per recipient for sending a message to the domains of the given recipients.
+     * Either all permits are reserved, or none of them: if the rate limit of any of the domains is exceeded,
+     * permits already reserved from the other domains are released.
+     *
+     * @param recipients email addresses of all (to, cc and bcc) recipients
+     * @return longest time to wait in nanoseconds before sending, or {@link #RATE_LIMIT_EXCEEDED}
+     */
+    public long reserveRecipientDomains(Collection<String> recipients) {
+
+        if (!isEnabled()) {
+            return 0L;
+        }
+
+        Map<String, Integer> permitsByDomain = new TreeMap<>();
+        recipients.stream()
+                .map(SMTPRateLimiter::resolveDomain)
+                .filter(StringUtils::isNotEmpty)
+                .forEach(domain -> permitsByDomain.merge(domain, 1, Integer::sum));
+
+        long delay = 0L;
+        Map<TokenBucket, Integer> reservedPermits = new HashMap<>();
+        for (Map.Entry<String, Integer> domainPermits : permitsByDomain.entrySet()) {
+            TokenBucket bucket = getDomainBucket(domainPermits.getKey());
+            long domainDelay = reserve(RateLimitScope.RECIPIENT_DOMAIN, bucket, domainPermits.getValue());
+            if (domainDelay == RATE_LIMIT_EXCEEDED) {
+                reservedPermits.forEach(TokenBucket::release);
+                return RATE_LIMIT_EXCEEDED;
+            }
+            if (bucket != null) {
+                reservedPermits.put(bucket, domainPermits.getValue());
+            }
+            delay = Math.max(delay, domainDelay);
+        }
+
+        return delay;
+    }
+
+    /**
+     * Blocks the calling thread for the given delay.
+     *
+     * @param delay time to wait in nanoseconds, as returned by the reservation methods
+     * @return {@code true} if waited for the whole delay, {@code false} if the thread has been interrupted
+     */
+    public boolean await(long delay) {
+
+        if (delay <= 0) {
+            return true;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private long reserve(RateLimitScope scope, TokenBucket bucket, int permits) {
+
+        if (bucket == null) {
+            return 0L;
+        }
+
+        long delay = bucket.reserve(permits, clock.getAsLong(), getMaxDelay());
+        if (delay == RATE_LIMIT_EXCEEDED) {
+            mailMetrics.recordSendRejected(scope);
+        } else if (delay > 0) {
+            mailMetrics.recordSendDelayed(scope, delay);
+        }
+
+        return delay;
+    }
+
+    private long getMaxDelay() {
+        return getMode() == RateLimitMode.REJECT
+                ? 0L
+                : TimeUnit.MILLISECONDS.toNanos(rateLimitConfigurationProperties.getMaxDelay());
+    }
+
+    private TokenBucket getRelayBucket(String relay) {
+        return relayBuckets.computeIfAbsent(relay.toLowerCase(), key -> createBucket(rateLimitConfigurationProperties.getRelayLimits()
+                .getOrDefault(key, rateLimitConfigurationProperties.getDefaultRelayLimit())));
+    }
+
+    private TokenBucket getDomainBucket(String domain) {
+
+        TokenBucket bucket = domainBuckets.get(domain);
+        if (bucket == null) {
+            // resetting the buckets may let a burst through, but keeps memory bounded with arbitrary recipient domains
+            if (domainBuckets.size() >= rateLimitConfigurationProperties.getMaxDomains()) {
+                domainBuckets.clear();
+            }
+            bucket = domainBuckets.computeIfAbsent(domain, key -> createBucket(rateLimitConfigurationProperties.getDomainLimits()
+                    .getOrDefault(key, rateLimitConfigurationProperties.getDefaultDomainLimit())));
+        }
+
+        return bucket;
+    }
+
+    private TokenBucket createBucket(RateLimit rateLimit) {
+        return rateLimit.isUnlimited()
+                ? null
+                : new TokenBucket(rateLimit, clock.getAsLong());
+    }
+
+    private static String resolveDomain(String recipient) {
+        return StringUtils.lowerCase(StringUtils.strip(StringUtils.substringAfterLast(recipient, DOMAIN_SEPARATOR), ADDRESS_DECORATION));
+    }
+}
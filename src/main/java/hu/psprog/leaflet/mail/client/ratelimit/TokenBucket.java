@@ -0,0 +1,79 @@
+package hu.psprog.leaflet.mail.client.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as generic cell rate algorithm (GCRA).
+ * Instead of a token counter refilled over time, only the theoretical arrival time (TAT) is stored:
+ * the time at which the bucket would become full again. Every permit moves it forward by the emission interval (1 / rate),
+ * and a request is conforming if it does not move the TAT further than the burst tolerance (burst * emission interval) ahead.
+ * Permits can be reserved in advance, in which case the returned delay has to be waited before using them.
+ *
+ * @author Peter Smith
+ */
+class TokenBucket {
+
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final AtomicLong theoreticalArrivalTime;
+
+    TokenBucket(RateLimit rateLimit, long currentTime) {
+        this.emissionInterval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rateLimit.getRate()));
+        this.burstTolerance = emissionInterval * rateLimit.getBurst();
+        this.theoreticalArrivalTime = new AtomicLong(currentTime);
+    }
+
+    /**
+     * Reserves given number of permits, if they become available within the given maximum delay.
+     *
+     * @param permits number of permits to reserve
+     * @param currentTime current time in nanoseconds
+     * @param maxDelay maximum acceptable delay in nanoseconds
+     * @return time to wait in nanoseconds before the permits can be used (0 if immediately), or -1 if the permits are not reserved
+     */
+    long reserve(int permits, long currentTime, long maxDelay) {
+
+        long increment = permits * emissionInterval;
+        while (true) {
+            long tat = theoreticalArrivalTime.get();
+            long newTat = Math.max(tat, currentTime) + increment;
+            long delay = newTat - burstTolerance - currentTime;
+            if (delay > maxDelay) {
+                return -1;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                return Math.max(0, delay);
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of permits a single reservation can be granted, even with a full bucket.
+     *
+     * @param maxDelay maximum acceptable delay in nanoseconds
+     * @return number of permits fitting into the burst tolerance and the given maximum delay
+     */
+    int getCapacity(long maxDelay) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (burstTolerance + maxDelay) / emissionInterval));
+    }
+
+    /**
+     * Releases given number of previously reserved permits, e.g. when they could not be used.
+     *
+     * @param permits number of permits to release
+     */
+    void release(int permits) {
+        theoreticalArrivalTime.addAndGet(-permits * emissionInterval);
+    }
+
+    /**
+     * Checks if a single permit is immediately available, without reserving it.
+     *
+     * @param currentTime current time in nanoseconds
+     * @return {@code true} if a permit is available
+     */
+    boolean isAvailable(long currentTime) {
+        return Math.max(theoreticalArrivalTime.get(), currentTime) + emissionInterval - burstTolerance <= currentTime;
+    }
+}
@@ -2,6 +2,9 @@ package hu.psprog.leaflet.mail.client.renderer;
 
 import hu.psprog.leaflet.mail.domain.Mail;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Mail renderer interface.
  *
@@ -17,4 +20,17 @@ public interface MailRenderer {
      * @return rendered Mail object as String
      */
     String renderMail(Mail mail);
+
+    /**
+     * Renders given {@link Mail} object into the given {@link Writer}.
+     * Implementations capable of streaming should override this method to avoid building the content as a String,
+     * default implementation writes the result of {@link #renderMail(Mail)}.
+     *
+     * @param mail {@link Mail} object to render
+     * @param writer {@link Writer} to render the mail content into
+     * @throws IOException if the content could not be written
+     */
+    default void renderMail(Mail mail, Writer writer) throws IOException {
+        writer.write(renderMail(mail));
+    }
 }
@@ -0,0 +1,142 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.client.renderer.MailRenderer;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link MailRenderer} decorator rendering personalized bulk mails by splicing per-recipient values
+ * into pre-rendered, recipient independent fragments of the template (see {@link BulkRenderingPlan}).
+ * The template is rendered by the delegate renderer once per template and shared (non-personalized) content,
+ * with placeholder tokens in place of the personalized values, then every further mail of the same campaign
+ * is assembled by concatenation. Mails without personalized content keys are passed to the delegate renderer as-is,
+ * as are mails of campaigns whose template uses any personalized value for anything else than writing it out as text,
+ * and mails whose personalized values are not accepted by the plan (e.g. missing values, see {@link BulkRenderingPlan#accepts(Map)}).
+ *
+ * @author Peter Smith
+ */
+public class BulkMailRenderer implements MailRenderer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkMailRenderer.class);
+
+    private static final String TOKEN_PREFIX_FORMAT = "bulkslot%016xx";
+
+    private final MailRenderer delegate;
+    private final BulkRenderingPlanCache bulkRenderingPlanCache;
+
+    public BulkMailRenderer(MailRenderer delegate, BulkRenderingPlanCache bulkRenderingPlanCache) {
+        this.delegate = delegate;
+        this.bulkRenderingPlanCache = bulkRenderingPlanCache;
+    }
+
+    @Override
+    public String renderMail(Mail mail) {
+
+        if (!isPersonalized(mail)) {
+            return delegate.renderMail(mail);
+        }
+
+        BulkRenderingPlan plan = getPlan(mail);
+
+        return plan.accepts(getContentMap(mail))
+                ? plan.render(getContentMap(mail))
+                : delegate.renderMail(mail);
+    }
+
+    @Override
+    public void renderMail(Mail mail, Writer writer) throws IOException {
+
+        if (!isPersonalized(mail)) {
+            delegate.renderMail(mail, writer);
+            return;
+        }
+
+        BulkRenderingPlan plan = getPlan(mail);
+        if (plan.accepts(getContentMap(mail))) {
+            plan.render(getContentMap(mail), writer);
+        } else {
+            delegate.renderMail(mail, writer);
+        }
+    }
+
+    /**
+     * Returns the decorated {@link MailRenderer}.
+     *
+     * @return decorated renderer
+     */
+    public MailRenderer getDelegate() {
+        return delegate;
+    }
+
+    private boolean isPersonalized(Mail mail) {
+        return Objects.nonNull(mail.getPersonalizedContentKeys()) && !mail.getPersonalizedContentKeys().isEmpty();
+    }
+
+    private Map<String, Object> getContentMap(Mail mail) {
+        return Objects.isNull(mail.getContentMap())
+                ? Collections.emptyMap()
+                : mail.getContentMap();
+    }
+
+    private BulkRenderingPlan getPlan(Mail mail) {
+
+        Map<String, Object> sharedContentMap = new HashMap<>(getContentMap(mail));
+        sharedContentMap.keySet().removeAll(mail.getPersonalizedContentKeys());
+
+        RenderedMailKey key = RenderedMailKey.of(mail.getTemplate(), sharedContentMap);
+        BulkRenderingPlan plan = bulkRenderingPlanCache.get(key);
+        if (Objects.isNull(plan)) {
+            plan = createPlan(mail, sharedContentMap);
+            bulkRenderingPlanCache.put(key, plan);
+        }
+
+        return plan;
+    }
+
+    private BulkRenderingPlan createPlan(Mail mail, Map<String, Object> sharedContentMap) {
+
+        String tokenPrefix = String.format(TOKEN_PREFIX_FORMAT, ThreadLocalRandom.current().nextLong());
+        List<String> personalizedContentKeys = new ArrayList<>(mail.getPersonalizedContentKeys());
+        List<BulkRenderingPlan.SlotToken> tokens = new ArrayList<>(personalizedContentKeys.size());
+        Map<String, Object> tokenContentMap = new HashMap<>(sharedContentMap);
+        for (int index = 0; index < personalizedContentKeys.size(); index++) {
+            BulkRenderingPlan.SlotToken token = BulkRenderingPlan.createToken(tokenPrefix, index);
+            tokens.add(token);
+            tokenContentMap.put(personalizedContentKeys.get(index), token);
+        }
+
+        Mail tokenMail = Mail.getBuilder()
+                .withTemplate(mail.getTemplate())
+                .withSubject(mail.getSubject())
+                .withRecipient(mail.getRecipient())
+                .withReplyTo(mail.getReplyTo())
+                .withContentMap(tokenContentMap)
+                .build();
+
+        BulkRenderingPlan plan;
+        try {
+            plan = BulkRenderingPlan.create(delegate.renderMail(tokenMail), tokenPrefix, personalizedContentKeys, tokens);
+        } catch (RuntimeException e) {
+            // personalized values are accessed beyond their text by the template (e.g. calling their methods)
+            LOGGER.debug("Failed to render template [{}] with placeholder tokens", mail.getTemplate(), e);
+            plan = BulkRenderingPlan.unusable();
+        }
+        if (!plan.isUsable()) {
+            LOGGER.warn("Template [{}] does not only write out personalized content {} as text, falling back to rendering each mail in full",
+                    mail.getTemplate(), personalizedContentKeys);
+        }
+
+        return plan;
+    }
+}
@@ -0,0 +1,217 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import org.thymeleaf.util.EvaluationUtils;
+import org.unbescape.html.HtmlEscape;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pre-rendered, recipient independent fragments of a template, and the personalized content keys
+ * whose (HTML-escaped) values are to be spliced between them.
+ * Created from the output of a template rendered with {@link SlotToken} probes in place of the personalized values.
+ * A plan is unusable if the template uses any of the values for anything else than writing them out as HTML-escaped text:
+ * comparing them (e.g. in a condition), writing them out transformed, unescaped or in another (e.g. URL or JavaScript) context.
+ * As null checks and boolean evaluation cannot be detected by the probes, a usable plan still accepts only those values
+ * which behave the same way as the probes do in such expressions (see {@link #accepts(Map)}).
+ *
+ * @author Peter Smith
+ */
+final class BulkRenderingPlan {
+
+    private static final BulkRenderingPlan UNUSABLE = new BulkRenderingPlan(Collections.emptyList(), Collections.emptyList(),
+            Collections.emptyList(), 0);
+    private static final String SLOT_INDEX_FORMAT = "%04d";
+    private static final String SLOT_INDEX_PATTERN = "(\\d{4})";
+    private static final String ESCAPING_SENTINEL = "<&\"'";
+    private static final String ESCAPED_SENTINEL = HtmlEscape.escapeHtml4Xml(ESCAPING_SENTINEL);
+    private static final int ESTIMATED_VALUE_LENGTH = 32;
+
+    private final List<String> fragments;
+    private final List<String> slotKeys;
+    private final List<String> personalizedContentKeys;
+    private final int staticLength;
+
+    private BulkRenderingPlan(List<String> fragments, List<String> slotKeys, List<String> personalizedContentKeys, int staticLength) {
+        this.fragments = fragments;
+        this.slotKeys = slotKeys;
+        this.personalizedContentKeys = personalizedContentKeys;
+        this.staticLength = staticLength;
+    }
+
+    /**
+     * Creates the placeholder token of the personalized content key at the given index.
+     *
+     * @param tokenPrefix random, alphanumeric prefix of the tokens
+     * @param index index of the personalized content key
+     * @return placeholder token
+     */
+    static SlotToken createToken(String tokenPrefix, int index) {
+        return new SlotToken(tokenPrefix + String.format(SLOT_INDEX_FORMAT, index) + ESCAPING_SENTINEL);
+    }
+
+    /**
+     * Splits the given content (rendered with placeholder tokens) into static fragments and slots.
+     *
+     * @param content content rendered with placeholder tokens
+     * @param tokenPrefix random, alphanumeric prefix of the tokens
+     * @param personalizedContentKeys personalized content keys, in the order of the token indices
+     * @param tokens placeholder tokens the content has been rendered with, in the order of the token indices
+     * @return created {@link BulkRenderingPlan}, unusable one if any token has been used other than written out as HTML-escaped text
+     */
+    static BulkRenderingPlan create(String content, String tokenPrefix, List<String> personalizedContentKeys, List<SlotToken> tokens) {
+
+        List<String> fragments = new ArrayList<>();
+        List<String> slotKeys = new ArrayList<>();
+        int[] slotCounts = new int[personalizedContentKeys.size()];
+        int staticLength = 0;
+        int position = 0;
+
+        Matcher matcher = Pattern.compile(Pattern.quote(tokenPrefix) + SLOT_INDEX_PATTERN + "(" + Pattern.quote(ESCAPED_SENTINEL) + ")?")
+                .matcher(content);
+        while (matcher.find()) {
+            int index = Integer.parseInt(matcher.group(1));
+            if (index >= personalizedContentKeys.size() || matcher.group(2) == null) {
+                return unusable();
+            }
+            String fragment = content.substring(position, matcher.start());
+            fragments.add(fragment);
+            slotKeys.add(personalizedContentKeys.get(index));
+            slotCounts[index]++;
+            staticLength += fragment.length();
+            position = matcher.end();
+        }
+        fragments.add(content.substring(position));
+        staticLength += content.length() - position;
+
+        for (int index = 0; index < tokens.size(); index++) {
+            // every conversion to text has to end up in the output as-is, otherwise the value has been used for something else
+            if (tokens.get(index).compared || tokens.get(index).textConversions != slotCounts[index]) {
+                return unusable();
+            }
+        }
+
+        return new BulkRenderingPlan(List.copyOf(fragments), List.copyOf(slotKeys), List.copyOf(personalizedContentKeys), staticLength);
+    }
+
+    /**
+     * Returns the unusable plan, which makes every mail rendered in full.
+     *
+     * @return unusable {@link BulkRenderingPlan}
+     */
+    static BulkRenderingPlan unusable() {
+        return UNUSABLE;
+    }
+
+    boolean isUsable() {
+        return this != UNUSABLE;
+    }
+
+    /**
+     * Checks if the plan can render the given content map.
+     * Personalized values are accepted only if they are non-empty strings evaluating to true as a condition,
+     * so null checks and conditions on them in the template evaluate the same way as for the probes the plan is created with.
+     *
+     * @param contentMap content map of the mail
+     * @return {@code true} if the plan is usable and every personalized value is accepted
+     */
+    boolean accepts(Map<String, Object> contentMap) {
+        return isUsable() && personalizedContentKeys.stream()
+                .map(contentMap::get)
+                .allMatch(value -> value instanceof String && !((String) value).isEmpty() && EvaluationUtils.evaluateAsBoolean(value));
+    }
+
+    /**
+     * Concatenates the static fragments and the HTML-escaped personalized values of the given content map.
+     *
+     * @param contentMap content map of the mail, accepted by the plan
+     * @return rendered content
+     */
+    String render(Map<String, Object> contentMap) {
+
+        StringBuilder content = new StringBuilder(staticLength + slotKeys.size() * ESTIMATED_VALUE_LENGTH);
+        try {
+            render(contentMap, content);
+        } catch (IOException e) {
+            // appending to a StringBuilder never fails
+            throw new UncheckedIOException(e);
+        }
+
+        return content.toString();
+    }
+
+    /**
+     * Appends the static fragments and the HTML-escaped personalized values of the given content map to the given target.
+     *
+     * @param contentMap content map of the mail, accepted by the plan
+     * @param target {@link Appendable} to write the content to
+     * @throws IOException if the content could not be written
+     */
+    void render(Map<String, Object> contentMap, Appendable target) throws IOException {
+
+        target.append(fragments.get(0));
+        for (int slot = 0; slot < slotKeys.size(); slot++) {
+            target.append(HtmlEscape.escapeHtml4Xml(contentMap.get(slotKeys.get(slot)).toString()));
+            target.append(fragments.get(slot + 1));
+        }
+    }
+
+    /**
+     * Probe placed into the content map in place of a personalized value while the plan is created.
+     * Records every conversion to text and every other access (comparison, inspecting its characters), which lets the plan tell
+     * whether the template only writes the value out. Being a {@link CharSequence}, it is handled as text by expressions and serializers.
+     * The text of the token ends with characters changed by HTML escaping, so writing it out in any other context can be told apart.
+     */
+    static final class SlotToken implements CharSequence {
+
+        private final String text;
+        private int textConversions;
+        private boolean compared;
+
+        private SlotToken(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            compared = true;
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            compared = true;
+            return System.identityHashCode(this);
+        }
+
+        @Override
+        public int length() {
+            compared = true;
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            compared = true;
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            compared = true;
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            textConversions++;
+            return text;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.config.BulkRenderingConfigurationProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+
+/**
+ * Size-bounded LRU cache of {@link BulkRenderingPlan}s, keyed by template name and shared (non-personalized) content.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class BulkRenderingPlanCache {
+
+    private final BulkRenderingConfigurationProperties bulkRenderingConfigurationProperties;
+    private final LruCache<RenderedMailKey, BulkRenderingPlan> plans;
+
+    @Autowired
+    public BulkRenderingPlanCache(BulkRenderingConfigurationProperties bulkRenderingConfigurationProperties) {
+        this.bulkRenderingConfigurationProperties = bulkRenderingConfigurationProperties;
+        this.plans = new LruCache<>(bulkRenderingConfigurationProperties.getMaxPlans(), null);
+    }
+
+    public boolean isEnabled() {
+        return bulkRenderingConfigurationProperties.isEnabled();
+    }
+
+    /**
+     * Removes every cached plan of the given template.
+     *
+     * @param template name of the template
+     */
+    public void invalidate(String template) {
+        plans.keySet().stream()
+                .filter(key -> Objects.equals(template, key.getTemplate()))
+                .forEach(plans::clearKey);
+    }
+
+    /**
+     * Removes every cached plan.
+     */
+    public void clear() {
+        plans.clear();
+    }
+
+    public int getSize() {
+        return plans.keySet().size();
+    }
+
+    BulkRenderingPlan get(RenderedMailKey key) {
+        return plans.get(key);
+    }
+
+    void put(RenderedMailKey key, BulkRenderingPlan plan) {
+        plans.put(key.detach(), plan);
+    }
+}
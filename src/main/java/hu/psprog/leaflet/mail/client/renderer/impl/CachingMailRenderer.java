@@ -0,0 +1,62 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.client.renderer.MailRenderer;
+import hu.psprog.leaflet.mail.domain.Mail;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * {@link MailRenderer} decorator returning the rendered content from {@link RenderedMailCache} if available,
+ * so mails of the same (opted-in) template and identical content are rendered only once.
+ * Mails of other templates are passed to the delegate renderer as-is.
+ *
+ * @author Peter Smith
+ */
+public class CachingMailRenderer implements MailRenderer {
+
+    private final MailRenderer delegate;
+    private final RenderedMailCache renderedMailCache;
+
+    public CachingMailRenderer(MailRenderer delegate, RenderedMailCache renderedMailCache) {
+        this.delegate = delegate;
+        this.renderedMailCache = renderedMailCache;
+    }
+
+    @Override
+    public String renderMail(Mail mail) {
+
+        if (!renderedMailCache.isCacheable(mail.getTemplate())) {
+            return delegate.renderMail(mail);
+        }
+
+        RenderedMailKey key = RenderedMailKey.of(mail);
+        String content = renderedMailCache.get(key);
+        if (Objects.isNull(content)) {
+            content = delegate.renderMail(mail);
+            renderedMailCache.put(key, content);
+        }
+
+        return content;
+    }
+
+    @Override
+    public void renderMail(Mail mail, Writer writer) throws IOException {
+
+        if (renderedMailCache.isCacheable(mail.getTemplate())) {
+            writer.write(renderMail(mail));
+        } else {
+            delegate.renderMail(mail, writer);
+        }
+    }
+
+    /**
+     * Returns the decorated {@link MailRenderer}.
+     *
+     * @return decorated renderer
+     */
+    public MailRenderer getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,89 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.ICacheEntryValidityChecker;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Size-bounded Thymeleaf {@link ICache} implementation evicting the least recently used entry on overflow.
+ * Entries are checked against the given {@link ICacheEntryValidityChecker} (if any) on retrieval,
+ * so expiring entries (e.g. by template resolver TTL) are evicted as well.
+ *
+ * @param <K> type of the cache key
+ * @param <V> type of the cached value
+ * @author Peter Smith
+ */
+public class LruCache<K, V> implements ICache<K, V> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final ICacheEntryValidityChecker<? super K, ? super V> validityChecker;
+    private final Map<K, CacheEntry<V>> entries;
+
+    public LruCache(int maxSize, ICacheEntryValidityChecker<? super K, ? super V> validityChecker) {
+        this.validityChecker = validityChecker;
+        this.entries = new LinkedHashMap<>(maxSize, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value));
+    }
+
+    @Override
+    public V get(K key) {
+        return get(key, validityChecker);
+    }
+
+    @Override
+    public synchronized V get(K key, ICacheEntryValidityChecker<? super K, ? super V> validityChecker) {
+
+        CacheEntry<V> entry = entries.get(key);
+        if (Objects.isNull(entry)) {
+            return null;
+        }
+
+        if (Objects.nonNull(validityChecker) && !validityChecker.checkIsValueStillValid(key, entry.value, entry.creationTimestamp)) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized void clearKey(K key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized Set<K> keySet() {
+        return new HashSet<>(entries.keySet());
+    }
+
+    private static final class CacheEntry<V> {
+
+        private final V value;
+        private final long creationTimestamp;
+
+        private CacheEntry(V value) {
+            this.value = value;
+            this.creationTimestamp = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import org.thymeleaf.cache.AbstractCacheManager;
+import org.thymeleaf.cache.ExpressionCacheKey;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.engine.TemplateModel;
+
+/**
+ * Thymeleaf cache manager backed by size-bounded {@link LruCache} instances.
+ * Parsed template cache is bounded by the given max size, expression cache uses Thymeleaf's default size.
+ * Validity of parsed templates (e.g. TTL configured on the template resolver) is checked using Thymeleaf's default validity checker.
+ *
+ * @author Peter Smith
+ */
+public class LruTemplateCacheManager extends AbstractCacheManager {
+
+    private final int templateCacheMaxSize;
+
+    public LruTemplateCacheManager(int templateCacheMaxSize) {
+        this.templateCacheMaxSize = templateCacheMaxSize;
+    }
+
+    @Override
+    protected ICache<TemplateCacheKey, TemplateModel> initializeTemplateCache() {
+        return new LruCache<>(templateCacheMaxSize, StandardCacheManager.DEFAULT_TEMPLATE_CACHE_VALIDITY_CHECKER);
+    }
+
+    @Override
+    protected ICache<ExpressionCacheKey, Object> initializeExpressionCache() {
+        return new LruCache<>(StandardCacheManager.DEFAULT_EXPRESSION_CACHE_MAX_SIZE, StandardCacheManager.DEFAULT_EXPRESSION_CACHE_VALIDITY_CHECKER);
+    }
+}
@@ -0,0 +1,143 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.config.RenderCacheConfigurationProperties;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Weight-bounded LRU cache of rendered mail content, keyed by template name and content map.
+ * Weight of an entry is the length of the rendered content, least recently used entries are evicted
+ * when the total weight exceeds the configured maximum (content heavier than the maximum itself is never cached).
+ * Only templates opted-in by configuration are cached. Keeps hit, miss and eviction statistics.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class RenderedMailCache {
+
+    private static final String ALL_TEMPLATES = "*";
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final RenderCacheConfigurationProperties renderCacheConfigurationProperties;
+    private final Map<RenderedMailKey, String> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private long weight;
+
+    @Autowired
+    public RenderedMailCache(RenderCacheConfigurationProperties renderCacheConfigurationProperties) {
+        this.renderCacheConfigurationProperties = renderCacheConfigurationProperties;
+    }
+
+    public boolean isEnabled() {
+        return renderCacheConfigurationProperties.isEnabled();
+    }
+
+    /**
+     * Checks whether rendered content of the given template may be cached.
+     *
+     * @param template name of the template
+     * @return {@code true} if caching is enabled and the template is opted-in, {@code false} otherwise
+     */
+    public boolean isCacheable(String template) {
+        return isEnabled()
+                && Objects.nonNull(template)
+                && (renderCacheConfigurationProperties.getTemplates().contains(template)
+                    || renderCacheConfigurationProperties.getTemplates().contains(ALL_TEMPLATES));
+    }
+
+    /**
+     * Removes every cached entry of the given template.
+     *
+     * @param template name of the template
+     */
+    public synchronized void invalidate(String template) {
+
+        Iterator<Map.Entry<RenderedMailKey, String>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<RenderedMailKey, String> entry = iterator.next();
+            if (Objects.equals(template, entry.getKey().getTemplate())) {
+                weight -= entry.getValue().length();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes every cached entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    synchronized String get(RenderedMailKey key) {
+
+        String content = entries.get(key);
+        if (Objects.isNull(content)) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+
+        return content;
+    }
+
+    synchronized void put(RenderedMailKey key, String content) {
+
+        if (content.length() > renderCacheConfigurationProperties.getMaxWeight()) {
+            return;
+        }
+
+        String previousContent = entries.put(key.detach(), content);
+        weight += content.length() - (Objects.isNull(previousContent) ? 0 : previousContent.length());
+
+        Iterator<String> iterator = entries.values().iterator();
+        while (weight > renderCacheConfigurationProperties.getMaxWeight()) {
+            weight -= iterator.next().length();
+            iterator.remove();
+            evictionCount.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("size", getSize())
+                .append("weight", getWeight())
+                .append("hitCount", getHitCount())
+                .append("missCount", getMissCount())
+                .append("evictionCount", getEvictionCount())
+                .toString();
+    }
+}
@@ -0,0 +1,91 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.domain.Mail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache key of rendered content ({@link RenderedMailCache}) and bulk rendering plans ({@link BulkMailRenderer}):
+ * template name and content map of a mail.
+ * Hash code is computed once, on creation. Lookup keys refer to the content map of the mail as-is,
+ * while keys stored in the cache hold a copy of it, so later changes of the original map do not affect cached entries.
+ *
+ * @author Peter Smith
+ */
+final class RenderedMailKey {
+
+    private final String template;
+    private final Map<String, Object> contentMap;
+    private final int hash;
+
+    private RenderedMailKey(String template, Map<String, Object> contentMap, int hash) {
+        this.template = template;
+        this.contentMap = contentMap;
+        this.hash = hash;
+    }
+
+    /**
+     * Creates a lookup key of the given mail.
+     *
+     * @param mail {@link Mail} to create key of
+     * @return created {@link RenderedMailKey}
+     */
+    static RenderedMailKey of(Mail mail) {
+        return of(mail.getTemplate(), mail.getContentMap());
+    }
+
+    /**
+     * Creates a lookup key of the given template and content map.
+     *
+     * @param template name of the template
+     * @param contentMap content map (may be null)
+     * @return created {@link RenderedMailKey}
+     */
+    static RenderedMailKey of(String template, Map<String, Object> contentMap) {
+
+        Map<String, Object> keyContentMap = Objects.isNull(contentMap)
+                ? Collections.emptyMap()
+                : contentMap;
+
+        return new RenderedMailKey(template, keyContentMap, 31 * Objects.hashCode(template) + keyContentMap.hashCode());
+    }
+
+    /**
+     * Creates a copy of this key detached from the original content map.
+     *
+     * @return detached copy of the key
+     */
+    RenderedMailKey detach() {
+        return new RenderedMailKey(template, Collections.unmodifiableMap(new HashMap<>(contentMap)), hash);
+    }
+
+    String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        RenderedMailKey that = (RenderedMailKey) o;
+
+        return hash == that.hash
+                && Objects.equals(template, that.template)
+                && contentMap.equals(that.contentMap);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,159 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.config.TemplateConfigurationProperties;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Watches the external template directory (if configured) and invalidates cached parsed templates
+ * cached rendered content ({@link RenderedMailCache}) and bulk rendering plans ({@link BulkRenderingPlanCache}) on changes.
+ * A change of a template file clears the cache entries of the affected template,
+ * while overflowing change events clear the whole cache.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class TemplateChangeWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplateChangeWatcher.class);
+
+    private static final String THREAD_NAME = "mail-template-watcher";
+    private static final String TEMPLATE_SUFFIX = ".html";
+    private static final String TEMPLATE_PATH_SEPARATOR = "/";
+
+    private final TemplateEngine templateEngine;
+    private final TemplateConfigurationProperties templateConfigurationProperties;
+    private final RenderedMailCache renderedMailCache;
+    private final BulkRenderingPlanCache bulkRenderingPlanCache;
+
+    private WatchService watchService;
+    private Path templateDirectory;
+
+    @Autowired
+    public TemplateChangeWatcher(@Qualifier("emailTemplateEngine") TemplateEngine templateEngine,
+                                 TemplateConfigurationProperties templateConfigurationProperties, RenderedMailCache renderedMailCache,
+                                 BulkRenderingPlanCache bulkRenderingPlanCache) {
+        this.templateEngine = templateEngine;
+        this.templateConfigurationProperties = templateConfigurationProperties;
+        this.renderedMailCache = renderedMailCache;
+        this.bulkRenderingPlanCache = bulkRenderingPlanCache;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+
+        if (!isWatchingRequired()) {
+            return;
+        }
+
+        templateDirectory = Paths.get(templateConfigurationProperties.getExternalTemplatePath()).toAbsolutePath();
+        watchService = FileSystems.getDefault().newWatchService();
+        registerRecursively(templateDirectory);
+
+        Thread watcherThread = new Thread(this::watch, THREAD_NAME);
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        LOGGER.info("Watching external template directory [{}] for changes", templateDirectory);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (Objects.nonNull(watchService)) {
+            watchService.close();
+        }
+    }
+
+    private boolean isWatchingRequired() {
+        return (templateConfigurationProperties.isCacheEnabled() || renderedMailCache.isEnabled() || bulkRenderingPlanCache.isEnabled())
+                && templateConfigurationProperties.isWatchExternalTemplatePath()
+                && StringUtils.isNotBlank(templateConfigurationProperties.getExternalTemplatePath());
+    }
+
+    private void watch() {
+
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                Path directory = (Path) watchKey.watchable();
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    handleEvent(directory, event);
+                }
+                watchKey.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.debug("Template watcher stopped");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleEvent(Path directory, WatchEvent<?> event) {
+
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            LOGGER.info("Too many template changes, clearing template cache");
+            templateEngine.clearTemplateCache();
+            renderedMailCache.clear();
+            bulkRenderingPlanCache.clear();
+            return;
+        }
+
+        Path changedPath = directory.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changedPath)) {
+            registerNewDirectory(changedPath);
+        } else if (changedPath.getFileName().toString().endsWith(TEMPLATE_SUFFIX)) {
+            String templateName = toTemplateName(changedPath);
+            LOGGER.info("Template [{}] changed, invalidating cached template", templateName);
+            templateEngine.clearTemplateCacheFor(templateName);
+            renderedMailCache.invalidate(templateName);
+            bulkRenderingPlanCache.invalidate(templateName);
+        }
+    }
+
+    private String toTemplateName(Path templatePath) {
+
+        String relativePath = StringUtils.join(templateDirectory.relativize(templatePath), TEMPLATE_PATH_SEPARATOR);
+
+        return StringUtils.removeEnd(relativePath, TEMPLATE_SUFFIX);
+    }
+
+    private void registerNewDirectory(Path directory) {
+        try {
+            registerRecursively(directory);
+        } catch (IOException e) {
+            LOGGER.error("Failed to watch new template directory [{}]", directory, e);
+        }
+    }
+
+    private void registerRecursively(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.stereotype.Component;
 import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.context.Context;
 
+import java.io.Writer;
+
 /**
  * {@link MailRenderer} implementation capable of Thymeleaf-template based mail rendering.
  *
@@ -25,10 +27,19 @@ public class ThymeleafMailRenderer implements MailRenderer {
 
     @Override
     public String renderMail(Mail mail) {
+        return templateEngine.process(mail.getTemplate(), createContext(mail));
+    }
+
+    @Override
+    public void renderMail(Mail mail, Writer writer) {
+        templateEngine.process(mail.getTemplate(), createContext(mail), writer);
+    }
+
+    private Context createContext(Mail mail) {
 
         Context context = new Context();
         context.setVariables(mail.getContentMap());
 
-        return templateEngine.process(mail.getTemplate(), context);
+        return context;
     }
 }
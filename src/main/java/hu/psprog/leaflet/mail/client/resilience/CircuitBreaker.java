@@ -0,0 +1,142 @@
+package hu.psprog.leaflet.mail.client.resilience;
+
+import hu.psprog.leaflet.mail.config.CircuitBreakerConfigurationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker protecting the SMTP server (and the callers) from deliveries doomed to fail.
+ * After the configured number of consecutive server failures the circuit opens, and deliveries are failed fast
+ * until the open duration elapses. Then a single trial delivery is let through (half-open state),
+ * which either closes the circuit on success or opens it again on failure.
+ * Callers must report the outcome of every permitted delivery via {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final CircuitBreakerConfigurationProperties circuitBreakerConfigurationProperties;
+    private final LongSupplier clock;
+
+    private CircuitBreakerState state = CircuitBreakerState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInProgress;
+
+    @Autowired
+    public CircuitBreaker(CircuitBreakerConfigurationProperties circuitBreakerConfigurationProperties) {
+        this(circuitBreakerConfigurationProperties, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(CircuitBreakerConfigurationProperties circuitBreakerConfigurationProperties, LongSupplier clock) {
+        this.circuitBreakerConfigurationProperties = circuitBreakerConfigurationProperties;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks if a delivery can be attempted.
+     *
+     * @return {@code true} if the delivery is permitted, {@code false} if it should be failed fast
+     */
+    public boolean tryAcquirePermission() {
+
+        if (!circuitBreakerConfigurationProperties.isEnabled()) {
+            return true;
+        }
+
+        synchronized (this) {
+            boolean permitted;
+            switch (state) {
+                case OPEN:
+                    permitted = clock.getAsLong() - openedAt >= circuitBreakerConfigurationProperties.getOpenDuration();
+                    if (permitted) {
+                        LOGGER.info("Circuit breaker open duration elapsed, letting trial delivery through");
+                        state = CircuitBreakerState.HALF_OPEN;
+                        trialInProgress = true;
+                    }
+                    break;
+                case HALF_OPEN:
+                    permitted = !trialInProgress;
+                    trialInProgress = true;
+                    break;
+                case CLOSED:
+                default:
+                    permitted = true;
+                    break;
+            }
+
+            return permitted;
+        }
+    }
+
+    /**
+     * Records a delivery reaching the SMTP server successfully.
+     */
+    public void onSuccess() {
+
+        if (!circuitBreakerConfigurationProperties.isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (state != CircuitBreakerState.CLOSED) {
+                LOGGER.info("SMTP server is available again, closing circuit breaker");
+            }
+            state = CircuitBreakerState.CLOSED;
+            consecutiveFailures = 0;
+            trialInProgress = false;
+        }
+    }
+
+    /**
+     * Records a delivery failed because of an unavailable or malfunctioning SMTP server.
+     */
+    public void onFailure() {
+
+        if (!circuitBreakerConfigurationProperties.isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            consecutiveFailures++;
+            trialInProgress = false;
+            if (state == CircuitBreakerState.HALF_OPEN
+                    || (state == CircuitBreakerState.CLOSED && consecutiveFailures >= circuitBreakerConfigurationProperties.getFailureThreshold())) {
+                LOGGER.warn("SMTP server is considered unavailable after {} consecutive failures, opening circuit breaker", consecutiveFailures);
+                state = CircuitBreakerState.OPEN;
+                openedAt = clock.getAsLong();
+            }
+        }
+    }
+
+    /**
+     * Records a permitted delivery which did not reach the SMTP server (e.g. it failed during rendering).
+     * Does not change the state of the circuit, only releases the trial permission in half-open state.
+     */
+    public void onIgnored() {
+
+        if (!circuitBreakerConfigurationProperties.isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            trialInProgress = false;
+        }
+    }
+
+    /**
+     * Returns the current state of the circuit.
+     *
+     * @return current {@link CircuitBreakerState}
+     */
+    public synchronized CircuitBreakerState getState() {
+        return state;
+    }
+}
@@ -0,0 +1,19 @@
+package hu.psprog.leaflet.mail.client.resilience;
+
+import org.springframework.mail.MailException;
+
+/**
+ * Exception thrown when a delivery is not attempted as the circuit of {@link CircuitBreaker} is open.
+ *
+ * @author Peter Smith
+ */
+public class CircuitBreakerOpenException extends MailException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MESSAGE = "SMTP server is considered unavailable, delivery is not attempted";
+
+    public CircuitBreakerOpenException() {
+        super(MESSAGE);
+    }
+}
@@ -0,0 +1,24 @@
+package hu.psprog.leaflet.mail.client.resilience;
+
+/**
+ * Possible states of {@link CircuitBreaker}.
+ *
+ * @author Peter Smith
+ */
+public enum CircuitBreakerState {
+
+    /**
+     * SMTP server is considered healthy, deliveries are let through.
+     */
+    CLOSED,
+
+    /**
+     * SMTP server is considered unavailable, deliveries are failed fast.
+     */
+    OPEN,
+
+    /**
+     * Open duration has elapsed, a single trial delivery is let through to check the SMTP server.
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,153 @@
+package hu.psprog.leaflet.mail.client.resilience;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitExceededException;
+import hu.psprog.leaflet.mail.config.RetryConfigurationProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.stereotype.Component;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mail delivery retry policy.
+ * Decides whether a failed delivery is worth retrying and how long to wait before the next attempt.
+ * Communication failures, transient (4xx) SMTP replies and unknown failures are retried,
+ * while permanent (5xx) SMTP replies and invalid recipients are not.
+ * Waiting time grows exponentially with the number of attempts and is randomized (jitter)
+ * to avoid synchronized retry storms; after a transient SMTP reply, the configured minimum delay is respected.
+ *
+ * @author Peter Smith
+ */
+@Component
+public class RetryPolicy {
+
+    private static final int TRANSIENT_REPLY_CODE_CLASS = 4;
+    private static final int REPLY_CODE_CLASS_DIVISOR = 100;
+
+    private final RetryConfigurationProperties retryConfigurationProperties;
+
+    @Autowired
+    public RetryPolicy(RetryConfigurationProperties retryConfigurationProperties) {
+        this.retryConfigurationProperties = retryConfigurationProperties;
+    }
+
+    /**
+     * Returns the maximum number of delivery attempts (including the first one).
+     *
+     * @return maximum number of delivery attempts
+     */
+    public int getMaxAttempts() {
+        return Math.max(1, retryConfigurationProperties.getMaxAttempts());
+    }
+
+    /**
+     * Checks if a delivery failed with given exception is worth retrying.
+     *
+     * @param failure cause of the failed delivery
+     * @return {@code true} if the delivery should be retried
+     */
+    public boolean isRetryable(Exception failure) {
+
+        Exception rootFailure = unwrap(failure);
+        Integer replyCode = getReplyCode(rootFailure);
+
+        boolean retryable;
+        if (rootFailure instanceof CircuitBreakerOpenException || rootFailure instanceof RateLimitExceededException) {
+            retryable = false;
+        } else if (Objects.nonNull(replyCode)) {
+            retryable = isTransientReply(replyCode);
+        } else {
+            retryable = !(rootFailure instanceof SendFailedException);
+        }
+
+        return retryable;
+    }
+
+    /**
+     * Checks if given exception indicates an unavailable or malfunctioning SMTP server
+     * (communication failure or transient SMTP reply), to be recorded by {@link CircuitBreaker}.
+     *
+     * @param failure cause of the failed delivery
+     * @return {@code true} if the failure is caused by the SMTP server
+     */
+    public boolean isServerFailure(Exception failure) {
+
+        Exception rootFailure = unwrap(failure);
+        Integer replyCode = getReplyCode(rootFailure);
+
+        boolean serverFailure;
+        if (Objects.nonNull(replyCode)) {
+            serverFailure = isTransientReply(replyCode);
+        } else {
+            serverFailure = rootFailure instanceof MessagingException && !(rootFailure instanceof SendFailedException);
+        }
+
+        return serverFailure;
+    }
+
+    /**
+     * Calculates the time to wait before the next attempt.
+     *
+     * @param failedAttempts number of failed attempts so far
+     * @param failure cause of the last failed attempt
+     * @return time to wait in milliseconds
+     */
+    public long getBackoffDelay(int failedAttempts, Exception failure) {
+
+        double exponentialBackoff = retryConfigurationProperties.getInitialBackoff()
+                * Math.pow(retryConfigurationProperties.getMultiplier(), Math.max(0, failedAttempts - 1));
+        long backoff = (long) Math.min(exponentialBackoff, retryConfigurationProperties.getMaxBackoff());
+        long jitter = (long) (backoff * retryConfigurationProperties.getJitter() * ThreadLocalRandom.current().nextDouble());
+        long delay = backoff - jitter;
+
+        Integer replyCode = getReplyCode(unwrap(failure));
+        if (Objects.nonNull(replyCode) && isTransientReply(replyCode)) {
+            delay = Math.max(delay, retryConfigurationProperties.getTransientReplyDelay());
+        }
+
+        return delay;
+    }
+
+    private Exception unwrap(Exception failure) {
+
+        Exception rootFailure = failure;
+        while (true) {
+            if (rootFailure instanceof MailException && rootFailure.getCause() instanceof Exception) {
+                rootFailure = (Exception) rootFailure.getCause();
+            } else if (rootFailure instanceof MailSendException && ((MailSendException) rootFailure).getMessageExceptions().length > 0) {
+                rootFailure = ((MailSendException) rootFailure).getMessageExceptions()[0];
+            } else {
+                break;
+            }
+        }
+
+        return rootFailure;
+    }
+
+    private Integer getReplyCode(Exception failure) {
+
+        Integer replyCode = null;
+        if (failure instanceof SMTPSendFailedException) {
+            replyCode = ((SMTPSendFailedException) failure).getReturnCode();
+        } else if (failure instanceof SMTPAddressFailedException) {
+            replyCode = ((SMTPAddressFailedException) failure).getReturnCode();
+        } else if (failure instanceof SMTPSenderFailedException) {
+            replyCode = ((SMTPSenderFailedException) failure).getReturnCode();
+        } else if (failure instanceof SendFailedException) {
+            replyCode = getReplyCode(((SendFailedException) failure).getNextException());
+        }
+
+        return replyCode;
+    }
+
+    private boolean isTransientReply(int replyCode) {
+        return replyCode / REPLY_CODE_CLASS_DIVISOR == TRANSIENT_REPLY_CODE_CLASS;
+    }
+}
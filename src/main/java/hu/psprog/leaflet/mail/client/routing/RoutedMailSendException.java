@@ -0,0 +1,28 @@
+package hu.psprog.leaflet.mail.client.routing;
+
+import org.springframework.mail.MailSendException;
+
+import java.util.Map;
+
+/**
+ * {@link MailSendException} thrown by {@link SMTPRouter} if any of the messages handed over to the endpoints failed.
+ * Besides the failed messages, it holds the endpoint each message has been sent through,
+ * so the endpoint of partially delivered (and of the successfully sent) messages is not lost.
+ *
+ * @author Peter Smith
+ */
+public class RoutedMailSendException extends MailSendException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient SMTPRoutingResult routingResult;
+
+    public RoutedMailSendException(Map<Object, Exception> failedMessages, SMTPRoutingResult routingResult) {
+        super(failedMessages);
+        this.routingResult = routingResult;
+    }
+
+    public SMTPRoutingResult getRoutingResult() {
+        return routingResult;
+    }
+}
@@ -0,0 +1,20 @@
+package hu.psprog.leaflet.mail.client.routing;
+
+/**
+ * Available SMTP endpoint selection strategies of {@link SMTPRouter}.
+ * Both strategies take the configured weight of the endpoints into account.
+ *
+ * @author Peter Smith
+ */
+public enum RoutingStrategy {
+
+    /**
+     * Endpoint with the least number of outstanding sends (relative to its weight) is selected.
+     */
+    LEAST_OUTSTANDING,
+
+    /**
+     * Endpoint with the lowest expected latency (average latency multiplied by outstanding sends, relative to its weight) is selected.
+     */
+    LATENCY
+}
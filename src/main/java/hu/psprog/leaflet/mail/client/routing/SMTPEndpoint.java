@@ -0,0 +1,142 @@
+package hu.psprog.leaflet.mail.client.routing;
+
+import hu.psprog.leaflet.mail.client.transport.PooledJavaMailSender;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single SMTP endpoint (relay) used by {@link SMTPRouter}, along with its passively tracked routing statistics:
+ * number of outstanding sends, exponentially weighted moving average of send latency and health.
+ * An endpoint becomes unhealthy after the configured number of consecutive connection failures,
+ * and is avoided by the router until the recovery interval elapses.
+ *
+ * @author Peter Smith
+ */
+public class SMTPEndpoint {
+
+    private static final double LATENCY_SMOOTHING_FACTOR = 0.3;
+
+    private final String host;
+    private final int port;
+    private final int weight;
+    private final JavaMailSender javaMailSender;
+    private final boolean ownedSender;
+
+    private final AtomicInteger outstandingSends = new AtomicInteger();
+    private final AtomicLong averageLatencyBits = new AtomicLong(Double.doubleToLongBits(0.0));
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long unhealthyUntil;
+
+    /**
+     * Creates a new {@link SMTPEndpoint}.
+     *
+     * @param host SMTP host
+     * @param port SMTP port
+     * @param weight relative weight of the endpoint (endpoints with higher weight receive more sends)
+     * @param javaMailSender {@link JavaMailSender} sending to this endpoint
+     * @param ownedSender whether the lifecycle of the given {@link JavaMailSender} is managed by the endpoint
+     */
+    public SMTPEndpoint(String host, int port, int weight, JavaMailSender javaMailSender, boolean ownedSender) {
+        this.host = host;
+        this.port = port;
+        this.weight = Math.max(1, weight);
+        this.javaMailSender = javaMailSender;
+        this.ownedSender = ownedSender;
+    }
+
+    public String getName() {
+        return host + ":" + port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public JavaMailSender getJavaMailSender() {
+        return javaMailSender;
+    }
+
+    public int getOutstandingSends() {
+        return outstandingSends.get();
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the send latency of this endpoint.
+     *
+     * @return average send latency in nanoseconds
+     */
+    public double getAverageLatency() {
+        return Double.longBitsToDouble(averageLatencyBits.get());
+    }
+
+    /**
+     * Checks if the endpoint is considered healthy at the given time.
+     *
+     * @param currentTimeMillis current time in milliseconds
+     * @return {@code true} if the endpoint is healthy, or it has been avoided for long enough to be tried again
+     */
+    public boolean isHealthy(long currentTimeMillis) {
+        return currentTimeMillis >= unhealthyUntil;
+    }
+
+    void open() {
+        if (ownedSender && javaMailSender instanceof PooledJavaMailSender) {
+            ((PooledJavaMailSender) javaMailSender).initialize();
+        }
+    }
+
+    void close() {
+        if (ownedSender && javaMailSender instanceof PooledJavaMailSender) {
+            ((PooledJavaMailSender) javaMailSender).shutdown();
+        }
+    }
+
+    void onSendStarted() {
+        outstandingSends.incrementAndGet();
+    }
+
+    void onSendCompleted(long latencyNanos) {
+
+        outstandingSends.decrementAndGet();
+        consecutiveFailures.set(0);
+        unhealthyUntil = 0;
+        averageLatencyBits.getAndUpdate(bits -> {
+            double averageLatency = Double.longBitsToDouble(bits);
+            double updatedLatency = averageLatency == 0.0
+                    ? latencyNanos
+                    : averageLatency + LATENCY_SMOOTHING_FACTOR * (latencyNanos - averageLatency);
+            return Double.doubleToLongBits(updatedLatency);
+        });
+    }
+
+    void onConnectionFailure(int failureThreshold, long recoveryUntilMillis) {
+
+        outstandingSends.decrementAndGet();
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            unhealthyUntil = recoveryUntilMillis;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("host", host)
+                .append("port", port)
+                .append("weight", weight)
+                .append("outstandingSends", outstandingSends.get())
+                .append("averageLatency", getAverageLatency())
+                .append("healthy", isHealthy(System.currentTimeMillis()))
+                .toString();
+    }
+}
@@ -0,0 +1,408 @@
+package hu.psprog.leaflet.mail.client.routing;
+
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitExceededException;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitScope;
+import hu.psprog.leaflet.mail.client.ratelimit.SMTPRateLimiter;
+import hu.psprog.leaflet.mail.client.transport.AsyncJavaMailSender;
+import hu.psprog.leaflet.mail.config.SMTPRoutingConfigurationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Routes outgoing messages between the configured {@link SMTPEndpoint}s.
+ * Endpoint is selected by the configured {@link RoutingStrategy}, preferring healthy endpoints.
+ * If none of the messages could be sent because the selected endpoint could not be connected to (or authenticated with),
+ * sending fails over to the next best endpoint. Once a message has been handed over to an endpoint,
+ * its failure is returned by {@link RoutedMailSendException}, so the same message is never sent through multiple endpoints.
+ * Endpoints having no rate limit permits available are avoided as well; if the selected endpoint cannot provide permits
+ * within the configured maximum delay (see {@link SMTPRateLimiter}), sending moves on to the next best endpoint.
+ * Permits are reserved per chunk of messages, and given back if the chunk could not be sent because of a connection failure.
+ * If all the endpoints send via {@link AsyncJavaMailSender}, messages can be sent without blocking the calling thread as well.
+ *
+ * @author Peter Smith
+ */
+public class SMTPRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SMTPRouter.class);
+
+    private final List<SMTPEndpoint> endpoints;
+    private final SMTPRoutingConfigurationProperties smtpRoutingConfigurationProperties;
+    private final SMTPRateLimiter smtpRateLimiter;
+    private final LongSupplier clock;
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final boolean asyncSendSupported;
+
+    public SMTPRouter(List<SMTPEndpoint> endpoints, SMTPRoutingConfigurationProperties smtpRoutingConfigurationProperties,
+                      SMTPRateLimiter smtpRateLimiter) {
+        this(endpoints, smtpRoutingConfigurationProperties, smtpRateLimiter, System::currentTimeMillis);
+    }
+
+    SMTPRouter(List<SMTPEndpoint> endpoints, SMTPRoutingConfigurationProperties smtpRoutingConfigurationProperties,
+               SMTPRateLimiter smtpRateLimiter, LongSupplier clock) {
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        this.smtpRoutingConfigurationProperties = smtpRoutingConfigurationProperties;
+        this.smtpRateLimiter = smtpRateLimiter;
+        this.clock = clock;
+        this.asyncSendSupported = this.endpoints.stream()
+                .allMatch(endpoint -> endpoint.getJavaMailSender() instanceof AsyncJavaMailSender);
+    }
+
+    @PostConstruct
+    public void start() {
+        endpoints.forEach(SMTPEndpoint::open);
+        LOGGER.info("SMTP routing initialized with endpoints {}", endpoints.stream()
+                .map(SMTPEndpoint::getName)
+                .collect(Collectors.toList()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        endpoints.forEach(SMTPEndpoint::close);
+    }
+
+    /**
+     * Sends given messages through the best available endpoint, failing over to other endpoints on connection failures.
+     * Messages are sent in chunks of at most the rate limit capacity of the selected endpoint,
+     * each chunk being routed separately, so batches exceeding the burst of a single endpoint can still be sent.
+     *
+     * @param mimeMessages messages to send
+     * @return {@link SMTPRoutingResult} holding the name of the endpoint each message has been sent through
+     * @throws MailException failure of the last attempted endpoint if none of the messages could be handed over,
+     * or {@link RateLimitExceededException} if none of the endpoints could be attempted because of rate limiting;
+     * {@link RoutedMailSendException} holding the failed messages along with the endpoints of all handed over messages otherwise
+     */
+    public SMTPRoutingResult send(MimeMessage... mimeMessages) throws MailException {
+
+        Routing routing = new Routing(mimeMessages);
+        SMTPEndpoint endpoint;
+        while ((endpoint = routing.nextEndpoint()) != null) {
+            MimeMessage[] chunk = routing.nextChunk(endpoint);
+            if (!acquireRateLimitPermits(endpoint, chunk.length)) {
+                routing.onRateLimited(endpoint);
+                continue;
+            }
+            try {
+                sendChunk(endpoint, chunk);
+                routing.onChunkSent(endpoint, chunk, null);
+            } catch (MailException e) {
+                routing.onChunkSent(endpoint, chunk, e);
+            }
+        }
+
+        return routing.complete();
+    }
+
+    /**
+     * Sends given messages the same way as {@link #send(MimeMessage...)}, but without blocking the calling thread:
+     * chunks are sent by {@link AsyncJavaMailSender#sendAsync(MimeMessage...)}, and rate limit delays are waited for by a timer.
+     * Only supported if all the endpoints are sending via {@link AsyncJavaMailSender} (see {@link #isAsyncSendSupported()}).
+     *
+     * @param mimeMessages messages to send
+     * @return {@link CompletableFuture} of the {@link SMTPRoutingResult}, failed with the {@link MailException}
+     * {@link #send(MimeMessage...)} would throw
+     */
+    public CompletableFuture<SMTPRoutingResult> sendAsync(MimeMessage... mimeMessages) {
+
+        if (!asyncSendSupported) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException("Not all SMTP endpoints support asynchronous sending"));
+        }
+
+        return sendAsync(new Routing(mimeMessages));
+    }
+
+    /**
+     * Checks if messages can be sent by {@link #sendAsync(MimeMessage...)}.
+     *
+     * @return {@code true} if all the endpoints are sending via {@link AsyncJavaMailSender}, {@code false} otherwise
+     */
+    public boolean isAsyncSendSupported() {
+        return asyncSendSupported;
+    }
+
+    /**
+     * Returns the configured endpoints.
+     *
+     * @return list of {@link SMTPEndpoint}s
+     */
+    public List<SMTPEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    SMTPEndpoint selectEndpoint(Set<SMTPEndpoint> excludedEndpoints) {
+
+        long currentTime = clock.getAsLong();
+        List<SMTPEndpoint> candidates = endpoints.stream()
+                .filter(endpoint -> !excludedEndpoints.contains(endpoint))
+                .collect(Collectors.toList());
+        List<SMTPEndpoint> healthyCandidates = candidates.stream()
+                .filter(endpoint -> endpoint.isHealthy(currentTime))
+                .collect(Collectors.toList());
+        if (!healthyCandidates.isEmpty()) {
+            candidates = healthyCandidates;
+        }
+        List<SMTPEndpoint> availableCandidates = candidates.stream()
+                .filter(endpoint -> smtpRateLimiter.isRelayAvailable(endpoint.getName()))
+                .collect(Collectors.toList());
+        if (!availableCandidates.isEmpty()) {
+            candidates = availableCandidates;
+        }
+
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        // rotating the starting point spreads the load between endpoints with equal score
+        int offset = Math.floorMod(rotation.getAndIncrement(), candidates.size());
+        SMTPEndpoint selectedEndpoint = null;
+        double selectedScore = Double.MAX_VALUE;
+        for (int index = 0; index < candidates.size(); index++) {
+            SMTPEndpoint candidate = candidates.get((offset + index) % candidates.size());
+            double score = calculateScore(candidate);
+            if (score < selectedScore) {
+                selectedEndpoint = candidate;
+                selectedScore = score;
+            }
+        }
+
+        return selectedEndpoint;
+    }
+
+    private CompletableFuture<SMTPRoutingResult> sendAsync(Routing routing) {
+
+        SMTPEndpoint endpoint = routing.nextEndpoint();
+        if (Objects.isNull(endpoint)) {
+            try {
+                return CompletableFuture.completedFuture(routing.complete());
+            } catch (MailException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        MimeMessage[] chunk = routing.nextChunk(endpoint);
+        long delay = reserveRateLimitPermits(endpoint, chunk.length);
+        if (delay == SMTPRateLimiter.RATE_LIMIT_EXCEEDED) {
+            routing.onRateLimited(endpoint);
+            return sendAsync(routing);
+        }
+
+        CompletableFuture<Void> chunkResult = delay > 0
+                ? CompletableFuture.supplyAsync(() -> sendChunkAsync(endpoint, chunk), CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+                        .thenCompose(Function.identity())
+                : sendChunkAsync(endpoint, chunk);
+
+        // chunks complete on the event loop threads of the sender, while sending the next chunk might block on resolving its endpoint
+        return chunkResult.handleAsync((ignored, failure) -> {
+            Throwable cause = unwrap(failure);
+            if (Objects.nonNull(cause) && !(cause instanceof MailException)) {
+                throw new CompletionException(cause);
+            }
+            routing.onChunkSent(endpoint, chunk, (MailException) cause);
+            return routing;
+        }).thenCompose(this::sendAsync);
+    }
+
+    private long reserveRateLimitPermits(SMTPEndpoint endpoint, int messageCount) {
+
+        long delay = smtpRateLimiter.reserveRelay(endpoint.getName(), messageCount);
+        if (delay == SMTPRateLimiter.RATE_LIMIT_EXCEEDED) {
+            LOGGER.warn("Rate limit of SMTP endpoint [{}] exceeded", endpoint.getName());
+        }
+
+        return delay;
+    }
+
+    private boolean acquireRateLimitPermits(SMTPEndpoint endpoint, int messageCount) {
+
+        long delay = reserveRateLimitPermits(endpoint, messageCount);
+        if (delay == SMTPRateLimiter.RATE_LIMIT_EXCEEDED) {
+            return false;
+        }
+
+        boolean acquired = smtpRateLimiter.await(delay);
+        if (!acquired) {
+            smtpRateLimiter.releaseRelay(endpoint.getName(), messageCount);
+        }
+
+        return acquired;
+    }
+
+    private void sendChunk(SMTPEndpoint endpoint, MimeMessage[] chunk) throws MailException {
+
+        endpoint.onSendStarted();
+        long startTime = System.nanoTime();
+        try {
+            endpoint.getJavaMailSender().send(chunk);
+        } catch (RuntimeException e) {
+            onChunkCompleted(endpoint, chunk.length, startTime, e);
+            throw e;
+        }
+        onChunkCompleted(endpoint, chunk.length, startTime, null);
+    }
+
+    private CompletableFuture<Void> sendChunkAsync(SMTPEndpoint endpoint, MimeMessage[] chunk) {
+
+        endpoint.onSendStarted();
+        long startTime = System.nanoTime();
+        CompletableFuture<Void> chunkResult;
+        try {
+            chunkResult = ((AsyncJavaMailSender) endpoint.getJavaMailSender()).sendAsync(chunk);
+        } catch (RuntimeException e) {
+            chunkResult = CompletableFuture.failedFuture(e);
+        }
+
+        return chunkResult.whenComplete((ignored, failure) -> onChunkCompleted(endpoint, chunk.length, startTime, unwrap(failure)));
+    }
+
+    private void onChunkCompleted(SMTPEndpoint endpoint, int messageCount, long startTime, Throwable failure) {
+
+        if (failure instanceof MailException && isConnectionFailure((MailException) failure, messageCount)) {
+            // none of the messages have been sent, so the permits can be used by the next sends
+            smtpRateLimiter.releaseRelay(endpoint.getName(), messageCount);
+            endpoint.onConnectionFailure(smtpRoutingConfigurationProperties.getFailureThreshold(),
+                    clock.getAsLong() + smtpRoutingConfigurationProperties.getRecoveryInterval());
+            LOGGER.warn("Failed to connect to SMTP endpoint [{}]", endpoint.getName(), failure);
+        } else {
+            endpoint.onSendCompleted(System.nanoTime() - startTime);
+        }
+    }
+
+    private void collectFailures(MailException exception, MimeMessage[] chunk, Map<Object, Exception> failedMessages) {
+
+        if (exception instanceof MailSendException) {
+            MailSendException mailSendException = (MailSendException) exception;
+            if (mailSendException.getFailedMessages().isEmpty()) {
+                LOGGER.warn("Batch of {} messages sent, but closing the connection failed", chunk.length, exception);
+            }
+            failedMessages.putAll(mailSendException.getFailedMessages());
+        } else {
+            for (MimeMessage message : chunk) {
+                failedMessages.put(message, exception);
+            }
+        }
+    }
+
+    private double calculateScore(SMTPEndpoint endpoint) {
+
+        double load = (endpoint.getOutstandingSends() + 1.0) / endpoint.getWeight();
+
+        return smtpRoutingConfigurationProperties.getStrategy() == RoutingStrategy.LATENCY
+                ? load * (endpoint.getAverageLatency() + 1.0)
+                : load;
+    }
+
+    private boolean isConnectionFailure(MailException exception, int messageCount) {
+
+        boolean connectionFailure;
+        if (exception instanceof MailAuthenticationException) {
+            connectionFailure = true;
+        } else if (exception instanceof MailSendException) {
+            MailSendException mailSendException = (MailSendException) exception;
+            connectionFailure = mailSendException.getCause() instanceof MessagingException
+                    && mailSendException.getFailedMessages().size() == messageCount;
+        } else {
+            connectionFailure = false;
+        }
+
+        return connectionFailure;
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && Objects.nonNull(failure.getCause())
+                ? failure.getCause()
+                : failure;
+    }
+
+    /**
+     * State of routing the messages of a single send call, chunk by chunk.
+     */
+    private final class Routing {
+
+        private final MimeMessage[] mimeMessages;
+        private final Map<MimeMessage, String> smtpEndpoints = new IdentityHashMap<>();
+        private final Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        private final Set<SMTPEndpoint> attemptedEndpoints = new HashSet<>();
+
+        private MailException lastFailure;
+        private int processedCount;
+
+        private Routing(MimeMessage[] mimeMessages) {
+            this.mimeMessages = mimeMessages;
+        }
+
+        private SMTPEndpoint nextEndpoint() {
+            return processedCount < mimeMessages.length
+                    ? selectEndpoint(attemptedEndpoints)
+                    : null;
+        }
+
+        private MimeMessage[] nextChunk(SMTPEndpoint endpoint) {
+            int chunkSize = Math.min(mimeMessages.length - processedCount, smtpRateLimiter.getRelayCapacity(endpoint.getName()));
+            return Arrays.copyOfRange(mimeMessages, processedCount, processedCount + chunkSize);
+        }
+
+        private void onRateLimited(SMTPEndpoint endpoint) {
+            attemptedEndpoints.add(endpoint);
+            if (Objects.isNull(lastFailure)) {
+                lastFailure = new RateLimitExceededException(RateLimitScope.RELAY, endpoint.getName());
+            }
+        }
+
+        private void onChunkSent(SMTPEndpoint endpoint, MimeMessage[] chunk, MailException failure) {
+
+            if (Objects.nonNull(failure)) {
+                if (isConnectionFailure(failure, chunk.length)) {
+                    attemptedEndpoints.add(endpoint);
+                    lastFailure = failure;
+                    return;
+                }
+                collectFailures(failure, chunk, failedMessages);
+            }
+
+            for (MimeMessage message : chunk) {
+                smtpEndpoints.put(message, endpoint.getName());
+            }
+            processedCount += chunk.length;
+        }
+
+        private SMTPRoutingResult complete() throws MailException {
+
+            if (processedCount == 0) {
+                throw lastFailure;
+            }
+            for (int index = processedCount; index < mimeMessages.length; index++) {
+                failedMessages.put(mimeMessages[index], lastFailure);
+            }
+            SMTPRoutingResult routingResult = new SMTPRoutingResult(smtpEndpoints);
+            if (!failedMessages.isEmpty()) {
+                throw new RoutedMailSendException(failedMessages, routingResult);
+            }
+
+            return routingResult;
+        }
+    }
+}
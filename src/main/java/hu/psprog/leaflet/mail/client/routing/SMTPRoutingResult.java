@@ -0,0 +1,40 @@
+package hu.psprog.leaflet.mail.client.routing;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.mail.internet.MimeMessage;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Result of sending messages through {@link SMTPRouter}: the endpoint each message has been handed over to.
+ * As large batches are sent in multiple chunks, messages of the same batch may be sent through different endpoints.
+ *
+ * @author Peter Smith
+ */
+public class SMTPRoutingResult {
+
+    private final Map<MimeMessage, String> smtpEndpoints;
+
+    public SMTPRoutingResult(Map<MimeMessage, String> smtpEndpoints) {
+        this.smtpEndpoints = Collections.unmodifiableMap(new IdentityHashMap<>(smtpEndpoints));
+    }
+
+    /**
+     * Returns the name of the endpoint the given message has been handed over to.
+     *
+     * @param message sent {@link MimeMessage}
+     * @return name of the endpoint, or {@code null} if the message has not been handed over to any of the endpoints
+     */
+    public String getSMTPEndpoint(MimeMessage message) {
+        return smtpEndpoints.get(message);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("smtpEndpoints", smtpEndpoints.values())
+                .toString();
+    }
+}
@@ -0,0 +1,25 @@
+package hu.psprog.leaflet.mail.client.transport;
+
+import org.springframework.mail.MailException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import javax.mail.internet.MimeMessage;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link JavaMailSender} extension able to send messages without occupying the calling thread until the SMTP session completes.
+ *
+ * @author Peter Smith
+ */
+public interface AsyncJavaMailSender extends JavaMailSender {
+
+    /**
+     * Sends the given messages asynchronously.
+     * Returned future fails with the same {@link MailException} the blocking {@link #send(MimeMessage...)} call would throw
+     * (wrapped into a {@link java.util.concurrent.CompletionException} for the dependent stages).
+     *
+     * @param mimeMessages messages to send
+     * @return {@link CompletableFuture} completed when the SMTP session of the messages is over
+     */
+    CompletableFuture<Void> sendAsync(MimeMessage... mimeMessages);
+}
@@ -0,0 +1,131 @@
+package hu.psprog.leaflet.mail.client.transport;
+
+import hu.psprog.leaflet.mail.config.SMTPConfigurationProperties;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.MimeMessage;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link JavaMailSenderImpl} extension sending messages via pooled, persistent SMTP connections.
+ * Instead of opening, authenticating and closing a connection for every send call,
+ * connections are borrowed from and returned to an {@link SMTPTransportPool}.
+ * A batch of messages is sent via a single connection, switching to another one whenever the max messages limit is reached.
+ *
+ * @author Peter Smith
+ */
+public class PooledJavaMailSender extends JavaMailSenderImpl {
+
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+    private static final String MAIL_SERVER_CONNECTION_FAILED = "Mail server connection failed";
+
+    private final SMTPConfigurationProperties smtpConfigurationProperties;
+    private SMTPTransportPool transportPool;
+
+    public PooledJavaMailSender(SMTPConfigurationProperties smtpConfigurationProperties) {
+        this.smtpConfigurationProperties = smtpConfigurationProperties;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        transportPool = new SMTPTransportPool(this::connectTransport, smtpConfigurationProperties);
+        transportPool.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transportPool.shutdown();
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) {
+
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport pooledTransport = null;
+
+        try {
+            for (int index = 0; index < mimeMessages.length; index++) {
+
+                if (pooledTransport == null) {
+                    pooledTransport = borrowTransport(mimeMessages, originalMessages, index, failedMessages);
+                }
+
+                try {
+                    sendMessage(pooledTransport, mimeMessages[index]);
+                } catch (SendFailedException e) {
+                    failedMessages.put(getOriginalMessage(mimeMessages, originalMessages, index), e);
+                } catch (MessagingException | RuntimeException e) {
+                    failedMessages.put(getOriginalMessage(mimeMessages, originalMessages, index), e);
+                    transportPool.release(pooledTransport, false);
+                    pooledTransport = null;
+                }
+
+                if (pooledTransport != null && transportPool.isExhausted(pooledTransport)) {
+                    // recycle the connection within a batch as well, remaining messages are sent via a new one
+                    transportPool.release(pooledTransport, true);
+                    pooledTransport = null;
+                }
+            }
+        } finally {
+            if (pooledTransport != null) {
+                transportPool.release(pooledTransport, true);
+            }
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    private PooledTransport borrowTransport(MimeMessage[] mimeMessages, Object[] originalMessages, int fromIndex,
+                                            Map<Object, Exception> failedMessages) {
+
+        try {
+            return transportPool.borrow();
+        } catch (AuthenticationFailedException e) {
+            throw new MailAuthenticationException(e);
+        } catch (MessagingException e) {
+            for (int index = fromIndex; index < mimeMessages.length; index++) {
+                failedMessages.put(getOriginalMessage(mimeMessages, originalMessages, index), e);
+            }
+            throw new MailSendException(MAIL_SERVER_CONNECTION_FAILED, e, failedMessages);
+        }
+    }
+
+    private void sendMessage(PooledTransport pooledTransport, MimeMessage mimeMessage) throws MessagingException {
+
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            // preserve explicitly specified message id, as it might be changed by saveChanges
+            mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+
+        Address[] addresses = mimeMessage.getAllRecipients();
+        pooledTransport.getTransport().sendMessage(mimeMessage, addresses != null
+                ? addresses
+                : new Address[0]);
+        pooledTransport.recordMessageSent();
+    }
+
+    private Object getOriginalMessage(MimeMessage[] mimeMessages, Object[] originalMessages, int index) {
+        return originalMessages != null
+                ? originalMessages[index]
+                : mimeMessages[index];
+    }
+}
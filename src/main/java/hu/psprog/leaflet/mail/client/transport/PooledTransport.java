@@ -0,0 +1,55 @@
+package hu.psprog.leaflet.mail.client.transport;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.mail.Transport;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapper for a connected {@link Transport} object managed by {@link SMTPTransportPool}.
+ * Tracks the number of messages sent via the wrapped connection and the time it became idle.
+ *
+ * @author Peter Smith
+ */
+public class PooledTransport {
+
+    private final Transport transport;
+    private int messageCount;
+    private long idleSince;
+
+    PooledTransport(Transport transport) {
+        this.transport = transport;
+        this.idleSince = System.nanoTime();
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Registers a message successfully sent via the wrapped connection.
+     */
+    public void recordMessageSent() {
+        messageCount++;
+    }
+
+    int getMessageCount() {
+        return messageCount;
+    }
+
+    long getIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSince);
+    }
+
+    void markIdle() {
+        idleSince = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("transport", transport)
+                .append("messageCount", messageCount)
+                .toString();
+    }
+}
@@ -0,0 +1,258 @@
+package hu.psprog.leaflet.mail.client.transport;
+
+import hu.psprog.leaflet.mail.config.SMTPConfigurationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of connected (and authenticated) SMTP {@link Transport} objects.
+ * Connections are handed out in LIFO order, so the most recently used (thus most likely still alive) connection is reused first.
+ * A background maintenance task keeps idle connections alive by issuing NOOP commands,
+ * closes connections being idle for longer than the configured idle timeout (above the configured min-idle count)
+ * and re-opens connections if the number of idle connections dropped below min-idle.
+ * Connections are recycled after sending the configured maximum number of messages.
+ *
+ * @author Peter Smith
+ */
+public class SMTPTransportPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SMTPTransportPool.class);
+
+    private static final String THREAD_NAME_PREFIX = "smtp-pool-maintenance-";
+
+    private final TransportFactory transportFactory;
+    private final SMTPConfigurationProperties smtpConfigurationProperties;
+    private final BlockingDeque<PooledTransport> idleTransports;
+    private final Semaphore activePermits;
+
+    private ScheduledExecutorService maintenanceExecutor;
+    private volatile boolean closed;
+
+    public SMTPTransportPool(TransportFactory transportFactory, SMTPConfigurationProperties smtpConfigurationProperties) {
+        this.transportFactory = transportFactory;
+        this.smtpConfigurationProperties = smtpConfigurationProperties;
+        this.idleTransports = new LinkedBlockingDeque<>(Math.max(1, smtpConfigurationProperties.getPoolMaxIdle()));
+        this.activePermits = new Semaphore(smtpConfigurationProperties.getPoolMaxActive(), true);
+    }
+
+    /**
+     * Starts background maintenance of the pool.
+     * First run is executed immediately, pre-opening min-idle number of connections.
+     */
+    public void start() {
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+        threadFactory.setDaemon(true);
+
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintain, 0,
+                smtpConfigurationProperties.getPoolKeepAliveInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops background maintenance and closes all idle connections.
+     * Connections in use are closed when they are returned to the pool.
+     */
+    public void shutdown() {
+
+        closed = true;
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+
+        PooledTransport pooledTransport;
+        while ((pooledTransport = idleTransports.pollFirst()) != null) {
+            close(pooledTransport);
+        }
+    }
+
+    /**
+     * Borrows a connected {@link PooledTransport} from the pool.
+     * Reuses an idle connection if there is any available, otherwise opens a new one.
+     * Borrowed transport must be returned via {@link SMTPTransportPool#release(PooledTransport, boolean)}.
+     *
+     * @return connected {@link PooledTransport}
+     * @throws MessagingException if no connection could be acquired within the configured max-wait time or connecting failed
+     */
+    public PooledTransport borrow() throws MessagingException {
+
+        acquirePermit();
+        try {
+            PooledTransport pooledTransport = pollIdleTransport();
+            if (pooledTransport == null) {
+                pooledTransport = new PooledTransport(transportFactory.createTransport());
+            }
+
+            return pooledTransport;
+        } catch (MessagingException | RuntimeException e) {
+            activePermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed {@link PooledTransport} to the pool.
+     * Non-reusable (broken) connections, connections reaching the max messages limit
+     * and connections exceeding the max-idle limit are closed.
+     *
+     * @param pooledTransport transport to return
+     * @param reusable flag indicating whether the transport is still usable
+     */
+    public void release(PooledTransport pooledTransport, boolean reusable) {
+
+        try {
+            if (reusable && !closed && !isExhausted(pooledTransport)) {
+                pooledTransport.markIdle();
+                if (!idleTransports.offerFirst(pooledTransport)) {
+                    close(pooledTransport);
+                }
+            } else {
+                close(pooledTransport);
+            }
+        } finally {
+            activePermits.release();
+        }
+    }
+
+    /**
+     * Checks whether the given transport has reached the configured max messages limit.
+     * Exhausted transports are closed on release, so they should be released before sending any further messages.
+     *
+     * @param pooledTransport transport to check
+     * @return {@code true} if no more messages should be sent via the transport
+     */
+    public boolean isExhausted(PooledTransport pooledTransport) {
+        return pooledTransport.getMessageCount() >= smtpConfigurationProperties.getPoolMaxMessagesPerConnection();
+    }
+
+    /**
+     * Returns the number of currently idle connections.
+     *
+     * @return number of idle connections
+     */
+    public int getIdleCount() {
+        return idleTransports.size();
+    }
+
+    /**
+     * Returns the number of currently borrowed connections.
+     *
+     * @return number of connections in use
+     */
+    public int getActiveCount() {
+        return smtpConfigurationProperties.getPoolMaxActive() - activePermits.availablePermits();
+    }
+
+    void maintain() {
+
+        try {
+            evictAndKeepAlive();
+            fillToMinIdle();
+        } catch (RuntimeException e) {
+            LOGGER.error("SMTP connection pool maintenance failed", e);
+        }
+    }
+
+    private void evictAndKeepAlive() {
+
+        int idleCount = idleTransports.size();
+        for (int index = 0; index < idleCount && !closed; index++) {
+            PooledTransport pooledTransport = idleTransports.pollLast();
+            if (pooledTransport == null) {
+                break;
+            }
+
+            if (pooledTransport.getIdleMillis() >= smtpConfigurationProperties.getPoolIdleTimeout()
+                    && idleTransports.size() >= smtpConfigurationProperties.getPoolMinIdle()) {
+                LOGGER.debug("Evicting idle SMTP connection {}", pooledTransport);
+                close(pooledTransport);
+            } else if (!isAlive(pooledTransport) || !idleTransports.offerFirst(pooledTransport)) {
+                close(pooledTransport);
+            }
+        }
+    }
+
+    private void fillToMinIdle() {
+
+        while (!closed && idleTransports.size() < smtpConfigurationProperties.getPoolMinIdle()) {
+            try {
+                PooledTransport pooledTransport = new PooledTransport(transportFactory.createTransport());
+                if (!idleTransports.offerLast(pooledTransport)) {
+                    close(pooledTransport);
+                    break;
+                }
+            } catch (MessagingException e) {
+                LOGGER.warn("Failed to open idle SMTP connection", e);
+                break;
+            }
+        }
+    }
+
+    private void acquirePermit() throws MessagingException {
+
+        if (closed) {
+            throw new MessagingException("SMTP connection pool is already closed");
+        }
+
+        try {
+            if (!activePermits.tryAcquire(smtpConfigurationProperties.getPoolMaxWait(), TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("Timed out waiting for a free SMTP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for a free SMTP connection", e);
+        }
+    }
+
+    private PooledTransport pollIdleTransport() {
+
+        PooledTransport pooledTransport;
+        while ((pooledTransport = idleTransports.pollFirst()) != null) {
+            if (pooledTransport.getIdleMillis() < smtpConfigurationProperties.getPoolKeepAliveInterval() || isAlive(pooledTransport)) {
+                return pooledTransport;
+            }
+            close(pooledTransport);
+        }
+
+        return null;
+    }
+
+    private boolean isAlive(PooledTransport pooledTransport) {
+
+        // SMTP transport implementation issues a NOOP command to check if the connection is still alive
+        return pooledTransport.getTransport().isConnected();
+    }
+
+    private void close(PooledTransport pooledTransport) {
+        try {
+            pooledTransport.getTransport().close();
+        } catch (MessagingException e) {
+            LOGGER.debug("Failed to close SMTP connection {}", pooledTransport, e);
+        }
+    }
+
+    /**
+     * Factory for connected {@link Transport} objects.
+     */
+    @FunctionalInterface
+    public interface TransportFactory {
+
+        /**
+         * Creates a new, already connected {@link Transport} object.
+         *
+         * @return connected {@link Transport}
+         * @throws MessagingException if connection could not be established
+         */
+        Transport createTransport() throws MessagingException;
+    }
+}
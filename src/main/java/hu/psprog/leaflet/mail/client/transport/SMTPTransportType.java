@@ -0,0 +1,23 @@
+package hu.psprog.leaflet.mail.client.transport;
+
+/**
+ * Available SMTP transport implementations.
+ *
+ * @author Peter Smith
+ */
+public enum SMTPTransportType {
+
+    /**
+     * Messages are sent by JavaMail's blocking SMTP transport (optionally via pooled connections),
+     * occupying the sending thread for the whole SMTP session.
+     */
+    JAVAMAIL,
+
+    /**
+     * Messages are sent by the non-blocking SMTP engine, multiplexing the socket handling of all SMTP sessions over a few event loop threads
+     * (see {@link hu.psprog.leaflet.mail.client.transport.nio.NioSMTPEngine}).
+     * Mails are sent asynchronously (see {@link AsyncJavaMailSender}), so the delivery thread is released as soon as the SMTP session
+     * is started, instead of waiting for its completion.
+     */
+    NIO
+}
@@ -0,0 +1,81 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link OutputStream} encoding message content for the SMTP DATA command (RFC 5321 section 4.5.2).
+ * Bare CR and LF characters are normalized to CRLF line endings, and lines starting with a dot are escaped by an additional dot,
+ * so the content can never contain the end of data indicator. Finishing the stream writes the terminating CRLF.CRLF sequence.
+ *
+ * @author Peter Smith
+ */
+class DotStuffingOutputStream extends FilterOutputStream {
+
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+    private static final int DOT = '.';
+    private static final byte[] CRLF = {CR, LF};
+    private static final byte[] END_OF_DATA = {DOT, CR, LF};
+
+    // beginning of the content counts as the beginning of a line
+    private int previous = LF;
+    private boolean finished;
+
+    DotStuffingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+
+        if (previous == CR && b != LF) {
+            out.write(LF);
+            previous = LF;
+        }
+        if (b == LF && previous != CR) {
+            out.write(CR);
+        }
+        if (b == DOT && previous == LF) {
+            out.write(DOT);
+        }
+
+        out.write(b);
+        previous = b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (int index = off; index < off + len; index++) {
+            write(b[index] & 0xFF);
+        }
+    }
+
+    /**
+     * Completes the last line if needed, and writes the end of data indicator.
+     *
+     * @throws IOException if writing to the underlying stream fails
+     */
+    void finish() throws IOException {
+
+        if (finished) {
+            return;
+        }
+
+        if (previous == CR) {
+            out.write(LF);
+        } else if (previous != LF) {
+            out.write(CRLF);
+        }
+        out.write(END_OF_DATA);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+}
@@ -0,0 +1,268 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+import hu.psprog.leaflet.mail.client.transport.AsyncJavaMailSender;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link JavaMailSenderImpl} extension sending messages via the {@link NioSMTPEngine}.
+ * All messages of a send call are sent in a single SMTP session, handled by the event loops of the engine.
+ * Content of the messages is not encoded up front, it is written by the session into its network buffers once the server is ready
+ * to receive it (see {@link SMTPContent}).
+ * {@link #sendAsync(MimeMessage...)} only prepares the messages and resolves the address of the SMTP server on the calling thread,
+ * then returns the future of the session, so any number of concurrently sent mails occupy no threads besides the event loops.
+ * Blocking send calls wait for the completion of that future.
+ *
+ * Failures are reported the same way as by JavaMail's SMTP transport in partial send mode, so messages accepted for some of their
+ * recipients fail with a {@link SendFailedException} holding the valid sent and invalid addresses, while rejected MAIL FROM and DATA
+ * commands fail with {@link SMTPSenderFailedException} and {@link SMTPSendFailedException} respectively, holding the reply code.
+ *
+ * @author Peter Smith
+ */
+public class NioJavaMailSender extends JavaMailSenderImpl implements AsyncJavaMailSender {
+
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+    private static final String[] IGNORED_HEADERS = {"Bcc", "Content-Length"};
+    private static final String ENVELOPE_SENDER_PROPERTY = "mail.smtp.from";
+    private static final String COMMAND_MAIL = "MAIL FROM";
+    private static final String COMMAND_RCPT = "RCPT TO";
+    private static final String COMMAND_DATA = "DATA";
+    private static final String MAIL_SERVER_CONNECTION_FAILED = "Mail server connection failed";
+    private static final String INVALID_ADDRESSES = "Invalid Addresses";
+    private static final int DEFAULT_SMTP_PORT = 25;
+
+    private final NioSMTPEngine nioSMTPEngine;
+
+    public NioJavaMailSender(NioSMTPEngine nioSMTPEngine) {
+        this.nioSMTPEngine = nioSMTPEngine;
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(MimeMessage... mimeMessages) {
+        return send(mimeMessages, null);
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) {
+
+        try {
+            send(mimeMessages, originalMessages).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Exception interruption = new MessagingException("Interrupted while waiting for SMTP session", e);
+            Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+            for (int index = 0; index < mimeMessages.length; index++) {
+                failedMessages.put(getOriginalMessage(mimeMessages, originalMessages, index), interruption);
+            }
+            throw new MailSendException(MAIL_SERVER_CONNECTION_FAILED, interruption, failedMessages);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new MailSendException(MAIL_SERVER_CONNECTION_FAILED, e.getCause());
+        }
+    }
+
+    private CompletableFuture<Void> send(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) {
+
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        List<SMTPTransaction> transactions = new ArrayList<>();
+        List<Integer> transactionMessageIndices = new ArrayList<>();
+
+        for (int index = 0; index < mimeMessages.length; index++) {
+            try {
+                transactions.add(createTransaction(mimeMessages[index]));
+                transactionMessageIndices.add(index);
+            } catch (MessagingException e) {
+                failedMessages.put(getOriginalMessage(mimeMessages, originalMessages, index), e);
+            }
+        }
+
+        CompletableFuture<List<SMTPTransactionResult>> sessionResult = transactions.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyList())
+                : nioSMTPEngine.send(getHost(), getPort() < 0 ? DEFAULT_SMTP_PORT : getPort(), getUsername(), getPassword(), transactions);
+
+        // completed on the event loop thread, mapping the results does not block
+        return sessionResult.handle((transactionResults, sessionFailure) -> {
+            if (sessionFailure != null) {
+                throw mapSessionFailure(sessionFailure, mimeMessages, originalMessages, transactionMessageIndices, failedMessages);
+            }
+            for (int index = 0; index < transactionResults.size(); index++) {
+                Exception failure;
+                try {
+                    failure = mapFailure(transactions.get(index), transactionResults.get(index));
+                } catch (MessagingException e) {
+                    failure = e;
+                }
+                if (failure != null) {
+                    failedMessages.put(getOriginalMessage(mimeMessages, originalMessages, transactionMessageIndices.get(index)), failure);
+                }
+            }
+            if (!failedMessages.isEmpty()) {
+                throw new MailSendException(failedMessages);
+            }
+            return null;
+        });
+    }
+
+    private SMTPTransaction createTransaction(MimeMessage mimeMessage) throws MessagingException {
+
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            // preserve explicitly specified message id, as it might be changed by saveChanges
+            mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+
+        List<String> recipientAddresses = getRecipientAddresses(mimeMessage);
+        if (recipientAddresses.isEmpty()) {
+            throw new SendFailedException("No recipient addresses");
+        }
+
+        return new SMTPTransaction(getEnvelopeSender(mimeMessage), recipientAddresses, outputStream -> mimeMessage.writeTo(outputStream, IGNORED_HEADERS));
+    }
+
+    private List<String> getRecipientAddresses(MimeMessage mimeMessage) throws MessagingException {
+
+        List<String> recipientAddresses = new ArrayList<>();
+        Address[] recipients = mimeMessage.getAllRecipients();
+        if (recipients != null) {
+            for (Address recipient : recipients) {
+                InternetAddress address = (InternetAddress) recipient;
+                if (address.isGroup()) {
+                    // group addresses (like "undisclosed-recipients:;") are expanded to their members, as JavaMail's SMTP transport does
+                    InternetAddress[] members = address.getGroup(false);
+                    if (members != null) {
+                        for (InternetAddress member : members) {
+                            recipientAddresses.add(member.getAddress());
+                        }
+                    }
+                } else {
+                    recipientAddresses.add(address.getAddress());
+                }
+            }
+        }
+
+        return recipientAddresses;
+    }
+
+    private String getEnvelopeSender(MimeMessage mimeMessage) throws MessagingException {
+
+        String envelopeSender = getJavaMailProperties().getProperty(ENVELOPE_SENDER_PROPERTY);
+        if (envelopeSender == null) {
+            Address[] from = mimeMessage.getFrom();
+            if (from == null || from.length == 0) {
+                throw new MessagingException("No sender address specified");
+            }
+            envelopeSender = ((InternetAddress) from[0]).getAddress();
+        }
+
+        return envelopeSender;
+    }
+
+    private MailException mapSessionFailure(Throwable sessionFailure, MimeMessage[] mimeMessages, Object[] originalMessages,
+                                            List<Integer> transactionMessageIndices, Map<Object, Exception> failedMessages) {
+
+        Throwable cause = sessionFailure instanceof CompletionException && sessionFailure.getCause() != null
+                ? sessionFailure.getCause()
+                : sessionFailure;
+        if (cause instanceof AuthenticationFailedException) {
+            return new MailAuthenticationException(cause);
+        }
+
+        Exception failure = cause instanceof Exception
+                ? (Exception) cause
+                : new ExecutionException(cause);
+        for (Integer index : transactionMessageIndices) {
+            failedMessages.put(getOriginalMessage(mimeMessages, originalMessages, index), failure);
+        }
+
+        return new MailSendException(MAIL_SERVER_CONNECTION_FAILED, failure, failedMessages);
+    }
+
+    private Exception mapFailure(SMTPTransaction transaction, SMTPTransactionResult transactionResult) throws MessagingException {
+
+        Exception failure = null;
+        if (transactionResult.getFailure() != null) {
+            failure = transactionResult.getFailure();
+        } else if (!transactionResult.getRejectedRecipients().isEmpty()
+                && (transactionResult.isDelivered() || transactionResult.getFailedCommand() == null)) {
+            failure = new SendFailedException(INVALID_ADDRESSES, createAddressFailures(transactionResult),
+                    toAddresses(transactionResult.getAcceptedRecipients()), new Address[0],
+                    toAddresses(transactionResult.getRejectedRecipients().keySet()));
+        } else if (COMMAND_MAIL.equals(transactionResult.getFailedCommand())) {
+            SMTPReply failureReply = transactionResult.getFailureReply();
+            failure = new SMTPSenderFailedException(new InternetAddress(transaction.getSender()), COMMAND_MAIL, failureReply.getCode(),
+                    failureReply.toString());
+        } else if (COMMAND_DATA.equals(transactionResult.getFailedCommand())) {
+            // as with JavaMail's SMTP transport, recipients accepted before the message content got rejected are valid, but unsent
+            SMTPReply failureReply = transactionResult.getFailureReply();
+            failure = new SMTPSendFailedException(COMMAND_DATA, failureReply.getCode(), failureReply.toString(),
+                    createAddressFailures(transactionResult), new Address[0], toAddresses(transactionResult.getAcceptedRecipients()),
+                    toAddresses(transactionResult.getRejectedRecipients().keySet()));
+        } else if (!transactionResult.isDelivered()) {
+            failure = new MessagingException(String.format("%s command rejected by SMTP server: %s",
+                    transactionResult.getFailedCommand(), transactionResult.getFailureReply()));
+        }
+
+        return failure;
+    }
+
+    private SMTPAddressFailedException createAddressFailures(SMTPTransactionResult transactionResult) throws MessagingException {
+
+        SMTPAddressFailedException firstAddressFailure = null;
+        for (Map.Entry<String, SMTPReply> rejectedRecipient : transactionResult.getRejectedRecipients().entrySet()) {
+            SMTPAddressFailedException addressFailure = new SMTPAddressFailedException(new InternetAddress(rejectedRecipient.getKey()),
+                    COMMAND_RCPT, rejectedRecipient.getValue().getCode(), rejectedRecipient.getValue().toString());
+            if (firstAddressFailure == null) {
+                firstAddressFailure = addressFailure;
+            } else {
+                firstAddressFailure.setNextException(addressFailure);
+            }
+        }
+
+        return firstAddressFailure;
+    }
+
+    private Address[] toAddresses(Collection<String> recipients) throws MessagingException {
+
+        List<Address> addresses = new ArrayList<>(recipients.size());
+        for (String recipient : recipients) {
+            addresses.add(new InternetAddress(recipient));
+        }
+
+        return addresses.toArray(new Address[0]);
+    }
+
+    private Object getOriginalMessage(MimeMessage[] mimeMessages, Object[] originalMessages, int index) {
+        return originalMessages != null
+                ? originalMessages[index]
+                : mimeMessages[index];
+    }
+}
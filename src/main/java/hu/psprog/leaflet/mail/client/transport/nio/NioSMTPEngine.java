@@ -0,0 +1,140 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import hu.psprog.leaflet.mail.config.NioSMTPConfigurationProperties;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking SMTP client engine.
+ * Every send call opens a new SMTP session, which is handled by the least loaded of a fixed number of event loop threads,
+ * so any number of concurrent SMTP sessions (including their connection setup, TLS handshake and authentication) only occupy
+ * a few threads instead of one thread per session. Event loops are started on first use.
+ *
+ * Returned futures are completed on the event loop threads, thus their dependent actions must not block.
+ * Resolving the address of the SMTP server is blocking, and is done on the calling thread.
+ *
+ * @author Peter Smith
+ */
+public class NioSMTPEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioSMTPEngine.class);
+
+    private static final String THREAD_NAME_PREFIX = "smtp-event-loop-";
+    private static final String FALLBACK_HELO_NAME = "localhost";
+
+    private final NioSMTPConfigurationProperties nioSMTPConfigurationProperties;
+    private final SSLContext sslContext;
+    private final String heloName;
+    private final List<SMTPEventLoop> eventLoops;
+
+    private boolean closed;
+
+    public NioSMTPEngine(NioSMTPConfigurationProperties nioSMTPConfigurationProperties) {
+        this(nioSMTPConfigurationProperties, null);
+    }
+
+    NioSMTPEngine(NioSMTPConfigurationProperties nioSMTPConfigurationProperties, SSLContext sslContext) {
+        this.nioSMTPConfigurationProperties = nioSMTPConfigurationProperties;
+        this.sslContext = sslContext;
+        this.heloName = resolveHeloName(nioSMTPConfigurationProperties);
+        this.eventLoops = new ArrayList<>();
+    }
+
+    /**
+     * Sends the given transactions in a single SMTP session.
+     * Returned future completes exceptionally if the session could not be set up (connection, TLS or authentication failure,
+     * the latter signalled by {@link javax.mail.AuthenticationFailedException}), otherwise it completes with the result of
+     * each transaction, in the order of the transactions.
+     *
+     * @param host host of the SMTP server
+     * @param port port of the SMTP server
+     * @param username username to authenticate with, authentication is skipped if empty
+     * @param password password to authenticate with
+     * @param transactions {@link SMTPTransaction}s to send
+     * @return {@link CompletableFuture} of the results of the transactions
+     */
+    public CompletableFuture<List<SMTPTransactionResult>> send(String host, int port, String username, String password,
+                                                               List<SMTPTransaction> transactions) {
+
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            return CompletableFuture.failedFuture(new MessagingException(String.format("Unknown SMTP host [%s]", host)));
+        }
+
+        SMTPSession session = new SMTPSession(address, username, password, transactions, nioSMTPConfigurationProperties, heloName, sslContext);
+        try {
+            selectEventLoop().register(session);
+        } catch (IOException | IllegalStateException e) {
+            return CompletableFuture.failedFuture(new MessagingException("Failed to start SMTP event loop", e));
+        }
+
+        return session.getResult();
+    }
+
+    /**
+     * Stops the event loops, failing all active sessions.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+
+        closed = true;
+        for (SMTPEventLoop eventLoop : eventLoops) {
+            try {
+                eventLoop.shutdown();
+            } catch (InterruptedException e) {
+                LOGGER.warn("Interrupted while stopping SMTP event loops");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized SMTPEventLoop selectEventLoop() throws IOException {
+
+        if (closed) {
+            throw new IllegalStateException("SMTP engine has been shut down");
+        }
+
+        if (eventLoops.isEmpty()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+            threadFactory.setDaemon(true);
+            for (int index = 0; index < Math.max(1, nioSMTPConfigurationProperties.getEventLoopThreads()); index++) {
+                SMTPEventLoop eventLoop = new SMTPEventLoop(threadFactory);
+                eventLoop.start();
+                eventLoops.add(eventLoop);
+            }
+        }
+
+        return eventLoops.stream()
+                .min(Comparator.comparingInt(SMTPEventLoop::getActiveSessions))
+                .orElseThrow();
+    }
+
+    private static String resolveHeloName(NioSMTPConfigurationProperties nioSMTPConfigurationProperties) {
+
+        if (StringUtils.isNotBlank(nioSMTPConfigurationProperties.getHeloName())) {
+            return nioSMTPConfigurationProperties.getHeloName();
+        }
+
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            LOGGER.warn("Failed to resolve local host name, using [{}] in EHLO command", FALLBACK_HELO_NAME);
+            return FALLBACK_HELO_NAME;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Message content of an {@link SMTPTransaction}.
+ * Content is written by the {@link SMTPSession} on demand, once the server is ready to receive it (after the DATA command
+ * is accepted), directly into the network buffers of the session.
+ *
+ * @author Peter Smith
+ */
+@FunctionalInterface
+public interface SMTPContent {
+
+    /**
+     * Writes the message content to the given stream.
+     * Content is written as it is, it is encoded for the DATA command (see {@link DotStuffingOutputStream}) by the session.
+     * Implementations are called on the event loop thread of the session, thus they must not block.
+     *
+     * @param outputStream {@link OutputStream} to write the content to
+     * @throws IOException if writing to the stream fails
+     * @throws MessagingException if the content could not be produced
+     */
+    void writeTo(OutputStream outputStream) throws IOException, MessagingException;
+}
@@ -0,0 +1,144 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single threaded event loop multiplexing any number of {@link SMTPSession}s over one {@link Selector}.
+ * Sessions can be registered from any thread, they are started on the event loop thread on its next iteration.
+ * Deadlines of the sessions are checked after every selection, which returns at least once in every {@value SELECT_TIMEOUT} milliseconds.
+ *
+ * @author Peter Smith
+ */
+class SMTPEventLoop implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SMTPEventLoop.class);
+
+    private static final long SELECT_TIMEOUT = 500L;
+    private static final long SHUTDOWN_TIMEOUT = 5L;
+
+    private final Selector selector;
+    private final Queue<SMTPSession> pendingSessions;
+    private final AtomicInteger activeSessions;
+    private final Thread thread;
+
+    private volatile boolean running;
+
+    SMTPEventLoop(ThreadFactory threadFactory) throws IOException {
+        this.selector = Selector.open();
+        this.pendingSessions = new ConcurrentLinkedQueue<>();
+        this.activeSessions = new AtomicInteger(0);
+        this.thread = threadFactory.newThread(this);
+        this.running = true;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Registers a new session to be started by the event loop.
+     *
+     * @param session {@link SMTPSession} to start
+     */
+    void register(SMTPSession session) {
+        activeSessions.incrementAndGet();
+        session.getResult().whenComplete((transactionResults, throwable) -> activeSessions.decrementAndGet());
+        pendingSessions.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Returns the number of sessions registered and not completed yet.
+     *
+     * @return number of active sessions
+     */
+    int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Stops the event loop, failing all its active sessions.
+     *
+     * @throws InterruptedException if interrupted while waiting for the event loop thread to stop
+     */
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT));
+    }
+
+    @Override
+    public void run() {
+
+        while (running) {
+            try {
+                startPendingSessions();
+                selector.select(SELECT_TIMEOUT);
+                handleSelectedKeys();
+                checkTimeouts();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("SMTP event loop iteration failed", e);
+            }
+        }
+
+        failSessions();
+    }
+
+    private void startPendingSessions() {
+        SMTPSession session;
+        while ((session = pendingSessions.poll()) != null) {
+            session.start(selector);
+        }
+    }
+
+    private void handleSelectedKeys() {
+
+        Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+        while (selectedKeys.hasNext()) {
+            SelectionKey selectionKey = selectedKeys.next();
+            selectedKeys.remove();
+            if (selectionKey.isValid()) {
+                ((SMTPSession) selectionKey.attachment()).handle(selectionKey.readyOps());
+            }
+        }
+    }
+
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey selectionKey : selector.keys()) {
+            if (selectionKey.isValid()) {
+                ((SMTPSession) selectionKey.attachment()).checkTimeout(now);
+            }
+        }
+    }
+
+    private void failSessions() {
+
+        MessagingException shutdownFailure = new MessagingException("SMTP event loop has been shut down");
+        SMTPSession session;
+        while ((session = pendingSessions.poll()) != null) {
+            session.fail(shutdownFailure);
+        }
+        for (SelectionKey selectionKey : selector.keys()) {
+            ((SMTPSession) selectionKey.attachment()).fail(shutdownFailure);
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close selector of SMTP event loop", e);
+        }
+    }
+}
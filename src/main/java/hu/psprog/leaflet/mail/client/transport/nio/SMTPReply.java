@@ -0,0 +1,66 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import java.util.List;
+
+/**
+ * Reply of an SMTP server, consisting of one or more lines sharing the same reply code.
+ *
+ * @author Peter Smith
+ */
+public class SMTPReply {
+
+    private static final String LINE_SEPARATOR = " ";
+
+    private final int code;
+    private final List<String> lines;
+
+    SMTPReply(int code, List<String> lines) {
+        this.code = code;
+        this.lines = List.copyOf(lines);
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the text of each reply line, without the reply code.
+     *
+     * @return text of the reply lines
+     */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * Returns the text of all reply lines joined.
+     *
+     * @return text of the reply
+     */
+    public String getText() {
+        return String.join(LINE_SEPARATOR, lines);
+    }
+
+    /**
+     * Checks if the reply is a positive completion reply (2xx).
+     *
+     * @return {@code true} if the requested action has been completed
+     */
+    public boolean isPositiveCompletion() {
+        return code / 100 == 2;
+    }
+
+    /**
+     * Checks if the reply is a positive intermediate reply (3xx).
+     *
+     * @return {@code true} if the server waits for further information
+     */
+    public boolean isPositiveIntermediate() {
+        return code / 100 == 3;
+    }
+
+    @Override
+    public String toString() {
+        return code + LINE_SEPARATOR + getText();
+    }
+}
@@ -0,0 +1,119 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import javax.mail.MessagingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Incremental parser of SMTP server replies (RFC 5321 section 4.2).
+ * Input can be fed in arbitrary chunks, as received from the network; lines split between chunks are kept until completed.
+ * Lines of a multiline reply are collected until the last line (having a space after the reply code) is received.
+ *
+ * @author Peter Smith
+ */
+class SMTPReplyParser {
+
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int REPLY_CODE_LENGTH = 3;
+    private static final char CONTINUATION_SEPARATOR = '-';
+    private static final char LAST_LINE_SEPARATOR = ' ';
+    private static final char CR = '\r';
+    private static final char LF = '\n';
+    private static final int NO_REPLY_CODE = -1;
+
+    private final StringBuilder currentLine = new StringBuilder();
+    private final List<String> replyLines = new ArrayList<>();
+    private int replyCode = NO_REPLY_CODE;
+
+    /**
+     * Consumes all the remaining bytes of the given buffer, returning the replies completed by them.
+     *
+     * @param buffer {@link ByteBuffer} holding received bytes
+     * @return completed replies in the order of receiving, empty list if no reply is completed yet
+     * @throws MessagingException if a malformed reply line is received
+     */
+    List<SMTPReply> parse(ByteBuffer buffer) throws MessagingException {
+
+        List<SMTPReply> replies = null;
+        while (buffer.hasRemaining()) {
+            char character = (char) (buffer.get() & 0xFF);
+            if (character == LF) {
+                SMTPReply reply = completeLine();
+                if (reply != null) {
+                    if (replies == null) {
+                        replies = new ArrayList<>();
+                    }
+                    replies.add(reply);
+                }
+            } else if (currentLine.length() >= MAX_LINE_LENGTH) {
+                throw new MessagingException(String.format("SMTP reply line exceeds %d characters", MAX_LINE_LENGTH));
+            } else {
+                currentLine.append(character);
+            }
+        }
+
+        return replies == null
+                ? Collections.emptyList()
+                : replies;
+    }
+
+    /**
+     * Checks if a reply is partially received.
+     *
+     * @return {@code true} if some lines or characters of an uncompleted reply have been received
+     */
+    boolean hasPartialReply() {
+        return currentLine.length() > 0 || !replyLines.isEmpty();
+    }
+
+    private SMTPReply completeLine() throws MessagingException {
+
+        int length = currentLine.length();
+        if (length > 0 && currentLine.charAt(length - 1) == CR) {
+            currentLine.setLength(length - 1);
+        }
+        String line = currentLine.toString();
+        currentLine.setLength(0);
+
+        int code = parseReplyCode(line);
+        if (replyCode != NO_REPLY_CODE && code != replyCode) {
+            throw new MessagingException(String.format("Inconsistent reply codes in multiline SMTP reply: %d and %d", replyCode, code));
+        }
+        replyCode = code;
+        replyLines.add(line.length() > REPLY_CODE_LENGTH + 1
+                ? line.substring(REPLY_CODE_LENGTH + 1)
+                : "");
+
+        if (line.length() > REPLY_CODE_LENGTH && line.charAt(REPLY_CODE_LENGTH) == CONTINUATION_SEPARATOR) {
+            return null;
+        }
+
+        SMTPReply reply = new SMTPReply(replyCode, replyLines);
+        replyLines.clear();
+        replyCode = NO_REPLY_CODE;
+
+        return reply;
+    }
+
+    private int parseReplyCode(String line) throws MessagingException {
+
+        if (line.length() < REPLY_CODE_LENGTH
+                || (line.length() > REPLY_CODE_LENGTH
+                    && line.charAt(REPLY_CODE_LENGTH) != LAST_LINE_SEPARATOR && line.charAt(REPLY_CODE_LENGTH) != CONTINUATION_SEPARATOR)) {
+            throw new MessagingException(String.format("Malformed SMTP reply line [%s]", line));
+        }
+
+        int code = 0;
+        for (int index = 0; index < REPLY_CODE_LENGTH; index++) {
+            char digit = line.charAt(index);
+            if (digit < '0' || digit > '9') {
+                throw new MessagingException(String.format("Malformed SMTP reply line [%s]", line));
+            }
+            code = code * 10 + (digit - '0');
+        }
+
+        return code;
+    }
+}
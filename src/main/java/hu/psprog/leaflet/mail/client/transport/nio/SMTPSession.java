@@ -0,0 +1,779 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import hu.psprog.leaflet.mail.config.NioSMTPConfigurationProperties;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Single non-blocking SMTP session, sending a list of {@link SMTPTransaction}s over one connection.
+ * Session is driven by the {@link SMTPEventLoop} it is registered to, advancing its state on every reply of the server:
+ * greeting, EHLO (falling back to HELO), optional STARTTLS and TLS handshake, optional authentication (PLAIN or LOGIN),
+ * then the mail transactions and finally QUIT. If the server supports PIPELINING, the MAIL, RCPT and DATA commands
+ * of a transaction are sent at once (RFC 2920), otherwise every command waits for the reply of the previous one.
+ * Message content is only produced when the server accepts the DATA command, written by the {@link SMTPContent} of the transaction
+ * straight into the network buffers of the session.
+ *
+ * Failures before the first transaction (connection, TLS or authentication failure) complete the session exceptionally,
+ * failures interrupting the transactions fail the current and all remaining transactions.
+ * Instances are only accessed by the thread of their event loop, so they are not thread-safe.
+ *
+ * @author Peter Smith
+ */
+class SMTPSession {
+
+    private static final int NETWORK_BUFFER_SIZE = 16 * 1024;
+    private static final String CRLF = "\r\n";
+    private static final byte[] EMPTY_DATA = ".\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String EXTENSION_STARTTLS = "STARTTLS";
+    private static final String EXTENSION_PIPELINING = "PIPELINING";
+    private static final String EXTENSION_AUTH = "AUTH";
+    private static final String LEGACY_AUTH_PREFIX = "AUTH=";
+    private static final String MECHANISM_PLAIN = "PLAIN";
+    private static final String MECHANISM_LOGIN = "LOGIN";
+    private static final String COMMAND_MAIL = "MAIL FROM";
+    private static final String COMMAND_DATA = "DATA";
+    private static final String ENDPOINT_IDENTIFICATION_ALGORITHM = "HTTPS";
+    private static final int REPLY_SERVICE_READY = 220;
+    private static final int REPLY_AUTHENTICATION_SUCCEEDED = 235;
+    private static final int REPLY_SERVER_CHALLENGE = 334;
+    private static final int REPLY_START_MAIL_INPUT = 354;
+
+    private enum State {
+        CONNECTING, GREETING, EHLO, STARTTLS, TLS_HANDSHAKE, AUTH, TRANSACTION, QUIT, CLOSED
+    }
+
+    private final InetSocketAddress address;
+    private final String username;
+    private final String password;
+    private final List<SMTPTransaction> transactions;
+    private final NioSMTPConfigurationProperties nioSMTPConfigurationProperties;
+    private final String heloName;
+    private final SSLContext sslContext;
+    private final CompletableFuture<List<SMTPTransactionResult>> result;
+    private final SMTPReplyParser replyParser;
+    private final Deque<ReplyHandler> replyHandlers;
+    private final Deque<ByteBuffer> outputQueue;
+    private final List<SMTPTransactionResult> transactionResults;
+    private final Set<String> extensions;
+    private final Set<String> authMechanisms;
+
+    private SocketChannel channel;
+    private SelectionKey selectionKey;
+    private State state;
+    private long deadline;
+    private ByteBuffer networkInput;
+    private SSLEngine sslEngine;
+    private ByteBuffer applicationInput;
+
+    private int transactionIndex;
+    private int recipientIndex;
+    private List<String> acceptedRecipients;
+    private Map<String, SMTPReply> rejectedRecipients;
+    private String failedCommand;
+    private SMTPReply failureReply;
+
+    SMTPSession(InetSocketAddress address, String username, String password, List<SMTPTransaction> transactions,
+                NioSMTPConfigurationProperties nioSMTPConfigurationProperties, String heloName, SSLContext sslContext) {
+        this.address = address;
+        this.username = username;
+        this.password = password;
+        this.transactions = transactions;
+        this.nioSMTPConfigurationProperties = nioSMTPConfigurationProperties;
+        this.heloName = heloName;
+        this.sslContext = sslContext;
+        this.result = new CompletableFuture<>();
+        this.replyParser = new SMTPReplyParser();
+        this.replyHandlers = new ArrayDeque<>();
+        this.outputQueue = new ArrayDeque<>();
+        this.transactionResults = new ArrayList<>(transactions.size());
+        this.extensions = new HashSet<>();
+        this.authMechanisms = new HashSet<>();
+        this.networkInput = ByteBuffer.allocate(NETWORK_BUFFER_SIZE);
+        this.state = State.CONNECTING;
+    }
+
+    /**
+     * Returns the result of the session, completed (on the event loop thread) when the session is closed.
+     *
+     * @return {@link CompletableFuture} of the results of the transactions, in the order of the transactions
+     */
+    CompletableFuture<List<SMTPTransactionResult>> getResult() {
+        return result;
+    }
+
+    /**
+     * Opens the connection and registers the session to the given selector.
+     *
+     * @param selector {@link Selector} of the event loop
+     */
+    void start(Selector selector) {
+
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            selectionKey = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            deadline = System.currentTimeMillis() + nioSMTPConfigurationProperties.getConnectTimeout();
+            if (channel.connect(address)) {
+                onConnected();
+            }
+        } catch (IOException | MessagingException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Handles the ready operations of the session's channel.
+     *
+     * @param readyOperations ready operation set of the session's {@link SelectionKey}
+     */
+    void handle(int readyOperations) {
+
+        try {
+            if ((readyOperations & SelectionKey.OP_CONNECT) != 0 && channel.finishConnect()) {
+                onConnected();
+            }
+            if ((readyOperations & SelectionKey.OP_WRITE) != 0 && state != State.CLOSED) {
+                flush();
+            }
+            if ((readyOperations & SelectionKey.OP_READ) != 0 && state != State.CLOSED) {
+                onReadable();
+            }
+        } catch (IOException | MessagingException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Fails the session if no progress has been made until its deadline.
+     *
+     * @param now current time in milliseconds
+     */
+    void checkTimeout(long now) {
+        if (state != State.CLOSED && now > deadline) {
+            fail(new MessagingException(String.format("SMTP session with %s timed out in state %s", address, state)));
+        }
+    }
+
+    /**
+     * Closes the session, completing it according to its current state.
+     *
+     * @param failure cause of closing the session
+     */
+    void fail(Exception failure) {
+
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        boolean quitting = state == State.QUIT;
+        close();
+        if (quitting) {
+            result.complete(transactionResults);
+        } else if (transactionResults.isEmpty() && acceptedRecipients == null) {
+            result.completeExceptionally(asMessagingException(failure));
+        } else {
+            MessagingException transactionFailure = asMessagingException(failure);
+            while (transactionResults.size() < transactions.size()) {
+                transactionResults.add(SMTPTransactionResult.failed(transactionFailure));
+            }
+            result.complete(transactionResults);
+        }
+    }
+
+    private void onConnected() throws MessagingException {
+        state = State.GREETING;
+        expectReply(this::handleGreeting);
+        selectionKey.interestOps(SelectionKey.OP_READ);
+        refreshDeadline();
+    }
+
+    private void onReadable() throws IOException, MessagingException {
+
+        int read = channel.read(networkInput);
+        if (read < 0) {
+            if (state == State.QUIT) {
+                close();
+                result.complete(transactionResults);
+                return;
+            }
+            throw new MessagingException(String.format("Connection closed by SMTP server %s in state %s", address, state));
+        }
+        if (read > 0) {
+            refreshDeadline();
+        }
+
+        if (sslEngine == null) {
+            networkInput.flip();
+            List<SMTPReply> replies = replyParser.parse(networkInput);
+            networkInput.clear();
+            handleReplies(replies);
+        } else if (state == State.TLS_HANDSHAKE) {
+            continueHandshake();
+        } else {
+            unwrapApplicationData();
+        }
+    }
+
+    private void handleReplies(List<SMTPReply> replies) throws IOException, MessagingException {
+
+        for (int index = 0; index < replies.size() && state != State.CLOSED; index++) {
+            ReplyHandler replyHandler = replyHandlers.poll();
+            if (replyHandler == null) {
+                throw new MessagingException(String.format("Unexpected reply from SMTP server: %s", replies.get(index)));
+            }
+            replyHandler.handle(replies.get(index));
+            if (state == State.TLS_HANDSHAKE && (index < replies.size() - 1 || replyParser.hasPartialReply())) {
+                // anything received in plaintext after the STARTTLS reply might have been injected by an attacker
+                throw new MessagingException("SMTP server sent unexpected data after accepting STARTTLS");
+            }
+        }
+    }
+
+    private void handleGreeting(SMTPReply reply) throws MessagingException {
+        if (reply.getCode() != REPLY_SERVICE_READY) {
+            throw new MessagingException(String.format("SMTP server rejected connection: %s", reply));
+        }
+        sendEhlo();
+    }
+
+    private void sendEhlo() throws MessagingException {
+        state = State.EHLO;
+        sendCommand("EHLO " + heloName, this::handleEhlo);
+    }
+
+    private void handleEhlo(SMTPReply reply) throws IOException, MessagingException {
+
+        if (reply.isPositiveCompletion()) {
+            extensions.clear();
+            authMechanisms.clear();
+            reply.getLines().stream()
+                    .skip(1)
+                    .forEach(this::registerExtension);
+            onGreeted();
+        } else {
+            sendCommand("HELO " + heloName, this::handleHelo);
+        }
+    }
+
+    private void handleHelo(SMTPReply reply) throws IOException, MessagingException {
+        if (!reply.isPositiveCompletion()) {
+            throw new MessagingException(String.format("SMTP server rejected HELO command: %s", reply));
+        }
+        extensions.clear();
+        authMechanisms.clear();
+        onGreeted();
+    }
+
+    private void registerExtension(String line) {
+
+        String[] parts = line.toUpperCase(Locale.ROOT).split("\\s+");
+        if (parts[0].startsWith(LEGACY_AUTH_PREFIX)) {
+            extensions.add(EXTENSION_AUTH);
+            authMechanisms.add(parts[0].substring(LEGACY_AUTH_PREFIX.length()));
+        } else {
+            extensions.add(parts[0]);
+        }
+
+        if (EXTENSION_AUTH.equals(parts[0])) {
+            for (int index = 1; index < parts.length; index++) {
+                authMechanisms.add(parts[index]);
+            }
+        }
+    }
+
+    private void onGreeted() throws IOException, MessagingException {
+
+        if (sslEngine == null && nioSMTPConfigurationProperties.isStarttlsEnabled() && extensions.contains(EXTENSION_STARTTLS)) {
+            state = State.STARTTLS;
+            sendCommand(EXTENSION_STARTTLS, this::handleStartTLS);
+        } else if (sslEngine == null && nioSMTPConfigurationProperties.isStarttlsRequired()) {
+            throw new MessagingException(String.format("SMTP server %s does not support STARTTLS, which is required", address));
+        } else {
+            authenticate();
+        }
+    }
+
+    private void handleStartTLS(SMTPReply reply) throws IOException, MessagingException {
+
+        if (reply.getCode() == REPLY_SERVICE_READY) {
+            startTLS();
+        } else if (nioSMTPConfigurationProperties.isStarttlsRequired()) {
+            throw new MessagingException(String.format("SMTP server rejected STARTTLS command: %s", reply));
+        } else {
+            authenticate();
+        }
+    }
+
+    private void startTLS() throws IOException, MessagingException {
+
+        try {
+            sslEngine = (sslContext != null ? sslContext : SSLContext.getDefault()).createSSLEngine(address.getHostString(), address.getPort());
+        } catch (NoSuchAlgorithmException e) {
+            throw new MessagingException("TLS is not available", e);
+        }
+        sslEngine.setUseClientMode(true);
+        SSLParameters sslParameters = sslEngine.getSSLParameters();
+        sslParameters.setEndpointIdentificationAlgorithm(ENDPOINT_IDENTIFICATION_ALGORITHM);
+        sslEngine.setSSLParameters(sslParameters);
+
+        networkInput = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+        applicationInput = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+        state = State.TLS_HANDSHAKE;
+        sslEngine.beginHandshake();
+        continueHandshake();
+    }
+
+    private void continueHandshake() throws IOException, MessagingException {
+
+        while (true) {
+            switch (sslEngine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+                case NEED_WRAP:
+                    wrap(ByteBuffer.allocate(0));
+                    break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    if (!unwrap()) {
+                        flush();
+                        return;
+                    }
+                    break;
+                case FINISHED:
+                case NOT_HANDSHAKING:
+                default:
+                    // EHLO must be sent again over the secured connection, as the extensions might differ
+                    sendEhlo();
+                    unwrapApplicationData();
+                    return;
+            }
+        }
+    }
+
+    private void unwrapApplicationData() throws IOException, MessagingException {
+
+        while (unwrap()) {
+            switch (sslEngine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+                case NEED_WRAP:
+                    wrap(ByteBuffer.allocate(0));
+                    flush();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        applicationInput.flip();
+        List<SMTPReply> replies = replyParser.parse(applicationInput);
+        applicationInput.clear();
+        handleReplies(replies);
+    }
+
+    /**
+     * Unwraps a single TLS record from the network input buffer, appending the decrypted data to the application input buffer.
+     *
+     * @return {@code true} if a record has been consumed, {@code false} if more network input is needed
+     */
+    private boolean unwrap() throws SSLException, MessagingException {
+
+        networkInput.flip();
+        try {
+            while (true) {
+                SSLEngineResult sslEngineResult = sslEngine.unwrap(networkInput, applicationInput);
+                switch (sslEngineResult.getStatus()) {
+                    case OK:
+                        return sslEngineResult.bytesConsumed() > 0 || sslEngineResult.bytesProduced() > 0;
+                    case BUFFER_OVERFLOW:
+                        applicationInput = enlarge(applicationInput, sslEngine.getSession().getApplicationBufferSize());
+                        break;
+                    case BUFFER_UNDERFLOW:
+                        if (networkInput.limit() == networkInput.capacity()) {
+                            networkInput.compact();
+                            networkInput = enlarge(networkInput, sslEngine.getSession().getPacketBufferSize());
+                            networkInput.flip();
+                        }
+                        return false;
+                    case CLOSED:
+                    default:
+                        throw new MessagingException(String.format("TLS connection closed by SMTP server %s", address));
+                }
+            }
+        } finally {
+            networkInput.compact();
+        }
+    }
+
+    private void wrap(ByteBuffer source) throws SSLException, MessagingException {
+
+        do {
+            ByteBuffer target = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+            SSLEngineResult sslEngineResult = sslEngine.wrap(source, target);
+            if (sslEngineResult.getStatus() != SSLEngineResult.Status.OK) {
+                throw new MessagingException(String.format("Failed to encrypt data for SMTP server %s: %s", address, sslEngineResult.getStatus()));
+            }
+            target.flip();
+            if (target.hasRemaining()) {
+                outputQueue.add(target);
+            }
+            if (sslEngineResult.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+            }
+        } while (source.hasRemaining());
+    }
+
+    private void runDelegatedTasks() {
+        // delegated tasks are short (certificate validation, key agreement), so they are executed on the event loop
+        Runnable task;
+        while ((task = sslEngine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private void authenticate() throws MessagingException {
+
+        if (StringUtils.isEmpty(username) || StringUtils.isEmpty(password) || !extensions.contains(EXTENSION_AUTH)) {
+            startTransaction();
+            return;
+        }
+
+        state = State.AUTH;
+        if (authMechanisms.contains(MECHANISM_PLAIN)) {
+            sendCommand("AUTH PLAIN " + encode("\0" + username + "\0" + password), this::handleAuthenticationResult);
+        } else if (authMechanisms.contains(MECHANISM_LOGIN)) {
+            sendCommand("AUTH LOGIN", usernameChallenge -> {
+                expectChallenge(usernameChallenge);
+                sendCommand(encode(username), passwordChallenge -> {
+                    expectChallenge(passwordChallenge);
+                    sendCommand(encode(password), this::handleAuthenticationResult);
+                });
+            });
+        } else {
+            throw new AuthenticationFailedException(String.format("No supported authentication mechanism offered by SMTP server %s: %s",
+                    address, authMechanisms));
+        }
+    }
+
+    private void expectChallenge(SMTPReply reply) throws AuthenticationFailedException {
+        if (reply.getCode() != REPLY_SERVER_CHALLENGE) {
+            throw new AuthenticationFailedException(reply.toString());
+        }
+    }
+
+    private void handleAuthenticationResult(SMTPReply reply) throws MessagingException {
+        if (reply.getCode() != REPLY_AUTHENTICATION_SUCCEEDED) {
+            throw new AuthenticationFailedException(reply.toString());
+        }
+        startTransaction();
+    }
+
+    private void startTransaction() throws MessagingException {
+
+        if (transactionIndex == transactions.size()) {
+            quit();
+            return;
+        }
+
+        state = State.TRANSACTION;
+        recipientIndex = 0;
+        acceptedRecipients = new ArrayList<>();
+        rejectedRecipients = new LinkedHashMap<>();
+        failedCommand = null;
+        failureReply = null;
+
+        SMTPTransaction transaction = transactions.get(transactionIndex);
+        if (nioSMTPConfigurationProperties.isPipeliningEnabled() && extensions.contains(EXTENSION_PIPELINING)) {
+            sendCommand(String.format("MAIL FROM:<%s>", transaction.getSender()), this::handleMailReply);
+            for (String recipient : transaction.getRecipients()) {
+                sendCommand(String.format("RCPT TO:<%s>", recipient), reply -> handleRecipientReply(recipient, reply));
+            }
+            sendCommand(COMMAND_DATA, this::handleDataReply);
+        } else {
+            sendCommand(String.format("MAIL FROM:<%s>", transaction.getSender()), reply -> {
+                handleMailReply(reply);
+                if (failedCommand == null) {
+                    sendNextRecipient();
+                } else {
+                    completeTransaction();
+                }
+            });
+        }
+    }
+
+    private void sendNextRecipient() throws MessagingException {
+
+        List<String> recipients = transactions.get(transactionIndex).getRecipients();
+        if (recipientIndex < recipients.size()) {
+            String recipient = recipients.get(recipientIndex++);
+            sendCommand(String.format("RCPT TO:<%s>", recipient), reply -> {
+                handleRecipientReply(recipient, reply);
+                sendNextRecipient();
+            });
+        } else if (acceptedRecipients.isEmpty()) {
+            completeTransaction();
+        } else {
+            sendCommand(COMMAND_DATA, this::handleDataReply);
+        }
+    }
+
+    private void handleMailReply(SMTPReply reply) {
+        if (!reply.isPositiveCompletion()) {
+            recordFailure(COMMAND_MAIL, reply);
+        }
+    }
+
+    private void handleRecipientReply(String recipient, SMTPReply reply) {
+
+        if (failedCommand != null) {
+            return;
+        }
+
+        if (reply.isPositiveCompletion()) {
+            acceptedRecipients.add(recipient);
+        } else {
+            rejectedRecipients.put(recipient, reply);
+        }
+    }
+
+    private void handleDataReply(SMTPReply reply) throws MessagingException {
+
+        if (reply.getCode() != REPLY_START_MAIL_INPUT) {
+            if (failedCommand == null && !acceptedRecipients.isEmpty()) {
+                recordFailure(COMMAND_DATA, reply);
+            }
+            completeTransaction();
+        } else if (failedCommand != null || acceptedRecipients.isEmpty()) {
+            // pipelined DATA command might be accepted even if all recipients are rejected, then empty content must be sent (RFC 2920)
+            write(EMPTY_DATA, ignoredReply -> completeTransaction());
+        } else {
+            writeContent(transactions.get(transactionIndex).getContent(), contentReply -> {
+                if (!contentReply.isPositiveCompletion()) {
+                    recordFailure(COMMAND_DATA, contentReply);
+                }
+                completeTransaction();
+            });
+        }
+    }
+
+    private void recordFailure(String command, SMTPReply reply) {
+        if (failedCommand == null) {
+            failedCommand = command;
+            failureReply = reply;
+        }
+    }
+
+    private void completeTransaction() throws MessagingException {
+
+        SMTPTransactionResult transactionResult = SMTPTransactionResult.completed(acceptedRecipients, rejectedRecipients, failedCommand, failureReply);
+        transactionResults.add(transactionResult);
+        transactionIndex++;
+
+        if (!transactionResult.isDelivered() && transactionIndex < transactions.size()) {
+            sendCommand("RSET", reply -> {
+                if (!reply.isPositiveCompletion()) {
+                    throw new MessagingException(String.format("SMTP server rejected RSET command: %s", reply));
+                }
+                startTransaction();
+            });
+        } else {
+            startTransaction();
+        }
+    }
+
+    private void quit() throws MessagingException {
+        state = State.QUIT;
+        sendCommand("QUIT", reply -> {
+            close();
+            result.complete(transactionResults);
+        });
+    }
+
+    private void sendCommand(String command, ReplyHandler replyHandler) throws MessagingException {
+        write((command + CRLF).getBytes(StandardCharsets.UTF_8), replyHandler);
+    }
+
+    private void write(byte[] data, ReplyHandler replyHandler) throws MessagingException {
+
+        try {
+            queueOutput(ByteBuffer.wrap(data));
+            expectReply(replyHandler);
+            flush();
+        } catch (IOException e) {
+            throw new MessagingException(String.format("Failed to write to SMTP server %s", address), e);
+        }
+    }
+
+    private void writeContent(SMTPContent content, ReplyHandler replyHandler) throws MessagingException {
+
+        // the end of data indicator is only written if the whole content could be written, so a failure never sends a truncated message
+        DotStuffingOutputStream contentStream = new DotStuffingOutputStream(new NetworkOutputStream());
+        try {
+            content.writeTo(contentStream);
+            contentStream.finish();
+            expectReply(replyHandler);
+            flush();
+        } catch (IOException e) {
+            if (e.getCause() instanceof MessagingException) {
+                throw (MessagingException) e.getCause();
+            }
+            throw new MessagingException(String.format("Failed to write message content to SMTP server %s", address), e);
+        }
+    }
+
+    private void queueOutput(ByteBuffer data) throws SSLException, MessagingException {
+        if (sslEngine == null) {
+            outputQueue.add(data);
+        } else {
+            wrap(data);
+        }
+    }
+
+    private void expectReply(ReplyHandler replyHandler) {
+        replyHandlers.add(replyHandler);
+    }
+
+    private void flush() throws IOException {
+
+        while (!outputQueue.isEmpty()) {
+            ByteBuffer buffer = outputQueue.peek();
+            if (channel.write(buffer) > 0) {
+                refreshDeadline();
+            }
+            if (buffer.hasRemaining()) {
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            outputQueue.poll();
+        }
+
+        selectionKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void refreshDeadline() {
+        deadline = System.currentTimeMillis() + nioSMTPConfigurationProperties.getReadTimeout();
+    }
+
+    private void close() {
+
+        state = State.CLOSED;
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // closing a failed connection, nothing else to do
+            }
+        }
+    }
+
+    private MessagingException asMessagingException(Exception exception) {
+        return exception instanceof MessagingException
+                ? (MessagingException) exception
+                : new MessagingException(String.format("SMTP session with %s failed: %s", address, exception.getMessage()), exception);
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minimumCapacity) {
+        ByteBuffer enlargedBuffer = ByteBuffer.allocate(Math.max(minimumCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        enlargedBuffer.put(buffer);
+        return enlargedBuffer;
+    }
+
+    private static String encode(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * {@link OutputStream} writing into a network buffer of the session. Every filled buffer is queued (encrypted, if TLS is
+     * active) and flushed to the channel right away, so the content is only held in memory as far as the server falls behind reading it.
+     */
+    private final class NetworkOutputStream extends OutputStream {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(NETWORK_BUFFER_SIZE);
+
+        @Override
+        public void write(int b) throws IOException {
+
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(remaining, buffer.remaining());
+                buffer.put(b, offset, length);
+                offset += length;
+                remaining -= length;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+
+            if (buffer.position() == 0) {
+                return;
+            }
+
+            buffer.flip();
+            try {
+                queueOutput(buffer);
+            } catch (MessagingException e) {
+                throw new IOException(e);
+            }
+            SMTPSession.this.flush();
+
+            // encrypted data is queued in buffers of its own, while plain buffers can only be reused once written to the channel
+            if (sslEngine != null || outputQueue.isEmpty()) {
+                buffer.clear();
+            } else {
+                buffer = ByteBuffer.allocate(NETWORK_BUFFER_SIZE);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReplyHandler {
+        void handle(SMTPReply reply) throws IOException, MessagingException;
+    }
+}
@@ -0,0 +1,40 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import java.util.List;
+
+/**
+ * Single mail transaction (MAIL, RCPT and DATA commands) of an SMTP session.
+ *
+ * @author Peter Smith
+ */
+public class SMTPTransaction {
+
+    private final String sender;
+    private final List<String> recipients;
+    private final SMTPContent content;
+
+    /**
+     * Creates a new {@link SMTPTransaction}.
+     *
+     * @param sender envelope sender address
+     * @param recipients envelope recipient addresses
+     * @param content {@link SMTPContent} writing the message content, when the server is ready to receive it
+     */
+    public SMTPTransaction(String sender, List<String> recipients, SMTPContent content) {
+        this.sender = sender;
+        this.recipients = List.copyOf(recipients);
+        this.content = content;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    SMTPContent getContent() {
+        return content;
+    }
+}
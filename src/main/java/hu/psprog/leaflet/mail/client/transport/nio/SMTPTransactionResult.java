@@ -0,0 +1,87 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Result of an {@link SMTPTransaction}.
+ * Message is delivered if its content has been accepted by the server for at least one recipient,
+ * recipients rejected by the server are available along with the reply of the server even in that case.
+ *
+ * @author Peter Smith
+ */
+public class SMTPTransactionResult {
+
+    private final List<String> acceptedRecipients;
+    private final Map<String, SMTPReply> rejectedRecipients;
+    private final String failedCommand;
+    private final SMTPReply failureReply;
+    private final Exception failure;
+
+    private SMTPTransactionResult(List<String> acceptedRecipients, Map<String, SMTPReply> rejectedRecipients, String failedCommand,
+                                  SMTPReply failureReply, Exception failure) {
+        this.acceptedRecipients = acceptedRecipients;
+        this.rejectedRecipients = rejectedRecipients;
+        this.failedCommand = failedCommand;
+        this.failureReply = failureReply;
+        this.failure = failure;
+    }
+
+    public List<String> getAcceptedRecipients() {
+        return acceptedRecipients;
+    }
+
+    public Map<String, SMTPReply> getRejectedRecipients() {
+        return rejectedRecipients;
+    }
+
+    /**
+     * Returns the command of the transaction rejected by the server (other than RCPT commands).
+     *
+     * @return rejected command, or {@code null} if no command has been rejected
+     */
+    public String getFailedCommand() {
+        return failedCommand;
+    }
+
+    public SMTPReply getFailureReply() {
+        return failureReply;
+    }
+
+    /**
+     * Returns the failure interrupting the transaction (e.g. I/O error or timeout).
+     *
+     * @return failure of the transaction, or {@code null} if the transaction has been completed
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public boolean isDelivered() {
+        return Objects.isNull(failure) && Objects.isNull(failedCommand) && !acceptedRecipients.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("acceptedRecipients", acceptedRecipients)
+                .append("rejectedRecipients", rejectedRecipients)
+                .append("failedCommand", failedCommand)
+                .append("failureReply", failureReply)
+                .append("failure", failure)
+                .toString();
+    }
+
+    static SMTPTransactionResult completed(List<String> acceptedRecipients, Map<String, SMTPReply> rejectedRecipients,
+                                           String failedCommand, SMTPReply failureReply) {
+        return new SMTPTransactionResult(List.copyOf(acceptedRecipients), Map.copyOf(rejectedRecipients), failedCommand, failureReply, null);
+    }
+
+    static SMTPTransactionResult failed(Exception failure) {
+        return new SMTPTransactionResult(Collections.emptyList(), Collections.emptyMap(), null, null, failure);
+    }
+}
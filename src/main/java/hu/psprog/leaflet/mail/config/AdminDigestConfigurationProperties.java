@@ -0,0 +1,69 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admin notification digest configuration properties.
+ * Optional properties:
+ *  - mail.admin-digest.enabled: enables coalescing admin notifications (mails without recipient) into digest mails (defaults to false)
+ *  - mail.admin-digest.window: maximum time in milliseconds a notification is buffered before the digest is sent (defaults to 60000)
+ *  - mail.admin-digest.max-mails: maximum number of notifications in a single digest, reaching it sends the digest immediately (defaults to 100)
+ *  - mail.admin-digest.template: name of the digest template (defaults to leaflet_admin_digest)
+ *  - mail.admin-digest.subject: subject of the digest mail, formatted with the number of notifications (defaults to "Admin notification digest (%d notifications)")
+ *
+ * @author Peter Smith
+ */
+@Component
+public class AdminDigestConfigurationProperties {
+
+    private final boolean enabled;
+    private final long window;
+    private final int maxMails;
+    private final String template;
+    private final String subject;
+
+    public AdminDigestConfigurationProperties(@Value("${mail.admin-digest.enabled:false}") boolean enabled,
+                                              @Value("${mail.admin-digest.window:60000}") long window,
+                                              @Value("${mail.admin-digest.max-mails:100}") int maxMails,
+                                              @Value("${mail.admin-digest.template:leaflet_admin_digest}") String template,
+                                              @Value("${mail.admin-digest.subject:Admin notification digest (%d notifications)}") String subject) {
+        this.enabled = enabled;
+        this.window = window;
+        this.maxMails = maxMails;
+        this.template = template;
+        this.subject = subject;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    public int getMaxMails() {
+        return maxMails;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("window", window)
+                .append("maxMails", maxMails)
+                .append("template", template)
+                .append("subject", subject)
+                .toString();
+    }
+}
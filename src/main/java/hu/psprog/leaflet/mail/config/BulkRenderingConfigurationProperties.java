@@ -0,0 +1,42 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bulk (split static/personalized) rendering configuration properties.
+ * Optional properties:
+ *  - mail.bulk-rendering.enabled: enables bulk rendering of mails with personalized content keys (defaults to true)
+ *  - mail.bulk-rendering.max-plans: maximum number of cached rendering plans (one per template and shared content), least recently used plans are evicted first (defaults to 32)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class BulkRenderingConfigurationProperties {
+
+    private final boolean enabled;
+    private final int maxPlans;
+
+    public BulkRenderingConfigurationProperties(@Value("${mail.bulk-rendering.enabled:true}") boolean enabled,
+                                                @Value("${mail.bulk-rendering.max-plans:32}") int maxPlans) {
+        this.enabled = enabled;
+        this.maxPlans = maxPlans;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxPlans() {
+        return maxPlans;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("maxPlans", maxPlans)
+                .toString();
+    }
+}
@@ -0,0 +1,51 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * SMTP circuit breaker configuration properties.
+ * Optional properties:
+ *  - mail.circuit-breaker.enabled: enables failing fast while the SMTP server is considered unavailable (defaults to false)
+ *  - mail.circuit-breaker.failure-threshold: number of consecutive server failures opening the circuit (defaults to 5)
+ *  - mail.circuit-breaker.open-duration: time in milliseconds the circuit stays open before a trial delivery is let through (defaults to 30000)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class CircuitBreakerConfigurationProperties {
+
+    private final boolean enabled;
+    private final int failureThreshold;
+    private final long openDuration;
+
+    public CircuitBreakerConfigurationProperties(@Value("${mail.circuit-breaker.enabled:false}") boolean enabled,
+                                                 @Value("${mail.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                                                 @Value("${mail.circuit-breaker.open-duration:30000}") long openDuration) {
+        this.enabled = enabled;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("failureThreshold", failureThreshold)
+                .append("openDuration", openDuration)
+                .toString();
+    }
+}
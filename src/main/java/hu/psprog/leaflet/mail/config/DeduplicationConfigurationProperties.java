@@ -0,0 +1,79 @@
+package hu.psprog.leaflet.mail.config;
+
+import hu.psprog.leaflet.mail.client.deduplication.DeduplicationStrategy;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Idempotency key deduplication configuration properties.
+ * Optional properties:
+ *  - mail.deduplication.strategy: strategy of tracking idempotency keys (see {@link DeduplicationStrategy}, defaults to TIME_BUCKETED)
+ *  - mail.deduplication.window: time in milliseconds an idempotency key is remembered for (defaults to 86400000)
+ *  - mail.deduplication.buckets: number of buckets the window is split into in TIME_BUCKETED strategy (defaults to 24)
+ *  - mail.deduplication.max-keys: maximum number of remembered (committed) keys in TIME_BUCKETED strategy, oldest buckets are dropped early above it (defaults to 100000)
+ *  - mail.deduplication.expected-keys: expected number of keys per window in BLOOM_FILTER strategy (defaults to 1000000)
+ *  - mail.deduplication.false-positive-probability: tolerated ratio of unique mails reported as duplicate in BLOOM_FILTER strategy (defaults to 0.001)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class DeduplicationConfigurationProperties {
+
+    private final DeduplicationStrategy strategy;
+    private final long window;
+    private final int buckets;
+    private final int maxKeys;
+    private final int expectedKeys;
+    private final double falsePositiveProbability;
+
+    public DeduplicationConfigurationProperties(@Value("${mail.deduplication.strategy:TIME_BUCKETED}") DeduplicationStrategy strategy,
+                                                @Value("${mail.deduplication.window:86400000}") long window,
+                                                @Value("${mail.deduplication.buckets:24}") int buckets,
+                                                @Value("${mail.deduplication.max-keys:100000}") int maxKeys,
+                                                @Value("${mail.deduplication.expected-keys:1000000}") int expectedKeys,
+                                                @Value("${mail.deduplication.false-positive-probability:0.001}") double falsePositiveProbability) {
+        this.strategy = strategy;
+        this.window = window;
+        this.buckets = buckets;
+        this.maxKeys = maxKeys;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    public DeduplicationStrategy getStrategy() {
+        return strategy;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public int getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    public double getFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("strategy", strategy)
+                .append("window", window)
+                .append("buckets", buckets)
+                .append("maxKeys", maxKeys)
+                .append("expectedKeys", expectedKeys)
+                .append("falsePositiveProbability", falsePositiveProbability)
+                .toString();
+    }
+}
@@ -0,0 +1,80 @@
+package hu.psprog.leaflet.mail.config;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailExecutionMode;
+import hu.psprog.leaflet.mail.client.dispatcher.OverflowPolicy;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mail execution configuration properties.
+ * Optional properties:
+ *  - mail.execution.mode: execution mode of mail sending (see {@link MailExecutionMode}, defaults to SYNCHRONOUS)
+ *  - mail.execution.workers: number of worker threads in QUEUED and PRIORITY_QUEUED modes (defaults to 4)
+ *  - mail.execution.queue-capacity: maximum number of waiting mails in QUEUED mode, and per lane in PRIORITY_QUEUED mode (defaults to 1000)
+ *  - mail.execution.overflow-policy: policy applied when the queue is full (see {@link OverflowPolicy}, defaults to BLOCK)
+ *  - mail.execution.max-concurrency: maximum number of concurrent sends in VIRTUAL_THREAD mode (defaults to 100)
+ *  - mail.execution.shutdown-timeout: time in milliseconds to wait for queued mails to be sent on shutdown (defaults to 30000)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class ExecutionConfigurationProperties {
+
+    private final MailExecutionMode mode;
+    private final int workers;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxConcurrency;
+    private final long shutdownTimeout;
+
+    public ExecutionConfigurationProperties(@Value("${mail.execution.mode:SYNCHRONOUS}") MailExecutionMode mode,
+                                            @Value("${mail.execution.workers:4}") int workers,
+                                            @Value("${mail.execution.queue-capacity:1000}") int queueCapacity,
+                                            @Value("${mail.execution.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                                            @Value("${mail.execution.max-concurrency:100}") int maxConcurrency,
+                                            @Value("${mail.execution.shutdown-timeout:30000}") long shutdownTimeout) {
+        this.mode = mode;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxConcurrency = maxConcurrency;
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    public MailExecutionMode getMode() {
+        return mode;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("mode", mode)
+                .append("workers", workers)
+                .append("queueCapacity", queueCapacity)
+                .append("overflowPolicy", overflowPolicy)
+                .append("maxConcurrency", maxConcurrency)
+                .append("shutdownTimeout", shutdownTimeout)
+                .toString();
+    }
+}
@@ -0,0 +1,42 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inline (CID referenced) resource configuration properties.
+ * Optional properties:
+ *  - mail.inline-resources.enabled: enables embedding inline resources referenced by rendered mails (defaults to true)
+ *  - mail.inline-resources.location: resource pattern of the inline resources, file names are used as content IDs (defaults to classpath*:/mail/inline/*)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class InlineResourceConfigurationProperties {
+
+    private final boolean enabled;
+    private final String location;
+
+    public InlineResourceConfigurationProperties(@Value("${mail.inline-resources.enabled:true}") boolean enabled,
+                                                 @Value("${mail.inline-resources.location:classpath*:/mail/inline/*}") String location) {
+        this.enabled = enabled;
+        this.location = location;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("location", location)
+                .toString();
+    }
+}
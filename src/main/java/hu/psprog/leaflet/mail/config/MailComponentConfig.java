@@ -1,9 +1,31 @@
 package hu.psprog.leaflet.mail.config;
 
+import hu.psprog.leaflet.mail.client.deduplication.MailDeduplicationFilter;
+import hu.psprog.leaflet.mail.client.deduplication.impl.NoOpMailDeduplicationFilter;
+import hu.psprog.leaflet.mail.client.deduplication.impl.RotatingBloomMailDeduplicationFilter;
+import hu.psprog.leaflet.mail.client.deduplication.impl.TimeBucketedMailDeduplicationFilter;
+import hu.psprog.leaflet.mail.client.dispatcher.MailDispatcher;
+import hu.psprog.leaflet.mail.client.dispatcher.impl.PriorityLaneMailDispatcher;
+import hu.psprog.leaflet.mail.client.dispatcher.impl.QueuedMailDispatcher;
+import hu.psprog.leaflet.mail.client.dispatcher.impl.SynchronousMailDispatcher;
+import hu.psprog.leaflet.mail.client.dispatcher.impl.VirtualThreadMailDispatcher;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.outbox.MailOutbox;
+import hu.psprog.leaflet.mail.client.outbox.impl.MappedFileMailOutbox;
+import hu.psprog.leaflet.mail.client.ratelimit.SMTPRateLimiter;
+import hu.psprog.leaflet.mail.client.renderer.impl.LruTemplateCacheManager;
+import hu.psprog.leaflet.mail.client.routing.SMTPEndpoint;
+import hu.psprog.leaflet.mail.client.routing.SMTPRouter;
+import hu.psprog.leaflet.mail.client.transport.PooledJavaMailSender;
+import hu.psprog.leaflet.mail.client.transport.SMTPTransportType;
+import hu.psprog.leaflet.mail.client.transport.nio.NioJavaMailSender;
+import hu.psprog.leaflet.mail.client.transport.nio.NioSMTPEngine;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
@@ -11,9 +33,16 @@ import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.spring5.SpringTemplateEngine;
 import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.AbstractConfigurableTemplateResolver;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import org.thymeleaf.templateresolver.FileTemplateResolver;
 import org.thymeleaf.templateresolver.ITemplateResolver;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import static hu.psprog.leaflet.mail.config.MailComponentConfig.COMPONENT_SCAN_PATH;
 
 /**
@@ -30,19 +59,98 @@ public class MailComponentConfig {
     private static final String TEMPLATE_RESOLVER_PREFIX = "/mail/";
     private static final String TEMPLATE_RESOLVER_SUFFIX = ".html";
     private static final String CHARACTER_ENCODING = "UTF-8";
+    private static final String ENDPOINT_PART_SEPARATOR = ":";
+    private static final String INVALID_ENDPOINT_DEFINITION = "Invalid SMTP endpoint definition [%s], expected host:port or host:port:weight.";
+    private static final int DEFAULT_ENDPOINT_WEIGHT = 1;
+    private static final String SEND_PARTIAL_PROPERTY = "mail.smtp.sendpartial";
 
     @Bean
     @Autowired
-    public JavaMailSender javaMailSender(SMTPConfigurationProperties smtpConfigurationProperties) {
+    public JavaMailSender javaMailSender(SMTPConfigurationProperties smtpConfigurationProperties,
+                                         SMTPRoutingConfigurationProperties smtpRoutingConfigurationProperties, NioSMTPEngine nioSMTPEngine) {
 
-        JavaMailSenderImpl javaMailSender = new JavaMailSenderImpl();
-        javaMailSender.setHost(smtpConfigurationProperties.getSmtpHost());
-        javaMailSender.setPort(smtpConfigurationProperties.getSmtpPort());
-        javaMailSender.setUsername(smtpConfigurationProperties.getSmtpUsername());
-        javaMailSender.setPassword(smtpConfigurationProperties.getSmtpPassword());
-        javaMailSender.setDefaultEncoding(CHARACTER_ENCODING);
+        // with explicitly configured endpoints, this sender is only used for creating messages, so it does not need a connection pool
+        boolean pooled = smtpConfigurationProperties.isPoolEnabled() && smtpRoutingConfigurationProperties.getEndpoints().isEmpty();
 
-        return javaMailSender;
+        return createJavaMailSender(smtpConfigurationProperties, nioSMTPEngine, smtpConfigurationProperties.getSmtpHost(),
+                smtpConfigurationProperties.getSmtpPort(), pooled);
+    }
+
+    @Bean
+    @Autowired
+    public SMTPRouter smtpRouter(JavaMailSender javaMailSender, SMTPConfigurationProperties smtpConfigurationProperties,
+                                 SMTPRoutingConfigurationProperties smtpRoutingConfigurationProperties, SMTPRateLimiter smtpRateLimiter,
+                                 NioSMTPEngine nioSMTPEngine) {
+
+        List<SMTPEndpoint> endpoints = smtpRoutingConfigurationProperties.getEndpoints().stream()
+                .map(endpointDefinition -> createEndpoint(endpointDefinition, smtpConfigurationProperties, nioSMTPEngine))
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (endpoints.isEmpty()) {
+            endpoints.add(new SMTPEndpoint(smtpConfigurationProperties.getSmtpHost(), smtpConfigurationProperties.getSmtpPort(),
+                    DEFAULT_ENDPOINT_WEIGHT, javaMailSender, false));
+        }
+
+        return new SMTPRouter(endpoints, smtpRoutingConfigurationProperties, smtpRateLimiter);
+    }
+
+    @Bean
+    @Autowired
+    public NioSMTPEngine nioSMTPEngine(NioSMTPConfigurationProperties nioSMTPConfigurationProperties) {
+        return new NioSMTPEngine(nioSMTPConfigurationProperties);
+    }
+
+    @Bean
+    @Autowired
+    public MailDispatcher mailDispatcher(ExecutionConfigurationProperties executionConfigurationProperties,
+                                         PriorityLaneConfigurationProperties priorityLaneConfigurationProperties, MailMetrics mailMetrics) {
+
+        MailDispatcher mailDispatcher;
+        switch (executionConfigurationProperties.getMode()) {
+            case QUEUED:
+                mailDispatcher = new QueuedMailDispatcher(executionConfigurationProperties);
+                break;
+            case PRIORITY_QUEUED:
+                mailDispatcher = new PriorityLaneMailDispatcher(executionConfigurationProperties, priorityLaneConfigurationProperties, mailMetrics);
+                break;
+            case VIRTUAL_THREAD:
+                mailDispatcher = new VirtualThreadMailDispatcher(executionConfigurationProperties);
+                break;
+            case OUTBOX:
+            case SYNCHRONOUS:
+            default:
+                mailDispatcher = new SynchronousMailDispatcher();
+                break;
+        }
+
+        return mailDispatcher;
+    }
+
+    @Bean
+    @Autowired
+    public MailDeduplicationFilter mailDeduplicationFilter(DeduplicationConfigurationProperties deduplicationConfigurationProperties) {
+
+        MailDeduplicationFilter mailDeduplicationFilter;
+        switch (deduplicationConfigurationProperties.getStrategy()) {
+            case TIME_BUCKETED:
+                mailDeduplicationFilter = new TimeBucketedMailDeduplicationFilter(deduplicationConfigurationProperties);
+                break;
+            case BLOOM_FILTER:
+                mailDeduplicationFilter = new RotatingBloomMailDeduplicationFilter(deduplicationConfigurationProperties);
+                break;
+            case NONE:
+            default:
+                mailDeduplicationFilter = new NoOpMailDeduplicationFilter();
+                break;
+        }
+
+        return mailDeduplicationFilter;
+    }
+
+    @Bean
+    @Autowired
+    @Conditional(OutboxEnabledCondition.class)
+    public MailOutbox mailOutbox(OutboxConfigurationProperties outboxConfigurationProperties) {
+        return new MappedFileMailOutbox(outboxConfigurationProperties);
     }
 
     @Bean
@@ -52,25 +160,87 @@ public class MailComponentConfig {
 
     @Bean
     @Autowired
-    public TemplateEngine emailTemplateEngine(MessageSource messageSource) {
+    public TemplateEngine emailTemplateEngine(MessageSource messageSource, TemplateConfigurationProperties templateConfigurationProperties) {
 
         SpringTemplateEngine templateEngine = new SpringTemplateEngine();
-        templateEngine.addTemplateResolver(htmlEmailTemplateResolver());
+        if (StringUtils.isNotBlank(templateConfigurationProperties.getExternalTemplatePath())) {
+            templateEngine.addTemplateResolver(externalHtmlEmailTemplateResolver(templateConfigurationProperties));
+        }
+        templateEngine.addTemplateResolver(htmlEmailTemplateResolver(templateConfigurationProperties));
+        templateEngine.setCacheManager(new LruTemplateCacheManager(templateConfigurationProperties.getCacheMaxSize()));
         templateEngine.setTemplateEngineMessageSource(messageSource);
 
         return templateEngine;
     }
 
-    private ITemplateResolver htmlEmailTemplateResolver() {
+    private SMTPEndpoint createEndpoint(String endpointDefinition, SMTPConfigurationProperties smtpConfigurationProperties, NioSMTPEngine nioSMTPEngine) {
+
+        String[] endpointParts = endpointDefinition.split(ENDPOINT_PART_SEPARATOR);
+        if (endpointParts.length < 2 || endpointParts.length > 3) {
+            throw new IllegalArgumentException(String.format(INVALID_ENDPOINT_DEFINITION, endpointDefinition));
+        }
+
+        String host = endpointParts[0];
+        int port = Integer.parseInt(endpointParts[1]);
+        int weight = endpointParts.length == 3
+                ? Integer.parseInt(endpointParts[2])
+                : DEFAULT_ENDPOINT_WEIGHT;
+
+        return new SMTPEndpoint(host, port, weight,
+                createJavaMailSender(smtpConfigurationProperties, nioSMTPEngine, host, port, smtpConfigurationProperties.isPoolEnabled()), true);
+    }
+
+    private JavaMailSenderImpl createJavaMailSender(SMTPConfigurationProperties smtpConfigurationProperties, NioSMTPEngine nioSMTPEngine,
+                                                    String host, int port, boolean pooled) {
+
+        JavaMailSenderImpl javaMailSender;
+        if (smtpConfigurationProperties.getTransport() == SMTPTransportType.NIO) {
+            javaMailSender = new NioJavaMailSender(nioSMTPEngine);
+        } else if (pooled) {
+            javaMailSender = new PooledJavaMailSender(smtpConfigurationProperties);
+        } else {
+            javaMailSender = new JavaMailSenderImpl();
+        }
+        javaMailSender.setHost(host);
+        javaMailSender.setPort(port);
+        javaMailSender.setUsername(smtpConfigurationProperties.getSmtpUsername());
+        javaMailSender.setPassword(smtpConfigurationProperties.getSmtpPassword());
+        javaMailSender.setDefaultEncoding(CHARACTER_ENCODING);
+        // grouped messages are still sent to the accepted recipients if some of their recipients are rejected
+        javaMailSender.getJavaMailProperties().setProperty(SEND_PARTIAL_PROPERTY, Boolean.TRUE.toString());
+
+        return javaMailSender;
+    }
+
+    private ITemplateResolver externalHtmlEmailTemplateResolver(TemplateConfigurationProperties templateConfigurationProperties) {
+
+        FileTemplateResolver templateResolver = new FileTemplateResolver();
+        templateResolver.setOrder(0);
+        templateResolver.setPrefix(StringUtils.appendIfMissing(templateConfigurationProperties.getExternalTemplatePath(), File.separator));
+        templateResolver.setCheckExistence(true);
+        configureTemplateResolver(templateResolver, templateConfigurationProperties);
+
+        return templateResolver;
+    }
+
+    private ITemplateResolver htmlEmailTemplateResolver(TemplateConfigurationProperties templateConfigurationProperties) {
 
         ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
         templateResolver.setOrder(1);
         templateResolver.setPrefix(TEMPLATE_RESOLVER_PREFIX);
+        configureTemplateResolver(templateResolver, templateConfigurationProperties);
+
+        return templateResolver;
+    }
+
+    private void configureTemplateResolver(AbstractConfigurableTemplateResolver templateResolver, TemplateConfigurationProperties templateConfigurationProperties) {
+
         templateResolver.setSuffix(TEMPLATE_RESOLVER_SUFFIX);
         templateResolver.setTemplateMode(TemplateMode.HTML);
         templateResolver.setCharacterEncoding(CHARACTER_ENCODING);
-        templateResolver.setCacheable(false);
-
-        return templateResolver;
+        templateResolver.setCacheable(templateConfigurationProperties.isCacheEnabled());
+        if (templateConfigurationProperties.getCacheTTL() > 0) {
+            templateResolver.setCacheTTLMs(templateConfigurationProperties.getCacheTTL());
+        }
     }
 }
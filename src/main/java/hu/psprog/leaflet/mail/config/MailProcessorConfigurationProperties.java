@@ -17,6 +17,10 @@ import java.util.Objects;
  *  - mail.sender.name: sender name
  *  - mail.renderer: template renderer engine, defaults to {@link ThymeleafMailRenderer}
  *
+ * Optional properties:
+ *  - mail.batch.size: maximum number of mails sent within a single SMTP session by batch sending (defaults to 50)
+ *  - mail.render.streaming: renders mails directly into a pooled, encoding buffer backing the MIME body, instead of intermediate Strings (defaults to false)
+ *
  * @author Peter Smith
  */
 @Component
@@ -26,11 +30,15 @@ public class MailProcessorConfigurationProperties {
     private final String senderAddress;
     private final String senderName;
     private final Class<? extends MailRenderer> renderer;
+    private final int batchSize;
+    private final boolean streamingRendering;
 
     public MailProcessorConfigurationProperties(@NotEmpty @Value("${mail.notification}") String adminNotificationAddress,
                                                 @NotEmpty @Value("${mail.sender.address}") String senderAddress,
                                                 @NotEmpty @Value("${mail.sender.name}") String senderName,
-                                                @Value("${mail.renderer}") Class<? extends MailRenderer> renderer) {
+                                                @Value("${mail.renderer}") Class<? extends MailRenderer> renderer,
+                                                @Value("${mail.batch.size:50}") int batchSize,
+                                                @Value("${mail.render.streaming:false}") boolean streamingRendering) {
         this.adminNotificationAddress = adminNotificationAddress;
         this.senderAddress = senderAddress;
         this.senderName = senderName;
@@ -39,6 +47,8 @@ public class MailProcessorConfigurationProperties {
         } else {
             this.renderer = ThymeleafMailRenderer.class;
         }
+        this.batchSize = batchSize;
+        this.streamingRendering = streamingRendering;
     }
 
     public String getSenderAddress() {
@@ -57,6 +67,14 @@ public class MailProcessorConfigurationProperties {
         return renderer;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isStreamingRendering() {
+        return streamingRendering;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this)
@@ -64,6 +82,8 @@ public class MailProcessorConfigurationProperties {
                 .append("senderAddress", senderAddress)
                 .append("senderName", senderName)
                 .append("renderer", renderer)
+                .append("batchSize", batchSize)
+                .append("streamingRendering", streamingRendering)
                 .toString();
     }
 }
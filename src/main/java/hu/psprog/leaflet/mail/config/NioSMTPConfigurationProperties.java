@@ -0,0 +1,90 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Non-blocking SMTP engine configuration properties, used by the NIO SMTP transport (mail.smtp.transport=NIO).
+ * Note that the NIO transport does not reduce the number of sending threads: mails are still sent via the blocking JavaMailSender API,
+ * so the sending thread resolves the address of the SMTP server (blocking DNS lookup) and waits for the SMTP session to complete.
+ * Only the socket handling of the sessions is multiplexed over the event loop threads.
+ * Optional properties:
+ *  - mail.smtp.nio.event-loop-threads: number of event loop threads all SMTP sessions are multiplexed over (defaults to 2)
+ *  - mail.smtp.nio.connect-timeout: maximum time in milliseconds to establish a connection (defaults to 10000)
+ *  - mail.smtp.nio.read-timeout: maximum time in milliseconds to wait for the reply of the SMTP server (defaults to 60000)
+ *  - mail.smtp.nio.starttls-enabled: upgrades the connection to TLS if the SMTP server supports STARTTLS (defaults to true)
+ *  - mail.smtp.nio.starttls-required: refuses to send via SMTP servers not supporting STARTTLS (defaults to false)
+ *  - mail.smtp.nio.pipelining-enabled: sends the envelope commands of a message at once if the SMTP server supports PIPELINING (defaults to true)
+ *  - mail.smtp.nio.helo-name: host name sent in the EHLO command (defaults to the name of the local host)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class NioSMTPConfigurationProperties {
+
+    private final int eventLoopThreads;
+    private final long connectTimeout;
+    private final long readTimeout;
+    private final boolean starttlsEnabled;
+    private final boolean starttlsRequired;
+    private final boolean pipeliningEnabled;
+    private final String heloName;
+
+    public NioSMTPConfigurationProperties(@Value("${mail.smtp.nio.event-loop-threads:2}") int eventLoopThreads,
+                                          @Value("${mail.smtp.nio.connect-timeout:10000}") long connectTimeout,
+                                          @Value("${mail.smtp.nio.read-timeout:60000}") long readTimeout,
+                                          @Value("${mail.smtp.nio.starttls-enabled:true}") boolean starttlsEnabled,
+                                          @Value("${mail.smtp.nio.starttls-required:false}") boolean starttlsRequired,
+                                          @Value("${mail.smtp.nio.pipelining-enabled:true}") boolean pipeliningEnabled,
+                                          @Value("${mail.smtp.nio.helo-name:}") String heloName) {
+        this.eventLoopThreads = eventLoopThreads;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.starttlsEnabled = starttlsEnabled;
+        this.starttlsRequired = starttlsRequired;
+        this.pipeliningEnabled = pipeliningEnabled;
+        this.heloName = heloName;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public boolean isStarttlsEnabled() {
+        return starttlsEnabled;
+    }
+
+    public boolean isStarttlsRequired() {
+        return starttlsRequired;
+    }
+
+    public boolean isPipeliningEnabled() {
+        return pipeliningEnabled;
+    }
+
+    public String getHeloName() {
+        return heloName;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("eventLoopThreads", eventLoopThreads)
+                .append("connectTimeout", connectTimeout)
+                .append("readTimeout", readTimeout)
+                .append("starttlsEnabled", starttlsEnabled)
+                .append("starttlsRequired", starttlsRequired)
+                .append("pipeliningEnabled", pipeliningEnabled)
+                .append("heloName", heloName)
+                .toString();
+    }
+}
@@ -0,0 +1,61 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mail outbox configuration properties (used in OUTBOX execution mode).
+ * Mails are stored in the outbox by Java serialization, so all values of their content map must be serializable.
+ * Optional properties:
+ *  - mail.outbox.directory: directory of the outbox journal files (defaults to mail-outbox, relative to the working directory)
+ *  - mail.outbox.segment-size: size of a journal segment file in bytes, also the maximum size of a serialized mail (defaults to 16777216)
+ *  - mail.outbox.sync-on-write: flushes every write to disk before returning (defaults to true)
+ *  - mail.outbox.poll-interval: time in milliseconds the drainer waits before checking an empty outbox again (defaults to 100)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class OutboxConfigurationProperties {
+
+    private final String directory;
+    private final int segmentSize;
+    private final boolean syncOnWrite;
+    private final long pollInterval;
+
+    public OutboxConfigurationProperties(@Value("${mail.outbox.directory:mail-outbox}") String directory,
+                                         @Value("${mail.outbox.segment-size:16777216}") int segmentSize,
+                                         @Value("${mail.outbox.sync-on-write:true}") boolean syncOnWrite,
+                                         @Value("${mail.outbox.poll-interval:100}") long pollInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncOnWrite = syncOnWrite;
+        this.pollInterval = pollInterval;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public boolean isSyncOnWrite() {
+        return syncOnWrite;
+    }
+
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("directory", directory)
+                .append("segmentSize", segmentSize)
+                .append("syncOnWrite", syncOnWrite)
+                .append("pollInterval", pollInterval)
+                .toString();
+    }
+}
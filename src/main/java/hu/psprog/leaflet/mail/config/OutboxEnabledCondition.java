@@ -0,0 +1,21 @@
+package hu.psprog.leaflet.mail.config;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailExecutionMode;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * Condition matching when mail execution mode is set to {@link MailExecutionMode#OUTBOX}.
+ *
+ * @author Peter Smith
+ */
+public class OutboxEnabledCondition implements Condition {
+
+    private static final String EXECUTION_MODE_PROPERTY = "mail.execution.mode";
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        return MailExecutionMode.OUTBOX.name().equalsIgnoreCase(context.getEnvironment().getProperty(EXECUTION_MODE_PROPERTY));
+    }
+}
@@ -0,0 +1,71 @@
+package hu.psprog.leaflet.mail.config;
+
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Priority lane configuration properties, used in PRIORITY_QUEUED execution mode.
+ * Optional properties:
+ *  - mail.priority-lanes.weights: comma separated list of lane weights as priority=weight, lanes are dequeued
+ *    proportionally to their weight while all of them have waiting mails (defaults to HIGH=8,NORMAL=4,BULK=1, missing lanes weigh 1)
+ *  - mail.priority-lanes.reserved-workers: number of workers serving only the HIGH lane, at least one worker is always left
+ *    for the other lanes (defaults to 1)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class PriorityLaneConfigurationProperties {
+
+    private static final String WEIGHT_SEPARATOR = ",";
+    private static final String KEY_SEPARATOR = "=";
+    private static final int DEFAULT_WEIGHT = 1;
+
+    private final Map<MailPriority, Integer> weights;
+    private final int reservedWorkers;
+
+    public PriorityLaneConfigurationProperties(@Value("${mail.priority-lanes.weights:HIGH=8,NORMAL=4,BULK=1}") String weights,
+                                               @Value("${mail.priority-lanes.reserved-workers:1}") int reservedWorkers) {
+        this.weights = parseWeights(weights);
+        this.reservedWorkers = reservedWorkers;
+    }
+
+    public Map<MailPriority, Integer> getWeights() {
+        return weights;
+    }
+
+    public int getReservedWorkers() {
+        return reservedWorkers;
+    }
+
+    private static Map<MailPriority, Integer> parseWeights(String weights) {
+
+        Map<MailPriority, Integer> parsedWeights = new EnumMap<>(MailPriority.class);
+        for (MailPriority priority : MailPriority.values()) {
+            parsedWeights.put(priority, DEFAULT_WEIGHT);
+        }
+        Arrays.stream(StringUtils.split(weights, WEIGHT_SEPARATOR))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .forEach(weight -> parsedWeights.put(
+                        MailPriority.valueOf(StringUtils.substringBefore(weight, KEY_SEPARATOR).trim().toUpperCase()),
+                        Math.max(DEFAULT_WEIGHT, Integer.parseInt(StringUtils.substringAfter(weight, KEY_SEPARATOR).trim()))));
+
+        return Collections.unmodifiableMap(parsedWeights);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("weights", weights)
+                .append("reservedWorkers", reservedWorkers)
+                .toString();
+    }
+}
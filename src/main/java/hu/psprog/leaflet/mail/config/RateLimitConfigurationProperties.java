@@ -0,0 +1,120 @@
+package hu.psprog.leaflet.mail.config;
+
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimit;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitMode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * SMTP rate limiting configuration properties.
+ * Rates are given in messages per second, limits are defined as rate or rate/burst (e.g. 2.5/10), zero rate means unlimited.
+ * Optional properties:
+ *  - mail.rate-limit.enabled: enables rate limiting of sends (defaults to false)
+ *  - mail.rate-limit.mode: behavior on exceeded limits (see {@link RateLimitMode}, defaults to DELAY)
+ *  - mail.rate-limit.max-delay: maximum time in milliseconds a send may be delayed in DELAY and QUEUE modes before being throttled (defaults to 10000)
+ *  - mail.rate-limit.relay-rate: default rate of an SMTP relay (defaults to 10)
+ *  - mail.rate-limit.relay-burst: default burst size of an SMTP relay, should cover the batch size (defaults to 50)
+ *  - mail.rate-limit.relays: comma separated list of relay specific limits as host:port=limit (defaults to none)
+ *  - mail.rate-limit.domain-rate: default rate of a recipient domain (defaults to 0)
+ *  - mail.rate-limit.domain-burst: default burst size of a recipient domain (defaults to 10)
+ *  - mail.rate-limit.domains: comma separated list of recipient domain specific limits as domain=limit (defaults to none)
+ *  - mail.rate-limit.max-domains: maximum number of tracked recipient domains, above it all domain buckets are reset (defaults to 10000)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class RateLimitConfigurationProperties {
+
+    private static final String LIMIT_SEPARATOR = ",";
+    private static final String KEY_SEPARATOR = "=";
+
+    private final boolean enabled;
+    private final RateLimitMode mode;
+    private final long maxDelay;
+    private final RateLimit defaultRelayLimit;
+    private final Map<String, RateLimit> relayLimits;
+    private final RateLimit defaultDomainLimit;
+    private final Map<String, RateLimit> domainLimits;
+    private final int maxDomains;
+
+    public RateLimitConfigurationProperties(@Value("${mail.rate-limit.enabled:false}") boolean enabled,
+                                            @Value("${mail.rate-limit.mode:DELAY}") RateLimitMode mode,
+                                            @Value("${mail.rate-limit.max-delay:10000}") long maxDelay,
+                                            @Value("${mail.rate-limit.relay-rate:10}") double relayRate,
+                                            @Value("${mail.rate-limit.relay-burst:50}") int relayBurst,
+                                            @Value("${mail.rate-limit.relays:}") String relayLimits,
+                                            @Value("${mail.rate-limit.domain-rate:0}") double domainRate,
+                                            @Value("${mail.rate-limit.domain-burst:10}") int domainBurst,
+                                            @Value("${mail.rate-limit.domains:}") String domainLimits,
+                                            @Value("${mail.rate-limit.max-domains:10000}") int maxDomains) {
+        this.enabled = enabled;
+        this.mode = mode;
+        this.maxDelay = maxDelay;
+        this.defaultRelayLimit = new RateLimit(relayRate, relayBurst);
+        this.relayLimits = parseLimits(relayLimits, relayBurst);
+        this.defaultDomainLimit = new RateLimit(domainRate, domainBurst);
+        this.domainLimits = parseLimits(domainLimits, domainBurst);
+        this.maxDomains = maxDomains;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public RateLimitMode getMode() {
+        return mode;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public RateLimit getDefaultRelayLimit() {
+        return defaultRelayLimit;
+    }
+
+    public Map<String, RateLimit> getRelayLimits() {
+        return relayLimits;
+    }
+
+    public RateLimit getDefaultDomainLimit() {
+        return defaultDomainLimit;
+    }
+
+    public Map<String, RateLimit> getDomainLimits() {
+        return domainLimits;
+    }
+
+    public int getMaxDomains() {
+        return maxDomains;
+    }
+
+    private static Map<String, RateLimit> parseLimits(String limits, int defaultBurst) {
+        return Arrays.stream(StringUtils.split(limits, LIMIT_SEPARATOR))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .collect(Collectors.toUnmodifiableMap(
+                        limit -> StringUtils.substringBefore(limit, KEY_SEPARATOR).trim().toLowerCase(),
+                        limit -> RateLimit.parse(StringUtils.substringAfter(limit, KEY_SEPARATOR), defaultBurst)));
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("mode", mode)
+                .append("maxDelay", maxDelay)
+                .append("defaultRelayLimit", defaultRelayLimit)
+                .append("relayLimits", relayLimits)
+                .append("defaultDomainLimit", defaultDomainLimit)
+                .append("domainLimits", domainLimits)
+                .append("maxDomains", maxDomains)
+                .toString();
+    }
+}
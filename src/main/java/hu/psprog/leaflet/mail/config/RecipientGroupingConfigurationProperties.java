@@ -0,0 +1,42 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recipient grouping configuration properties.
+ * Optional properties:
+ *  - mail.recipient-grouping.enabled: enables sending mails of a batch with identical content to the same recipient domain as a single message (defaults to false)
+ *  - mail.recipient-grouping.max-recipients: maximum number of recipients of a single grouped message (defaults to 50)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class RecipientGroupingConfigurationProperties {
+
+    private final boolean enabled;
+    private final int maxRecipients;
+
+    public RecipientGroupingConfigurationProperties(@Value("${mail.recipient-grouping.enabled:false}") boolean enabled,
+                                                    @Value("${mail.recipient-grouping.max-recipients:50}") int maxRecipients) {
+        this.enabled = enabled;
+        this.maxRecipients = maxRecipients;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxRecipients() {
+        return maxRecipients;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("maxRecipients", maxRecipients)
+                .toString();
+    }
+}
@@ -0,0 +1,61 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Rendered mail content cache configuration properties.
+ * Optional properties:
+ *  - mail.render-cache.enabled: enables caching rendered mail content (defaults to false)
+ *  - mail.render-cache.templates: comma separated list of templates whose rendered content may be cached, * means all templates (defaults to none)
+ *  - mail.render-cache.max-weight: maximum total length (in characters) of cached content, least recently used entries are evicted first (defaults to 4194304)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class RenderCacheConfigurationProperties {
+
+    private static final String TEMPLATE_SEPARATOR = ",";
+
+    private final boolean enabled;
+    private final Set<String> templates;
+    private final long maxWeight;
+
+    public RenderCacheConfigurationProperties(@Value("${mail.render-cache.enabled:false}") boolean enabled,
+                                              @Value("${mail.render-cache.templates:}") String templates,
+                                              @Value("${mail.render-cache.max-weight:4194304}") long maxWeight) {
+        this.enabled = enabled;
+        this.templates = Arrays.stream(StringUtils.split(templates, TEMPLATE_SEPARATOR))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .collect(Collectors.toUnmodifiableSet());
+        this.maxWeight = maxWeight;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Set<String> getTemplates() {
+        return templates;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("templates", templates)
+                .append("maxWeight", maxWeight)
+                .toString();
+    }
+}
@@ -0,0 +1,78 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mail delivery retry configuration properties.
+ * Optional properties:
+ *  - mail.retry.max-attempts: maximum number of delivery attempts of a mail, 1 disables retrying (defaults to 1)
+ *  - mail.retry.initial-backoff: time in milliseconds to wait before the first retry (defaults to 500)
+ *  - mail.retry.max-backoff: upper limit of the time in milliseconds to wait between two attempts (defaults to 30000)
+ *  - mail.retry.multiplier: multiplier applied on the backoff time after every attempt (defaults to 2.0)
+ *  - mail.retry.jitter: ratio of the backoff time randomly subtracted from it, between 0 and 1 (defaults to 0.5)
+ *  - mail.retry.transient-reply-delay: minimum time in milliseconds to wait after a transient (4xx) SMTP reply (defaults to 5000)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class RetryConfigurationProperties {
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final long transientReplyDelay;
+
+    public RetryConfigurationProperties(@Value("${mail.retry.max-attempts:1}") int maxAttempts,
+                                        @Value("${mail.retry.initial-backoff:500}") long initialBackoff,
+                                        @Value("${mail.retry.max-backoff:30000}") long maxBackoff,
+                                        @Value("${mail.retry.multiplier:2.0}") double multiplier,
+                                        @Value("${mail.retry.jitter:0.5}") double jitter,
+                                        @Value("${mail.retry.transient-reply-delay:5000}") long transientReplyDelay) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.transientReplyDelay = transientReplyDelay;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public long getTransientReplyDelay() {
+        return transientReplyDelay;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("maxAttempts", maxAttempts)
+                .append("initialBackoff", initialBackoff)
+                .append("maxBackoff", maxBackoff)
+                .append("multiplier", multiplier)
+                .append("jitter", jitter)
+                .append("transientReplyDelay", transientReplyDelay)
+                .toString();
+    }
+}
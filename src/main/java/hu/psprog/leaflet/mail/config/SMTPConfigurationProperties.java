@@ -1,5 +1,6 @@
 package hu.psprog.leaflet.mail.config;
 
+import hu.psprog.leaflet.mail.client.transport.SMTPTransportType;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -14,6 +15,20 @@ import javax.validation.constraints.NotEmpty;
  *  - mail.smtp.username: SMTP username
  *  - mail.smtp.password: SMTP password
  *
+ * Optional properties:
+ *  - mail.smtp.transport: SMTP transport implementation (see {@link SMTPTransportType}, defaults to JAVAMAIL);
+ *    connection pool properties only apply to the JAVAMAIL transport
+ *
+ * Optional connection pool properties:
+ *  - mail.smtp.pool.enabled: enables pooled, persistent SMTP connections (defaults to false)
+ *  - mail.smtp.pool.min-idle: number of idle connections kept open even if unused (defaults to 1)
+ *  - mail.smtp.pool.max-idle: maximum number of idle connections kept open (defaults to 4)
+ *  - mail.smtp.pool.max-active: maximum number of connections used at the same time (defaults to 8)
+ *  - mail.smtp.pool.max-wait: maximum time in milliseconds to wait for a free connection (defaults to 10000)
+ *  - mail.smtp.pool.max-messages-per-connection: number of messages after a connection is recycled (defaults to 100)
+ *  - mail.smtp.pool.idle-timeout: time in milliseconds after an idle connection above min-idle is closed (defaults to 60000)
+ *  - mail.smtp.pool.keepalive-interval: interval in milliseconds of the NOOP keepalive and eviction run (defaults to 30000)
+ *
  * @author Peter Smith
  */
 @Component
@@ -23,15 +38,42 @@ public class SMTPConfigurationProperties {
     private final int smtpPort;
     private final String smtpUsername;
     private final String smtpPassword;
+    private final SMTPTransportType transport;
+    private final boolean poolEnabled;
+    private final int poolMinIdle;
+    private final int poolMaxIdle;
+    private final int poolMaxActive;
+    private final long poolMaxWait;
+    private final int poolMaxMessagesPerConnection;
+    private final long poolIdleTimeout;
+    private final long poolKeepAliveInterval;
 
     public SMTPConfigurationProperties(@NotEmpty @Value("${mail.smtp.host}") String smtpHost,
                                        @NotEmpty @Value("${mail.smtp.port}") int smtpPort,
                                        @NotEmpty @Value("${mail.smtp.username}") String smtpUsername,
-                                       @NotEmpty @Value("${mail.smtp.password}") String smtpPassword) {
+                                       @NotEmpty @Value("${mail.smtp.password}") String smtpPassword,
+                                       @Value("${mail.smtp.transport:JAVAMAIL}") SMTPTransportType transport,
+                                       @Value("${mail.smtp.pool.enabled:false}") boolean poolEnabled,
+                                       @Value("${mail.smtp.pool.min-idle:1}") int poolMinIdle,
+                                       @Value("${mail.smtp.pool.max-idle:4}") int poolMaxIdle,
+                                       @Value("${mail.smtp.pool.max-active:8}") int poolMaxActive,
+                                       @Value("${mail.smtp.pool.max-wait:10000}") long poolMaxWait,
+                                       @Value("${mail.smtp.pool.max-messages-per-connection:100}") int poolMaxMessagesPerConnection,
+                                       @Value("${mail.smtp.pool.idle-timeout:60000}") long poolIdleTimeout,
+                                       @Value("${mail.smtp.pool.keepalive-interval:30000}") long poolKeepAliveInterval) {
         this.smtpHost = smtpHost;
         this.smtpPort = smtpPort;
         this.smtpUsername = smtpUsername;
         this.smtpPassword = smtpPassword;
+        this.transport = transport;
+        this.poolEnabled = poolEnabled;
+        this.poolMinIdle = poolMinIdle;
+        this.poolMaxIdle = poolMaxIdle;
+        this.poolMaxActive = poolMaxActive;
+        this.poolMaxWait = poolMaxWait;
+        this.poolMaxMessagesPerConnection = poolMaxMessagesPerConnection;
+        this.poolIdleTimeout = poolIdleTimeout;
+        this.poolKeepAliveInterval = poolKeepAliveInterval;
     }
 
     public String getSmtpHost() {
@@ -50,12 +92,57 @@ public class SMTPConfigurationProperties {
         return smtpPassword;
     }
 
+    public SMTPTransportType getTransport() {
+        return transport;
+    }
+
+    public boolean isPoolEnabled() {
+        return poolEnabled;
+    }
+
+    public int getPoolMinIdle() {
+        return poolMinIdle;
+    }
+
+    public int getPoolMaxIdle() {
+        return poolMaxIdle;
+    }
+
+    public int getPoolMaxActive() {
+        return poolMaxActive;
+    }
+
+    public long getPoolMaxWait() {
+        return poolMaxWait;
+    }
+
+    public int getPoolMaxMessagesPerConnection() {
+        return poolMaxMessagesPerConnection;
+    }
+
+    public long getPoolIdleTimeout() {
+        return poolIdleTimeout;
+    }
+
+    public long getPoolKeepAliveInterval() {
+        return poolKeepAliveInterval;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this)
                 .append("smtpHost", smtpHost)
                 .append("smtpPort", smtpPort)
                 .append("smtpUsername", smtpUsername)
+                .append("transport", transport)
+                .append("poolEnabled", poolEnabled)
+                .append("poolMinIdle", poolMinIdle)
+                .append("poolMaxIdle", poolMaxIdle)
+                .append("poolMaxActive", poolMaxActive)
+                .append("poolMaxWait", poolMaxWait)
+                .append("poolMaxMessagesPerConnection", poolMaxMessagesPerConnection)
+                .append("poolIdleTimeout", poolIdleTimeout)
+                .append("poolKeepAliveInterval", poolKeepAliveInterval)
                 .toString();
     }
 }
@@ -0,0 +1,72 @@
+package hu.psprog.leaflet.mail.config;
+
+import hu.psprog.leaflet.mail.client.routing.RoutingStrategy;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SMTP routing configuration properties.
+ * Optional properties:
+ *  - mail.smtp.endpoints: comma separated list of SMTP endpoints as host:port or host:port:weight,
+ *    all of them using the configured SMTP credentials (defaults to none, meaning mail.smtp.host and mail.smtp.port are used)
+ *  - mail.smtp.routing.strategy: endpoint selection strategy (see {@link RoutingStrategy}, defaults to LEAST_OUTSTANDING)
+ *  - mail.smtp.routing.failure-threshold: number of consecutive connection failures marking an endpoint unhealthy (defaults to 3)
+ *  - mail.smtp.routing.recovery-interval: time in milliseconds an unhealthy endpoint is avoided before it is tried again (defaults to 30000)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class SMTPRoutingConfigurationProperties {
+
+    private static final String ENDPOINT_SEPARATOR = ",";
+
+    private final List<String> endpoints;
+    private final RoutingStrategy strategy;
+    private final int failureThreshold;
+    private final long recoveryInterval;
+
+    public SMTPRoutingConfigurationProperties(@Value("${mail.smtp.endpoints:}") String endpoints,
+                                              @Value("${mail.smtp.routing.strategy:LEAST_OUTSTANDING}") RoutingStrategy strategy,
+                                              @Value("${mail.smtp.routing.failure-threshold:3}") int failureThreshold,
+                                              @Value("${mail.smtp.routing.recovery-interval:30000}") long recoveryInterval) {
+        this.endpoints = Arrays.stream(StringUtils.split(endpoints, ENDPOINT_SEPARATOR))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .collect(Collectors.toList());
+        this.strategy = strategy;
+        this.failureThreshold = failureThreshold;
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    public RoutingStrategy getStrategy() {
+        return strategy;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getRecoveryInterval() {
+        return recoveryInterval;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("endpoints", endpoints)
+                .append("strategy", strategy)
+                .append("failureThreshold", failureThreshold)
+                .append("recoveryInterval", recoveryInterval)
+                .toString();
+    }
+}
@@ -0,0 +1,69 @@
+package hu.psprog.leaflet.mail.config;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mail template configuration properties.
+ * Optional properties:
+ *  - mail.template.cache.enabled: enables caching parsed templates (defaults to true)
+ *  - mail.template.cache.max-size: maximum number of cached parsed templates, least recently used ones are evicted first (defaults to 100)
+ *  - mail.template.cache.ttl: time in milliseconds a parsed template is considered valid, 0 means no expiration (defaults to 0)
+ *  - mail.template.external-path: external template directory, checked before the classpath (defaults to none)
+ *  - mail.template.watch-external-path: invalidates cached templates on changes in external template directory (defaults to true)
+ *
+ * @author Peter Smith
+ */
+@Component
+public class TemplateConfigurationProperties {
+
+    private final boolean cacheEnabled;
+    private final int cacheMaxSize;
+    private final long cacheTTL;
+    private final String externalTemplatePath;
+    private final boolean watchExternalTemplatePath;
+
+    public TemplateConfigurationProperties(@Value("${mail.template.cache.enabled:true}") boolean cacheEnabled,
+                                           @Value("${mail.template.cache.max-size:100}") int cacheMaxSize,
+                                           @Value("${mail.template.cache.ttl:0}") long cacheTTL,
+                                           @Value("${mail.template.external-path:}") String externalTemplatePath,
+                                           @Value("${mail.template.watch-external-path:true}") boolean watchExternalTemplatePath) {
+        this.cacheEnabled = cacheEnabled;
+        this.cacheMaxSize = cacheMaxSize;
+        this.cacheTTL = cacheTTL;
+        this.externalTemplatePath = externalTemplatePath;
+        this.watchExternalTemplatePath = watchExternalTemplatePath;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public long getCacheTTL() {
+        return cacheTTL;
+    }
+
+    public String getExternalTemplatePath() {
+        return externalTemplatePath;
+    }
+
+    public boolean isWatchExternalTemplatePath() {
+        return watchExternalTemplatePath;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("cacheEnabled", cacheEnabled)
+                .append("cacheMaxSize", cacheMaxSize)
+                .append("cacheTTL", cacheTTL)
+                .append("externalTemplatePath", externalTemplatePath)
+                .append("watchExternalTemplatePath", watchExternalTemplatePath)
+                .toString();
+    }
+}
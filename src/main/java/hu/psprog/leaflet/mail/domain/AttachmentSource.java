@@ -0,0 +1,25 @@
+package hu.psprog.leaflet.mail.domain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+/**
+ * Lazily opened source of the content of a {@link MailAttachment}.
+ * Content is read only while the message is being written to the SMTP connection, so it is never fully loaded on heap.
+ * As mails may be persisted (e.g. into the outbox), implementations (including lambdas) must be serializable,
+ * thus should refer to the content (e.g. by a path) instead of holding it.
+ *
+ * @author Peter Smith
+ */
+@FunctionalInterface
+public interface AttachmentSource extends Serializable {
+
+    /**
+     * Opens a new stream of the attachment content. May be called multiple times (e.g. on resending the mail).
+     *
+     * @return {@link InputStream} of the attachment content, closed by the caller
+     * @throws IOException if the content could not be opened
+     */
+    InputStream openStream() throws IOException;
+}
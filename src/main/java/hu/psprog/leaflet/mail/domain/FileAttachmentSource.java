@@ -0,0 +1,36 @@
+package hu.psprog.leaflet.mail.domain;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * {@link AttachmentSource} streaming the content of a file.
+ *
+ * @author Peter Smith
+ */
+final class FileAttachmentSource implements AttachmentSource {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+
+    FileAttachmentSource(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(Paths.get(path));
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("path", path)
+                .toString();
+    }
+}
@@ -2,19 +2,36 @@ package hu.psprog.leaflet.mail.domain;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import javax.validation.Valid;
 import javax.validation.constraints.NotEmpty;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Mail object.
  *
  * @author Peter Smith
  */
-public class Mail {
+public class Mail implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String recipient;
+    private List<String> to;
+    private List<String> cc;
+    private List<String> bcc;
     private String replyTo;
     private Map<String, Object> contentMap;
+    private Set<String> personalizedContentKeys;
+    private String idempotencyKey;
+    private MailPriority priority;
+
+    @Valid
+    private List<MailAttachment> attachments;
 
     @NotEmpty
     private String subject;
@@ -26,6 +43,18 @@ public class Mail {
         return recipient;
     }
 
+    public List<String> getTo() {
+        return to;
+    }
+
+    public List<String> getCc() {
+        return cc;
+    }
+
+    public List<String> getBcc() {
+        return bcc;
+    }
+
     public String getReplyTo() {
         return replyTo;
     }
@@ -42,14 +71,37 @@ public class Mail {
         return contentMap;
     }
 
+    public Set<String> getPersonalizedContentKeys() {
+        return personalizedContentKeys;
+    }
+
+    public List<MailAttachment> getAttachments() {
+        return attachments;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public MailPriority getPriority() {
+        return priority;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this)
                 .append("recipient", recipient)
+                .append("to", to)
+                .append("cc", cc)
+                .append("bcc", bcc)
                 .append("replyTo", replyTo)
                 .append("subject", subject)
                 .append("template", template)
                 .append("contentMap", contentMap)
+                .append("personalizedContentKeys", personalizedContentKeys)
+                .append("attachments", attachments)
+                .append("idempotencyKey", idempotencyKey)
+                .append("priority", priority)
                 .toString();
     }
 
@@ -62,10 +114,17 @@ public class Mail {
      */
     public static final class MailBuilder {
         private String recipient;
+        private List<String> to;
+        private List<String> cc;
+        private List<String> bcc;
         private String replyTo;
         private String subject;
         private String template;
         private Map<String, Object> contentMap;
+        private Set<String> personalizedContentKeys;
+        private List<MailAttachment> attachments;
+        private String idempotencyKey;
+        private MailPriority priority;
 
         private MailBuilder() {
         }
@@ -82,6 +141,42 @@ public class Mail {
             return this;
         }
 
+        /**
+         * Adds further (To) recipients to the email, besides the one given by {@link #withRecipient(String)}.
+         * All recipients of the email (including Cc and Bcc recipients) receive the same message,
+         * rendered once and sent within a single SMTP transaction.
+         *
+         * @param to email addresses of the recipients
+         * @return builder
+         */
+        public MailBuilder withTo(List<String> to) {
+            this.to = to;
+            return this;
+        }
+
+        /**
+         * Adds carbon copy (Cc) recipients to the email.
+         *
+         * @param cc email addresses of the Cc recipients
+         * @return builder
+         */
+        public MailBuilder withCc(List<String> cc) {
+            this.cc = cc;
+            return this;
+        }
+
+        /**
+         * Adds blind carbon copy (Bcc) recipients to the email.
+         * Bcc recipients are only added to the SMTP envelope, they are not visible to the other recipients.
+         *
+         * @param bcc email addresses of the Bcc recipients
+         * @return builder
+         */
+        public MailBuilder withBcc(List<String> bcc) {
+            this.bcc = bcc;
+            return this;
+        }
+
         /**
          * Adds optional reply-to address to the email.
          * Providing this parameter forces the processor to set the specified address as reply-to address.
@@ -119,6 +214,7 @@ public class Mail {
 
         /**
          * Adds key-value pairs to be included in email's content.
+         * In OUTBOX execution mode, mails are serialized into the outbox, so all values must be {@link Serializable}.
          *
          * @param contentMap key-value pairs
          * @return builder
@@ -128,13 +224,85 @@ public class Mail {
             return this;
         }
 
+        /**
+         * Marks the given keys of the content map as personalized, i.e. differing per recipient of the same campaign.
+         * Mails of the same template and identical non-personalized content are rendered in bulk mode:
+         * the template is rendered only once, then the (HTML-escaped) personalized values are spliced into the result.
+         * Personalized values therefore must be written as text or attribute values as-is (e.g. th:text, th:attr),
+         * otherwise (e.g. used in conditions or transformed by expressions) the template is rendered in full for each mail.
+         *
+         * @param personalizedContentKeys keys of the personalized content map entries
+         * @return builder
+         */
+        public MailBuilder withPersonalizedContentKeys(Set<String> personalizedContentKeys) {
+            this.personalizedContentKeys = personalizedContentKeys;
+            return this;
+        }
+
+        /**
+         * Adds attachments to the email.
+         * Attachment content is streamed into the message while sending, see {@link MailAttachment}.
+         *
+         * @param attachments list of {@link MailAttachment}s
+         * @return builder
+         */
+        public MailBuilder withAttachments(List<MailAttachment> attachments) {
+            this.attachments = attachments;
+            return this;
+        }
+
+        /**
+         * Adds optional idempotency key to the email.
+         * Mails with the same idempotency key are sent only once within the configured deduplication window,
+         * repeated attempts are reported as {@link MailDeliveryStatus#DUPLICATE} without being rendered or sent.
+         * Key of a mail failing to be delivered is forgotten, so it can be sent again.
+         *
+         * @param idempotencyKey unique identifier of the event the email is sent for
+         * @return builder
+         */
+        public MailBuilder withIdempotencyKey(String idempotencyKey) {
+            this.idempotencyKey = idempotencyKey;
+            return this;
+        }
+
+        /**
+         * Sets the priority of the email (defaults to {@link MailPriority#NORMAL}).
+         * With priority lanes enabled, higher priority mails are dispatched before and regardless of the lower priority ones.
+         *
+         * @param priority {@link MailPriority} of the email
+         * @return builder
+         */
+        public MailBuilder withPriority(MailPriority priority) {
+            this.priority = priority;
+            return this;
+        }
+
         public Mail build() {
             Mail mail = new Mail();
             mail.template = this.template;
             mail.subject = this.subject;
             mail.recipient = this.recipient;
+            mail.to = Objects.isNull(this.to)
+                    ? Collections.emptyList()
+                    : this.to;
+            mail.cc = Objects.isNull(this.cc)
+                    ? Collections.emptyList()
+                    : this.cc;
+            mail.bcc = Objects.isNull(this.bcc)
+                    ? Collections.emptyList()
+                    : this.bcc;
             mail.replyTo = this.replyTo;
+            mail.idempotencyKey = this.idempotencyKey;
+            mail.priority = Objects.isNull(this.priority)
+                    ? MailPriority.NORMAL
+                    : this.priority;
             mail.contentMap = this.contentMap;
+            mail.personalizedContentKeys = Objects.isNull(this.personalizedContentKeys)
+                    ? Collections.emptySet()
+                    : this.personalizedContentKeys;
+            mail.attachments = Objects.isNull(this.attachments)
+                    ? Collections.emptyList()
+                    : this.attachments;
             return mail;
         }
     }
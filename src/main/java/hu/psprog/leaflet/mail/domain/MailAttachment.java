@@ -0,0 +1,125 @@
+package hu.psprog.leaflet.mail.domain;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.nio.file.Path;
+
+/**
+ * Mail attachment.
+ * Content is provided by an {@link AttachmentSource} (a file, a memory-mapped region of a file, or a custom source),
+ * and is streamed into the message while it is being sent, instead of being held in memory.
+ *
+ * @author Peter Smith
+ */
+public class MailAttachment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotEmpty
+    private String filename;
+
+    private String contentType;
+
+    @NotNull
+    private AttachmentSource source;
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public AttachmentSource getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("filename", filename)
+                .append("contentType", contentType)
+                .append("source", source)
+                .toString();
+    }
+
+    public static MailAttachmentBuilder getBuilder() {
+        return new MailAttachmentBuilder();
+    }
+
+    /**
+     * Builder for {@link MailAttachment}.
+     */
+    public static final class MailAttachmentBuilder {
+
+        private String filename;
+        private String contentType;
+        private AttachmentSource source;
+
+        private MailAttachmentBuilder() {
+        }
+
+        public MailAttachmentBuilder withFilename(String filename) {
+            this.filename = filename;
+            return this;
+        }
+
+        /**
+         * Sets the content type of the attachment. If not set, it is determined by the extension of the filename.
+         *
+         * @param contentType content type of the attachment
+         * @return builder
+         */
+        public MailAttachmentBuilder withContentType(String contentType) {
+            this.contentType = contentType;
+            return this;
+        }
+
+        /**
+         * Sets the whole content of the given file as attachment content.
+         *
+         * @param path path of the file
+         * @return builder
+         */
+        public MailAttachmentBuilder withFile(Path path) {
+            this.source = new FileAttachmentSource(path.toAbsolutePath().toString());
+            return this;
+        }
+
+        /**
+         * Sets the given region of the given file as attachment content, read through a read-only memory mapping.
+         *
+         * @param path path of the file
+         * @param offset offset of the region within the file
+         * @param length length of the region (at most {@link Integer#MAX_VALUE})
+         * @return builder
+         */
+        public MailAttachmentBuilder withMappedRegion(Path path, long offset, long length) {
+            this.source = new MappedRegionAttachmentSource(path.toAbsolutePath().toString(), offset, length);
+            return this;
+        }
+
+        /**
+         * Sets a custom, lazily opened {@link AttachmentSource} as attachment content.
+         *
+         * @param source {@link AttachmentSource} of the content
+         * @return builder
+         */
+        public MailAttachmentBuilder withSource(AttachmentSource source) {
+            this.source = source;
+            return this;
+        }
+
+        public MailAttachment build() {
+            MailAttachment mailAttachment = new MailAttachment();
+            mailAttachment.filename = this.filename;
+            mailAttachment.contentType = this.contentType;
+            mailAttachment.source = this.source;
+            return mailAttachment;
+        }
+    }
+}
@@ -4,7 +4,9 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Mail delivery information.
@@ -16,6 +18,9 @@ public class MailDeliveryInfo {
     private Mail mail;
     private MailDeliveryStatus mailDeliveryStatus;
     private Map<String, String> constraintViolations;
+    private String smtpEndpoint;
+    private Map<String, MailDeliveryStatus> recipientStatuses;
+    private String messageId;
 
     public Mail getMail() {
         return mail;
@@ -29,6 +34,30 @@ public class MailDeliveryInfo {
         return constraintViolations;
     }
 
+    public String getSMTPEndpoint() {
+        return smtpEndpoint;
+    }
+
+    /**
+     * Returns the delivery status of each recipient of a {@link MailDeliveryStatus#PARTIALLY_DELIVERED} mail,
+     * keyed by email address. Empty if all recipients share the status of the mail.
+     *
+     * @return delivery status by recipient address
+     */
+    public Map<String, MailDeliveryStatus> getRecipientStatuses() {
+        return recipientStatuses;
+    }
+
+    /**
+     * Returns the Message-ID header of the sent message, which can be used to correlate the mail with SMTP server logs.
+     * Only available for mails handed over to the SMTP server.
+     *
+     * @return Message-ID of the sent message, or {@code null} if the mail has not been sent
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -41,6 +70,9 @@ public class MailDeliveryInfo {
                 .append(mail, that.mail)
                 .append(mailDeliveryStatus, that.mailDeliveryStatus)
                 .append(constraintViolations, that.constraintViolations)
+                .append(smtpEndpoint, that.smtpEndpoint)
+                .append(recipientStatuses, that.recipientStatuses)
+                .append(messageId, that.messageId)
                 .isEquals();
     }
 
@@ -50,6 +82,9 @@ public class MailDeliveryInfo {
                 .append(mail)
                 .append(mailDeliveryStatus)
                 .append(constraintViolations)
+                .append(smtpEndpoint)
+                .append(recipientStatuses)
+                .append(messageId)
                 .toHashCode();
     }
 
@@ -59,6 +94,9 @@ public class MailDeliveryInfo {
                 .append("mail", mail)
                 .append("mailDeliveryStatus", mailDeliveryStatus)
                 .append("constraintViolations", constraintViolations)
+                .append("smtpEndpoint", smtpEndpoint)
+                .append("recipientStatuses", recipientStatuses)
+                .append("messageId", messageId)
                 .toString();
     }
 
@@ -73,6 +111,9 @@ public class MailDeliveryInfo {
         private Mail mail;
         private MailDeliveryStatus mailDeliveryStatus;
         private Map<String, String> constraintViolations;
+        private String smtpEndpoint;
+        private Map<String, MailDeliveryStatus> recipientStatuses;
+        private String messageId;
 
         private MailDeliveryInfoBuilder() {
         }
@@ -92,11 +133,31 @@ public class MailDeliveryInfo {
             return this;
         }
 
+        public MailDeliveryInfoBuilder withSMTPEndpoint(String smtpEndpoint) {
+            this.smtpEndpoint = smtpEndpoint;
+            return this;
+        }
+
+        public MailDeliveryInfoBuilder withRecipientStatuses(Map<String, MailDeliveryStatus> recipientStatuses) {
+            this.recipientStatuses = recipientStatuses;
+            return this;
+        }
+
+        public MailDeliveryInfoBuilder withMessageId(String messageId) {
+            this.messageId = messageId;
+            return this;
+        }
+
         public MailDeliveryInfo build() {
             MailDeliveryInfo mailDeliveryInfo = new MailDeliveryInfo();
             mailDeliveryInfo.mailDeliveryStatus = this.mailDeliveryStatus;
             mailDeliveryInfo.mail = this.mail;
             mailDeliveryInfo.constraintViolations = this.constraintViolations;
+            mailDeliveryInfo.smtpEndpoint = this.smtpEndpoint;
+            mailDeliveryInfo.recipientStatuses = Objects.isNull(this.recipientStatuses)
+                    ? Collections.emptyMap()
+                    : this.recipientStatuses;
+            mailDeliveryInfo.messageId = this.messageId;
             return mailDeliveryInfo;
         }
     }
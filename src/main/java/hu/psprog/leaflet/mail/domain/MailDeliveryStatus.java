@@ -30,5 +30,35 @@ public enum MailDeliveryStatus {
     /**
      * Unknown error (see application log for details).
      */
-    UNKNOWN_ERROR
+    UNKNOWN_ERROR,
+
+    /**
+     * Mail was not accepted for delivery as the mail queue was full.
+     */
+    REJECTED,
+
+    /**
+     * Mail is durably stored in the outbox and will be delivered asynchronously.
+     */
+    QUEUED,
+
+    /**
+     * Mail was not sent as the SMTP server is considered unavailable (circuit breaker is open).
+     */
+    SERVICE_UNAVAILABLE,
+
+    /**
+     * Mail was not sent as a mail with the same idempotency key has already been accepted (or is being processed).
+     */
+    DUPLICATE,
+
+    /**
+     * Mail was not sent as it would exceed the configured rate limits of the SMTP relays or the recipient domain.
+     */
+    THROTTLED,
+
+    /**
+     * Mail is delivered to some of its recipients, but not to all of them (see the per-recipient statuses).
+     */
+    PARTIALLY_DELIVERED
 }
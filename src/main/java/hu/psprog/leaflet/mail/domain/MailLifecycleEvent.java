@@ -0,0 +1,124 @@
+package hu.psprog.leaflet.mail.domain;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.time.Instant;
+
+/**
+ * Transition of a mail into one of its {@link MailLifecycleStage}s.
+ * Events of the terminal stages carry the final {@link MailDeliveryInfo} of the mail.
+ *
+ * @author Peter Smith
+ */
+public class MailLifecycleEvent {
+
+    private Mail mail;
+    private MailLifecycleStage stage;
+    private Instant timestamp;
+    private MailDeliveryInfo mailDeliveryInfo;
+
+    public Mail getMail() {
+        return mail;
+    }
+
+    public MailLifecycleStage getStage() {
+        return stage;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the delivery information of the mail, available for the terminal stages only.
+     *
+     * @return delivery information of the mail, or {@code null} if the stage is not terminal
+     */
+    public MailDeliveryInfo getMailDeliveryInfo() {
+        return mailDeliveryInfo;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+
+        if (!(o instanceof MailLifecycleEvent)) return false;
+
+        MailLifecycleEvent that = (MailLifecycleEvent) o;
+
+        return new EqualsBuilder()
+                .append(mail, that.mail)
+                .append(stage, that.stage)
+                .append(timestamp, that.timestamp)
+                .append(mailDeliveryInfo, that.mailDeliveryInfo)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(17, 37)
+                .append(mail)
+                .append(stage)
+                .append(timestamp)
+                .append(mailDeliveryInfo)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("mail", mail)
+                .append("stage", stage)
+                .append("timestamp", timestamp)
+                .append("mailDeliveryInfo", mailDeliveryInfo)
+                .toString();
+    }
+
+    public static MailLifecycleEventBuilder getBuilder() {
+        return new MailLifecycleEventBuilder();
+    }
+
+    /**
+     * Builder for {@link MailLifecycleEvent}.
+     */
+    public static final class MailLifecycleEventBuilder {
+        private Mail mail;
+        private MailLifecycleStage stage;
+        private Instant timestamp;
+        private MailDeliveryInfo mailDeliveryInfo;
+
+        private MailLifecycleEventBuilder() {
+        }
+
+        public MailLifecycleEventBuilder withMail(Mail mail) {
+            this.mail = mail;
+            return this;
+        }
+
+        public MailLifecycleEventBuilder withStage(MailLifecycleStage stage) {
+            this.stage = stage;
+            return this;
+        }
+
+        public MailLifecycleEventBuilder withTimestamp(Instant timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public MailLifecycleEventBuilder withMailDeliveryInfo(MailDeliveryInfo mailDeliveryInfo) {
+            this.mailDeliveryInfo = mailDeliveryInfo;
+            return this;
+        }
+
+        public MailLifecycleEvent build() {
+            MailLifecycleEvent mailLifecycleEvent = new MailLifecycleEvent();
+            mailLifecycleEvent.mail = this.mail;
+            mailLifecycleEvent.stage = this.stage;
+            mailLifecycleEvent.timestamp = this.timestamp;
+            mailLifecycleEvent.mailDeliveryInfo = this.mailDeliveryInfo;
+            return mailLifecycleEvent;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package hu.psprog.leaflet.mail.domain;
+
+/**
+ * Lifecycle stages of a mail sent one by one, reported as {@link MailLifecycleEvent} objects.
+ *
+ * @author Peter Smith
+ */
+public enum MailLifecycleStage {
+
+    /**
+     * Mail is accepted by the client for sending.
+     */
+    ACCEPTED,
+
+    /**
+     * Mail structure is successfully validated.
+     */
+    VALIDATED,
+
+    /**
+     * Mail content is rendered and the MIME message is assembled.
+     */
+    RENDERED,
+
+    /**
+     * MIME message is handed over to the SMTP server for transmission.
+     */
+    SUBMITTED,
+
+    /**
+     * Mail is durably stored in the outbox and will be delivered asynchronously (terminal stage).
+     */
+    QUEUED,
+
+    /**
+     * Mail is delivered to all or some of its recipients (terminal stage).
+     */
+    DELIVERED,
+
+    /**
+     * Mail is not delivered by the client, see the delivery status of the event for the reason (terminal stage).
+     */
+    FAILED;
+
+    /**
+     * Returns the terminal stage of a mail having the given delivery status.
+     *
+     * @param mailDeliveryStatus {@link MailDeliveryStatus} of the mail
+     * @return DELIVERED for delivered and partially delivered mails, QUEUED for mails stored in the outbox, FAILED otherwise
+     */
+    public static MailLifecycleStage ofDeliveryStatus(MailDeliveryStatus mailDeliveryStatus) {
+
+        MailLifecycleStage mailLifecycleStage;
+        switch (mailDeliveryStatus) {
+            case DELIVERED:
+            case PARTIALLY_DELIVERED:
+                mailLifecycleStage = DELIVERED;
+                break;
+            case QUEUED:
+                mailLifecycleStage = QUEUED;
+                break;
+            default:
+                mailLifecycleStage = FAILED;
+                break;
+        }
+
+        return mailLifecycleStage;
+    }
+}
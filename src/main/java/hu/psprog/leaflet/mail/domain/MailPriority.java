@@ -0,0 +1,24 @@
+package hu.psprog.leaflet.mail.domain;
+
+/**
+ * Mail priority, deciding the dispatcher lane of the mail when priority lanes are in use.
+ *
+ * @author Peter Smith
+ */
+public enum MailPriority {
+
+    /**
+     * Latency-sensitive transactional mail (e.g. password reset, email address verification).
+     */
+    HIGH,
+
+    /**
+     * Regular mail (default).
+     */
+    NORMAL,
+
+    /**
+     * Bulk mail (e.g. newsletters), sent with the remaining capacity.
+     */
+    BULK
+}
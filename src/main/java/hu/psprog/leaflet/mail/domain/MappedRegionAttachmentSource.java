@@ -0,0 +1,89 @@
+package hu.psprog.leaflet.mail.domain;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link AttachmentSource} reading a region of a file through a read-only memory mapping,
+ * so the content is read straight from the page cache, without being copied into heap buffers by file reads.
+ * Mapping is created on opening the stream, and released once it becomes unreachable.
+ *
+ * @author Peter Smith
+ */
+final class MappedRegionAttachmentSource implements AttachmentSource {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+    private final long offset;
+    private final long length;
+
+    MappedRegionAttachmentSource(String path, long offset, long length) {
+        if (offset < 0 || length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Invalid mapped region [offset=%d, length=%d]", offset, length));
+        }
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return new ByteBufferInputStream(fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("path", path)
+                .append("offset", offset)
+                .append("length", length)
+                .toString();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining()
+                    ? buffer.get() & 0xFF
+                    : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int readLength = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, readLength);
+
+            return readLength;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
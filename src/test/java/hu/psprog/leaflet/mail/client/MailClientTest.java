@@ -0,0 +1,161 @@
+package hu.psprog.leaflet.mail.client;
+
+import hu.psprog.leaflet.mail.domain.Mail;
+import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import hu.psprog.leaflet.mail.domain.MailLifecycleEvent;
+import hu.psprog.leaflet.mail.domain.MailLifecycleStage;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for the default methods of {@link MailClient}.
+ *
+ * @author Peter Smith
+ */
+public class MailClientTest {
+
+    private final MailClient mailClient = mail -> Observable.just(createMailDeliveryInfo(mail));
+
+    // follows the original contract of sendMail, emitting the delivery information without signalling completion
+    private final MailClient nonCompletingMailClient = mail -> Observable.create(emitter -> emitter.onNext(createMailDeliveryInfo(mail)));
+
+    @Test
+    public void shouldCompleteStageWithDeliveryInfoOnSendingMailAsynchronously() throws Exception {
+
+        // given
+        Mail mail = Mail.getBuilder().withSubject("Subject").build();
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMailAsync(mail).toCompletableFuture().get();
+
+        // then
+        assertThat(result.getMail(), equalTo(mail));
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+    }
+
+    @Test
+    public void shouldEmitAcceptedAndTerminalEventsOfTrackedMail() {
+
+        // given
+        Mail mail = Mail.getBuilder().build();
+
+        // when
+        List<MailLifecycleEvent> result = mailClient.sendMailTracked(mail).toList().blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailLifecycleEvent::getStage).collect(Collectors.toList()),
+                equalTo(Arrays.asList(MailLifecycleStage.ACCEPTED, MailLifecycleStage.FAILED)));
+        assertThat(result.get(1).getMailDeliveryInfo().getMailDeliveryStatus(), equalTo(MailDeliveryStatus.VALIDATION_ERROR));
+    }
+
+    @Test
+    public void shouldCompleteStageWithDeliveryInfoIfSendMailDoesNotComplete() throws Exception {
+
+        // given
+        Mail mail = Mail.getBuilder().withSubject("Subject").build();
+
+        // when
+        MailDeliveryInfo result = nonCompletingMailClient.sendMailAsync(mail).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(result.getMail(), equalTo(mail));
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+    }
+
+    @Test
+    public void shouldCompleteTrackedStreamIfSendMailDoesNotComplete() {
+
+        // given
+        Mail mail = Mail.getBuilder().withSubject("Subject").build();
+
+        // when
+        List<MailLifecycleEvent> result = nonCompletingMailClient.sendMailTracked(mail).toList()
+                .timeout(5, TimeUnit.SECONDS)
+                .blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailLifecycleEvent::getStage).collect(Collectors.toList()),
+                equalTo(Arrays.asList(MailLifecycleStage.ACCEPTED, MailLifecycleStage.DELIVERED)));
+    }
+
+    @Test
+    public void shouldSendMailsOneByOneInOrder() {
+
+        // given
+        Mail mail = Mail.getBuilder().withSubject("Subject").build();
+        Mail invalidMail = Mail.getBuilder().build();
+
+        // when
+        List<MailDeliveryInfo> result = mailClient.sendMails(Arrays.asList(mail, invalidMail)).toList().blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailDeliveryInfo::getMail).collect(Collectors.toList()), equalTo(Arrays.asList(mail, invalidMail)));
+        assertThat(result.get(0).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        assertThat(result.get(1).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.VALIDATION_ERROR));
+    }
+
+    @Test
+    public void shouldSendMailsOfFlowableOneByOneInOrder() {
+
+        // given
+        Mail mail = Mail.getBuilder().withSubject("Subject").build();
+        Mail otherMail = Mail.getBuilder().withSubject("Other subject").build();
+
+        // when
+        List<MailDeliveryInfo> result = mailClient.sendMails(Flowable.just(mail, otherMail)).toList().blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailDeliveryInfo::getMail).collect(Collectors.toList()), equalTo(Arrays.asList(mail, otherMail)));
+    }
+
+    @Test
+    public void shouldSendMailsOneByOneIfSendMailDoesNotComplete() {
+
+        // given
+        Mail mail = Mail.getBuilder().withSubject("Subject").build();
+        Mail otherMail = Mail.getBuilder().withSubject("Other subject").build();
+
+        // when
+        List<MailDeliveryInfo> result = nonCompletingMailClient.sendMails(Arrays.asList(mail, otherMail)).toList()
+                .timeout(5, TimeUnit.SECONDS)
+                .blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailDeliveryInfo::getMail).collect(Collectors.toList()), equalTo(Arrays.asList(mail, otherMail)));
+    }
+
+    @Test
+    public void shouldSendMailsOfFlowableOneByOneIfSendMailDoesNotComplete() {
+
+        // given
+        Mail mail = Mail.getBuilder().withSubject("Subject").build();
+        Mail otherMail = Mail.getBuilder().withSubject("Other subject").build();
+
+        // when
+        List<MailDeliveryInfo> result = nonCompletingMailClient.sendMails(Flowable.just(mail, otherMail)).toList()
+                .timeout(5, TimeUnit.SECONDS)
+                .blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailDeliveryInfo::getMail).collect(Collectors.toList()), equalTo(Arrays.asList(mail, otherMail)));
+    }
+
+    private static MailDeliveryInfo createMailDeliveryInfo(Mail mail) {
+        return MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withMailDeliveryStatus(mail.getSubject() == null
+                        ? MailDeliveryStatus.VALIDATION_ERROR
+                        : MailDeliveryStatus.DELIVERED)
+                .build();
+    }
+}
@@ -0,0 +1,105 @@
+package hu.psprog.leaflet.mail.client.deduplication.impl;
+
+import hu.psprog.leaflet.mail.client.deduplication.DeduplicationStrategy;
+import hu.psprog.leaflet.mail.config.DeduplicationConfigurationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Unit tests for {@link RotatingBloomMailDeduplicationFilter}.
+ *
+ * @author Peter Smith
+ */
+public class RotatingBloomMailDeduplicationFilterTest {
+
+    private static final long WINDOW = 1000L;
+    private static final int EXPECTED_KEYS = 10000;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final String KEY = "key-1";
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private RotatingBloomMailDeduplicationFilter filter;
+
+    @BeforeEach
+    public void setup() {
+        filter = new RotatingBloomMailDeduplicationFilter(new DeduplicationConfigurationProperties(DeduplicationStrategy.BLOOM_FILTER,
+                WINDOW, 0, 0, EXPECTED_KEYS, FALSE_POSITIVE_PROBABILITY), clock::get);
+    }
+
+    @Test
+    public void shouldRejectCommittedKeyForAtLeastOneWindow() {
+
+        // given
+        filter.tryAcquire(KEY);
+        filter.commit(KEY);
+        clock.addAndGet(WINDOW + WINDOW - 1);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(false));
+    }
+
+    @Test
+    public void shouldAcceptKeyAgainAfterTwoWindows() {
+
+        // given
+        filter.tryAcquire(KEY);
+        filter.commit(KEY);
+        clock.addAndGet(WINDOW);
+        filter.tryAcquire("key-2");
+        clock.addAndGet(WINDOW);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(true));
+    }
+
+    @Test
+    public void shouldRejectPendingKeyAndAcceptReleasedKey() {
+
+        // given
+        filter.tryAcquire(KEY);
+
+        // when
+        boolean pendingResult = filter.tryAcquire(KEY);
+        filter.release(KEY);
+        boolean releasedResult = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(pendingResult, is(false));
+        assertThat(releasedResult, is(true));
+    }
+
+    @Test
+    public void shouldKeepFalsePositiveRatioAroundConfiguredProbability() {
+
+        // given
+        for (int index = 0; index < EXPECTED_KEYS; index++) {
+            String key = "committed-" + index;
+            filter.tryAcquire(key);
+            filter.commit(key);
+        }
+
+        // when
+        int falsePositives = 0;
+        for (int index = 0; index < EXPECTED_KEYS; index++) {
+            if (!filter.tryAcquire("unique-" + index)) {
+                falsePositives++;
+            }
+        }
+
+        // then
+        assertThat(falsePositives, lessThan((int) (EXPECTED_KEYS * FALSE_POSITIVE_PROBABILITY * 2)));
+    }
+}
@@ -0,0 +1,166 @@
+package hu.psprog.leaflet.mail.client.deduplication.impl;
+
+import hu.psprog.leaflet.mail.client.deduplication.DeduplicationStrategy;
+import hu.psprog.leaflet.mail.config.DeduplicationConfigurationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link TimeBucketedMailDeduplicationFilter}.
+ *
+ * @author Peter Smith
+ */
+public class TimeBucketedMailDeduplicationFilterTest {
+
+    private static final long WINDOW = 1000L;
+    private static final int BUCKETS = 4;
+    private static final int MAX_KEYS = 3;
+    private static final String KEY = "key-1";
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private TimeBucketedMailDeduplicationFilter filter;
+
+    @BeforeEach
+    public void setup() {
+        filter = new TimeBucketedMailDeduplicationFilter(new DeduplicationConfigurationProperties(DeduplicationStrategy.TIME_BUCKETED,
+                WINDOW, BUCKETS, MAX_KEYS, 0, 0.0), clock::get);
+    }
+
+    @Test
+    public void shouldRejectKeyWithinWindow() {
+
+        // given
+        filter.tryAcquire(KEY);
+        filter.commit(KEY);
+        clock.addAndGet(WINDOW - 1);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(false));
+    }
+
+    @Test
+    public void shouldRejectKeyBeingProcessed() {
+
+        // given
+        filter.tryAcquire(KEY);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(false));
+    }
+
+    @Test
+    public void shouldAcceptKeyAgainAfterWindowExpired() {
+
+        // given
+        filter.tryAcquire(KEY);
+        filter.commit(KEY);
+        clock.addAndGet(WINDOW + WINDOW / BUCKETS);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(true));
+        assertThat(filter.getSize(), equalTo(1));
+    }
+
+    @Test
+    public void shouldAcceptReleasedKey() {
+
+        // given
+        filter.tryAcquire(KEY);
+        filter.release(KEY);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(true));
+    }
+
+    @Test
+    public void shouldDropOldestBucketAboveMaxKeys() {
+
+        // given
+        acquireAndCommit("key-1");
+        clock.addAndGet(WINDOW / BUCKETS);
+        acquireAndCommit("key-2");
+        acquireAndCommit("key-3");
+
+        // when
+        boolean newKeyAccepted = filter.tryAcquire("key-4");
+        filter.commit("key-4");
+
+        // then
+        assertThat(newKeyAccepted, is(true));
+        assertThat(filter.getSize(), equalTo(MAX_KEYS));
+        assertThat(filter.tryAcquire("key-2"), is(false));
+        assertThat(filter.tryAcquire("key-1"), is(true));
+    }
+
+    @Test
+    public void shouldNotDropKeyBeingProcessedAboveMaxKeys() {
+
+        // given
+        filter.tryAcquire(KEY);
+        clock.addAndGet(WINDOW / BUCKETS);
+        acquireAndCommit("key-2");
+        acquireAndCommit("key-3");
+        acquireAndCommit("key-4");
+        acquireAndCommit("key-5");
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(false));
+    }
+
+    @Test
+    public void shouldNotExpireKeyBeingProcessed() {
+
+        // given
+        filter.tryAcquire(KEY);
+        clock.addAndGet(2 * WINDOW);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(false));
+    }
+
+    @Test
+    public void shouldStartWindowOnCommit() {
+
+        // given
+        filter.tryAcquire(KEY);
+        clock.addAndGet(2 * WINDOW);
+        filter.commit(KEY);
+        clock.addAndGet(WINDOW - 1);
+
+        // when
+        boolean result = filter.tryAcquire(KEY);
+
+        // then
+        assertThat(result, is(false));
+    }
+
+    private void acquireAndCommit(String idempotencyKey) {
+        filter.tryAcquire(idempotencyKey);
+        filter.commit(idempotencyKey);
+    }
+}
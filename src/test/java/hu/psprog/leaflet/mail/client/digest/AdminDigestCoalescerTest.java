@@ -0,0 +1,154 @@
+package hu.psprog.leaflet.mail.client.digest;
+
+import hu.psprog.leaflet.mail.config.AdminDigestConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link AdminDigestCoalescer}.
+ *
+ * @author Peter Smith
+ */
+public class AdminDigestCoalescerTest {
+
+    private static final long WINDOW = 1000L;
+    private static final int MAX_MAILS = 3;
+    private static final String DIGEST_TEMPLATE = "leaflet_admin_digest";
+    private static final String DIGEST_SUBJECT = "Digest (%d)";
+    private static final String SMTP_ENDPOINT = "smtp.dev.local:25";
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final List<Mail> sentMails = new ArrayList<>();
+
+    private AdminDigestCoalescer coalescer;
+
+    @BeforeEach
+    public void setup() {
+        coalescer = new AdminDigestCoalescer(new AdminDigestConfigurationProperties(true, WINDOW, MAX_MAILS, DIGEST_TEMPLATE, DIGEST_SUBJECT),
+                scheduler);
+    }
+
+    @Test
+    public void shouldSendNotificationsOfWindowAsSingleDigest() {
+
+        // given
+        Mail firstMail = prepareMail("First");
+        Mail secondMail = prepareMail("Second");
+        TestObserver<MailDeliveryInfo> firstResult = coalescer.submit(firstMail, this::send).test();
+        TestObserver<MailDeliveryInfo> secondResult = coalescer.submit(secondMail, this::send).test();
+
+        // when
+        scheduler.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(sentMails.size(), equalTo(1));
+        assertThat(sentMails.get(0).getTemplate(), equalTo(DIGEST_TEMPLATE));
+        assertThat(sentMails.get(0).getSubject(), equalTo("Digest (2)"));
+        assertThat(sentMails.get(0).getContentMap().get(AdminDigestCoalescer.NOTIFICATIONS), equalTo(Arrays.asList(firstMail, secondMail)));
+        assertThat(sentMails.get(0).getContentMap().get(AdminDigestCoalescer.NOTIFICATION_COUNT), equalTo(2));
+        firstResult.assertValue(deliveryInfo -> deliveryInfo.getMail() == firstMail
+                && deliveryInfo.getMailDeliveryStatus() == MailDeliveryStatus.DELIVERED
+                && SMTP_ENDPOINT.equals(deliveryInfo.getSMTPEndpoint()));
+        secondResult.assertValue(deliveryInfo -> deliveryInfo.getMail() == secondMail);
+    }
+
+    @Test
+    public void shouldBufferNotificationsUntilWindowElapses() {
+
+        // given
+        TestObserver<MailDeliveryInfo> result = coalescer.submit(prepareMail("First"), this::send).test();
+
+        // when
+        scheduler.advanceTimeBy(WINDOW - 1, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(sentMails.isEmpty(), is(true));
+        result.assertNoValues();
+    }
+
+    @Test
+    public void shouldSendSingleNotificationOfWindowUnchanged() {
+
+        // given
+        Mail mail = prepareMail("First");
+        coalescer.submit(mail, this::send).test();
+
+        // when
+        scheduler.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(sentMails.size(), equalTo(1));
+        assertThat(sentMails.get(0), sameInstance(mail));
+    }
+
+    @Test
+    public void shouldSendDigestImmediatelyOnReachingMaximumNumberOfNotifications() {
+
+        // given
+        coalescer.submit(prepareMail("First"), this::send);
+        coalescer.submit(prepareMail("Second"), this::send);
+
+        // when
+        coalescer.submit(prepareMail("Third"), this::send);
+        Mail nextWindowMail = prepareMail("Fourth");
+        coalescer.submit(nextWindowMail, this::send);
+        scheduler.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(sentMails.size(), equalTo(2));
+        assertThat(sentMails.get(0).getContentMap().get(AdminDigestCoalescer.NOTIFICATION_COUNT), equalTo(MAX_MAILS));
+        assertThat(sentMails.get(1), sameInstance(nextWindowMail));
+    }
+
+    @Test
+    public void shouldNotCoalesceMailsWithRecipient() {
+
+        // given
+        Mail mail = Mail.getBuilder()
+                .withSubject("First")
+                .withTo(Collections.singletonList("user@dev.local"))
+                .build();
+
+        // when
+        boolean result = coalescer.isCoalescable(mail);
+
+        // then
+        assertThat(result, is(false));
+        assertThat(coalescer.isCoalescable(prepareMail("Second")), is(true));
+    }
+
+    private Single<MailDeliveryInfo> send(Mail mail) {
+
+        sentMails.add(mail);
+
+        return Single.just(MailDeliveryInfo.getBuilder()
+                .withMail(mail)
+                .withMailDeliveryStatus(MailDeliveryStatus.DELIVERED)
+                .withSMTPEndpoint(SMTP_ENDPOINT)
+                .build());
+    }
+
+    private Mail prepareMail(String subject) {
+        return Mail.getBuilder()
+                .withSubject(subject)
+                .withTemplate("notification")
+                .build();
+    }
+}
@@ -0,0 +1,137 @@
+package hu.psprog.leaflet.mail.client.dispatcher.impl;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailExecutionMode;
+import hu.psprog.leaflet.mail.client.dispatcher.OverflowPolicy;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.config.ExecutionConfigurationProperties;
+import hu.psprog.leaflet.mail.config.PriorityLaneConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import io.reactivex.observers.TestObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link PriorityLaneMailDispatcher}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class PriorityLaneMailDispatcherTest {
+
+    private static final long AWAIT_TIMEOUT = 5L;
+    private static final String DELIVERED = "delivered";
+    private static final String REJECTED = "rejected";
+    private static final String WEIGHTS = "HIGH=2,NORMAL=1,BULK=1";
+
+    private final CountDownLatch workerBlocker = new CountDownLatch(1);
+    private final CountDownLatch workerStarted = new CountDownLatch(1);
+
+    @Mock
+    private MailMetrics mailMetrics;
+
+    private PriorityLaneMailDispatcher priorityLaneMailDispatcher;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        workerBlocker.countDown();
+        priorityLaneMailDispatcher.shutdown();
+    }
+
+    @Test
+    public void shouldServeHighPriorityTaskOnReservedWorkerWhileGeneralWorkerIsBusy() throws InterruptedException {
+
+        // given
+        priorityLaneMailDispatcher = prepareDispatcher(2, 1, 1);
+        occupyWorker(MailPriority.BULK);
+
+        // when
+        String result = priorityLaneMailDispatcher.dispatch(MailPriority.HIGH, () -> Thread.currentThread().getName(), () -> REJECTED)
+                .blockingGet();
+
+        // then
+        assertThat(result.startsWith("mail-priority-worker-"), is(true));
+        verify(mailMetrics).recordQueueingDelay(eq(MailPriority.HIGH), anyLong());
+    }
+
+    @Test
+    public void shouldDequeueLanesProportionallyToTheirWeights() throws InterruptedException {
+
+        // given
+        priorityLaneMailDispatcher = prepareDispatcher(1, 1, 10);
+        occupyWorker(MailPriority.BULK);
+        List<MailPriority> executionOrder = Collections.synchronizedList(new ArrayList<>());
+        List<TestObserver<String>> results = new ArrayList<>();
+        for (MailPriority priority : Arrays.asList(MailPriority.BULK, MailPriority.BULK, MailPriority.NORMAL, MailPriority.NORMAL,
+                MailPriority.HIGH, MailPriority.HIGH, MailPriority.HIGH, MailPriority.HIGH)) {
+            results.add(priorityLaneMailDispatcher.dispatch(priority, () -> {
+                executionOrder.add(priority);
+                return DELIVERED;
+            }, () -> REJECTED).test());
+        }
+
+        // when
+        workerBlocker.countDown();
+        for (TestObserver<String> result : results) {
+            result.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        // then
+        assertThat(executionOrder, equalTo(Arrays.asList(MailPriority.HIGH, MailPriority.NORMAL, MailPriority.BULK, MailPriority.HIGH,
+                MailPriority.HIGH, MailPriority.NORMAL, MailPriority.BULK, MailPriority.HIGH)));
+    }
+
+    @Test
+    public void shouldRejectNewTaskOnlyIfItsLaneIsFull() throws InterruptedException {
+
+        // given
+        priorityLaneMailDispatcher = prepareDispatcher(1, 0, 1);
+        occupyWorker(MailPriority.NORMAL);
+        TestObserver<String> queuedBulkTask = priorityLaneMailDispatcher.dispatch(MailPriority.BULK, () -> DELIVERED, () -> REJECTED).test();
+
+        // when
+        TestObserver<String> rejectedBulkTask = priorityLaneMailDispatcher.dispatch(MailPriority.BULK, () -> DELIVERED, () -> REJECTED).test();
+        TestObserver<String> highPriorityTask = priorityLaneMailDispatcher.dispatch(MailPriority.HIGH, () -> DELIVERED, () -> REJECTED).test();
+
+        // then
+        rejectedBulkTask.assertValue(REJECTED);
+        assertThat(priorityLaneMailDispatcher.getQueueDepth(), equalTo(2));
+        assertThat(priorityLaneMailDispatcher.getQueueDepth(MailPriority.HIGH), equalTo(1));
+        workerBlocker.countDown();
+        queuedBulkTask.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        highPriorityTask.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        queuedBulkTask.assertValue(DELIVERED);
+        highPriorityTask.assertValue(DELIVERED);
+    }
+
+    private void occupyWorker(MailPriority priority) throws InterruptedException {
+        priorityLaneMailDispatcher.dispatch(priority, () -> {
+            workerStarted.countDown();
+            workerBlocker.await();
+            return DELIVERED;
+        }, () -> REJECTED).test();
+        workerStarted.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private PriorityLaneMailDispatcher prepareDispatcher(int workers, int reservedWorkers, int queueCapacity) {
+        return new PriorityLaneMailDispatcher(
+                new ExecutionConfigurationProperties(MailExecutionMode.PRIORITY_QUEUED, workers, queueCapacity, OverflowPolicy.REJECT, 1, 1000L),
+                new PriorityLaneConfigurationProperties(WEIGHTS, reservedWorkers), mailMetrics);
+    }
+}
@@ -0,0 +1,140 @@
+package hu.psprog.leaflet.mail.client.dispatcher.impl;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailExecutionMode;
+import hu.psprog.leaflet.mail.client.dispatcher.OverflowPolicy;
+import hu.psprog.leaflet.mail.config.ExecutionConfigurationProperties;
+import io.reactivex.observers.TestObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link QueuedMailDispatcher}.
+ *
+ * @author Peter Smith
+ */
+public class QueuedMailDispatcherTest {
+
+    private static final long AWAIT_TIMEOUT = 5L;
+    private static final String DELIVERED = "delivered";
+    private static final String REJECTED = "rejected";
+
+    private final CountDownLatch workerBlocker = new CountDownLatch(1);
+    private final CountDownLatch workerStarted = new CountDownLatch(1);
+
+    private QueuedMailDispatcher queuedMailDispatcher;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        workerBlocker.countDown();
+        queuedMailDispatcher.shutdown();
+    }
+
+    @Test
+    public void shouldExecuteDeliveryTaskOnWorkerThread() {
+
+        // given
+        queuedMailDispatcher = new QueuedMailDispatcher(prepareConfiguration(OverflowPolicy.REJECT));
+        String callerThreadName = Thread.currentThread().getName();
+
+        // when
+        String result = queuedMailDispatcher.dispatch(() -> Thread.currentThread().getName(), () -> REJECTED)
+                .blockingGet();
+
+        // then
+        assertThat(result, not(equalTo(callerThreadName)));
+        assertThat(result.startsWith("mail-worker-"), is(true));
+    }
+
+    @Test
+    public void shouldRejectNewTaskIfQueueIsFull() throws InterruptedException {
+
+        // given
+        queuedMailDispatcher = new QueuedMailDispatcher(prepareConfiguration(OverflowPolicy.REJECT));
+        occupyWorker();
+        TestObserver<String> queuedTask = queuedMailDispatcher.dispatch(() -> DELIVERED, () -> REJECTED).test();
+
+        // when
+        TestObserver<String> result = queuedMailDispatcher.dispatch(() -> DELIVERED, () -> REJECTED).test();
+
+        // then
+        result.assertValue(REJECTED);
+        workerBlocker.countDown();
+        queuedTask.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        queuedTask.assertValue(DELIVERED);
+    }
+
+    @Test
+    public void shouldDropOldestTaskIfQueueIsFull() throws InterruptedException {
+
+        // given
+        queuedMailDispatcher = new QueuedMailDispatcher(prepareConfiguration(OverflowPolicy.DROP_OLDEST));
+        occupyWorker();
+        TestObserver<String> queuedTask = queuedMailDispatcher.dispatch(() -> "first", () -> REJECTED).test();
+
+        // when
+        TestObserver<String> result = queuedMailDispatcher.dispatch(() -> DELIVERED, () -> REJECTED).test();
+
+        // then
+        queuedTask.assertValue(REJECTED);
+        workerBlocker.countDown();
+        result.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        result.assertValue(DELIVERED);
+    }
+
+    @Test
+    public void shouldBlockCallerIfQueueIsFull() throws InterruptedException {
+
+        // given
+        queuedMailDispatcher = new QueuedMailDispatcher(prepareConfiguration(OverflowPolicy.BLOCK));
+        occupyWorker();
+        queuedMailDispatcher.dispatch(() -> "first", () -> REJECTED).test();
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread caller = new Thread(() -> {
+            queuedMailDispatcher.dispatch(() -> DELIVERED, () -> REJECTED).test();
+            submitted.countDown();
+        });
+
+        // when
+        caller.start();
+
+        // then
+        assertThat(submitted.await(200, TimeUnit.MILLISECONDS), is(false));
+        workerBlocker.countDown();
+        assertThat(submitted.await(AWAIT_TIMEOUT, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void shouldReportQueueDepth() throws InterruptedException {
+
+        // given
+        queuedMailDispatcher = new QueuedMailDispatcher(prepareConfiguration(OverflowPolicy.REJECT));
+        occupyWorker();
+
+        // when
+        queuedMailDispatcher.dispatch(() -> DELIVERED, () -> REJECTED).test();
+
+        // then
+        assertThat(queuedMailDispatcher.getQueueDepth(), equalTo(1));
+    }
+
+    private void occupyWorker() throws InterruptedException {
+        queuedMailDispatcher.dispatch(() -> {
+            workerStarted.countDown();
+            workerBlocker.await();
+            return DELIVERED;
+        }, () -> REJECTED).test();
+        workerStarted.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private ExecutionConfigurationProperties prepareConfiguration(OverflowPolicy overflowPolicy) {
+        return new ExecutionConfigurationProperties(MailExecutionMode.QUEUED, 1, 1, overflowPolicy, 1, 1000L);
+    }
+}
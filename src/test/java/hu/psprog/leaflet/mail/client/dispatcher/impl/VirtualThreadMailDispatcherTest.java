@@ -0,0 +1,121 @@
+package hu.psprog.leaflet.mail.client.dispatcher.impl;
+
+import hu.psprog.leaflet.mail.client.dispatcher.MailExecutionMode;
+import hu.psprog.leaflet.mail.client.dispatcher.OverflowPolicy;
+import hu.psprog.leaflet.mail.config.ExecutionConfigurationProperties;
+import io.reactivex.observers.TestObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link VirtualThreadMailDispatcher}.
+ *
+ * @author Peter Smith
+ */
+public class VirtualThreadMailDispatcherTest {
+
+    private static final long AWAIT_TIMEOUT = 5L;
+    private static final String DELIVERED = "delivered";
+    private static final String REJECTED = "rejected";
+    private static final int MAX_CONCURRENCY = 2;
+
+    private VirtualThreadMailDispatcher virtualThreadMailDispatcher;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (virtualThreadMailDispatcher != null) {
+            virtualThreadMailDispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldLimitConcurrentDeliveries() throws InterruptedException {
+
+        // given
+        virtualThreadMailDispatcher = new VirtualThreadMailDispatcher(prepareConfiguration(), Executors.newCachedThreadPool());
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(MAX_CONCURRENCY);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        // when
+        List<TestObserver<String>> observers = new ArrayList<>();
+        for (int index = 0; index < MAX_CONCURRENCY + 2; index++) {
+            observers.add(virtualThreadMailDispatcher.dispatch(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.countDown();
+                blocker.await();
+                running.decrementAndGet();
+                return DELIVERED;
+            }, () -> REJECTED).test());
+        }
+
+        // then
+        started.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        assertThat(virtualThreadMailDispatcher.getQueueDepth(), equalTo(2));
+        blocker.countDown();
+        for (TestObserver<String> observer : observers) {
+            observer.await(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+            observer.assertValue(DELIVERED);
+        }
+        assertThat(maxRunning.get(), equalTo(MAX_CONCURRENCY));
+    }
+
+    @Test
+    public void shouldRejectDeliveryAfterShutdown() throws InterruptedException {
+
+        // given
+        virtualThreadMailDispatcher = new VirtualThreadMailDispatcher(prepareConfiguration(), Executors.newCachedThreadPool());
+        virtualThreadMailDispatcher.shutdown();
+
+        // when
+        String result = virtualThreadMailDispatcher.dispatch(() -> DELIVERED, () -> REJECTED).blockingGet();
+
+        // then
+        assertThat(result, equalTo(REJECTED));
+    }
+
+    @Test
+    public void shouldFailOnRuntimeWithoutVirtualThreadSupport() {
+
+        // given
+        Assumptions.assumeTrue(Runtime.version().feature() < 21);
+
+        // when
+        Assertions.assertThrows(IllegalStateException.class, () -> new VirtualThreadMailDispatcher(prepareConfiguration()));
+
+        // then
+        // expected exception
+    }
+
+    @Test
+    public void shouldDeliverOnVirtualThread() {
+
+        // given
+        Assumptions.assumeTrue(Runtime.version().feature() >= 21);
+        virtualThreadMailDispatcher = new VirtualThreadMailDispatcher(prepareConfiguration());
+
+        // when
+        String result = virtualThreadMailDispatcher.dispatch(() -> Thread.currentThread().toString(), () -> REJECTED).blockingGet();
+
+        // then
+        assertThat(result.startsWith("VirtualThread"), equalTo(true));
+    }
+
+    private ExecutionConfigurationProperties prepareConfiguration() {
+        return new ExecutionConfigurationProperties(MailExecutionMode.VIRTUAL_THREAD, 1, 1, OverflowPolicy.BLOCK, MAX_CONCURRENCY, 1000L);
+    }
+}
@@ -1,34 +1,73 @@
 package hu.psprog.leaflet.mail.client.impl;
 
+import hu.psprog.leaflet.mail.client.deduplication.MailDeduplicationFilter;
+import hu.psprog.leaflet.mail.client.dispatcher.impl.SynchronousMailDispatcher;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.metrics.MailPipelineStage;
+import hu.psprog.leaflet.mail.client.outbox.MailOutbox;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitExceededException;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitMode;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitScope;
+import hu.psprog.leaflet.mail.client.ratelimit.SMTPRateLimiter;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreaker;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreakerOpenException;
+import hu.psprog.leaflet.mail.client.resilience.RetryPolicy;
+import hu.psprog.leaflet.mail.client.digest.AdminDigestCoalescer;
+import hu.psprog.leaflet.mail.config.AdminDigestConfigurationProperties;
+import hu.psprog.leaflet.mail.config.CircuitBreakerConfigurationProperties;
+import hu.psprog.leaflet.mail.config.MailProcessorConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RetryConfigurationProperties;
 import hu.psprog.leaflet.mail.domain.Mail;
 import hu.psprog.leaflet.mail.domain.MailDeliveryInfo;
 import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import hu.psprog.leaflet.mail.domain.MailLifecycleEvent;
+import hu.psprog.leaflet.mail.domain.MailLifecycleStage;
+import io.reactivex.Flowable;
+import io.reactivex.observers.TestObserver;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
 
+import javax.mail.Address;
 import javax.mail.MessagingException;
 import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
 import javax.validation.ConstraintViolation;
 import javax.validation.Path;
 import javax.validation.Validator;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 
@@ -42,6 +81,12 @@ public class MailClientImplTest {
 
     private static final String MOCKED_VIOLATION = "Mocked Violation";
     private static final String VIOLATING_FIELD = "violatingField";
+    private static final String SMTP_ENDPOINT = "smtp.dev.local:25";
+    private static final String MESSAGE_ID = "<1234.5678@dev.lflt>";
+    private static final String IDEMPOTENCY_KEY = "comment-notification-1234";
+    private static final String RECIPIENT = "user@dev.local";
+    private static final String THROTTLED_RECIPIENT = "user@throttled.dev.local";
+    private static final String DIGEST_TEMPLATE = "leaflet_admin_digest";
 
     @Mock(lenient = true)
     private MailProcessor mailProcessor;
@@ -49,13 +94,30 @@ public class MailClientImplTest {
     @Mock
     private Validator validator;
 
+    @Mock(lenient = true)
+    private MailProcessorConfigurationProperties mailProcessorConfigurationProperties;
+
     @Mock
     private ConstraintViolation<Mail> violation;
 
     @Mock
     private Path path;
 
-    @InjectMocks
+    @Mock
+    private MailOutbox mailOutbox;
+
+    @Mock
+    private MailMetrics mailMetrics;
+
+    @Mock
+    private MailDeduplicationFilter mailDeduplicationFilter;
+
+    @Mock
+    private SMTPRateLimiter smtpRateLimiter;
+
+    @Mock
+    private AdminDigestConfigurationProperties adminDigestConfigurationProperties;
+
     private MailClientImpl mailClient;
 
     private Mail mail;
@@ -63,7 +125,11 @@ public class MailClientImplTest {
     @BeforeEach
     public void setup() throws MessagingException {
         mail = Mail.getBuilder().build();
-        doNothing().when(mailProcessor).process(mail);
+        given(mailProcessor.process(eq(mail), any(MailLifecycleListener.class))).willReturn(MailProcessingResult.success(mail, SMTP_ENDPOINT));
+        given(mailProcessorConfigurationProperties.getBatchSize()).willReturn(2);
+        mailClient = new MailClientImpl(mailProcessor, prepareResilientDeliveryExecutor(), validator, mailProcessorConfigurationProperties,
+                new SynchronousMailDispatcher(), Optional.empty(), mailMetrics, mailDeduplicationFilter, smtpRateLimiter,
+                new AdminDigestCoalescer(adminDigestConfigurationProperties));
     }
 
     @Test
@@ -79,8 +145,102 @@ public class MailClientImplTest {
         assertThat(result, notNullValue());
         assertThat(result.getMail(), equalTo(mail));
         assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        assertThat(result.getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
         verify(validator).validate(mail);
-        verify(mailProcessor).process(mail);
+        verify(mailProcessor).process(eq(mail), any(MailLifecycleListener.class));
+        verify(mailMetrics).recordStage(eq(MailPipelineStage.VALIDATION), anyLong());
+        verify(mailMetrics).recordDeliveryStatus(MailDeliveryStatus.DELIVERED);
+    }
+
+    @Test
+    public void shouldCompleteStageWithDeliveryInfoOnSendingMailAsynchronously() throws Exception {
+
+        // given
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+        given(mailProcessor.process(eq(mail), any(MailLifecycleListener.class))).willReturn(MailProcessingResult.success(mail, SMTP_ENDPOINT, MESSAGE_ID));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMailAsync(mail).toCompletableFuture().get();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        assertThat(result.getMessageId(), equalTo(MESSAGE_ID));
+    }
+
+    @Test
+    public void shouldSendMailAsynchronouslyIfSupportedByTransport() throws MessagingException {
+
+        // given
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+        given(mailProcessor.isAsyncSendSupported()).willReturn(true);
+        given(mailProcessor.processAsync(eq(mail), any(MailLifecycleListener.class)))
+                .willReturn(CompletableFuture.completedFuture(MailProcessingResult.success(mail, SMTP_ENDPOINT, MESSAGE_ID)));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(mail).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        assertThat(result.getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.getMessageId(), equalTo(MESSAGE_ID));
+        verify(mailProcessor, never()).process(eq(mail), any(MailLifecycleListener.class));
+    }
+
+    @Test
+    public void shouldReportFailureOfAsynchronouslySentMail() throws MessagingException {
+
+        // given
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+        given(mailProcessor.isAsyncSendSupported()).willReturn(true);
+        given(mailProcessor.processAsync(eq(mail), any(MailLifecycleListener.class)))
+                .willReturn(CompletableFuture.failedFuture(new MailSendException(Collections.singletonMap(mail, new SendFailedException()))));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(mail).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.INVALID_RECIPIENT));
+        verify(mailMetrics).recordDeliveryStatus(MailDeliveryStatus.INVALID_RECIPIENT);
+    }
+
+    @Test
+    public void shouldEmitLifecycleEventsOfTrackedMail() throws MessagingException {
+
+        // given
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+        given(mailProcessor.process(eq(mail), any(MailLifecycleListener.class))).willAnswer(invocation -> {
+            MailLifecycleListener mailLifecycleListener = invocation.getArgument(1);
+            mailLifecycleListener.onStage(MailLifecycleStage.RENDERED);
+            mailLifecycleListener.onStage(MailLifecycleStage.SUBMITTED);
+            return MailProcessingResult.success(mail, SMTP_ENDPOINT, MESSAGE_ID);
+        });
+
+        // when
+        List<MailLifecycleEvent> result = mailClient.sendMailTracked(mail).toList().blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailLifecycleEvent::getStage).collect(Collectors.toList()), equalTo(Arrays.asList(MailLifecycleStage.ACCEPTED,
+                MailLifecycleStage.VALIDATED, MailLifecycleStage.RENDERED, MailLifecycleStage.SUBMITTED, MailLifecycleStage.DELIVERED)));
+        assertThat(result.stream().allMatch(event -> Objects.nonNull(event.getTimestamp())), is(true));
+        assertThat(result.get(4).getMailDeliveryInfo().getMessageId(), equalTo(MESSAGE_ID));
+    }
+
+    @Test
+    public void shouldEmitFailedEventOfTrackedMailOnValidationError() {
+
+        // given
+        given(validator.validate(mail)).willReturn(prepareConstraintViolations());
+        given(violation.getMessage()).willReturn(MOCKED_VIOLATION);
+        given(violation.getPropertyPath()).willReturn(path);
+        given(path.toString()).willReturn(VIOLATING_FIELD);
+
+        // when
+        List<MailLifecycleEvent> result = mailClient.sendMailTracked(mail).toList().blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailLifecycleEvent::getStage).collect(Collectors.toList()),
+                equalTo(Arrays.asList(MailLifecycleStage.ACCEPTED, MailLifecycleStage.FAILED)));
+        assertThat(result.get(1).getMailDeliveryInfo().getMailDeliveryStatus(), equalTo(MailDeliveryStatus.VALIDATION_ERROR));
     }
 
     @Test
@@ -111,7 +271,7 @@ public class MailClientImplTest {
 
         // given
         given(validator.validate(mail)).willReturn(Collections.emptySet());
-        doThrow(exception).when(mailProcessor).process(mail);
+        doThrow(exception).when(mailProcessor).process(eq(mail), any(MailLifecycleListener.class));
 
         // when
         MailDeliveryInfo result = mailClient.sendMail(mail).blockingFirst();
@@ -123,6 +283,453 @@ public class MailClientImplTest {
         verify(validator).validate(mail);
     }
 
+    @ParameterizedTest
+    @MethodSource("wrappedExceptionDataProvider")
+    public void shouldHandleWrappedExceptions(Exception exception, MailDeliveryStatus expectedStatus) throws MessagingException {
+
+        // given
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+        doThrow(exception).when(mailProcessor).process(eq(mail), any(MailLifecycleListener.class));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(mail).blockingFirst();
+
+        // then
+        assertThat(result, notNullValue());
+        assertThat(result.getMailDeliveryStatus(), equalTo(expectedStatus));
+    }
+
+    @Test
+    public void shouldSendMailsInBatches() {
+
+        // given
+        Mail otherMail = Mail.getBuilder().build();
+        Mail thirdMail = Mail.getBuilder().build();
+        given(validator.validate(any(Mail.class))).willReturn(Collections.emptySet());
+        given(mailProcessor.processBatch(Arrays.asList(mail, otherMail))).willReturn(Arrays.asList(
+                MailProcessingResult.success(mail, SMTP_ENDPOINT),
+                MailProcessingResult.failure(otherMail, new SendFailedException())));
+        given(mailProcessor.processBatch(Collections.singletonList(thirdMail))).willReturn(Collections.singletonList(
+                MailProcessingResult.success(thirdMail)));
+
+        // when
+        List<MailDeliveryInfo> result = mailClient.sendMails(Arrays.asList(mail, otherMail, thirdMail)).toList().blockingGet();
+
+        // then
+        assertThat(result.size(), equalTo(3));
+        assertThat(result.get(0).getMail(), equalTo(mail));
+        assertThat(result.get(0).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        assertThat(result.get(0).getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.get(1).getMail(), equalTo(otherMail));
+        assertThat(result.get(1).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.INVALID_RECIPIENT));
+        assertThat(result.get(2).getMail(), equalTo(thirdMail));
+        assertThat(result.get(2).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        verify(mailProcessor).processBatch(Arrays.asList(mail, otherMail));
+        verify(mailProcessor).processBatch(Collections.singletonList(thirdMail));
+    }
+
+    @Test
+    public void shouldSendMailsInBatchesAsynchronouslyIfSupportedByTransport() {
+
+        // given
+        Mail otherMail = Mail.getBuilder().build();
+        given(validator.validate(any(Mail.class))).willReturn(Collections.emptySet());
+        given(mailProcessor.isAsyncSendSupported()).willReturn(true);
+        given(mailProcessor.processBatchAsync(Arrays.asList(mail, otherMail))).willReturn(CompletableFuture.completedFuture(Arrays.asList(
+                MailProcessingResult.success(mail, SMTP_ENDPOINT),
+                MailProcessingResult.failure(otherMail, new SendFailedException()))));
+
+        // when
+        List<MailDeliveryInfo> result = mailClient.sendMails(Arrays.asList(mail, otherMail)).toList().blockingGet();
+
+        // then
+        assertThat(result.get(0).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        assertThat(result.get(1).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.INVALID_RECIPIENT));
+        verify(mailProcessor, never()).processBatch(any());
+    }
+
+    @Test
+    public void shouldSendOnlyValidMailsOfBatchPreservingOrder() {
+
+        // given
+        Mail invalidMail = Mail.getBuilder().build();
+        given(validator.validate(invalidMail)).willReturn(prepareConstraintViolations());
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+        given(violation.getMessage()).willReturn(MOCKED_VIOLATION);
+        given(violation.getPropertyPath()).willReturn(path);
+        given(path.toString()).willReturn(VIOLATING_FIELD);
+        given(mailProcessor.processBatch(Collections.singletonList(mail))).willReturn(Collections.singletonList(
+                MailProcessingResult.failure(mail, new MessagingException())));
+
+        // when
+        List<MailDeliveryInfo> result = mailClient.sendMails(Flowable.just(invalidMail, mail)).toList().blockingGet();
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).getMail(), equalTo(invalidMail));
+        assertThat(result.get(0).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.VALIDATION_ERROR));
+        assertThat(result.get(0).getConstraintViolations().get(VIOLATING_FIELD), equalTo(MOCKED_VIOLATION));
+        assertThat(result.get(1).getMail(), equalTo(mail));
+        assertThat(result.get(1).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.COMMUNICATION_ERROR));
+        verify(mailProcessor).processBatch(Collections.singletonList(mail));
+    }
+
+    @Test
+    public void shouldCoalesceAdminNotificationsIntoDigest() throws MessagingException {
+
+        // given
+        Mail otherMail = Mail.getBuilder().withSubject("Other notification").build();
+        ArgumentCaptor<Mail> digestCaptor = ArgumentCaptor.forClass(Mail.class);
+        given(adminDigestConfigurationProperties.isEnabled()).willReturn(true);
+        given(adminDigestConfigurationProperties.getWindow()).willReturn(60000L);
+        given(adminDigestConfigurationProperties.getMaxMails()).willReturn(2);
+        given(adminDigestConfigurationProperties.getTemplate()).willReturn(DIGEST_TEMPLATE);
+        given(adminDigestConfigurationProperties.getSubject()).willReturn("Digest (%d)");
+        given(validator.validate(any(Mail.class))).willReturn(Collections.emptySet());
+        given(mailProcessor.process(digestCaptor.capture(), any(MailLifecycleListener.class)))
+                .willAnswer(invocation -> MailProcessingResult.success(invocation.getArgument(0), SMTP_ENDPOINT));
+
+        // when
+        TestObserver<MailDeliveryInfo> firstResult = mailClient.sendMail(mail).test();
+        TestObserver<MailDeliveryInfo> secondResult = mailClient.sendMail(otherMail).test();
+
+        // then
+        firstResult.assertValue(deliveryInfo -> deliveryInfo.getMail() == mail && deliveryInfo.getMailDeliveryStatus() == MailDeliveryStatus.DELIVERED);
+        secondResult.assertValue(deliveryInfo -> deliveryInfo.getMail() == otherMail && deliveryInfo.getMailDeliveryStatus() == MailDeliveryStatus.DELIVERED);
+        assertThat(digestCaptor.getAllValues().size(), equalTo(1));
+        assertThat(digestCaptor.getValue().getTemplate(), equalTo(DIGEST_TEMPLATE));
+        assertThat(digestCaptor.getValue().getSubject(), equalTo("Digest (2)"));
+        assertThat(digestCaptor.getValue().getContentMap().get(AdminDigestCoalescer.NOTIFICATIONS), equalTo(Arrays.asList(mail, otherMail)));
+        verify(mailMetrics, times(2)).recordDeliveryStatus(MailDeliveryStatus.DELIVERED);
+    }
+
+    @Test
+    public void shouldEnqueueMailToOutbox() throws IOException {
+
+        // given
+        MailClientImpl outboxMailClient = new MailClientImpl(mailProcessor, prepareResilientDeliveryExecutor(), validator, mailProcessorConfigurationProperties,
+                new SynchronousMailDispatcher(), Optional.of(mailOutbox), mailMetrics, mailDeduplicationFilter, smtpRateLimiter,
+                new AdminDigestCoalescer(adminDigestConfigurationProperties));
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+
+        // when
+        MailDeliveryInfo result = outboxMailClient.sendMail(mail).blockingFirst();
+
+        // then
+        assertThat(result.getMail(), equalTo(mail));
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.QUEUED));
+        verify(mailOutbox).append(mail);
+        verifyNoInteractions(mailProcessor, smtpRateLimiter);
+    }
+
+    @Test
+    public void shouldEmitQueuedEventOfTrackedMailEnqueuedToOutbox() throws IOException {
+
+        // given
+        MailClientImpl outboxMailClient = new MailClientImpl(mailProcessor, prepareResilientDeliveryExecutor(), validator, mailProcessorConfigurationProperties,
+                new SynchronousMailDispatcher(), Optional.of(mailOutbox), mailMetrics, mailDeduplicationFilter, smtpRateLimiter,
+                new AdminDigestCoalescer(adminDigestConfigurationProperties));
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+
+        // when
+        List<MailLifecycleEvent> result = outboxMailClient.sendMailTracked(mail).toList().blockingGet();
+
+        // then
+        assertThat(result.stream().map(MailLifecycleEvent::getStage).collect(Collectors.toList()),
+                equalTo(Arrays.asList(MailLifecycleStage.ACCEPTED, MailLifecycleStage.VALIDATED, MailLifecycleStage.QUEUED)));
+        assertThat(result.get(2).getMailDeliveryInfo().getMailDeliveryStatus(), equalTo(MailDeliveryStatus.QUEUED));
+        verify(mailOutbox).append(mail);
+    }
+
+    @Test
+    public void shouldRejectMailWithNonSerializableContentInOutboxMode() {
+
+        // given
+        Mail mailWithContent = Mail.getBuilder()
+                .withContentMap(Collections.singletonMap("link", new Object()))
+                .build();
+        MailClientImpl outboxMailClient = new MailClientImpl(mailProcessor, prepareResilientDeliveryExecutor(), validator, mailProcessorConfigurationProperties,
+                new SynchronousMailDispatcher(), Optional.of(mailOutbox), mailMetrics, mailDeduplicationFilter, smtpRateLimiter,
+                new AdminDigestCoalescer(adminDigestConfigurationProperties));
+        given(validator.validate(mailWithContent)).willReturn(Collections.emptySet());
+
+        // when
+        MailDeliveryInfo result = outboxMailClient.sendMail(mailWithContent).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.VALIDATION_ERROR));
+        assertThat(result.getConstraintViolations().get("contentMap[link]"),
+                equalTo("must be serializable in OUTBOX execution mode, but is [java.lang.Object]"));
+        verifyNoInteractions(mailOutbox);
+    }
+
+    @Test
+    public void shouldReportNestedNonSerializableContentAsValidationErrorInOutboxMode() throws IOException {
+
+        // given
+        MailClientImpl outboxMailClient = new MailClientImpl(mailProcessor, prepareResilientDeliveryExecutor(), validator, mailProcessorConfigurationProperties,
+                new SynchronousMailDispatcher(), Optional.of(mailOutbox), mailMetrics, mailDeduplicationFilter, smtpRateLimiter,
+                new AdminDigestCoalescer(adminDigestConfigurationProperties));
+        given(validator.validate(mail)).willReturn(Collections.emptySet());
+        doThrow(NotSerializableException.class).when(mailOutbox).append(mail);
+
+        // when
+        MailDeliveryInfo result = outboxMailClient.sendMail(mail).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.VALIDATION_ERROR));
+    }
+
+    @Test
+    public void shouldEnqueueMailsOfBatchToOutbox() throws IOException {
+
+        // given
+        Mail otherMail = Mail.getBuilder().build();
+        MailClientImpl outboxMailClient = new MailClientImpl(mailProcessor, prepareResilientDeliveryExecutor(), validator, mailProcessorConfigurationProperties,
+                new SynchronousMailDispatcher(), Optional.of(mailOutbox), mailMetrics, mailDeduplicationFilter, smtpRateLimiter,
+                new AdminDigestCoalescer(adminDigestConfigurationProperties));
+        given(validator.validate(any(Mail.class))).willReturn(Collections.emptySet());
+        doNothing().when(mailOutbox).append(mail);
+        doThrow(IOException.class).when(mailOutbox).append(otherMail);
+
+        // when
+        List<MailDeliveryInfo> result = outboxMailClient.sendMails(Arrays.asList(mail, otherMail)).toList().blockingGet();
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.QUEUED));
+        assertThat(result.get(1).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.UNKNOWN_ERROR));
+        verify(mailOutbox).append(mail);
+        verify(mailOutbox).append(otherMail);
+        verifyNoInteractions(mailProcessor, smtpRateLimiter);
+    }
+
+    @Test
+    public void shouldShortCircuitDuplicateMail() {
+
+        // given
+        Mail duplicateMail = Mail.getBuilder().withIdempotencyKey(IDEMPOTENCY_KEY).build();
+        given(validator.validate(duplicateMail)).willReturn(Collections.emptySet());
+        given(mailDeduplicationFilter.tryAcquire(IDEMPOTENCY_KEY)).willReturn(false);
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(duplicateMail).blockingFirst();
+
+        // then
+        assertThat(result.getMail(), equalTo(duplicateMail));
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DUPLICATE));
+        verify(mailDeduplicationFilter, never()).commit(IDEMPOTENCY_KEY);
+        verify(mailDeduplicationFilter, never()).release(IDEMPOTENCY_KEY);
+        verify(mailMetrics).recordDeliveryStatus(MailDeliveryStatus.DUPLICATE);
+        verifyNoInteractions(mailProcessor, smtpRateLimiter);
+    }
+
+    @Test
+    public void shouldCommitIdempotencyKeyOfDeliveredMail() throws MessagingException {
+
+        // given
+        Mail mailWithKey = Mail.getBuilder().withIdempotencyKey(IDEMPOTENCY_KEY).build();
+        given(validator.validate(mailWithKey)).willReturn(Collections.emptySet());
+        given(mailDeduplicationFilter.tryAcquire(IDEMPOTENCY_KEY)).willReturn(true);
+        given(mailProcessor.process(eq(mailWithKey), any(MailLifecycleListener.class))).willReturn(MailProcessingResult.success(mailWithKey, SMTP_ENDPOINT));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(mailWithKey).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        verify(mailDeduplicationFilter).commit(IDEMPOTENCY_KEY);
+        verify(mailDeduplicationFilter, never()).release(IDEMPOTENCY_KEY);
+    }
+
+    @Test
+    public void shouldReleaseIdempotencyKeyOfFailedMail() throws MessagingException {
+
+        // given
+        Mail mailWithKey = Mail.getBuilder().withIdempotencyKey(IDEMPOTENCY_KEY).build();
+        given(validator.validate(mailWithKey)).willReturn(Collections.emptySet());
+        given(mailDeduplicationFilter.tryAcquire(IDEMPOTENCY_KEY)).willReturn(true);
+        doThrow(MessagingException.class).when(mailProcessor).process(eq(mailWithKey), any(MailLifecycleListener.class));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(mailWithKey).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.COMMUNICATION_ERROR));
+        verify(mailDeduplicationFilter).release(IDEMPOTENCY_KEY);
+        verify(mailDeduplicationFilter, never()).commit(IDEMPOTENCY_KEY);
+    }
+
+    @Test
+    public void shouldReportPerRecipientStatusesOfPartiallyDeliveredMail() throws MessagingException {
+
+        // given
+        Mail mailWithKey = Mail.getBuilder().withIdempotencyKey(IDEMPOTENCY_KEY).build();
+        SendFailedException partialFailure = new SendFailedException("Invalid Addresses", null,
+                new Address[] {new InternetAddress("accepted@dev.lflt")}, null, new Address[] {new InternetAddress("rejected@dev.lflt")});
+        given(validator.validate(mailWithKey)).willReturn(Collections.emptySet());
+        given(mailDeduplicationFilter.tryAcquire(IDEMPOTENCY_KEY)).willReturn(true);
+        given(mailProcessor.process(eq(mailWithKey), any(MailLifecycleListener.class))).willReturn(MailProcessingResult.partialSuccess(mailWithKey, partialFailure));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(mailWithKey).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.PARTIALLY_DELIVERED));
+        assertThat(result.getRecipientStatuses(), equalTo(Map.of(
+                "accepted@dev.lflt", MailDeliveryStatus.DELIVERED,
+                "rejected@dev.lflt", MailDeliveryStatus.INVALID_RECIPIENT)));
+        verify(mailDeduplicationFilter).commit(IDEMPOTENCY_KEY);
+        verify(mailMetrics).recordDeliveryStatus(MailDeliveryStatus.PARTIALLY_DELIVERED);
+    }
+
+    @Test
+    public void shouldSkipDuplicateMailsOfBatch() {
+
+        // given
+        Mail mailWithKey = Mail.getBuilder().withIdempotencyKey(IDEMPOTENCY_KEY).build();
+        Mail duplicateMail = Mail.getBuilder().withIdempotencyKey(IDEMPOTENCY_KEY).build();
+        given(validator.validate(any(Mail.class))).willReturn(Collections.emptySet());
+        given(mailDeduplicationFilter.tryAcquire(IDEMPOTENCY_KEY)).willReturn(true, false);
+        given(mailProcessor.processBatch(Collections.singletonList(mailWithKey))).willReturn(Collections.singletonList(
+                MailProcessingResult.success(mailWithKey, SMTP_ENDPOINT)));
+
+        // when
+        List<MailDeliveryInfo> result = mailClient.sendMails(Arrays.asList(mailWithKey, duplicateMail)).toList().blockingGet();
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).getMail(), equalTo(mailWithKey));
+        assertThat(result.get(0).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        assertThat(result.get(1).getMail(), equalTo(duplicateMail));
+        assertThat(result.get(1).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DUPLICATE));
+        verify(mailProcessor).processBatch(Collections.singletonList(mailWithKey));
+        verify(mailDeduplicationFilter).commit(IDEMPOTENCY_KEY);
+    }
+
+    @Test
+    public void shouldThrottleMailExceedingRecipientDomainRateLimit() {
+
+        // given
+        Mail throttledMail = Mail.getBuilder().withRecipient(THROTTLED_RECIPIENT).withIdempotencyKey(IDEMPOTENCY_KEY).build();
+        given(validator.validate(throttledMail)).willReturn(Collections.emptySet());
+        given(mailDeduplicationFilter.tryAcquire(IDEMPOTENCY_KEY)).willReturn(true);
+        given(smtpRateLimiter.reserveRecipientDomains(Collections.singletonList(THROTTLED_RECIPIENT))).willReturn(SMTPRateLimiter.RATE_LIMIT_EXCEEDED);
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(throttledMail).blockingFirst();
+
+        // then
+        assertThat(result.getMail(), equalTo(throttledMail));
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.THROTTLED));
+        verify(mailMetrics).recordDeliveryStatus(MailDeliveryStatus.THROTTLED);
+        verify(mailDeduplicationFilter).release(IDEMPOTENCY_KEY);
+        verifyNoInteractions(mailProcessor);
+    }
+
+    @Test
+    public void shouldNotReserveRecipientDomainPermitsForInvalidMail() {
+
+        // given
+        Mail invalidMail = Mail.getBuilder().withRecipient(THROTTLED_RECIPIENT).build();
+        given(validator.validate(invalidMail)).willReturn(prepareConstraintViolations());
+        given(violation.getMessage()).willReturn(MOCKED_VIOLATION);
+        given(violation.getPropertyPath()).willReturn(path);
+        given(path.toString()).willReturn(VIOLATING_FIELD);
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(invalidMail).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.VALIDATION_ERROR));
+        verifyNoInteractions(smtpRateLimiter, mailProcessor);
+    }
+
+    @Test
+    public void shouldReserveRecipientDomainPermitsForAllRecipientsOfMail() {
+
+        // given
+        Mail throttledMail = Mail.getBuilder()
+                .withCc(Collections.singletonList(RECIPIENT))
+                .withBcc(Collections.singletonList(THROTTLED_RECIPIENT))
+                .build();
+        given(validator.validate(throttledMail)).willReturn(Collections.emptySet());
+        given(smtpRateLimiter.reserveRecipientDomains(Arrays.asList(RECIPIENT, THROTTLED_RECIPIENT))).willReturn(SMTPRateLimiter.RATE_LIMIT_EXCEEDED);
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(throttledMail).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.THROTTLED));
+        verifyNoInteractions(mailProcessor);
+    }
+
+    @Test
+    public void shouldSendMailAfterDelayInQueueMode() throws MessagingException {
+
+        // given
+        Mail delayedMail = Mail.getBuilder().withRecipient(RECIPIENT).build();
+        given(smtpRateLimiter.reserveRecipientDomains(Collections.singletonList(RECIPIENT))).willReturn(1_000_000L);
+        given(smtpRateLimiter.getMode()).willReturn(RateLimitMode.QUEUE);
+        given(validator.validate(delayedMail)).willReturn(Collections.emptySet());
+        given(mailProcessor.process(eq(delayedMail), any(MailLifecycleListener.class))).willReturn(MailProcessingResult.success(delayedMail, SMTP_ENDPOINT));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(delayedMail).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        verify(mailProcessor).process(eq(delayedMail), any(MailLifecycleListener.class));
+        verify(smtpRateLimiter, never()).await(anyLong());
+    }
+
+    @Test
+    public void shouldWaitForDelayOnSendingThreadInDelayMode() throws MessagingException {
+
+        // given
+        Mail delayedMail = Mail.getBuilder().withRecipient(RECIPIENT).build();
+        given(smtpRateLimiter.reserveRecipientDomains(Collections.singletonList(RECIPIENT))).willReturn(1_000_000L);
+        given(smtpRateLimiter.getMode()).willReturn(RateLimitMode.DELAY);
+        given(validator.validate(delayedMail)).willReturn(Collections.emptySet());
+        given(mailProcessor.process(eq(delayedMail), any(MailLifecycleListener.class))).willReturn(MailProcessingResult.success(delayedMail, SMTP_ENDPOINT));
+
+        // when
+        MailDeliveryInfo result = mailClient.sendMail(delayedMail).blockingFirst();
+
+        // then
+        assertThat(result.getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        verify(smtpRateLimiter).await(1_000_000L);
+    }
+
+    @Test
+    public void shouldSendOnlyPermittedMailsOfBatchPreservingOrder() {
+
+        // given
+        Mail throttledMail = Mail.getBuilder().withRecipient(THROTTLED_RECIPIENT).build();
+        Mail permittedMail = Mail.getBuilder().withRecipient(RECIPIENT).build();
+        given(smtpRateLimiter.reserveRecipientDomains(Collections.singletonList(THROTTLED_RECIPIENT))).willReturn(SMTPRateLimiter.RATE_LIMIT_EXCEEDED);
+        given(validator.validate(any(Mail.class))).willReturn(Collections.emptySet());
+        given(mailProcessor.processBatch(Collections.singletonList(permittedMail))).willReturn(Collections.singletonList(
+                MailProcessingResult.success(permittedMail, SMTP_ENDPOINT)));
+
+        // when
+        List<MailDeliveryInfo> result = mailClient.sendMails(Arrays.asList(throttledMail, permittedMail)).toList().blockingGet();
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).getMail(), equalTo(throttledMail));
+        assertThat(result.get(0).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.THROTTLED));
+        assertThat(result.get(1).getMail(), equalTo(permittedMail));
+        assertThat(result.get(1).getMailDeliveryStatus(), equalTo(MailDeliveryStatus.DELIVERED));
+        verify(mailProcessor).processBatch(Collections.singletonList(permittedMail));
+    }
+
+    private ResilientDeliveryExecutor prepareResilientDeliveryExecutor() {
+        return new ResilientDeliveryExecutor(
+                new RetryPolicy(new RetryConfigurationProperties(1, 0L, 0L, 1.0, 0.0, 0L)),
+                new CircuitBreaker(new CircuitBreakerConfigurationProperties(false, 1, 0L)));
+    }
+
     private Set<ConstraintViolation<Mail>> prepareConstraintViolations() {
 
         Set<ConstraintViolation<Mail>> constraintViolations = new HashSet<>();
@@ -138,4 +745,14 @@ public class MailClientImplTest {
                 Arguments.of(RuntimeException.class, MailDeliveryStatus.UNKNOWN_ERROR)
         );
     }
+
+    private static Stream<Arguments> wrappedExceptionDataProvider() {
+        return Stream.of(
+                Arguments.of(new MailSendException(Collections.singletonMap(new Object(), new SendFailedException())), MailDeliveryStatus.INVALID_RECIPIENT),
+                Arguments.of(new MailSendException("Connection failed", new MessagingException()), MailDeliveryStatus.COMMUNICATION_ERROR),
+                Arguments.of(new MailSendException("Unknown failure"), MailDeliveryStatus.UNKNOWN_ERROR),
+                Arguments.of(new CircuitBreakerOpenException(), MailDeliveryStatus.SERVICE_UNAVAILABLE),
+                Arguments.of(new RateLimitExceededException(RateLimitScope.RELAY, SMTP_ENDPOINT), MailDeliveryStatus.THROTTLED)
+        );
+    }
 }
@@ -1,34 +1,83 @@
 package hu.psprog.leaflet.mail.client.impl;
 
+import hu.psprog.leaflet.mail.client.inline.InlineResourceRegistry;
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.metrics.MailPipelineStage;
 import hu.psprog.leaflet.mail.client.renderer.MailRenderer;
+import hu.psprog.leaflet.mail.client.renderer.impl.BulkRenderingPlanCache;
+import hu.psprog.leaflet.mail.client.renderer.impl.RenderedMailCache;
 import hu.psprog.leaflet.mail.client.renderer.impl.ThymeleafMailRenderer;
+import hu.psprog.leaflet.mail.client.routing.RoutedMailSendException;
+import hu.psprog.leaflet.mail.client.routing.SMTPRouter;
+import hu.psprog.leaflet.mail.client.routing.SMTPRoutingResult;
+import hu.psprog.leaflet.mail.config.InlineResourceConfigurationProperties;
 import hu.psprog.leaflet.mail.config.MailProcessorConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RecipientGroupingConfigurationProperties;
 import hu.psprog.leaflet.mail.domain.Mail;
+import hu.psprog.leaflet.mail.domain.MailAttachment;
+import hu.psprog.leaflet.mail.domain.MailLifecycleStage;
+import com.sun.mail.smtp.SMTPAddressFailedException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.util.ReflectionUtils;
 
+import javax.activation.DataHandler;
 import javax.mail.Address;
+import javax.mail.BodyPart;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -51,6 +100,18 @@ public class MailProcessorTest {
     private static final String REPLY_TO_ADDRESS = "test@dev.local";
     private static final String SUBJECT = "Test";
     private static final String CONTENT_TYPE_HTML = "text/html";
+    private static final String STREAMED_CONTENT_TYPE = "text/html; charset=UTF-8";
+    private static final String SMTP_ENDPOINT = "smtp.dev.local:25";
+    private static final String MESSAGE_ID = "<1234.5678@dev.lflt>";
+    private static final String ATTACHMENT_TEXT = "Attached notes";
+    private static final String RENDERED_MAIL_CONTENT_WITH_INLINE_IMAGE = "<img src=\"cid:logo.png\"/>";
+    private static final String UNDISCLOSED_RECIPIENTS = "undisclosed-recipients:;";
+    private static final int BINARY_CONTENT_LENGTH = 10000;
+    private static final int MAPPED_REGION_OFFSET = 100;
+    private static final int MAPPED_REGION_LENGTH = 500;
+
+    @TempDir
+    Path temporaryDirectory;
 
     @Mock
     private MailRenderer mailRenderer;
@@ -61,9 +122,30 @@ public class MailProcessorTest {
     @Mock
     private JavaMailSender javaMailSender;
 
+    @Mock
+    private SMTPRouter smtpRouter;
+
+    @Mock
+    private MailMetrics mailMetrics;
+
+    @Mock
+    private RenderedMailCache renderedMailCache;
+
+    @Mock
+    private BulkRenderingPlanCache bulkRenderingPlanCache;
+
+    @Mock
+    private InlineResourceRegistry inlineResourceRegistry;
+
+    @Mock
+    private RecipientGroupingConfigurationProperties recipientGroupingConfigurationProperties;
+
     @Mock
     private MimeMessage mimeMessage;
 
+    @Mock
+    private MimeMessage otherMimeMessage;
+
     @InjectMocks
     private MailProcessor mailProcessor;
 
@@ -73,6 +155,7 @@ public class MailProcessorTest {
     @BeforeEach
     public void setup() {
         thymeleafMailRenderer = new ThymeleafMailRenderer(null);
+        lenient().when(smtpRouter.send(any())).thenAnswer(invocation -> routedThrough(invocation.getArguments()));
     }
 
     @Test
@@ -82,7 +165,7 @@ public class MailProcessorTest {
         doReturn(ThymeleafMailRenderer.class).when(mailProcessorConfigurationProperties).getRenderer();
         given(mailProcessorConfigurationProperties.getSenderAddress()).willReturn(SENDER_ADDRESS);
         given(mailProcessorConfigurationProperties.getSenderName()).willReturn(SENDER_NAME);
-        MailProcessor mailProcessorToInit = new MailProcessor(Collections.singletonList(thymeleafMailRenderer), mailProcessorConfigurationProperties, javaMailSender);
+        MailProcessor mailProcessorToInit = new MailProcessor(Collections.singletonList(thymeleafMailRenderer), mailProcessorConfigurationProperties, javaMailSender, smtpRouter, mailMetrics, renderedMailCache, bulkRenderingPlanCache, inlineResourceRegistry, recipientGroupingConfigurationProperties);
 
         // when
         mailProcessorToInit.initialize();
@@ -97,7 +180,7 @@ public class MailProcessorTest {
 
         // given
         doReturn(MailRenderer.class).when(mailProcessorConfigurationProperties).getRenderer();
-        MailProcessor mailProcessorToInit = new MailProcessor(Collections.singletonList(thymeleafMailRenderer), mailProcessorConfigurationProperties, javaMailSender);
+        MailProcessor mailProcessorToInit = new MailProcessor(Collections.singletonList(thymeleafMailRenderer), mailProcessorConfigurationProperties, javaMailSender, smtpRouter, mailMetrics, renderedMailCache, bulkRenderingPlanCache, inlineResourceRegistry, recipientGroupingConfigurationProperties);
 
         // when
         Assertions.assertThrows(IllegalArgumentException.class, mailProcessorToInit::initialize);
@@ -123,13 +206,159 @@ public class MailProcessorTest {
         verify(mailRenderer).renderMail(mail);
         verify(mailProcessorConfigurationProperties).getAdminNotificationAddress();
         verify(mimeMessage).setRecipient(Message.RecipientType.TO, getAddressToCheck(EXACT_RECIPIENT));
-        verify(mimeMessage).setFrom(FROM_ADDRESS);
-        verify(javaMailSender).send(mimeMessage);
-        verify(mimeMessage).setSubject(SUBJECT);
+        verify(mimeMessage).setHeader("From", FROM_ADDRESS.toString());
+        verify(smtpRouter).send(mimeMessage);
+        verify(mailMetrics).recordTemplateRendered(eq(mail.getTemplate()), anyLong());
+        verify(mailMetrics).recordStage(eq(MailPipelineStage.MIME_ASSEMBLY), anyLong());
+        verify(mailMetrics).recordStage(eq(MailPipelineStage.TRANSMISSION), anyLong());
+        verify(mimeMessage).setHeader("Subject", SUBJECT);
         verify(mimeMessage).setContent(RENDERED_MAIL_CONTENT, CONTENT_TYPE_HTML);
+        verify(mimeMessage).getMessageID();
         verifyNoMoreInteractions(mimeMessage);
     }
 
+    @Test
+    public void shouldProcessMailWithMultipleRecipientsAsSingleMessage() throws NoSuchFieldException, MessagingException {
+
+        // given
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        mail = Mail.getBuilder()
+                .withRecipient(EXACT_RECIPIENT)
+                .withTo(Collections.singletonList("to@dev.lflt"))
+                .withCc(Collections.singletonList("cc@dev.lflt"))
+                .withBcc(Arrays.asList("bcc1@dev.lflt", "bcc2@dev.lflt"))
+                .withSubject(SUBJECT)
+                .build();
+        given(javaMailSender.createMimeMessage()).willReturn(message);
+        given(mailRenderer.renderMail(mail)).willReturn(RENDERED_MAIL_CONTENT);
+        given(smtpRouter.send(message)).willReturn(routedThrough(message));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        MailProcessingResult result = mailProcessor.process(mail);
+
+        // then
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(message.getRecipients(Message.RecipientType.TO),
+                equalTo(new Address[] {new InternetAddress(EXACT_RECIPIENT), new InternetAddress("to@dev.lflt")}));
+        assertThat(message.getRecipients(Message.RecipientType.CC), equalTo(new Address[] {new InternetAddress("cc@dev.lflt")}));
+        assertThat(message.getRecipients(Message.RecipientType.BCC),
+                equalTo(new Address[] {new InternetAddress("bcc1@dev.lflt"), new InternetAddress("bcc2@dev.lflt")}));
+        verify(mailRenderer).renderMail(mail);
+        verify(smtpRouter).send(message);
+    }
+
+    @Test
+    public void shouldReportLifecycleStagesAndMessageIdOfSentMessage() throws NoSuchFieldException, MessagingException {
+
+        // given
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        mail = Mail.getBuilder()
+                .withRecipient(EXACT_RECIPIENT)
+                .withSubject(SUBJECT)
+                .build();
+        List<MailLifecycleStage> stages = new ArrayList<>();
+        given(javaMailSender.createMimeMessage()).willReturn(message);
+        given(mailRenderer.renderMail(mail)).willReturn(RENDERED_MAIL_CONTENT);
+        given(smtpRouter.send(message)).willAnswer(invocation -> {
+            // message id is assigned by the transport on sending
+            message.setHeader("Message-ID", MESSAGE_ID);
+            return routedThrough(message);
+        });
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        MailProcessingResult result = mailProcessor.process(mail, stages::add);
+
+        // then
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getMessageId(), equalTo(MESSAGE_ID));
+        assertThat(stages, equalTo(Arrays.asList(MailLifecycleStage.RENDERED, MailLifecycleStage.SUBMITTED)));
+    }
+
+    @Test
+    public void shouldProcessMailAsPartiallySuccessfulIfSomeRecipientsAreRejected() throws NoSuchFieldException, MessagingException {
+
+        // given
+        mail = Mail.getBuilder()
+                .withTo(Arrays.asList("accepted@dev.lflt", "rejected@dev.lflt"))
+                .withSubject(SUBJECT)
+                .build();
+        SendFailedException failure = new SendFailedException("Invalid Addresses", null,
+                new Address[] {new InternetAddress("accepted@dev.lflt")}, null, new Address[] {new InternetAddress("rejected@dev.lflt")});
+        given(javaMailSender.createMimeMessage()).willReturn(mimeMessage);
+        given(mailRenderer.renderMail(mail)).willReturn(RENDERED_MAIL_CONTENT);
+        doThrow(new RoutedMailSendException(Collections.singletonMap(mimeMessage, failure), routedThrough(mimeMessage)))
+                .when(smtpRouter).send(mimeMessage);
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        MailProcessingResult result = mailProcessor.process(mail);
+
+        // then
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.isPartiallySuccessful(), is(true));
+        assertThat(result.getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.getPartialFailure(), equalTo(failure));
+    }
+
+    @Test
+    public void shouldProcessMailAsynchronously() throws Exception {
+
+        // given
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        mail = Mail.getBuilder()
+                .withRecipient(EXACT_RECIPIENT)
+                .withSubject(SUBJECT)
+                .build();
+        List<MailLifecycleStage> stages = new ArrayList<>();
+        given(javaMailSender.createMimeMessage()).willReturn(message);
+        given(mailRenderer.renderMail(mail)).willReturn(RENDERED_MAIL_CONTENT);
+        given(smtpRouter.sendAsync(message)).willReturn(CompletableFuture.completedFuture(routedThrough(message)));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        MailProcessingResult result = mailProcessor.processAsync(mail, stages::add).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(stages, equalTo(Arrays.asList(MailLifecycleStage.RENDERED, MailLifecycleStage.SUBMITTED)));
+        verify(smtpRouter, never()).send(any());
+        verify(mailMetrics).recordStage(eq(MailPipelineStage.TRANSMISSION), anyLong());
+    }
+
+    @Test
+    public void shouldProcessMailAsynchronouslyAsPartiallySuccessfulIfSomeRecipientsAreRejected() throws Exception {
+
+        // given
+        mail = Mail.getBuilder()
+                .withTo(Arrays.asList("accepted@dev.lflt", "rejected@dev.lflt"))
+                .withSubject(SUBJECT)
+                .build();
+        SendFailedException failure = new SendFailedException("Invalid Addresses", null,
+                new Address[] {new InternetAddress("accepted@dev.lflt")}, null, new Address[] {new InternetAddress("rejected@dev.lflt")});
+        given(javaMailSender.createMimeMessage()).willReturn(mimeMessage);
+        given(mailRenderer.renderMail(mail)).willReturn(RENDERED_MAIL_CONTENT);
+        given(smtpRouter.sendAsync(mimeMessage)).willReturn(CompletableFuture.failedFuture(
+                new RoutedMailSendException(Collections.singletonMap(mimeMessage, failure), routedThrough(mimeMessage))));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        MailProcessingResult result = mailProcessor.processAsync(mail, stage -> {}).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(result.isPartiallySuccessful(), is(true));
+        assertThat(result.getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.getPartialFailure(), equalTo(failure));
+    }
+
     @Test
     public void shouldProcessMailWithDefaultRecipient() throws NoSuchFieldException, MessagingException {
 
@@ -148,10 +377,11 @@ public class MailProcessorTest {
         verify(mailRenderer).renderMail(mail);
         verify(mailProcessorConfigurationProperties).getAdminNotificationAddress();
         verify(mimeMessage).setRecipient(Message.RecipientType.TO, getAddressToCheck(DEFAULT_RECIPIENT));
-        verify(mimeMessage).setFrom(FROM_ADDRESS);
-        verify(javaMailSender).send(mimeMessage);
-        verify(mimeMessage).setSubject(SUBJECT);
+        verify(mimeMessage).setHeader("From", FROM_ADDRESS.toString());
+        verify(smtpRouter).send(mimeMessage);
+        verify(mimeMessage).setHeader("Subject", SUBJECT);
         verify(mimeMessage).setContent(RENDERED_MAIL_CONTENT, CONTENT_TYPE_HTML);
+        verify(mimeMessage).getMessageID();
         verifyNoMoreInteractions(mimeMessage);
     }
 
@@ -172,14 +402,319 @@ public class MailProcessorTest {
         verify(mailRenderer).renderMail(mail);
         verify(mailProcessorConfigurationProperties).getAdminNotificationAddress();
         verify(mimeMessage).setRecipient(Message.RecipientType.TO, getAddressToCheck(EXACT_RECIPIENT));
-        verify(mimeMessage).setFrom(FROM_ADDRESS);
-        verify(javaMailSender).send(mimeMessage);
+        verify(mimeMessage).setHeader("From", FROM_ADDRESS.toString());
+        verify(smtpRouter).send(mimeMessage);
         verify(mimeMessage).setReplyTo(new Address[] {getAddressToCheck(REPLY_TO_ADDRESS)});
-        verify(mimeMessage).setSubject(SUBJECT);
+        verify(mimeMessage).setHeader("Subject", SUBJECT);
         verify(mimeMessage).setContent(RENDERED_MAIL_CONTENT, CONTENT_TYPE_HTML);
+        verify(mimeMessage).getMessageID();
         verifyNoMoreInteractions(mimeMessage);
     }
 
+    @Test
+    public void shouldProcessMailWithStreamingRendering() throws NoSuchFieldException, MessagingException, IOException {
+
+        // given
+        prepareMail(true);
+        given(mailProcessorConfigurationProperties.isStreamingRendering()).willReturn(true);
+        given(javaMailSender.createMimeMessage()).willReturn(mimeMessage);
+        willAnswer(invocation -> {
+            invocation.<Writer>getArgument(1).write(RENDERED_MAIL_CONTENT);
+            return null;
+        }).given(mailRenderer).renderMail(eq(mail), any(Writer.class));
+        prepareMailRendererField();
+        prepareSenderField();
+        ArgumentCaptor<DataHandler> dataHandlerCaptor = ArgumentCaptor.forClass(DataHandler.class);
+
+        // when
+        mailProcessor.process(mail);
+
+        // then
+        verify(mailRenderer, never()).renderMail(mail);
+        verify(mimeMessage).setRecipient(Message.RecipientType.TO, getAddressToCheck(EXACT_RECIPIENT));
+        verify(mimeMessage).setHeader("From", FROM_ADDRESS.toString());
+        verify(mimeMessage).setHeader("Subject", SUBJECT);
+        verify(mimeMessage).setDataHandler(dataHandlerCaptor.capture());
+        verify(smtpRouter).send(mimeMessage);
+        verify(mailMetrics).recordTemplateRendered(eq(mail.getTemplate()), anyLong());
+        verify(mimeMessage).getMessageID();
+        verifyNoMoreInteractions(mimeMessage);
+        assertThat(dataHandlerCaptor.getValue().getContentType(), equalTo(STREAMED_CONTENT_TYPE));
+        assertThat(new String(dataHandlerCaptor.getValue().getInputStream().readAllBytes(), StandardCharsets.UTF_8), equalTo(RENDERED_MAIL_CONTENT));
+    }
+
+    @Test
+    public void shouldStreamAttachmentsIntoMultipartMessage() throws NoSuchFieldException, MessagingException, IOException {
+
+        // given
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        byte[] fileContent = prepareBinaryContent();
+        Path file = Files.write(temporaryDirectory.resolve("report.pdf"), fileContent);
+        prepareMailWithAttachments(file);
+        given(javaMailSender.createMimeMessage()).willReturn(message);
+        given(mailRenderer.renderMail(mail)).willReturn(RENDERED_MAIL_CONTENT);
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        mailProcessor.process(mail);
+
+        // then
+        MimeMultipart multipart = writeAndParse(message);
+        assertThat(multipart.getCount(), equalTo(4));
+        assertThat(multipart.getBodyPart(0).getContent(), equalTo(RENDERED_MAIL_CONTENT));
+        assertAttachment(multipart.getBodyPart(1), "report.pdf", "application/pdf", fileContent);
+        assertAttachment(multipart.getBodyPart(2), "region.bin", "application/octet-stream",
+                Arrays.copyOfRange(fileContent, MAPPED_REGION_OFFSET, MAPPED_REGION_OFFSET + MAPPED_REGION_LENGTH));
+        assertAttachment(multipart.getBodyPart(3), "notes.txt", "text/plain", ATTACHMENT_TEXT.getBytes(StandardCharsets.UTF_8));
+        verify(smtpRouter).send(message);
+    }
+
+    @Test
+    public void shouldStreamAttachmentsIntoMultipartMessageWithStreamingRendering() throws NoSuchFieldException, MessagingException, IOException {
+
+        // given
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        byte[] fileContent = prepareBinaryContent();
+        Path file = Files.write(temporaryDirectory.resolve("report.pdf"), fileContent);
+        prepareMailWithAttachments(file);
+        given(mailProcessorConfigurationProperties.isStreamingRendering()).willReturn(true);
+        given(javaMailSender.createMimeMessage()).willReturn(message);
+        willAnswer(invocation -> {
+            invocation.<Writer>getArgument(1).write(RENDERED_MAIL_CONTENT);
+            return null;
+        }).given(mailRenderer).renderMail(eq(mail), any(Writer.class));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        mailProcessor.process(mail);
+
+        // then
+        MimeMultipart multipart = writeAndParse(message);
+        assertThat(multipart.getCount(), equalTo(4));
+        assertThat(multipart.getBodyPart(0).getContentType(), equalTo(STREAMED_CONTENT_TYPE));
+        assertThat(multipart.getBodyPart(0).getContent(), equalTo(RENDERED_MAIL_CONTENT));
+        assertAttachment(multipart.getBodyPart(1), "report.pdf", "application/pdf", fileContent);
+    }
+
+    @Test
+    public void shouldEmbedReferencedInlineResourcesIntoRelatedMultipart() throws NoSuchFieldException, MessagingException, IOException {
+
+        // given
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        Files.write(temporaryDirectory.resolve("logo.png"), prepareBinaryContent());
+        InlineResourceRegistry registry = new InlineResourceRegistry(new InlineResourceConfigurationProperties(true, temporaryDirectory.toUri() + "*"));
+        registry.load();
+        prepareMail(true);
+        given(javaMailSender.createMimeMessage()).willReturn(message);
+        given(mailRenderer.renderMail(mail)).willReturn(RENDERED_MAIL_CONTENT_WITH_INLINE_IMAGE);
+        given(inlineResourceRegistry.findReferencedResources(RENDERED_MAIL_CONTENT_WITH_INLINE_IMAGE))
+                .willReturn(registry.findReferencedResources(RENDERED_MAIL_CONTENT_WITH_INLINE_IMAGE));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        mailProcessor.process(mail);
+
+        // then
+        MimeMultipart multipart = writeAndParse(message);
+        assertThat(multipart.getContentType().startsWith("multipart/related"), is(true));
+        assertThat(multipart.getCount(), equalTo(2));
+        assertThat(multipart.getBodyPart(0).getContent(), equalTo(RENDERED_MAIL_CONTENT_WITH_INLINE_IMAGE));
+        assertThat(((MimeBodyPart) multipart.getBodyPart(1)).getContentID(), equalTo("<logo.png>"));
+        assertThat(multipart.getBodyPart(1).getInputStream().readAllBytes(), equalTo(prepareBinaryContent()));
+    }
+
+    @Test
+    public void shouldProcessBatchWithinSingleSendCall() throws NoSuchFieldException {
+
+        // given
+        prepareMail(true);
+        Mail otherMail = Mail.getBuilder().withRecipient(EXACT_RECIPIENT).withSubject(SUBJECT).build();
+        given(javaMailSender.createMimeMessage()).willReturn(mimeMessage, otherMimeMessage);
+        given(mailRenderer.renderMail(any(Mail.class))).willReturn(RENDERED_MAIL_CONTENT);
+        given(smtpRouter.send(mimeMessage, otherMimeMessage)).willReturn(routedThrough(mimeMessage, otherMimeMessage));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        List<MailProcessingResult> result = mailProcessor.processBatch(Arrays.asList(mail, otherMail));
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).getMail(), equalTo(mail));
+        assertThat(result.get(0).isSuccessful(), is(true));
+        assertThat(result.get(0).getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.get(1).getMail(), equalTo(otherMail));
+        assertThat(result.get(1).isSuccessful(), is(true));
+        verify(smtpRouter).send(mimeMessage, otherMimeMessage);
+    }
+
+    @Test
+    public void shouldProcessBatchAndReturnFailedMessages() throws NoSuchFieldException {
+
+        // given
+        prepareMail(true);
+        Mail otherMail = Mail.getBuilder().withRecipient(EXACT_RECIPIENT).withSubject(SUBJECT).build();
+        SendFailedException failure = new SendFailedException();
+        given(javaMailSender.createMimeMessage()).willReturn(mimeMessage, otherMimeMessage);
+        given(mailRenderer.renderMail(any(Mail.class))).willReturn(RENDERED_MAIL_CONTENT);
+        doThrow(new RoutedMailSendException(Collections.singletonMap(otherMimeMessage, failure), routedThrough(mimeMessage, otherMimeMessage)))
+                .when(smtpRouter).send(mimeMessage, otherMimeMessage);
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        List<MailProcessingResult> result = mailProcessor.processBatch(Arrays.asList(mail, otherMail));
+
+        // then
+        assertThat(result.get(0).isSuccessful(), is(true));
+        assertThat(result.get(0).getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.get(1).isSuccessful(), is(false));
+        assertThat(result.get(1).getFailure(), equalTo(failure));
+    }
+
+    @Test
+    public void shouldProcessBatchAsynchronouslyAndReturnFailedMessages() throws Exception {
+
+        // given
+        prepareMail(true);
+        Mail otherMail = Mail.getBuilder().withRecipient(EXACT_RECIPIENT).withSubject(SUBJECT).build();
+        SendFailedException failure = new SendFailedException();
+        given(javaMailSender.createMimeMessage()).willReturn(mimeMessage, otherMimeMessage);
+        given(mailRenderer.renderMail(any(Mail.class))).willReturn(RENDERED_MAIL_CONTENT);
+        given(smtpRouter.sendAsync(mimeMessage, otherMimeMessage)).willReturn(CompletableFuture.failedFuture(
+                new RoutedMailSendException(Collections.singletonMap(otherMimeMessage, failure), routedThrough(mimeMessage, otherMimeMessage))));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        List<MailProcessingResult> result = mailProcessor.processBatchAsync(Arrays.asList(mail, otherMail)).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(result.get(0).isSuccessful(), is(true));
+        assertThat(result.get(0).getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.get(1).isSuccessful(), is(false));
+        assertThat(result.get(1).getFailure(), equalTo(failure));
+        verify(smtpRouter, never()).send(any());
+    }
+
+    @Test
+    public void shouldProcessBatchAndFailAllMessagesOnConnectionFailure() throws NoSuchFieldException {
+
+        // given
+        prepareMail(true);
+        Mail otherMail = Mail.getBuilder().withRecipient(EXACT_RECIPIENT).withSubject(SUBJECT).build();
+        MailAuthenticationException failure = new MailAuthenticationException("Authentication failed");
+        given(javaMailSender.createMimeMessage()).willReturn(mimeMessage, otherMimeMessage);
+        given(mailRenderer.renderMail(any(Mail.class))).willReturn(RENDERED_MAIL_CONTENT);
+        doThrow(failure).when(smtpRouter).send(mimeMessage, otherMimeMessage);
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        List<MailProcessingResult> result = mailProcessor.processBatch(Arrays.asList(mail, otherMail));
+
+        // then
+        assertThat(result.get(0).getFailure(), equalTo(failure));
+        assertThat(result.get(1).getFailure(), equalTo(failure));
+    }
+
+    @Test
+    public void shouldProcessBatchAndSkipMessageFailedToPrepare() throws NoSuchFieldException {
+
+        // given
+        prepareMail(true);
+        Mail otherMail = Mail.getBuilder().withRecipient(EXACT_RECIPIENT).withSubject(SUBJECT).build();
+        given(javaMailSender.createMimeMessage()).willReturn(otherMimeMessage);
+        given(mailRenderer.renderMail(mail)).willThrow(new IllegalStateException("Rendering failed"));
+        given(mailRenderer.renderMail(otherMail)).willReturn(RENDERED_MAIL_CONTENT);
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        List<MailProcessingResult> result = mailProcessor.processBatch(Arrays.asList(mail, otherMail));
+
+        // then
+        assertThat(result.get(0).isSuccessful(), is(false));
+        assertThat(result.get(1).isSuccessful(), is(true));
+        verify(smtpRouter).send(new MimeMessage[] {otherMimeMessage});
+    }
+
+    @Test
+    public void shouldProcessBatchGroupingRecipientsOfIdenticalContentByDomain() throws NoSuchFieldException, MessagingException {
+
+        // given
+        MimeMessage groupedMessage = new MimeMessage(Session.getInstance(new Properties()));
+        Mail firstMail = prepareMail("first@dev.lflt");
+        Mail secondMail = prepareMail("second@DEV.lflt");
+        Mail thirdMail = prepareMail("third@dev.lflt");
+        Mail otherDomainMail = prepareMail("other@other.lflt");
+        given(recipientGroupingConfigurationProperties.isEnabled()).willReturn(true);
+        given(recipientGroupingConfigurationProperties.getMaxRecipients()).willReturn(2);
+        given(javaMailSender.createMimeMessage()).willReturn(groupedMessage, mimeMessage, otherMimeMessage);
+        given(mailRenderer.renderMail(any(Mail.class))).willReturn(RENDERED_MAIL_CONTENT);
+        given(smtpRouter.send(groupedMessage, mimeMessage, otherMimeMessage)).willReturn(routedThrough(groupedMessage, mimeMessage, otherMimeMessage));
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        List<MailProcessingResult> result = mailProcessor.processBatch(Arrays.asList(firstMail, secondMail, otherDomainMail, thirdMail));
+
+        // then
+        assertThat(result.size(), equalTo(4));
+        assertThat(result.get(0).getMail(), equalTo(firstMail));
+        assertThat(result.get(1).getMail(), equalTo(secondMail));
+        assertThat(result.get(2).getMail(), equalTo(otherDomainMail));
+        assertThat(result.get(3).getMail(), equalTo(thirdMail));
+        result.forEach(processingResult -> {
+            assertThat(processingResult.isSuccessful(), is(true));
+            assertThat(processingResult.getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        });
+        assertThat(groupedMessage.getHeader("To", null), equalTo(UNDISCLOSED_RECIPIENTS));
+        assertThat(groupedMessage.getRecipients(Message.RecipientType.BCC),
+                equalTo(new Address[] {new InternetAddress("first@dev.lflt"), new InternetAddress("second@DEV.lflt")}));
+        verify(mailRenderer).renderMail(firstMail);
+        verify(mailRenderer).renderMail(otherDomainMail);
+        verify(mailRenderer).renderMail(thirdMail);
+        verify(mailRenderer, never()).renderMail(secondMail);
+    }
+
+    @Test
+    public void shouldProcessBatchAndMapRecipientFailuresOfGroupedMessage() throws NoSuchFieldException, AddressException {
+
+        // given
+        MimeMessage groupedMessage = new MimeMessage(Session.getInstance(new Properties()));
+        Mail acceptedMail = prepareMail("accepted@dev.lflt");
+        Mail rejectedMail = prepareMail("rejected@dev.lflt");
+        Mail unsentMail = prepareMail("unsent@dev.lflt");
+        InternetAddress rejectedAddress = new InternetAddress("rejected@dev.lflt");
+        SMTPAddressFailedException addressFailure = new SMTPAddressFailedException(rejectedAddress, "RCPT TO:<rejected@dev.lflt>", 550, "No such user");
+        SendFailedException failure = new SendFailedException("Invalid Addresses", addressFailure,
+                new Address[] {new InternetAddress("accepted@dev.lflt")}, new Address[] {new InternetAddress("unsent@dev.lflt")}, new Address[] {rejectedAddress});
+        given(recipientGroupingConfigurationProperties.isEnabled()).willReturn(true);
+        given(recipientGroupingConfigurationProperties.getMaxRecipients()).willReturn(50);
+        given(javaMailSender.createMimeMessage()).willReturn(groupedMessage);
+        given(mailRenderer.renderMail(acceptedMail)).willReturn(RENDERED_MAIL_CONTENT);
+        doThrow(new RoutedMailSendException(Collections.singletonMap(groupedMessage, failure), routedThrough(groupedMessage)))
+                .when(smtpRouter).send(groupedMessage);
+        prepareMailRendererField();
+        prepareSenderField();
+
+        // when
+        List<MailProcessingResult> result = mailProcessor.processBatch(Arrays.asList(acceptedMail, rejectedMail, unsentMail));
+
+        // then
+        assertThat(result.get(0).isSuccessful(), is(true));
+        assertThat(result.get(0).getSMTPEndpoint(), equalTo(SMTP_ENDPOINT));
+        assertThat(result.get(1).isSuccessful(), is(false));
+        assertThat(result.get(1).getFailure(), equalTo(addressFailure));
+        assertThat(result.get(2).isSuccessful(), is(false));
+        assertThat(result.get(2).getFailure(), not(instanceOf(SendFailedException.class)));
+        assertThat(((MessagingException) result.get(2).getFailure()).getNextException(), equalTo(failure));
+    }
+
     private static InternetAddress prepareSender() {
 
         InternetAddress address = null;
@@ -208,6 +743,65 @@ public class MailProcessorTest {
                 .build();
     }
 
+    private Mail prepareMail(String recipient) {
+        return Mail.getBuilder()
+                .withRecipient(recipient)
+                .withSubject(SUBJECT)
+                .withTemplate("template.html")
+                .withContentMap(Collections.singletonMap("content", "shared"))
+                .build();
+    }
+
+    private void prepareMailWithAttachments(Path file) {
+        mail = Mail.getBuilder()
+                .withRecipient(EXACT_RECIPIENT)
+                .withSubject(SUBJECT)
+                .withAttachments(Arrays.asList(
+                        MailAttachment.getBuilder()
+                                .withFilename("report.pdf")
+                                .withFile(file)
+                                .build(),
+                        MailAttachment.getBuilder()
+                                .withFilename("region.bin")
+                                .withContentType("application/octet-stream")
+                                .withMappedRegion(file, MAPPED_REGION_OFFSET, MAPPED_REGION_LENGTH)
+                                .build(),
+                        MailAttachment.getBuilder()
+                                .withFilename("notes.txt")
+                                .withContentType("text/plain")
+                                .withSource(() -> new ByteArrayInputStream(ATTACHMENT_TEXT.getBytes(StandardCharsets.UTF_8)))
+                                .build()))
+                .build();
+    }
+
+    private byte[] prepareBinaryContent() {
+
+        byte[] content = new byte[BINARY_CONTENT_LENGTH];
+        for (int index = 0; index < content.length; index++) {
+            content[index] = (byte) (index * 31);
+        }
+
+        return content;
+    }
+
+    private MimeMultipart writeAndParse(MimeMessage message) throws MessagingException, IOException {
+
+        message.saveChanges();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        message.writeTo(outputStream);
+        MimeMessage parsedMessage = new MimeMessage(Session.getInstance(new Properties()), new ByteArrayInputStream(outputStream.toByteArray()));
+
+        return (MimeMultipart) parsedMessage.getContent();
+    }
+
+    private void assertAttachment(BodyPart bodyPart, String filename, String contentType, byte[] content) throws MessagingException, IOException {
+        assertThat(bodyPart.getDisposition(), equalTo(Part.ATTACHMENT));
+        assertThat(bodyPart.getFileName(), equalTo(filename));
+        assertThat(bodyPart.isMimeType(contentType), is(true));
+        assertThat(bodyPart.getHeader("Content-Transfer-Encoding")[0], equalTo("base64"));
+        assertThat(bodyPart.getInputStream().readAllBytes(), equalTo(content));
+    }
+
     private Address getAddressToCheck(String recipient) throws AddressException {
         return InternetAddress.parse(recipient)[0];
     }
@@ -235,4 +829,14 @@ public class MailProcessorTest {
 
         return field;
     }
+
+    private SMTPRoutingResult routedThrough(Object... messages) {
+
+        Map<MimeMessage, String> smtpEndpoints = new IdentityHashMap<>();
+        for (Object message : messages) {
+            smtpEndpoints.put((MimeMessage) message, SMTP_ENDPOINT);
+        }
+
+        return new SMTPRoutingResult(smtpEndpoints);
+    }
 }
@@ -0,0 +1,82 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import org.junit.jupiter.api.Test;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.UnsupportedEncodingException;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link MimeSkeleton}.
+ *
+ * @author Peter Smith
+ */
+public class MimeSkeletonTest {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String SUBJECT = "Értesítés a Leaflet rendszerből – árvíztűrő tükörfúrógép, egy kellően hosszú tárgy";
+    private static final String OTHER_SUBJECT = "Plain subject";
+
+    @Test
+    public void shouldSetHeadersEqualToMimeMessageEncoding() throws MessagingException, UnsupportedEncodingException {
+
+        // given
+        InternetAddress sender = new InternetAddress("noreply@dev.local", "Leaflet Értesítő");
+        MimeSkeleton mimeSkeleton = MimeSkeleton.create(sender, ENCODING);
+        MimeMessage message = createMessage();
+        MimeMessage expectedMessage = createMessage();
+        expectedMessage.setFrom(sender);
+        expectedMessage.setSubject(SUBJECT, ENCODING);
+
+        // when
+        mimeSkeleton.apply(message, SUBJECT);
+
+        // then
+        assertThat(message.getHeader("From", null), equalTo(expectedMessage.getHeader("From", null)));
+        assertThat(message.getHeader("Subject", null), equalTo(expectedMessage.getHeader("Subject", null)));
+        assertThat(message.getSubject(), equalTo(SUBJECT));
+    }
+
+    @Test
+    public void shouldEncodeChangedSubject() throws MessagingException, UnsupportedEncodingException {
+
+        // given
+        MimeSkeleton mimeSkeleton = MimeSkeleton.create(new InternetAddress("noreply@dev.local", "Leaflet"), ENCODING);
+        MimeMessage message = createMessage();
+        MimeMessage otherMessage = createMessage();
+        mimeSkeleton.apply(message, SUBJECT);
+
+        // when
+        mimeSkeleton.apply(otherMessage, OTHER_SUBJECT);
+
+        // then
+        assertThat(message.getSubject(), equalTo(SUBJECT));
+        assertThat(otherMessage.getSubject(), equalTo(OTHER_SUBJECT));
+    }
+
+    @Test
+    public void shouldRemoveSubjectIfNotGiven() throws MessagingException, UnsupportedEncodingException {
+
+        // given
+        MimeSkeleton mimeSkeleton = MimeSkeleton.create(new InternetAddress("noreply@dev.local", "Leaflet"), ENCODING);
+        MimeMessage message = createMessage();
+        message.setSubject(OTHER_SUBJECT);
+
+        // when
+        mimeSkeleton.apply(message, null);
+
+        // then
+        assertThat(message.getSubject(), nullValue());
+    }
+
+    private MimeMessage createMessage() {
+        return new MimeMessage(Session.getInstance(new Properties()));
+    }
+}
@@ -0,0 +1,211 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import hu.psprog.leaflet.mail.client.outbox.MailOutbox;
+import hu.psprog.leaflet.mail.client.outbox.OutboxRecord;
+import hu.psprog.leaflet.mail.client.ratelimit.SMTPRateLimiter;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreaker;
+import hu.psprog.leaflet.mail.client.resilience.RetryPolicy;
+import hu.psprog.leaflet.mail.config.CircuitBreakerConfigurationProperties;
+import hu.psprog.leaflet.mail.config.MailProcessorConfigurationProperties;
+import hu.psprog.leaflet.mail.config.OutboxConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RetryConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link OutboxDrainer}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class OutboxDrainerTest {
+
+    private static final String RECIPIENT = "recipient@dev.local";
+    private static final Mail MAIL = Mail.getBuilder()
+            .withSubject("Subject")
+            .withRecipient(RECIPIENT)
+            .build();
+    private static final OutboxRecord OUTBOX_RECORD = new OutboxRecord(0L, 100L, MAIL);
+
+    @Mock
+    private MailOutbox mailOutbox;
+
+    @Mock
+    private MailProcessor mailProcessor;
+
+    @Mock
+    private SMTPRateLimiter smtpRateLimiter;
+
+    @Mock
+    private MailProcessorConfigurationProperties mailProcessorConfigurationProperties;
+
+    @Mock
+    private OutboxConfigurationProperties outboxConfigurationProperties;
+
+    private OutboxDrainer outboxDrainer;
+
+    @BeforeEach
+    public void setup() {
+        lenient().when(smtpRateLimiter.await(anyLong())).thenReturn(true);
+        // default configuration: single attempt, circuit breaker disabled
+        RetryPolicy retryPolicy = new RetryPolicy(new RetryConfigurationProperties(1, 1L, 1L, 1.0, 0.0, 1L));
+        CircuitBreaker circuitBreaker = new CircuitBreaker(new CircuitBreakerConfigurationProperties(false, 5, 30000L));
+        outboxDrainer = new OutboxDrainer(mailOutbox, mailProcessor, new ResilientDeliveryExecutor(retryPolicy, circuitBreaker),
+                retryPolicy, smtpRateLimiter, mailProcessorConfigurationProperties, outboxConfigurationProperties);
+    }
+
+    @Test
+    public void shouldAcknowledgeDeliveredRecord() throws Exception {
+
+        // given
+        given(mailOutbox.next()).willReturn(OUTBOX_RECORD);
+        given(mailProcessor.process(MAIL)).willReturn(MailProcessingResult.success(MAIL, "primary", null));
+
+        // when
+        boolean result = outboxDrainer.drainNext();
+
+        // then
+        assertThat(result, is(true));
+        verify(mailOutbox).acknowledge(OUTBOX_RECORD);
+    }
+
+    @Test
+    public void shouldWaitForRecipientDomainRateLimitBeforeSending() throws Exception {
+
+        // given
+        given(mailOutbox.next()).willReturn(OUTBOX_RECORD);
+        given(smtpRateLimiter.reserveRecipientDomains(Collections.singletonList(RECIPIENT))).willReturn(1_000_000L);
+        given(mailProcessor.process(MAIL)).willReturn(MailProcessingResult.success(MAIL, "primary", null));
+
+        // when
+        boolean result = outboxDrainer.drainNext();
+
+        // then
+        assertThat(result, is(true));
+        InOrder inOrder = inOrder(smtpRateLimiter, mailProcessor, mailOutbox);
+        inOrder.verify(smtpRateLimiter).await(1_000_000L);
+        inOrder.verify(mailProcessor).process(MAIL);
+        inOrder.verify(mailOutbox).acknowledge(OUTBOX_RECORD);
+    }
+
+    @Test
+    public void shouldHoldBackRecordExceedingRecipientDomainRateLimit() throws Exception {
+
+        // given
+        given(mailOutbox.next()).willReturn(OUTBOX_RECORD);
+        given(smtpRateLimiter.reserveRecipientDomains(Collections.singletonList(RECIPIENT))).willReturn(SMTPRateLimiter.RATE_LIMIT_EXCEEDED);
+
+        // when
+        boolean result = outboxDrainer.drainNext();
+
+        // then
+        assertThat(result, is(false));
+        verify(mailProcessor, never()).process(any(Mail.class));
+        verify(mailOutbox, never()).acknowledge(any(OutboxRecord.class));
+    }
+
+    @Test
+    public void shouldReturnFalseIfOutboxIsEmpty() throws Exception {
+
+        // given
+        given(mailOutbox.next()).willReturn(null);
+
+        // when
+        boolean result = outboxDrainer.drainNext();
+
+        // then
+        assertThat(result, is(false));
+        verify(mailProcessor, never()).process(any(Mail.class));
+    }
+
+    @Test
+    public void shouldHoldBackRecordOnCommunicationFailureAndRetryIt() throws Exception {
+
+        // given
+        given(mailOutbox.next()).willReturn(OUTBOX_RECORD);
+        given(mailProcessor.process(MAIL))
+                .willThrow(new MessagingException("Connection refused"))
+                .willReturn(MailProcessingResult.success(MAIL, "primary", null));
+
+        // when
+        boolean firstResult = outboxDrainer.drainNext();
+        boolean secondResult = outboxDrainer.drainNext();
+
+        // then
+        assertThat(firstResult, is(false));
+        assertThat(secondResult, is(true));
+        verify(mailOutbox, times(1)).next();
+        verify(mailProcessor, times(2)).process(MAIL);
+        verify(mailOutbox, times(1)).acknowledge(OUTBOX_RECORD);
+    }
+
+    @Test
+    public void shouldHoldBackRecordOnTransientSMTPReply() throws Exception {
+
+        // given
+        given(mailOutbox.next()).willReturn(OUTBOX_RECORD);
+        given(mailProcessor.process(MAIL)).willThrow(new SMTPSendFailedException("DATA", 451, "451 try again later", null, null, null, null));
+
+        // when
+        boolean result = outboxDrainer.drainNext();
+
+        // then
+        assertThat(result, is(false));
+        verify(mailOutbox, never()).acknowledge(any(OutboxRecord.class));
+    }
+
+    @Test
+    public void shouldAcknowledgeRecordOnPermanentSMTPReply() throws Exception {
+
+        // given
+        given(mailOutbox.next()).willReturn(OUTBOX_RECORD);
+        given(mailProcessor.process(MAIL)).willThrow(new SMTPSendFailedException("DATA", 554, "554 message rejected", null, null, null, null));
+
+        // when
+        boolean result = outboxDrainer.drainNext();
+
+        // then
+        assertThat(result, is(true));
+        verify(mailOutbox).acknowledge(OUTBOX_RECORD);
+    }
+
+    @Test
+    public void shouldAcknowledgeRecordOnInvalidRecipient() throws Exception {
+
+        // given
+        InternetAddress recipient = new InternetAddress("recipient@dev.local");
+        given(mailOutbox.next()).willReturn(OUTBOX_RECORD);
+        given(mailProcessor.process(MAIL)).willThrow(new SendFailedException("Invalid Addresses",
+                new SMTPAddressFailedException(recipient, "RCPT TO", 550, "550 user unknown"), null, null, new InternetAddress[] {recipient}));
+
+        // when
+        boolean result = outboxDrainer.drainNext();
+
+        // then
+        assertThat(result, is(true));
+        verify(mailOutbox).acknowledge(OUTBOX_RECORD);
+    }
+}
@@ -0,0 +1,54 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link RenderBuffer}.
+ *
+ * @author Peter Smith
+ */
+public class RenderBufferTest {
+
+    private static final String CONTENT = "<p>Árvíztűrő tükörfúrógép – 📧</p>";
+
+    @Test
+    public void shouldEncodeWrittenContentGrowingTheBuffer() throws IOException {
+
+        // given
+        RenderBuffer renderBuffer = new RenderBuffer(4, StandardCharsets.UTF_8);
+
+        // when
+        renderBuffer.getWriter().write(CONTENT);
+        byte[] result = renderBuffer.toByteArray();
+
+        // then
+        assertThat(result, equalTo(CONTENT.getBytes(StandardCharsets.UTF_8)));
+        assertThat(renderBuffer.getCapacity() >= result.length, is(true));
+    }
+
+    @Test
+    public void shouldDiscardContentOnResetKeepingCapacity() throws IOException {
+
+        // given
+        RenderBuffer renderBuffer = new RenderBuffer(4, StandardCharsets.UTF_8);
+        renderBuffer.getWriter().write(CONTENT);
+        renderBuffer.toByteArray();
+        int capacity = renderBuffer.getCapacity();
+
+        // when
+        renderBuffer.reset();
+        renderBuffer.getWriter().write("next");
+        byte[] result = renderBuffer.toByteArray();
+
+        // then
+        assertThat(new String(result, StandardCharsets.UTF_8), equalTo("next"));
+        assertThat(renderBuffer.getCapacity(), equalTo(capacity));
+    }
+}
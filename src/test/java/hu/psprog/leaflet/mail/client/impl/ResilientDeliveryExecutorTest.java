@@ -0,0 +1,243 @@
+package hu.psprog.leaflet.mail.client.impl;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreaker;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreakerOpenException;
+import hu.psprog.leaflet.mail.client.resilience.CircuitBreakerState;
+import hu.psprog.leaflet.mail.client.resilience.RetryPolicy;
+import hu.psprog.leaflet.mail.config.CircuitBreakerConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RetryConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link ResilientDeliveryExecutor}.
+ *
+ * @author Peter Smith
+ */
+public class ResilientDeliveryExecutorTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int FAILURE_THRESHOLD = 5;
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private CircuitBreaker circuitBreaker;
+    private ResilientDeliveryExecutor resilientDeliveryExecutor;
+
+    @BeforeEach
+    public void setup() {
+        circuitBreaker = new CircuitBreaker(new CircuitBreakerConfigurationProperties(true, FAILURE_THRESHOLD, 60000L));
+        resilientDeliveryExecutor = new ResilientDeliveryExecutor(
+                new RetryPolicy(new RetryConfigurationProperties(MAX_ATTEMPTS, 1L, 1L, 1.0, 0.0, 1L)), circuitBreaker);
+    }
+
+    @Test
+    public void shouldRetryTransientFailureUntilSuccess() throws Exception {
+
+        // when
+        Integer result = resilientDeliveryExecutor.execute(() -> {
+            if (attempts.incrementAndGet() < MAX_ATTEMPTS) {
+                throw new MessagingException("Connection reset");
+            }
+            return attempts.get();
+        });
+
+        // then
+        assertThat(result, equalTo(MAX_ATTEMPTS));
+        assertThat(attempts.get(), equalTo(MAX_ATTEMPTS));
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxAttempts() {
+
+        // when
+        assertThrows(MessagingException.class, () -> resilientDeliveryExecutor.execute(() -> {
+            attempts.incrementAndGet();
+            throw new SMTPSendFailedException("DATA", 451, "try again later", null, null, null, null);
+        }));
+
+        // then
+        assertThat(attempts.get(), equalTo(MAX_ATTEMPTS));
+    }
+
+    @Test
+    public void shouldNotRetryPermanentFailure() {
+
+        // when
+        assertThrows(SendFailedException.class, () -> resilientDeliveryExecutor.execute(() -> {
+            attempts.incrementAndGet();
+            throw new SendFailedException("Invalid recipient");
+        }));
+
+        // then
+        assertThat(attempts.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldFailFastWhenCircuitIsOpen() {
+
+        // given
+        while (circuitBreaker.getState() != CircuitBreakerState.OPEN) {
+            assertThrows(Exception.class, () -> resilientDeliveryExecutor.execute(() -> {
+                attempts.incrementAndGet();
+                throw new MessagingException("Connection refused");
+            }));
+        }
+        assertThat(attempts.get(), equalTo(FAILURE_THRESHOLD));
+        attempts.set(0);
+
+        // when
+        assertThrows(CircuitBreakerOpenException.class, () -> resilientDeliveryExecutor.execute(attempts::incrementAndGet));
+
+        // then
+        assertThat(attempts.get(), equalTo(0));
+    }
+
+    @Test
+    public void shouldRetryOnlyRetryableFailedMailsOfBatch() {
+
+        // given
+        Mail deliveredMail = prepareMail("delivered");
+        Mail invalidRecipientMail = prepareMail("invalid");
+        Mail transientFailureMail = prepareMail("transient");
+        List<List<Mail>> deliveredBatches = new ArrayList<>();
+
+        // when
+        List<MailProcessingResult> result = resilientDeliveryExecutor.executeBatch(
+                Arrays.asList(deliveredMail, invalidRecipientMail, transientFailureMail),
+                batch -> {
+                    deliveredBatches.add(batch);
+                    return batch.stream()
+                            .map(mail -> processMail(mail, deliveredBatches.size()))
+                            .collect(Collectors.toList());
+                });
+
+        // then
+        assertThat(deliveredBatches, equalTo(Arrays.asList(
+                Arrays.asList(deliveredMail, invalidRecipientMail, transientFailureMail),
+                Collections.singletonList(transientFailureMail))));
+        assertThat(result.get(0).isSuccessful(), is(true));
+        assertThat(result.get(1).getFailure(), instanceOf(SendFailedException.class));
+        assertThat(result.get(2).getMail(), equalTo(transientFailureMail));
+        assertThat(result.get(2).isSuccessful(), is(true));
+    }
+
+    @Test
+    public void shouldRetryTransientAsyncFailureUntilSuccess() throws Exception {
+
+        // when
+        Integer result = resilientDeliveryExecutor.<Integer>executeAsync(() -> attempts.incrementAndGet() < MAX_ATTEMPTS
+                ? CompletableFuture.failedFuture(new MessagingException("Connection reset"))
+                : CompletableFuture.completedFuture(attempts.get()))
+                .get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(result, equalTo(MAX_ATTEMPTS));
+        assertThat(attempts.get(), equalTo(MAX_ATTEMPTS));
+    }
+
+    @Test
+    public void shouldNotRetryPermanentAsyncFailure() {
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> resilientDeliveryExecutor.executeAsync(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new SendFailedException("Invalid recipient"));
+        }).get(5, TimeUnit.SECONDS));
+
+        // then
+        assertThat(result.getCause(), instanceOf(SendFailedException.class));
+        assertThat(attempts.get(), equalTo(1));
+    }
+
+    @Test
+    public void shouldFailAsyncDeliveryFastWhenCircuitIsOpen() {
+
+        // given
+        while (circuitBreaker.getState() != CircuitBreakerState.OPEN) {
+            assertThrows(Exception.class, () -> resilientDeliveryExecutor.execute(() -> {
+                throw new MessagingException("Connection refused");
+            }));
+        }
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> resilientDeliveryExecutor.executeAsync(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }).get(5, TimeUnit.SECONDS));
+
+        // then
+        assertThat(result.getCause(), instanceOf(CircuitBreakerOpenException.class));
+        assertThat(attempts.get(), equalTo(0));
+    }
+
+    @Test
+    public void shouldRetryOnlyRetryableFailedMailsOfAsyncBatch() throws Exception {
+
+        // given
+        Mail deliveredMail = prepareMail("delivered");
+        Mail invalidRecipientMail = prepareMail("invalid");
+        Mail transientFailureMail = prepareMail("transient");
+        List<List<Mail>> deliveredBatches = new ArrayList<>();
+
+        // when
+        List<MailProcessingResult> result = resilientDeliveryExecutor.executeBatchAsync(
+                Arrays.asList(deliveredMail, invalidRecipientMail, transientFailureMail),
+                batch -> {
+                    deliveredBatches.add(batch);
+                    return CompletableFuture.completedFuture(batch.stream()
+                            .map(mail -> processMail(mail, deliveredBatches.size()))
+                            .collect(Collectors.toList()));
+                })
+                .get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(deliveredBatches, equalTo(Arrays.asList(
+                Arrays.asList(deliveredMail, invalidRecipientMail, transientFailureMail),
+                Collections.singletonList(transientFailureMail))));
+        assertThat(result.get(0).isSuccessful(), is(true));
+        assertThat(result.get(1).getFailure(), instanceOf(SendFailedException.class));
+        assertThat(result.get(2).getMail(), equalTo(transientFailureMail));
+        assertThat(result.get(2).isSuccessful(), is(true));
+    }
+
+    private MailProcessingResult processMail(Mail mail, int attempt) {
+
+        MailProcessingResult result;
+        if ("invalid".equals(mail.getSubject())) {
+            result = MailProcessingResult.failure(mail, new SendFailedException("Invalid recipient"));
+        } else if ("transient".equals(mail.getSubject()) && attempt == 1) {
+            result = MailProcessingResult.failure(mail, new MessagingException("Connection reset"));
+        } else {
+            result = MailProcessingResult.success(mail);
+        }
+
+        return result;
+    }
+
+    private Mail prepareMail(String subject) {
+        return Mail.getBuilder()
+                .withSubject(subject)
+                .build();
+    }
+}
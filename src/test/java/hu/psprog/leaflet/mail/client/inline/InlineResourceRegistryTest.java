@@ -0,0 +1,137 @@
+package hu.psprog.leaflet.mail.client.inline;
+
+import hu.psprog.leaflet.mail.config.InlineResourceConfigurationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.Session;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link InlineResourceRegistry}.
+ *
+ * @author Peter Smith
+ */
+public class InlineResourceRegistryTest {
+
+    private static final String LOGO = "logo.png";
+    private static final String ICON = "icon.gif";
+    private static final String CONTENT = "<img src=\"cid:logo.png\"/><p>Árvíztűrő</p><img src='cid:unknown.png'/><img src=\"cid:logo.png\"/>";
+
+    @TempDir
+    Path resourceDirectory;
+
+    private byte[] logoContent;
+    private InlineResourceRegistry inlineResourceRegistry;
+
+    @BeforeEach
+    public void setup() throws IOException, MessagingException {
+
+        logoContent = new byte[5000];
+        for (int index = 0; index < logoContent.length; index++) {
+            logoContent[index] = (byte) (index * 17);
+        }
+        Files.write(resourceDirectory.resolve(LOGO), logoContent);
+        Files.write(resourceDirectory.resolve(ICON), new byte[] {1, 2, 3});
+
+        inlineResourceRegistry = new InlineResourceRegistry(new InlineResourceConfigurationProperties(true, resourceDirectory.toUri() + "*"));
+        inlineResourceRegistry.load();
+    }
+
+    @Test
+    public void shouldRegisterResourcesByFileName() {
+
+        // when
+        InlineResource logo = inlineResourceRegistry.getResource(LOGO);
+
+        // then
+        assertThat(inlineResourceRegistry.getResources().size(), equalTo(2));
+        assertThat(logo.getContentId(), equalTo(LOGO));
+        assertThat(logo.getContentType(), equalTo("image/png"));
+        assertThat(inlineResourceRegistry.getResource(ICON).getContentType(), equalTo("image/gif"));
+        assertThat(inlineResourceRegistry.getResource("unknown.png"), nullValue());
+    }
+
+    @Test
+    public void shouldFindOnlyReferencedResourcesInContent() {
+
+        // when
+        List<InlineResource> result = inlineResourceRegistry.findReferencedResources(CONTENT);
+
+        // then
+        assertThat(toContentIds(result), equalTo(List.of(LOGO)));
+    }
+
+    @Test
+    public void shouldFindOnlyReferencedResourcesInEncodedContent() {
+
+        // when
+        List<InlineResource> result = inlineResourceRegistry.findReferencedResources(CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        // then
+        assertThat(toContentIds(result), equalTo(List.of(LOGO)));
+    }
+
+    @Test
+    public void shouldCreateInlineBodyPartFromPreEncodedContent() throws MessagingException, IOException {
+
+        // given
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        MimeMultipart multipart = new MimeMultipart("related");
+        multipart.addBodyPart(inlineResourceRegistry.getResource(LOGO).createBodyPart());
+        message.setContent(multipart);
+        message.saveChanges();
+
+        // when
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        message.writeTo(outputStream);
+
+        // then
+        MimeMessage parsedMessage = new MimeMessage(Session.getInstance(new Properties()), new ByteArrayInputStream(outputStream.toByteArray()));
+        MimeBodyPart bodyPart = (MimeBodyPart) ((MimeMultipart) parsedMessage.getContent()).getBodyPart(0);
+        assertThat(bodyPart.getContentID(), equalTo("<" + LOGO + ">"));
+        assertThat(bodyPart.getDisposition(), equalTo(Part.INLINE));
+        assertThat(bodyPart.isMimeType("image/png"), is(true));
+        assertThat(bodyPart.getEncoding(), equalTo("base64"));
+        assertThat(bodyPart.getInputStream().readAllBytes(), equalTo(logoContent));
+    }
+
+    @Test
+    public void shouldNotRegisterResourcesIfDisabled() throws IOException, MessagingException {
+
+        // given
+        InlineResourceRegistry disabledRegistry = new InlineResourceRegistry(new InlineResourceConfigurationProperties(false, resourceDirectory.toUri() + "*"));
+
+        // when
+        disabledRegistry.load();
+
+        // then
+        assertThat(disabledRegistry.getResources().isEmpty(), is(true));
+        assertThat(disabledRegistry.findReferencedResources(CONTENT).isEmpty(), is(true));
+    }
+
+    private List<String> toContentIds(List<InlineResource> inlineResources) {
+        return inlineResources.stream()
+                .map(InlineResource::getContentId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,89 @@
+package hu.psprog.leaflet.mail.client.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @author Peter Smith
+ */
+public class LatencyHistogramTest {
+
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 64;
+
+    @Test
+    public void shouldReturnZeroForEmptyHistogram() {
+
+        // given
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+        // when
+        long result = latencyHistogram.getValueAtPercentile(99);
+
+        // then
+        assertThat(result, equalTo(0L));
+        assertThat(latencyHistogram.getMean(), equalTo(0.0));
+    }
+
+    @Test
+    public void shouldCountSmallValuesExactly() {
+
+        // given
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            latencyHistogram.record(value);
+        }
+
+        // when
+        long result = latencyHistogram.getValueAtPercentile(50);
+
+        // then
+        assertThat(result, equalTo(50L));
+        assertThat(latencyHistogram.getValueAtPercentile(100), equalTo(100L));
+        assertThat(latencyHistogram.getCount(), equalTo(100L));
+        assertThat(latencyHistogram.getMean(), equalTo(50.5));
+    }
+
+    @Test
+    public void shouldReturnPercentilesWithinRelativeErrorForLargeValues() {
+
+        // given
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            latencyHistogram.record(value * 1_000L);
+        }
+
+        // when
+        long p50 = latencyHistogram.getValueAtPercentile(50);
+        long p99 = latencyHistogram.getValueAtPercentile(99);
+        long p999 = latencyHistogram.getValueAtPercentile(99.9);
+
+        // then
+        assertThat((double) p50, closeTo(5_000_000, 5_000_000 * MAX_RELATIVE_ERROR));
+        assertThat((double) p99, closeTo(9_900_000, 9_900_000 * MAX_RELATIVE_ERROR));
+        assertThat((double) p999, closeTo(9_990_000, 9_990_000 * MAX_RELATIVE_ERROR));
+        assertThat(latencyHistogram.getValueAtPercentile(100), equalTo(10_000_000L));
+        assertThat(latencyHistogram.getMax(), equalTo(10_000_000L));
+    }
+
+    @Test
+    public void shouldCapValuesOutsideTrackableRange() {
+
+        // given
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        latencyHistogram.record(-5);
+        latencyHistogram.record(Long.MAX_VALUE);
+
+        // when
+        long result = latencyHistogram.getValueAtPercentile(50);
+
+        // then
+        assertThat(result, equalTo(0L));
+        assertThat(latencyHistogram.getMax(), equalTo((1L << 40) - 1));
+        assertThat(latencyHistogram.getValueAtPercentile(100), equalTo((1L << 40) - 1));
+    }
+}
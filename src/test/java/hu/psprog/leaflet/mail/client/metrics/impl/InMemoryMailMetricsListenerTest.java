@@ -0,0 +1,108 @@
+package hu.psprog.leaflet.mail.client.metrics.impl;
+
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.metrics.MailPipelineStage;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitScope;
+import hu.psprog.leaflet.mail.domain.MailDeliveryStatus;
+import hu.psprog.leaflet.mail.domain.MailPriority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Unit tests for {@link InMemoryMailMetricsListener}, fed through {@link MailMetrics}.
+ *
+ * @author Peter Smith
+ */
+public class InMemoryMailMetricsListenerTest {
+
+    private static final String TEMPLATE = "leaflet_test";
+
+    private InMemoryMailMetricsListener inMemoryMailMetricsListener;
+    private MailMetrics mailMetrics;
+
+    @BeforeEach
+    public void setup() {
+        inMemoryMailMetricsListener = new InMemoryMailMetricsListener();
+        mailMetrics = new MailMetrics(Collections.singletonList(inMemoryMailMetricsListener));
+    }
+
+    @Test
+    public void shouldRecordStageLatencies() {
+
+        // given
+        long startTime = System.nanoTime();
+
+        // when
+        mailMetrics.recordStage(MailPipelineStage.TRANSMISSION, startTime);
+        mailMetrics.recordTemplateRendered(TEMPLATE, 2_000L);
+
+        // then
+        assertThat(inMemoryMailMetricsListener.getStageHistogram(MailPipelineStage.TRANSMISSION).getCount(), equalTo(1L));
+        assertThat(inMemoryMailMetricsListener.getStageHistogram(MailPipelineStage.RENDERING).getCount(), equalTo(1L));
+        assertThat(inMemoryMailMetricsListener.getStageHistogram(MailPipelineStage.VALIDATION).getCount(), equalTo(0L));
+        assertThat(inMemoryMailMetricsListener.getTemplateHistograms().get(TEMPLATE).getMax(), greaterThanOrEqualTo(2_000L));
+    }
+
+    @Test
+    public void shouldCountDeliveryStatuses() {
+
+        // when
+        mailMetrics.recordDeliveryStatus(MailDeliveryStatus.DELIVERED);
+        mailMetrics.recordDeliveryStatus(MailDeliveryStatus.DELIVERED);
+        mailMetrics.recordDeliveryStatus(MailDeliveryStatus.REJECTED);
+
+        // then
+        assertThat(inMemoryMailMetricsListener.getDeliveryStatusCount(MailDeliveryStatus.DELIVERED), equalTo(2L));
+        assertThat(inMemoryMailMetricsListener.getDeliveryStatusCount(MailDeliveryStatus.REJECTED), equalTo(1L));
+        assertThat(inMemoryMailMetricsListener.getDeliveryStatusCount(MailDeliveryStatus.VALIDATION_ERROR), equalTo(0L));
+    }
+
+    @Test
+    public void shouldTrackCurrentAndMaximumQueueDepth() {
+
+        // when
+        mailMetrics.recordQueueDepth(10);
+        mailMetrics.recordQueueDepth(3);
+
+        // then
+        assertThat(inMemoryMailMetricsListener.getQueueDepth(), equalTo(3));
+        assertThat(inMemoryMailMetricsListener.getMaxQueueDepth(), equalTo(10));
+    }
+
+    @Test
+    public void shouldRecordThrottledSendsByScope() {
+
+        // when
+        mailMetrics.recordSendDelayed(RateLimitScope.RELAY, 5_000L);
+        mailMetrics.recordSendRejected(RateLimitScope.RECIPIENT_DOMAIN);
+        mailMetrics.recordSendRejected(RateLimitScope.RECIPIENT_DOMAIN);
+
+        // then
+        assertThat(inMemoryMailMetricsListener.getThrottleDelayHistogram(RateLimitScope.RELAY).getCount(), equalTo(1L));
+        assertThat(inMemoryMailMetricsListener.getThrottleDelayHistogram(RateLimitScope.RELAY).getMax(), greaterThanOrEqualTo(5_000L));
+        assertThat(inMemoryMailMetricsListener.getThrottleDelayHistogram(RateLimitScope.RECIPIENT_DOMAIN).getCount(), equalTo(0L));
+        assertThat(inMemoryMailMetricsListener.getRejectedSendCount(RateLimitScope.RECIPIENT_DOMAIN), equalTo(2L));
+        assertThat(inMemoryMailMetricsListener.getRejectedSendCount(RateLimitScope.RELAY), equalTo(0L));
+    }
+
+    @Test
+    public void shouldRecordQueueingDelaysByPriority() {
+
+        // when
+        mailMetrics.recordQueueingDelay(MailPriority.HIGH, 2_000L);
+        mailMetrics.recordQueueingDelay(MailPriority.BULK, 9_000L);
+        mailMetrics.recordQueueingDelay(MailPriority.BULK, 7_000L);
+
+        // then
+        assertThat(inMemoryMailMetricsListener.getQueueingDelayHistogram(MailPriority.HIGH).getCount(), equalTo(1L));
+        assertThat(inMemoryMailMetricsListener.getQueueingDelayHistogram(MailPriority.BULK).getCount(), equalTo(2L));
+        assertThat(inMemoryMailMetricsListener.getQueueingDelayHistogram(MailPriority.BULK).getMax(), greaterThanOrEqualTo(9_000L));
+        assertThat(inMemoryMailMetricsListener.getQueueingDelayHistogram(MailPriority.NORMAL).getCount(), equalTo(0L));
+    }
+}
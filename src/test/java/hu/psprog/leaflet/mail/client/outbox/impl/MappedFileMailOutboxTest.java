@@ -0,0 +1,187 @@
+package hu.psprog.leaflet.mail.client.outbox.impl;
+
+import hu.psprog.leaflet.mail.client.outbox.OutboxRecord;
+import hu.psprog.leaflet.mail.config.OutboxConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link MappedFileMailOutbox}.
+ *
+ * @author Peter Smith
+ */
+public class MappedFileMailOutboxTest {
+
+    private static final int SEGMENT_SIZE = 2048;
+    private static final String SEGMENT_FILE_SUFFIX = ".segment";
+
+    @TempDir
+    Path outboxDirectory;
+
+    private MappedFileMailOutbox mailOutbox;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        mailOutbox = openOutbox();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        mailOutbox.close();
+    }
+
+    @Test
+    public void shouldReadAppendedMailsInOrder() throws IOException {
+
+        // given
+        mailOutbox.append(prepareMail(1));
+        mailOutbox.append(prepareMail(2));
+
+        // when
+        OutboxRecord firstRecord = mailOutbox.next();
+        OutboxRecord secondRecord = mailOutbox.next();
+        OutboxRecord thirdRecord = mailOutbox.next();
+
+        // then
+        assertThat(firstRecord.getMail().getSubject(), equalTo("Subject 1"));
+        assertThat(firstRecord.getMail().getContentMap().get("id"), equalTo(1));
+        assertThat(secondRecord.getMail().getSubject(), equalTo("Subject 2"));
+        assertThat(secondRecord.getOffset(), equalTo(firstRecord.getNextOffset()));
+        assertThat(thirdRecord, nullValue());
+    }
+
+    @Test
+    public void shouldRedeliverUnacknowledgedMailsAfterReopen() throws IOException {
+
+        // given
+        mailOutbox.append(prepareMail(1));
+        mailOutbox.append(prepareMail(2));
+        mailOutbox.acknowledge(mailOutbox.next());
+        mailOutbox.next();
+        mailOutbox.close();
+
+        // when
+        mailOutbox = openOutbox();
+
+        // then
+        assertThat(mailOutbox.next().getMail().getSubject(), equalTo("Subject 2"));
+        assertThat(mailOutbox.next(), nullValue());
+    }
+
+    @Test
+    public void shouldRollSegmentsAndDeleteAcknowledgedOnes() throws IOException {
+
+        // given
+        for (int index = 0; index < 20; index++) {
+            mailOutbox.append(prepareMail(index));
+        }
+        long segmentCountBeforeAcknowledge = countSegmentFiles();
+
+        // when
+        OutboxRecord outboxRecord;
+        int index = 0;
+        while ((outboxRecord = mailOutbox.next()) != null) {
+            assertThat(outboxRecord.getMail().getSubject(), equalTo("Subject " + index++));
+            mailOutbox.acknowledge(outboxRecord);
+        }
+
+        // then
+        assertThat(index, equalTo(20));
+        assertThat(segmentCountBeforeAcknowledge > 1, equalTo(true));
+        assertThat(countSegmentFiles(), equalTo(1L));
+        assertThat(mailOutbox.getBacklogSize(), equalTo(0L));
+    }
+
+    @Test
+    public void shouldTruncateTornRecordOnReopen() throws IOException {
+
+        // given
+        mailOutbox.append(prepareMail(1));
+        int tornRecordPosition = (int) mailOutbox.getBacklogSize();
+        mailOutbox.close();
+        writeTornRecord(tornRecordPosition);
+
+        // when
+        mailOutbox = openOutbox();
+        mailOutbox.append(prepareMail(2));
+
+        // then
+        assertThat(mailOutbox.next().getMail().getSubject(), equalTo("Subject 1"));
+        OutboxRecord recordAfterTornTail = mailOutbox.next();
+        assertThat(recordAfterTornTail.getOffset(), equalTo((long) tornRecordPosition));
+        assertThat(recordAfterTornTail.getMail().getSubject(), equalTo("Subject 2"));
+        assertThat(mailOutbox.next(), nullValue());
+    }
+
+    @Test
+    public void shouldRejectMailLargerThanSegment() {
+
+        // given
+        Mail mail = Mail.getBuilder()
+                .withSubject("Large")
+                .withContentMap(Collections.singletonMap("content", "x".repeat(SEGMENT_SIZE)))
+                .build();
+
+        // when
+        assertThrows(IOException.class, () -> mailOutbox.append(mail));
+
+        // then
+        // exception expected
+    }
+
+    private MappedFileMailOutbox openOutbox() throws IOException {
+
+        MappedFileMailOutbox outbox = new MappedFileMailOutbox(
+                new OutboxConfigurationProperties(outboxDirectory.toString(), SEGMENT_SIZE, false, 10L));
+        outbox.open();
+
+        return outbox;
+    }
+
+    private Mail prepareMail(int id) {
+        return Mail.getBuilder()
+                .withRecipient("recipient@dev.local")
+                .withSubject("Subject " + id)
+                .withTemplate("template")
+                .withContentMap(Collections.singletonMap("id", id))
+                .build();
+    }
+
+    private long countSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(outboxDirectory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_FILE_SUFFIX))
+                    .count();
+        }
+    }
+
+    private void writeTornRecord(int position) throws IOException {
+
+        Path segmentFile = outboxDirectory.resolve(String.format("%020d%s", 0, SEGMENT_FILE_SUFFIX));
+        ByteBuffer tornRecord = ByteBuffer.allocate(OutboxSegment.RECORD_HEADER_SIZE + 4)
+                .putInt(4)
+                .putInt(12345)
+                .putInt(67890);
+        tornRecord.flip();
+        try (FileChannel fileChannel = FileChannel.open(segmentFile, StandardOpenOption.WRITE)) {
+            fileChannel.write(tornRecord, position);
+        }
+    }
+}
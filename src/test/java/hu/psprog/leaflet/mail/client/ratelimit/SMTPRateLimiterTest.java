@@ -0,0 +1,191 @@
+package hu.psprog.leaflet.mail.client.ratelimit;
+
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.config.RateLimitConfigurationProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Unit tests for {@link SMTPRateLimiter}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class SMTPRateLimiterTest {
+
+    private static final String RELAY = "smtp.dev.local:25";
+    private static final long EMISSION_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Mock
+    private MailMetrics mailMetrics;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void shouldLetBurstThroughThenDelayByEmissionInterval() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter(RateLimitMode.DELAY, 1000L);
+        smtpRateLimiter.reserveRelay(RELAY, 2);
+
+        // when
+        long firstDelay = smtpRateLimiter.reserveRelay(RELAY, 1);
+        long secondDelay = smtpRateLimiter.reserveRelay(RELAY, 1);
+
+        // then
+        assertThat(firstDelay, equalTo(EMISSION_INTERVAL));
+        assertThat(secondDelay, equalTo(2 * EMISSION_INTERVAL));
+        assertThat(smtpRateLimiter.isRelayAvailable(RELAY), is(false));
+        verify(mailMetrics).recordSendDelayed(RateLimitScope.RELAY, EMISSION_INTERVAL);
+        verify(mailMetrics).recordSendDelayed(RateLimitScope.RELAY, 2 * EMISSION_INTERVAL);
+    }
+
+    @Test
+    public void shouldRefillPermitsOverTime() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter(RateLimitMode.REJECT, 0L);
+        smtpRateLimiter.reserveRelay(RELAY, 2);
+        clock.addAndGet(EMISSION_INTERVAL);
+
+        // when
+        long refilledDelay = smtpRateLimiter.reserveRelay(RELAY, 1);
+        long exceededDelay = smtpRateLimiter.reserveRelay(RELAY, 1);
+
+        // then
+        assertThat(refilledDelay, equalTo(0L));
+        assertThat(exceededDelay, equalTo(SMTPRateLimiter.RATE_LIMIT_EXCEEDED));
+        verify(mailMetrics).recordSendRejected(RateLimitScope.RELAY);
+    }
+
+    @Test
+    public void shouldNotReserveBeyondMaxDelay() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter(RateLimitMode.QUEUE, 100L);
+        smtpRateLimiter.reserveRelay(RELAY, 2);
+        smtpRateLimiter.reserveRelay(RELAY, 1);
+
+        // when
+        long exceededDelay = smtpRateLimiter.reserveRelay(RELAY, 1);
+        clock.addAndGet(EMISSION_INTERVAL);
+        long delayAfterRefill = smtpRateLimiter.reserveRelay(RELAY, 1);
+
+        // then
+        assertThat(exceededDelay, equalTo(SMTPRateLimiter.RATE_LIMIT_EXCEEDED));
+        assertThat(delayAfterRefill, equalTo(EMISSION_INTERVAL));
+    }
+
+    @Test
+    public void shouldReleaseUnusedRelayPermits() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter(RateLimitMode.REJECT, 0L);
+        smtpRateLimiter.reserveRelay(RELAY, 2);
+
+        // when
+        smtpRateLimiter.releaseRelay(RELAY, 2);
+        long result = smtpRateLimiter.reserveRelay(RELAY, 2);
+
+        // then
+        assertThat(result, equalTo(0L));
+    }
+
+    @Test
+    public void shouldReturnBurstAndPermitsWithinMaxDelayAsRelayCapacity() {
+
+        // given
+        SMTPRateLimiter rejectingRateLimiter = prepareRateLimiter(RateLimitMode.REJECT, 1000L);
+        SMTPRateLimiter delayingRateLimiter = prepareRateLimiter(RateLimitMode.DELAY, 1000L);
+
+        // when
+        int rejectingCapacity = rejectingRateLimiter.getRelayCapacity(RELAY);
+        int delayingCapacity = delayingRateLimiter.getRelayCapacity(RELAY);
+
+        // then
+        assertThat(rejectingCapacity, equalTo(2));
+        assertThat(delayingCapacity, equalTo(12));
+        assertThat(delayingRateLimiter.reserveRelay(RELAY, delayingCapacity), equalTo(TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void shouldLimitRecipientDomainsSeparatelyUsingSpecificLimits() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter(RateLimitMode.REJECT, 0L);
+        smtpRateLimiter.reserveRecipientDomain("first@limited.dev.local");
+
+        // when
+        long sameDomainDelay = smtpRateLimiter.reserveRecipientDomain("Second User <second@LIMITED.dev.local>");
+        long otherDomainDelay = smtpRateLimiter.reserveRecipientDomain("user@unlimited.dev.local");
+
+        // then
+        assertThat(sameDomainDelay, equalTo(SMTPRateLimiter.RATE_LIMIT_EXCEEDED));
+        assertThat(otherDomainDelay, equalTo(0L));
+        verify(mailMetrics).recordSendRejected(RateLimitScope.RECIPIENT_DOMAIN);
+    }
+
+    @Test
+    public void shouldReservePermitPerRecipientAndReturnLongestDomainDelay() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter(RateLimitMode.DELAY, 1000L);
+
+        // when
+        long result = smtpRateLimiter.reserveRecipientDomains(Arrays.asList("to@limited.dev.local", "cc@unlimited.dev.local",
+                "bcc@limited.dev.local"));
+
+        // then
+        assertThat(result, equalTo(TimeUnit.SECONDS.toNanos(1)));
+        verify(mailMetrics).recordSendDelayed(RateLimitScope.RECIPIENT_DOMAIN, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void shouldReleaseReservedDomainPermitsIfAnyDomainRateLimitIsExceeded() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter(RateLimitMode.REJECT, 0L);
+
+        // when
+        long exceededDelay = smtpRateLimiter.reserveRecipientDomains(Arrays.asList("to@burst.dev.local", "cc@limited.dev.local",
+                "bcc@limited.dev.local"));
+        long releasedDelay = smtpRateLimiter.reserveRecipientDomains(Arrays.asList("to@burst.dev.local", "cc@burst.dev.local"));
+
+        // then
+        assertThat(exceededDelay, equalTo(SMTPRateLimiter.RATE_LIMIT_EXCEEDED));
+        assertThat(releasedDelay, equalTo(0L));
+    }
+
+    @Test
+    public void shouldNotLimitIfDisabled() {
+
+        // given
+        SMTPRateLimiter smtpRateLimiter = new SMTPRateLimiter(new RateLimitConfigurationProperties(false, RateLimitMode.REJECT, 0L,
+                1.0, 1, "", 1.0, 1, "", 1), mailMetrics, clock::get);
+
+        // when
+        smtpRateLimiter.reserveRelay(RELAY, 1);
+        long result = smtpRateLimiter.reserveRelay(RELAY, 1);
+
+        // then
+        assertThat(result, equalTo(0L));
+        verifyNoInteractions(mailMetrics);
+    }
+
+    private SMTPRateLimiter prepareRateLimiter(RateLimitMode mode, long maxDelay) {
+        return new SMTPRateLimiter(new RateLimitConfigurationProperties(true, mode, maxDelay, 10.0, 2, "",
+                0.0, 1, "limited.dev.local=1/1,burst.dev.local=1/2", 100), mailMetrics, clock::get);
+    }
+}
@@ -0,0 +1,241 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.client.renderer.MailRenderer;
+import hu.psprog.leaflet.mail.config.BulkRenderingConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link BulkMailRenderer}.
+ * Templates are resolved as-is from the template name, so the name of the template is its content.
+ *
+ * @author Peter Smith
+ */
+public class BulkMailRendererTest {
+
+    private static final String TEMPLATE = "<h1 th:text=\"${title}\">Title</h1><p>Dear <span th:text=\"${name}\">Name</span>,</p>"
+            + "<a th:href=\"${link}\" th:text=\"${title}\">Link</a><p th:text=\"${name}\">Name</p>";
+    private static final String CONDITIONAL_TEMPLATE = "<h1 th:text=\"${title}\">Title</h1>"
+            + "<p th:if=\"${name == 'Admin'}\">Hello, Admin!</p><p th:text=\"${name}\">Name</p>";
+    private static final String UNESCAPED_TEMPLATE = "<p th:utext=\"${name}\">Name</p>";
+    private static final String URL_TEMPLATE = "<a th:href=\"@{https://dev.local/unsubscribe(name=${name})}\">Unsubscribe</a>";
+    private static final String NULL_CHECK_TEMPLATE = "<p th:if=\"${name}\">Dear <span th:text=\"${name}\">Name</span>,</p>";
+    private static final String TITLE = "Campaign";
+    private static final String NAME = "name";
+    private static final String LINK = "link";
+    private static final Set<String> PERSONALIZED_CONTENT_KEYS = Set.of(NAME, LINK);
+
+    private ThymeleafMailRenderer thymeleafMailRenderer;
+    private AtomicInteger delegateRenderCount;
+    private BulkRenderingPlanCache bulkRenderingPlanCache;
+    private BulkMailRenderer bulkMailRenderer;
+
+    @BeforeEach
+    public void setup() {
+
+        TemplateEngine templateEngine = new TemplateEngine();
+        StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateEngine.setTemplateResolver(templateResolver);
+        thymeleafMailRenderer = new ThymeleafMailRenderer(templateEngine);
+
+        delegateRenderCount = new AtomicInteger();
+        MailRenderer countingMailRenderer = mail -> {
+            delegateRenderCount.incrementAndGet();
+            return thymeleafMailRenderer.renderMail(mail);
+        };
+        bulkRenderingPlanCache = new BulkRenderingPlanCache(new BulkRenderingConfigurationProperties(true, 10));
+        bulkMailRenderer = new BulkMailRenderer(countingMailRenderer, bulkRenderingPlanCache);
+    }
+
+    @Test
+    public void shouldRenderPersonalizedMailsOfSameCampaignEqualToFullRendering() {
+
+        // given
+        Mail firstMail = prepareMail(TEMPLATE, "John <Doe> & \"Co\" 'Ltd'", "https://dev.local/unsubscribe?id=1&t=a");
+        Mail secondMail = prepareMail(TEMPLATE, "Jane", "https://dev.local/unsubscribe?id=2&t=b");
+        Mail thirdMail = prepareMail(TEMPLATE, null, null);
+
+        // when
+        String firstResult = bulkMailRenderer.renderMail(firstMail);
+        String secondResult = bulkMailRenderer.renderMail(secondMail);
+        String thirdResult = bulkMailRenderer.renderMail(thirdMail);
+
+        // then
+        assertThat(firstResult, equalTo(thymeleafMailRenderer.renderMail(firstMail)));
+        assertThat(secondResult, equalTo(thymeleafMailRenderer.renderMail(secondMail)));
+        assertThat(thirdResult, equalTo(thymeleafMailRenderer.renderMail(thirdMail)));
+        assertThat(delegateRenderCount.get(), is(2));
+        assertThat(bulkRenderingPlanCache.getSize(), is(1));
+    }
+
+    @Test
+    public void shouldCreateSeparatePlanForDifferentSharedContent() {
+
+        // given
+        Mail firstMail = prepareMail(TEMPLATE, "John", "https://dev.local/1");
+        Mail otherCampaignMail = prepareMail(TEMPLATE, "John", "https://dev.local/1");
+        otherCampaignMail.getContentMap().put("title", "Other campaign");
+
+        // when
+        String firstResult = bulkMailRenderer.renderMail(firstMail);
+        String otherCampaignResult = bulkMailRenderer.renderMail(otherCampaignMail);
+
+        // then
+        assertThat(firstResult, equalTo(thymeleafMailRenderer.renderMail(firstMail)));
+        assertThat(otherCampaignResult, equalTo(thymeleafMailRenderer.renderMail(otherCampaignMail)));
+        assertThat(delegateRenderCount.get(), is(2));
+        assertThat(bulkRenderingPlanCache.getSize(), is(2));
+    }
+
+    @Test
+    public void shouldFallBackToFullRenderingIfPersonalizedValueIsNotWrittenAsIs() {
+
+        // given
+        Mail adminMail = prepareMail(CONDITIONAL_TEMPLATE, "Admin", null);
+        Mail userMail = prepareMail(CONDITIONAL_TEMPLATE, "User", null);
+
+        // when
+        String adminResult = bulkMailRenderer.renderMail(adminMail);
+        String userResult = bulkMailRenderer.renderMail(userMail);
+
+        // then
+        assertThat(adminResult, equalTo(thymeleafMailRenderer.renderMail(adminMail)));
+        assertThat(userResult, equalTo(thymeleafMailRenderer.renderMail(userMail)));
+        assertThat(delegateRenderCount.get(), is(3));
+    }
+
+    @Test
+    public void shouldFallBackToFullRenderingIfPersonalizedValueIsUsedInConditionAndWrittenOut() {
+
+        // given
+        Mail adminMail = prepareMail(CONDITIONAL_TEMPLATE, "Admin", null, Set.of(NAME));
+        Mail userMail = prepareMail(CONDITIONAL_TEMPLATE, "User", null, Set.of(NAME));
+
+        // when
+        String adminResult = bulkMailRenderer.renderMail(adminMail);
+        String userResult = bulkMailRenderer.renderMail(userMail);
+
+        // then
+        assertThat(adminResult, equalTo(thymeleafMailRenderer.renderMail(adminMail)));
+        assertThat(userResult, equalTo(thymeleafMailRenderer.renderMail(userMail)));
+        assertThat(delegateRenderCount.get(), is(3));
+    }
+
+    @Test
+    public void shouldFallBackToFullRenderingIfPersonalizedValueIsWrittenOutUnescaped() {
+
+        // given
+        Mail mail = prepareMail(UNESCAPED_TEMPLATE, "<b>John</b>", null, Set.of(NAME));
+
+        // when
+        String result = bulkMailRenderer.renderMail(mail);
+
+        // then
+        assertThat(result, equalTo(thymeleafMailRenderer.renderMail(mail)));
+        assertThat(delegateRenderCount.get(), is(2));
+    }
+
+    @Test
+    public void shouldFallBackToFullRenderingIfPersonalizedValueIsWrittenOutInURL() {
+
+        // given
+        Mail mail = prepareMail(URL_TEMPLATE, "John & Jane", null, Set.of(NAME));
+
+        // when
+        String result = bulkMailRenderer.renderMail(mail);
+
+        // then
+        assertThat(result, equalTo(thymeleafMailRenderer.renderMail(mail)));
+        assertThat(delegateRenderCount.get(), is(2));
+    }
+
+    @Test
+    public void shouldRenderMailInFullIfPersonalizedValueIsNotAcceptedByPlan() {
+
+        // given
+        Mail johnMail = prepareMail(NULL_CHECK_TEMPLATE, "John", null, Set.of(NAME));
+        Mail missingNameMail = prepareMail(NULL_CHECK_TEMPLATE, null, null, Set.of(NAME));
+        Mail falseNameMail = prepareMail(NULL_CHECK_TEMPLATE, "false", null, Set.of(NAME));
+
+        // when
+        String johnResult = bulkMailRenderer.renderMail(johnMail);
+        String missingNameResult = bulkMailRenderer.renderMail(missingNameMail);
+        String falseNameResult = bulkMailRenderer.renderMail(falseNameMail);
+
+        // then
+        assertThat(johnResult, equalTo(thymeleafMailRenderer.renderMail(johnMail)));
+        assertThat(missingNameResult, equalTo(thymeleafMailRenderer.renderMail(missingNameMail)));
+        assertThat(falseNameResult, equalTo(thymeleafMailRenderer.renderMail(falseNameMail)));
+        assertThat(delegateRenderCount.get(), is(3));
+        assertThat(bulkRenderingPlanCache.getSize(), is(1));
+    }
+
+    @Test
+    public void shouldPassMailWithoutPersonalizedContentToDelegate() {
+
+        // given
+        Mail mail = Mail.getBuilder()
+                .withTemplate(TEMPLATE)
+                .withContentMap(prepareContentMap("John", "https://dev.local/1"))
+                .build();
+
+        // when
+        String result = bulkMailRenderer.renderMail(mail);
+
+        // then
+        assertThat(result, equalTo(thymeleafMailRenderer.renderMail(mail)));
+        assertThat(delegateRenderCount.get(), is(1));
+        assertThat(bulkRenderingPlanCache.getSize(), is(0));
+    }
+
+    @Test
+    public void shouldRecreatePlanAfterInvalidation() {
+
+        // given
+        Mail mail = prepareMail(TEMPLATE, "John", "https://dev.local/1");
+        bulkMailRenderer.renderMail(mail);
+
+        // when
+        bulkRenderingPlanCache.invalidate(TEMPLATE);
+        bulkMailRenderer.renderMail(mail);
+
+        // then
+        assertThat(delegateRenderCount.get(), is(2));
+    }
+
+    private Mail prepareMail(String template, String name, String link) {
+        return prepareMail(template, name, link, PERSONALIZED_CONTENT_KEYS);
+    }
+
+    private Mail prepareMail(String template, String name, String link, Set<String> personalizedContentKeys) {
+        return Mail.getBuilder()
+                .withTemplate(template)
+                .withContentMap(prepareContentMap(name, link))
+                .withPersonalizedContentKeys(personalizedContentKeys)
+                .build();
+    }
+
+    private Map<String, Object> prepareContentMap(String name, String link) {
+
+        Map<String, Object> contentMap = new HashMap<>();
+        contentMap.put("title", TITLE);
+        contentMap.put(NAME, name);
+        contentMap.put(LINK, link);
+
+        return contentMap;
+    }
+}
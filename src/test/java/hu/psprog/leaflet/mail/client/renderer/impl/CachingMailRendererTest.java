@@ -0,0 +1,174 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.client.renderer.MailRenderer;
+import hu.psprog.leaflet.mail.config.RenderCacheConfigurationProperties;
+import hu.psprog.leaflet.mail.domain.Mail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link CachingMailRenderer}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class CachingMailRendererTest {
+
+    private static final String CACHED_TEMPLATE = "leaflet_notification";
+    private static final String OTHER_TEMPLATE = "leaflet_personal";
+    private static final String CONTENT = "<p>rendered</p>";
+    private static final String OTHER_CONTENT = "<p>other</p>";
+    private static final long MAX_WEIGHT = CONTENT.length() + OTHER_CONTENT.length();
+
+    @Mock
+    private MailRenderer delegate;
+
+    @Test
+    public void shouldRenderMailsWithEqualContentOnlyOnce() {
+
+        // given
+        RenderedMailCache renderedMailCache = prepareCache(CACHED_TEMPLATE);
+        CachingMailRenderer cachingMailRenderer = new CachingMailRenderer(delegate, renderedMailCache);
+        Mail mail = prepareMail(CACHED_TEMPLATE, "value");
+        Mail duplicateMail = prepareMail(CACHED_TEMPLATE, "value");
+        given(delegate.renderMail(mail)).willReturn(CONTENT);
+
+        // when
+        String result = cachingMailRenderer.renderMail(mail);
+        String duplicateResult = cachingMailRenderer.renderMail(duplicateMail);
+
+        // then
+        assertThat(result, equalTo(CONTENT));
+        assertThat(duplicateResult, equalTo(CONTENT));
+        assertThat(renderedMailCache.getHitCount(), equalTo(1L));
+        assertThat(renderedMailCache.getMissCount(), equalTo(1L));
+        verify(delegate).renderMail(mail);
+    }
+
+    @Test
+    public void shouldRenderMailsWithDifferentContentSeparately() {
+
+        // given
+        RenderedMailCache renderedMailCache = prepareCache(CACHED_TEMPLATE);
+        CachingMailRenderer cachingMailRenderer = new CachingMailRenderer(delegate, renderedMailCache);
+        Mail mail = prepareMail(CACHED_TEMPLATE, "value");
+        Mail otherMail = prepareMail(CACHED_TEMPLATE, "other value");
+        given(delegate.renderMail(mail)).willReturn(CONTENT);
+        given(delegate.renderMail(otherMail)).willReturn(OTHER_CONTENT);
+
+        // when
+        String result = cachingMailRenderer.renderMail(mail);
+        String otherResult = cachingMailRenderer.renderMail(otherMail);
+
+        // then
+        assertThat(result, equalTo(CONTENT));
+        assertThat(otherResult, equalTo(OTHER_CONTENT));
+        assertThat(renderedMailCache.getMissCount(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldNotCacheTemplatesNotOptedIn() {
+
+        // given
+        RenderedMailCache renderedMailCache = prepareCache(CACHED_TEMPLATE);
+        CachingMailRenderer cachingMailRenderer = new CachingMailRenderer(delegate, renderedMailCache);
+        Mail mail = prepareMail(OTHER_TEMPLATE, "value");
+        given(delegate.renderMail(mail)).willReturn(CONTENT);
+
+        // when
+        cachingMailRenderer.renderMail(mail);
+        cachingMailRenderer.renderMail(mail);
+
+        // then
+        verify(delegate, times(2)).renderMail(mail);
+        assertThat(renderedMailCache.getSize(), equalTo(0));
+    }
+
+    @Test
+    public void shouldNotReturnCachedContentAfterContentMapChanged() {
+
+        // given
+        RenderedMailCache renderedMailCache = prepareCache("*");
+        CachingMailRenderer cachingMailRenderer = new CachingMailRenderer(delegate, renderedMailCache);
+        Mail mail = prepareMail(CACHED_TEMPLATE, "value");
+        given(delegate.renderMail(mail)).willReturn(CONTENT, OTHER_CONTENT);
+        cachingMailRenderer.renderMail(mail);
+
+        // when
+        mail.getContentMap().put("key", "changed value");
+        String result = cachingMailRenderer.renderMail(mail);
+
+        // then
+        assertThat(result, equalTo(OTHER_CONTENT));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntryWhenMaxWeightExceeded() {
+
+        // given
+        RenderedMailCache renderedMailCache = prepareCache(CACHED_TEMPLATE);
+        CachingMailRenderer cachingMailRenderer = new CachingMailRenderer(delegate, renderedMailCache);
+        Mail firstMail = prepareMail(CACHED_TEMPLATE, "first");
+        Mail secondMail = prepareMail(CACHED_TEMPLATE, "second");
+        Mail thirdMail = prepareMail(CACHED_TEMPLATE, "third");
+        given(delegate.renderMail(firstMail)).willReturn(CONTENT);
+        given(delegate.renderMail(secondMail)).willReturn(OTHER_CONTENT);
+        given(delegate.renderMail(thirdMail)).willReturn(OTHER_CONTENT);
+        cachingMailRenderer.renderMail(firstMail);
+        cachingMailRenderer.renderMail(secondMail);
+        cachingMailRenderer.renderMail(firstMail);
+
+        // when
+        cachingMailRenderer.renderMail(thirdMail);
+
+        // then
+        assertThat(renderedMailCache.getEvictionCount(), equalTo(1L));
+        assertThat(renderedMailCache.getWeight(), equalTo(MAX_WEIGHT));
+        cachingMailRenderer.renderMail(firstMail);
+        assertThat(renderedMailCache.getHitCount(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldInvalidateEntriesOfTemplate() {
+
+        // given
+        RenderedMailCache renderedMailCache = prepareCache(CACHED_TEMPLATE);
+        CachingMailRenderer cachingMailRenderer = new CachingMailRenderer(delegate, renderedMailCache);
+        Mail mail = prepareMail(CACHED_TEMPLATE, "value");
+        given(delegate.renderMail(mail)).willReturn(CONTENT);
+        cachingMailRenderer.renderMail(mail);
+
+        // when
+        renderedMailCache.invalidate(CACHED_TEMPLATE);
+
+        // then
+        assertThat(renderedMailCache.getSize(), equalTo(0));
+        assertThat(renderedMailCache.getWeight(), equalTo(0L));
+    }
+
+    private RenderedMailCache prepareCache(String templates) {
+        return new RenderedMailCache(new RenderCacheConfigurationProperties(true, templates, MAX_WEIGHT));
+    }
+
+    private Mail prepareMail(String template, String value) {
+
+        Map<String, Object> contentMap = new HashMap<>();
+        contentMap.put("key", value);
+
+        return Mail.getBuilder()
+                .withTemplate(template)
+                .withContentMap(contentMap)
+                .build();
+    }
+}
@@ -0,0 +1,75 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link LruCache}.
+ *
+ * @author Peter Smith
+ */
+public class LruCacheTest {
+
+    private static final String KEY_1 = "key-1";
+    private static final String KEY_2 = "key-2";
+    private static final String KEY_3 = "key-3";
+    private static final String VALUE_1 = "value-1";
+    private static final String VALUE_2 = "value-2";
+    private static final String VALUE_3 = "value-3";
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntryOnOverflow() {
+
+        // given
+        LruCache<String, String> cache = new LruCache<>(2, null);
+        cache.put(KEY_1, VALUE_1);
+        cache.put(KEY_2, VALUE_2);
+        cache.get(KEY_1);
+
+        // when
+        cache.put(KEY_3, VALUE_3);
+
+        // then
+        assertThat(cache.get(KEY_1), equalTo(VALUE_1));
+        assertThat(cache.get(KEY_2), nullValue());
+        assertThat(cache.get(KEY_3), equalTo(VALUE_3));
+        assertThat(cache.keySet(), equalTo(Set.of(KEY_1, KEY_3)));
+    }
+
+    @Test
+    public void shouldEvictInvalidEntryOnRetrieval() {
+
+        // given
+        LruCache<String, String> cache = new LruCache<>(2, (key, value, creationTimestamp) -> !KEY_1.equals(key));
+        cache.put(KEY_1, VALUE_1);
+        cache.put(KEY_2, VALUE_2);
+
+        // when
+        String result = cache.get(KEY_1);
+
+        // then
+        assertThat(result, nullValue());
+        assertThat(cache.get(KEY_2), equalTo(VALUE_2));
+        assertThat(cache.keySet(), equalTo(Set.of(KEY_2)));
+    }
+
+    @Test
+    public void shouldClearSingleKey() {
+
+        // given
+        LruCache<String, String> cache = new LruCache<>(2, null);
+        cache.put(KEY_1, VALUE_1);
+        cache.put(KEY_2, VALUE_2);
+
+        // when
+        cache.clearKey(KEY_1);
+
+        // then
+        assertThat(cache.keySet(), equalTo(Set.of(KEY_2)));
+    }
+}
@@ -0,0 +1,95 @@
+package hu.psprog.leaflet.mail.client.renderer.impl;
+
+import hu.psprog.leaflet.mail.config.BulkRenderingConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RenderCacheConfigurationProperties;
+import hu.psprog.leaflet.mail.config.TemplateConfigurationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.thymeleaf.TemplateEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Unit tests for {@link TemplateChangeWatcher}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class TemplateChangeWatcherTest {
+
+    private static final long VERIFICATION_TIMEOUT = 10000L;
+    private static final String TEMPLATE_CONTENT = "<p>changed</p>";
+
+    @Mock
+    private TemplateEngine templateEngine;
+
+    @TempDir
+    Path templateDirectory;
+
+    private TemplateChangeWatcher templateChangeWatcher;
+
+    private final RenderedMailCache renderedMailCache = new RenderedMailCache(new RenderCacheConfigurationProperties(false, "", 0L));
+    private final BulkRenderingPlanCache bulkRenderingPlanCache = new BulkRenderingPlanCache(new BulkRenderingConfigurationProperties(false, 1));
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        templateChangeWatcher.stop();
+    }
+
+    @Test
+    public void shouldInvalidateChangedTemplate() throws IOException {
+
+        // given
+        templateChangeWatcher = new TemplateChangeWatcher(templateEngine, prepareConfiguration(true), renderedMailCache, bulkRenderingPlanCache);
+        templateChangeWatcher.start();
+
+        // when
+        Files.writeString(templateDirectory.resolve("notification.html"), TEMPLATE_CONTENT);
+
+        // then
+        verify(templateEngine, timeout(VERIFICATION_TIMEOUT).atLeastOnce()).clearTemplateCacheFor("notification");
+    }
+
+    @Test
+    public void shouldInvalidateChangedTemplateInSubdirectory() throws IOException {
+
+        // given
+        Files.createDirectory(templateDirectory.resolve("admin"));
+        templateChangeWatcher = new TemplateChangeWatcher(templateEngine, prepareConfiguration(true), renderedMailCache, bulkRenderingPlanCache);
+        templateChangeWatcher.start();
+
+        // when
+        Files.writeString(templateDirectory.resolve("admin").resolve("notification.html"), TEMPLATE_CONTENT);
+
+        // then
+        verify(templateEngine, timeout(VERIFICATION_TIMEOUT).atLeastOnce()).clearTemplateCacheFor("admin/notification");
+    }
+
+    @Test
+    public void shouldNotWatchIfCachingIsDisabled() throws IOException {
+
+        // given
+        templateChangeWatcher = new TemplateChangeWatcher(templateEngine, prepareConfiguration(false), renderedMailCache, bulkRenderingPlanCache);
+        templateChangeWatcher.start();
+
+        // when
+        Files.writeString(templateDirectory.resolve("notification.html"), TEMPLATE_CONTENT);
+
+        // then
+        verifyNoInteractions(templateEngine);
+    }
+
+    private TemplateConfigurationProperties prepareConfiguration(boolean cacheEnabled) {
+        return new TemplateConfigurationProperties(cacheEnabled, 10, 0L, templateDirectory.toString(), true);
+    }
+}
@@ -0,0 +1,119 @@
+package hu.psprog.leaflet.mail.client.resilience;
+
+import hu.psprog.leaflet.mail.config.CircuitBreakerConfigurationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link CircuitBreaker}.
+ *
+ * @author Peter Smith
+ */
+public class CircuitBreakerTest {
+
+    private static final int FAILURE_THRESHOLD = 2;
+    private static final long OPEN_DURATION = 1000L;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    public void setup() {
+        circuitBreaker = new CircuitBreaker(new CircuitBreakerConfigurationProperties(true, FAILURE_THRESHOLD, OPEN_DURATION), clock::get);
+    }
+
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() {
+
+        // given
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+
+        // when
+        circuitBreaker.onFailure();
+
+        // then
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreakerState.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+    }
+
+    @Test
+    public void shouldLetSingleTrialThroughAfterOpenDurationAndCloseOnSuccess() {
+
+        // given
+        openCircuit();
+        clock.addAndGet(OPEN_DURATION);
+
+        // when
+        boolean trialPermitted = circuitBreaker.tryAcquirePermission();
+        boolean concurrentPermitted = circuitBreaker.tryAcquirePermission();
+        circuitBreaker.onSuccess();
+
+        // then
+        assertThat(trialPermitted, is(true));
+        assertThat(concurrentPermitted, is(false));
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreakerState.CLOSED));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+    }
+
+    @Test
+    public void shouldReopenOnFailedTrial() {
+
+        // given
+        openCircuit();
+        clock.addAndGet(OPEN_DURATION);
+        circuitBreaker.tryAcquirePermission();
+
+        // when
+        circuitBreaker.onFailure();
+
+        // then
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreakerState.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+    }
+
+    @Test
+    public void shouldReleaseTrialPermissionOnIgnoredOutcome() {
+
+        // given
+        openCircuit();
+        clock.addAndGet(OPEN_DURATION);
+        circuitBreaker.tryAcquirePermission();
+
+        // when
+        circuitBreaker.onIgnored();
+
+        // then
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreakerState.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+    }
+
+    @Test
+    public void shouldAlwaysPermitIfDisabled() {
+
+        // given
+        circuitBreaker = new CircuitBreaker(new CircuitBreakerConfigurationProperties(false, FAILURE_THRESHOLD, OPEN_DURATION), clock::get);
+        openCircuit();
+
+        // when
+        boolean result = circuitBreaker.tryAcquirePermission();
+
+        // then
+        assertThat(result, is(true));
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreakerState.CLOSED));
+    }
+
+    private void openCircuit() {
+        for (int failure = 0; failure < FAILURE_THRESHOLD; failure++) {
+            circuitBreaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package hu.psprog.leaflet.mail.client.resilience;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import hu.psprog.leaflet.mail.config.RetryConfigurationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.mail.MailSendException;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Unit tests for {@link RetryPolicy}.
+ *
+ * @author Peter Smith
+ */
+public class RetryPolicyTest {
+
+    private static final long INITIAL_BACKOFF = 100L;
+    private static final long MAX_BACKOFF = 1000L;
+    private static final long TRANSIENT_REPLY_DELAY = 5000L;
+
+    private RetryPolicy retryPolicy;
+
+    @BeforeEach
+    public void setup() {
+        retryPolicy = new RetryPolicy(new RetryConfigurationProperties(3, INITIAL_BACKOFF, MAX_BACKOFF, 2.0, 0.5, TRANSIENT_REPLY_DELAY));
+    }
+
+    @ParameterizedTest
+    @MethodSource("failureDataProvider")
+    public void shouldClassifyFailures(Exception failure, boolean expectedRetryable, boolean expectedServerFailure) {
+
+        // when
+        boolean retryable = retryPolicy.isRetryable(failure);
+        boolean serverFailure = retryPolicy.isServerFailure(failure);
+
+        // then
+        assertThat(retryable, is(expectedRetryable));
+        assertThat(serverFailure, is(expectedServerFailure));
+    }
+
+    @Test
+    public void shouldCalculateExponentialBackoffWithJitter() {
+
+        // when
+        long firstDelay = retryPolicy.getBackoffDelay(1, new MessagingException());
+        long thirdDelay = retryPolicy.getBackoffDelay(3, new MessagingException());
+        long cappedDelay = retryPolicy.getBackoffDelay(10, new MessagingException());
+
+        // then
+        assertThat(firstDelay, allOf(greaterThanOrEqualTo(INITIAL_BACKOFF / 2), lessThanOrEqualTo(INITIAL_BACKOFF)));
+        assertThat(thirdDelay, allOf(greaterThanOrEqualTo(INITIAL_BACKOFF * 2), lessThanOrEqualTo(INITIAL_BACKOFF * 4)));
+        assertThat(cappedDelay, allOf(greaterThanOrEqualTo(MAX_BACKOFF / 2), lessThanOrEqualTo(MAX_BACKOFF)));
+    }
+
+    @Test
+    public void shouldRespectTransientReplyDelay() {
+
+        // when
+        long result = retryPolicy.getBackoffDelay(1, prepareSendFailure(421));
+
+        // then
+        assertThat(result, equalTo(TRANSIENT_REPLY_DELAY));
+    }
+
+    private static Stream<Arguments> failureDataProvider() {
+        return Stream.of(
+                Arguments.of(new MessagingException("Connection reset"), true, true),
+                Arguments.of(new MailSendException("Connection failed", new MessagingException()), true, true),
+                Arguments.of(prepareSendFailure(451), true, true),
+                Arguments.of(prepareSendFailure(554), false, false),
+                Arguments.of(new MailSendException(Collections.singletonMap(new Object(), prepareSendFailure(452))), true, true),
+                Arguments.of(new SendFailedException("Invalid Addresses", prepareAddressFailure(450)), true, true),
+                Arguments.of(new SendFailedException("Invalid Addresses", prepareAddressFailure(550)), false, false),
+                Arguments.of(new SendFailedException(), false, false),
+                Arguments.of(new IllegalStateException(), true, false),
+                Arguments.of(new CircuitBreakerOpenException(), false, false)
+        );
+    }
+
+    private static SMTPSendFailedException prepareSendFailure(int returnCode) {
+        return new SMTPSendFailedException("DATA", returnCode, "failure", null, null, null, null);
+    }
+
+    private static SMTPAddressFailedException prepareAddressFailure(int returnCode) {
+        return new SMTPAddressFailedException(prepareAddress(), "RCPT TO", returnCode, "failure");
+    }
+
+    private static InternetAddress prepareAddress() {
+        try {
+            return new InternetAddress("recipient@dev.local");
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
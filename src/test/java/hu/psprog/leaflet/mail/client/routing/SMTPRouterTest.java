@@ -0,0 +1,357 @@
+package hu.psprog.leaflet.mail.client.routing;
+
+import hu.psprog.leaflet.mail.client.metrics.MailMetrics;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitExceededException;
+import hu.psprog.leaflet.mail.client.ratelimit.RateLimitMode;
+import hu.psprog.leaflet.mail.client.ratelimit.SMTPRateLimiter;
+import hu.psprog.leaflet.mail.client.transport.AsyncJavaMailSender;
+import hu.psprog.leaflet.mail.config.RateLimitConfigurationProperties;
+import hu.psprog.leaflet.mail.config.SMTPRoutingConfigurationProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link SMTPRouter}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class SMTPRouterTest {
+
+    private static final int FAILURE_THRESHOLD = 1;
+    private static final long RECOVERY_INTERVAL = 1000L;
+
+    @Mock
+    private JavaMailSender primaryJavaMailSender;
+
+    @Mock
+    private JavaMailSender secondaryJavaMailSender;
+
+    @Mock
+    private AsyncJavaMailSender primaryAsyncJavaMailSender;
+
+    @Mock
+    private AsyncJavaMailSender secondaryAsyncJavaMailSender;
+
+    @Mock
+    private MimeMessage mimeMessage;
+
+    @Mock
+    private MimeMessage otherMimeMessage;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void shouldPreferEndpointWithLessOutstandingSendsRelativeToWeight() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 3, primaryJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, primaryEndpoint, secondaryEndpoint);
+        primaryEndpoint.onSendStarted();
+        primaryEndpoint.onSendStarted();
+
+        // when
+        SMTPEndpoint result = smtpRouter.selectEndpoint(Collections.emptySet());
+
+        // then
+        assertThat(result, sameInstance(primaryEndpoint));
+    }
+
+    @Test
+    public void shouldPreferEndpointWithLowerLatency() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LATENCY, primaryEndpoint, secondaryEndpoint);
+        recordSend(primaryEndpoint, 50_000_000L);
+        recordSend(secondaryEndpoint, 5_000_000L);
+
+        // when
+        SMTPEndpoint result = smtpRouter.selectEndpoint(Collections.emptySet());
+
+        // then
+        assertThat(result, sameInstance(secondaryEndpoint));
+    }
+
+    @Test
+    public void shouldFailOverOnConnectionFailureAndAvoidUnhealthyEndpoint() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, primaryEndpoint, secondaryEndpoint);
+        doThrow(prepareConnectionFailure()).when(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+
+        // when
+        SMTPRoutingResult result = smtpRouter.send(mimeMessage);
+
+        // then
+        assertThat(result.getSMTPEndpoint(mimeMessage), equalTo("secondary:25"));
+        assertThat(primaryEndpoint.isHealthy(clock.get()), is(false));
+        assertThat(primaryEndpoint.isHealthy(clock.get() + RECOVERY_INTERVAL), is(true));
+        assertThat(primaryEndpoint.getOutstandingSends(), equalTo(0));
+        assertThat(smtpRouter.selectEndpoint(Collections.emptySet()), sameInstance(secondaryEndpoint));
+        verify(secondaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+    }
+
+    @Test
+    public void shouldNotFailOverIfMessageHasBeenHandedOver() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, primaryEndpoint, secondaryEndpoint);
+        SendFailedException failure = new SendFailedException();
+        doThrow(new MailSendException(Collections.singletonMap(mimeMessage, failure))).when(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+
+        // when
+        RoutedMailSendException result = assertThrows(RoutedMailSendException.class, () -> smtpRouter.send(mimeMessage));
+
+        // then
+        assertThat(result.getFailedMessages().get(mimeMessage), sameInstance(failure));
+        assertThat(result.getRoutingResult().getSMTPEndpoint(mimeMessage), equalTo("primary:25"));
+        assertThat(primaryEndpoint.getOutstandingSends() + secondaryEndpoint.getOutstandingSends(), equalTo(0));
+        assertThat(primaryEndpoint.isHealthy(clock.get()), is(true));
+        verify(secondaryJavaMailSender, never()).send(new MimeMessage[] {mimeMessage});
+    }
+
+    @Test
+    public void shouldThrowLastFailureIfAllEndpointsFailed() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, primaryEndpoint);
+        MailSendException failure = prepareConnectionFailure();
+        doThrow(failure).when(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> smtpRouter.send(mimeMessage));
+
+        // then
+        assertThat(result, sameInstance(failure));
+        verify(secondaryJavaMailSender, never()).send(new MimeMessage[] {mimeMessage});
+    }
+
+    @Test
+    public void shouldFailOverToNextEndpointIfRateLimitIsExceeded() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, prepareRateLimiter("primary:25=1/1"),
+                primaryEndpoint, secondaryEndpoint);
+
+        // when
+        SMTPRoutingResult result = smtpRouter.send(mimeMessage, otherMimeMessage);
+
+        // then
+        assertThat(result.getSMTPEndpoint(mimeMessage), equalTo("primary:25"));
+        assertThat(result.getSMTPEndpoint(otherMimeMessage), equalTo("secondary:25"));
+        verify(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+        verify(secondaryJavaMailSender).send(new MimeMessage[] {otherMimeMessage});
+    }
+
+    @Test
+    public void shouldSendBatchExceedingRateLimitCapacityInChunks() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING,
+                prepareRateLimiter(RateLimitMode.DELAY, 1L, "primary:25=1000/1"), primaryEndpoint);
+
+        // when
+        SMTPRoutingResult result = smtpRouter.send(mimeMessage, otherMimeMessage, mimeMessage);
+
+        // then
+        assertThat(result.getSMTPEndpoint(mimeMessage), equalTo("primary:25"));
+        assertThat(result.getSMTPEndpoint(otherMimeMessage), equalTo("primary:25"));
+        verify(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage, otherMimeMessage});
+        verify(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+    }
+
+    @Test
+    public void shouldFailRemainingMessagesIfRateLimitIsExceededAfterFirstChunk() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, prepareRateLimiter("primary:25=1/1"), primaryEndpoint);
+
+        // when
+        RoutedMailSendException result = assertThrows(RoutedMailSendException.class, () -> smtpRouter.send(mimeMessage, otherMimeMessage));
+
+        // then
+        assertThat(result.getRoutingResult().getSMTPEndpoint(mimeMessage), equalTo("primary:25"));
+        assertThat(result.getRoutingResult().getSMTPEndpoint(otherMimeMessage), nullValue());
+        assertThat(result.getFailedMessages().size(), equalTo(1));
+        assertThat(result.getFailedMessages().get(otherMimeMessage), instanceOf(RateLimitExceededException.class));
+        verify(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+        verify(primaryJavaMailSender, never()).send(new MimeMessage[] {otherMimeMessage});
+    }
+
+    @Test
+    public void shouldReleaseRateLimitPermitsOnConnectionFailure() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryJavaMailSender, false);
+        SMTPRateLimiter smtpRateLimiter = prepareRateLimiter("primary:25=1/1");
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, smtpRateLimiter, primaryEndpoint, secondaryEndpoint);
+        doThrow(prepareConnectionFailure()).when(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+
+        // when
+        SMTPRoutingResult result = smtpRouter.send(mimeMessage);
+
+        // then
+        assertThat(result.getSMTPEndpoint(mimeMessage), equalTo("secondary:25"));
+        assertThat(smtpRateLimiter.isRelayAvailable("primary:25"), is(true));
+    }
+
+    @Test
+    public void shouldThrowRateLimitExceededExceptionIfAllEndpointsAreThrottled() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, prepareRateLimiter("primary:25=1/1"), primaryEndpoint);
+        smtpRouter.send(mimeMessage);
+
+        // when
+        assertThrows(RateLimitExceededException.class, () -> smtpRouter.send(mimeMessage));
+
+        // then
+        verify(primaryJavaMailSender).send(new MimeMessage[] {mimeMessage});
+    }
+
+    @Test
+    public void shouldFailOverAsynchronouslyOnConnectionFailure() throws Exception {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryAsyncJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryAsyncJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, primaryEndpoint, secondaryEndpoint);
+        given(primaryAsyncJavaMailSender.sendAsync(mimeMessage)).willReturn(CompletableFuture.failedFuture(prepareConnectionFailure()));
+        given(secondaryAsyncJavaMailSender.sendAsync(mimeMessage)).willReturn(CompletableFuture.completedFuture(null));
+
+        // when
+        SMTPRoutingResult result = smtpRouter.sendAsync(mimeMessage).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(smtpRouter.isAsyncSendSupported(), is(true));
+        assertThat(result.getSMTPEndpoint(mimeMessage), equalTo("secondary:25"));
+        assertThat(primaryEndpoint.isHealthy(clock.get()), is(false));
+        assertThat(primaryEndpoint.getOutstandingSends() + secondaryEndpoint.getOutstandingSends(), equalTo(0));
+    }
+
+    @Test
+    public void shouldSendBatchExceedingRateLimitCapacityInChunksAsynchronously() throws Exception {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryAsyncJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING,
+                prepareRateLimiter(RateLimitMode.DELAY, 1L, "primary:25=1000/1"), primaryEndpoint);
+        given(primaryAsyncJavaMailSender.sendAsync(any())).willReturn(CompletableFuture.completedFuture(null));
+
+        // when
+        SMTPRoutingResult result = smtpRouter.sendAsync(mimeMessage, otherMimeMessage, mimeMessage).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(result.getSMTPEndpoint(mimeMessage), equalTo("primary:25"));
+        assertThat(result.getSMTPEndpoint(otherMimeMessage), equalTo("primary:25"));
+        verify(primaryAsyncJavaMailSender).sendAsync(new MimeMessage[] {mimeMessage, otherMimeMessage});
+        verify(primaryAsyncJavaMailSender).sendAsync(new MimeMessage[] {mimeMessage});
+    }
+
+    @Test
+    public void shouldFailAsynchronousSendWithFailedMessagesAndRoutingResult() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryAsyncJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, primaryEndpoint);
+        SendFailedException failure = new SendFailedException();
+        given(primaryAsyncJavaMailSender.sendAsync(mimeMessage))
+                .willReturn(CompletableFuture.failedFuture(new MailSendException(Collections.singletonMap(mimeMessage, failure))));
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> smtpRouter.sendAsync(mimeMessage).get(5, TimeUnit.SECONDS));
+
+        // then
+        assertThat(result.getCause(), instanceOf(RoutedMailSendException.class));
+        RoutedMailSendException routedMailSendException = (RoutedMailSendException) result.getCause();
+        assertThat(routedMailSendException.getFailedMessages().get(mimeMessage), sameInstance(failure));
+        assertThat(routedMailSendException.getRoutingResult().getSMTPEndpoint(mimeMessage), equalTo("primary:25"));
+    }
+
+    @Test
+    public void shouldNotSupportAsynchronousSendIfAnyEndpointSendsSynchronously() {
+
+        // given
+        SMTPEndpoint primaryEndpoint = new SMTPEndpoint("primary", 25, 1, primaryAsyncJavaMailSender, false);
+        SMTPEndpoint secondaryEndpoint = new SMTPEndpoint("secondary", 25, 1, secondaryJavaMailSender, false);
+        SMTPRouter smtpRouter = prepareRouter(RoutingStrategy.LEAST_OUTSTANDING, primaryEndpoint, secondaryEndpoint);
+
+        // when
+        CompletableFuture<SMTPRoutingResult> result = smtpRouter.sendAsync(mimeMessage);
+
+        // then
+        assertThat(smtpRouter.isAsyncSendSupported(), is(false));
+        ExecutionException failure = assertThrows(ExecutionException.class, result::get);
+        assertThat(failure.getCause(), instanceOf(UnsupportedOperationException.class));
+        verify(primaryAsyncJavaMailSender, never()).sendAsync(any());
+    }
+
+    private SMTPRouter prepareRouter(RoutingStrategy routingStrategy, SMTPEndpoint... endpoints) {
+        return prepareRouter(routingStrategy, prepareRateLimiter(""), endpoints);
+    }
+
+    private SMTPRouter prepareRouter(RoutingStrategy routingStrategy, SMTPRateLimiter smtpRateLimiter, SMTPEndpoint... endpoints) {
+        return new SMTPRouter(Arrays.asList(endpoints),
+                new SMTPRoutingConfigurationProperties("", routingStrategy, FAILURE_THRESHOLD, RECOVERY_INTERVAL), smtpRateLimiter, clock::get);
+    }
+
+    private SMTPRateLimiter prepareRateLimiter(String relayLimits) {
+        return prepareRateLimiter(RateLimitMode.REJECT, 0L, relayLimits);
+    }
+
+    private SMTPRateLimiter prepareRateLimiter(RateLimitMode mode, long maxDelay, String relayLimits) {
+        return new SMTPRateLimiter(new RateLimitConfigurationProperties(true, mode, maxDelay, 0.0, 1, relayLimits, 0.0, 1, "", 1),
+                new MailMetrics(Collections.emptyList()));
+    }
+
+    private MailSendException prepareConnectionFailure() {
+        return new MailSendException("Mail server connection failed", new MessagingException("Connection refused"),
+                Collections.singletonMap(mimeMessage, new MessagingException("Connection refused")));
+    }
+
+    private void recordSend(SMTPEndpoint endpoint, long latency) {
+        endpoint.onSendStarted();
+        endpoint.onSendCompleted(latency);
+    }
+}
@@ -0,0 +1,115 @@
+package hu.psprog.leaflet.mail.client.transport;
+
+import hu.psprog.leaflet.mail.config.SMTPConfigurationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link PooledJavaMailSender}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class PooledJavaMailSenderTest {
+
+    @Mock
+    private SMTPConfigurationProperties smtpConfigurationProperties;
+
+    @Mock
+    private Transport transport;
+
+    @Mock
+    private Transport otherTransport;
+
+    private PooledJavaMailSender pooledJavaMailSender;
+
+    @BeforeEach
+    public void setup() {
+        lenient().when(smtpConfigurationProperties.getPoolMinIdle()).thenReturn(0);
+        lenient().when(smtpConfigurationProperties.getPoolMaxIdle()).thenReturn(2);
+        lenient().when(smtpConfigurationProperties.getPoolMaxActive()).thenReturn(2);
+        lenient().when(smtpConfigurationProperties.getPoolMaxWait()).thenReturn(10L);
+        lenient().when(smtpConfigurationProperties.getPoolMaxMessagesPerConnection()).thenReturn(2);
+        lenient().when(smtpConfigurationProperties.getPoolIdleTimeout()).thenReturn(60000L);
+        lenient().when(smtpConfigurationProperties.getPoolKeepAliveInterval()).thenReturn(30000L);
+        // background pool maintenance closes idle transports considered disconnected
+        lenient().when(transport.isConnected()).thenReturn(true);
+        lenient().when(otherTransport.isConnected()).thenReturn(true);
+
+        Iterator<Transport> transports = Arrays.asList(transport, otherTransport).iterator();
+        pooledJavaMailSender = new PooledJavaMailSender(smtpConfigurationProperties) {
+            @Override
+            protected Transport connectTransport() {
+                return transports.next();
+            }
+        };
+        pooledJavaMailSender.initialize();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pooledJavaMailSender.shutdown();
+    }
+
+    @Test
+    public void shouldSwitchTransportWithinBatchOnReachingMaxMessagesLimit() throws MessagingException {
+
+        // given
+        MimeMessage firstMessage = prepareMessage();
+        MimeMessage secondMessage = prepareMessage();
+        MimeMessage thirdMessage = prepareMessage();
+
+        // when
+        pooledJavaMailSender.send(firstMessage, secondMessage, thirdMessage);
+
+        // then
+        verify(transport).sendMessage(firstMessage, firstMessage.getAllRecipients());
+        verify(transport).sendMessage(secondMessage, secondMessage.getAllRecipients());
+        verify(transport).close();
+        verify(otherTransport).sendMessage(thirdMessage, thirdMessage.getAllRecipients());
+        verify(otherTransport, never()).close();
+    }
+
+    @Test
+    public void shouldKeepTransportBelowMaxMessagesLimitForNextBatch() throws MessagingException {
+
+        // given
+        MimeMessage mimeMessage = prepareMessage();
+
+        // when
+        pooledJavaMailSender.send(mimeMessage);
+
+        // then
+        verify(transport, times(1)).sendMessage(any(Message.class), any(Address[].class));
+        verify(transport, never()).close();
+    }
+
+    private MimeMessage prepareMessage() throws MessagingException {
+
+        MimeMessage mimeMessage = pooledJavaMailSender.createMimeMessage();
+        mimeMessage.setFrom(new InternetAddress("sender@dev.local"));
+        mimeMessage.setRecipient(Message.RecipientType.TO, new InternetAddress("recipient@dev.local"));
+        mimeMessage.setText("Hello");
+
+        return mimeMessage;
+    }
+}
@@ -0,0 +1,231 @@
+package hu.psprog.leaflet.mail.client.transport;
+
+import hu.psprog.leaflet.mail.config.SMTPConfigurationProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link SMTPTransportPool}.
+ *
+ * @author Peter Smith
+ */
+@ExtendWith(MockitoExtension.class)
+public class SMTPTransportPoolTest {
+
+    @Mock
+    private SMTPTransportPool.TransportFactory transportFactory;
+
+    @Mock
+    private SMTPConfigurationProperties smtpConfigurationProperties;
+
+    @Mock
+    private Transport transport;
+
+    @Mock
+    private Transport otherTransport;
+
+    private SMTPTransportPool transportPool;
+
+    @BeforeEach
+    public void setup() {
+        lenient().when(smtpConfigurationProperties.getPoolMinIdle()).thenReturn(0);
+        lenient().when(smtpConfigurationProperties.getPoolMaxIdle()).thenReturn(2);
+        lenient().when(smtpConfigurationProperties.getPoolMaxActive()).thenReturn(2);
+        lenient().when(smtpConfigurationProperties.getPoolMaxWait()).thenReturn(10L);
+        lenient().when(smtpConfigurationProperties.getPoolMaxMessagesPerConnection()).thenReturn(2);
+        lenient().when(smtpConfigurationProperties.getPoolIdleTimeout()).thenReturn(60000L);
+        lenient().when(smtpConfigurationProperties.getPoolKeepAliveInterval()).thenReturn(30000L);
+        transportPool = new SMTPTransportPool(transportFactory, smtpConfigurationProperties);
+    }
+
+    @Test
+    public void shouldOpenNewTransportIfNoIdleTransportIsAvailable() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport);
+
+        // when
+        PooledTransport result = transportPool.borrow();
+
+        // then
+        assertThat(result.getTransport(), sameInstance(transport));
+        assertThat(transportPool.getActiveCount(), equalTo(1));
+        verify(transportFactory).createTransport();
+    }
+
+    @Test
+    public void shouldReuseReleasedTransport() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport);
+        PooledTransport borrowed = transportPool.borrow();
+        borrowed.recordMessageSent();
+
+        // when
+        transportPool.release(borrowed, true);
+        PooledTransport result = transportPool.borrow();
+
+        // then
+        assertThat(result, sameInstance(borrowed));
+        verify(transportFactory).createTransport();
+        verify(transport, never()).close();
+    }
+
+    @Test
+    public void shouldCloseTransportReachingMaxMessagesLimit() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport);
+        PooledTransport borrowed = transportPool.borrow();
+        borrowed.recordMessageSent();
+        borrowed.recordMessageSent();
+
+        // when
+        transportPool.release(borrowed, true);
+
+        // then
+        assertThat(transportPool.getIdleCount(), equalTo(0));
+        assertThat(transportPool.getActiveCount(), equalTo(0));
+        verify(transport).close();
+    }
+
+    @Test
+    public void shouldCloseNonReusableTransport() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport);
+        PooledTransport borrowed = transportPool.borrow();
+
+        // when
+        transportPool.release(borrowed, false);
+
+        // then
+        assertThat(transportPool.getIdleCount(), equalTo(0));
+        verify(transport).close();
+    }
+
+    @Test
+    public void shouldFailIfPoolIsExhausted() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport, otherTransport);
+        transportPool.borrow();
+        transportPool.borrow();
+
+        // when
+        Assertions.assertThrows(MessagingException.class, () -> transportPool.borrow());
+
+        // then
+        // expected exception
+    }
+
+    @Test
+    public void shouldReleasePermitIfConnectionFails() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willThrow(MessagingException.class);
+
+        // when
+        Assertions.assertThrows(MessagingException.class, () -> transportPool.borrow());
+
+        // then
+        assertThat(transportPool.getActiveCount(), equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepIdleTransportAliveOnMaintenance() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport);
+        given(transport.isConnected()).willReturn(true);
+        transportPool.release(transportPool.borrow(), true);
+
+        // when
+        transportPool.maintain();
+
+        // then
+        assertThat(transportPool.getIdleCount(), equalTo(1));
+        verify(transport).isConnected();
+        verify(transport, never()).close();
+    }
+
+    @Test
+    public void shouldCloseDeadIdleTransportOnMaintenance() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport);
+        given(transport.isConnected()).willReturn(false);
+        transportPool.release(transportPool.borrow(), true);
+
+        // when
+        transportPool.maintain();
+
+        // then
+        assertThat(transportPool.getIdleCount(), equalTo(0));
+        verify(transport).close();
+    }
+
+    @Test
+    public void shouldEvictTransportIdleForTooLongOnMaintenance() throws MessagingException {
+
+        // given
+        given(smtpConfigurationProperties.getPoolIdleTimeout()).willReturn(0L);
+        given(transportFactory.createTransport()).willReturn(transport);
+        transportPool.release(transportPool.borrow(), true);
+
+        // when
+        transportPool.maintain();
+
+        // then
+        assertThat(transportPool.getIdleCount(), equalTo(0));
+        verify(transport, never()).isConnected();
+        verify(transport).close();
+    }
+
+    @Test
+    public void shouldOpenTransportsUpToMinIdleOnMaintenance() throws MessagingException {
+
+        // given
+        given(smtpConfigurationProperties.getPoolMinIdle()).willReturn(2);
+        given(transportFactory.createTransport()).willReturn(transport, otherTransport);
+
+        // when
+        transportPool.maintain();
+
+        // then
+        assertThat(transportPool.getIdleCount(), equalTo(2));
+        verify(transportFactory, times(2)).createTransport();
+    }
+
+    @Test
+    public void shouldCloseIdleTransportsOnShutdown() throws MessagingException {
+
+        // given
+        given(transportFactory.createTransport()).willReturn(transport);
+        transportPool.release(transportPool.borrow(), true);
+
+        // when
+        transportPool.shutdown();
+
+        // then
+        assertThat(transportPool.getIdleCount(), equalTo(0));
+        verify(transport).close();
+        Assertions.assertThrows(MessagingException.class, () -> transportPool.borrow());
+    }
+}
@@ -0,0 +1,58 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for {@link DotStuffingOutputStream}.
+ *
+ * @author Peter Smith
+ */
+public class DotStuffingOutputStreamTest {
+
+    @Test
+    public void shouldEscapeLeadingDotsAndTerminateContent() throws IOException {
+
+        // when
+        String result = encode(".first line\r\nsecond. line\r\n.\r\n..last line");
+
+        // then
+        assertThat(result, equalTo("..first line\r\nsecond. line\r\n..\r\n...last line\r\n.\r\n"));
+    }
+
+    @Test
+    public void shouldNormalizeBareLineEndings() throws IOException {
+
+        // when
+        String result = encode("first line\nsecond line\r.third line\r\n");
+
+        // then
+        assertThat(result, equalTo("first line\r\nsecond line\r\n..third line\r\n.\r\n"));
+    }
+
+    @Test
+    public void shouldTerminateEmptyContent() throws IOException {
+
+        // when
+        String result = encode("");
+
+        // then
+        assertThat(result, equalTo(".\r\n"));
+    }
+
+    private String encode(String content) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (DotStuffingOutputStream dotStuffingOutputStream = new DotStuffingOutputStream(outputStream)) {
+            dotStuffingOutputStream.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        return new String(outputStream.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
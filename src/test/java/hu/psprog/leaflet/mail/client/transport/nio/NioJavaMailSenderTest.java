@@ -0,0 +1,302 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+import hu.psprog.leaflet.mail.client.resilience.RetryPolicy;
+import hu.psprog.leaflet.mail.config.NioSMTPConfigurationProperties;
+import hu.psprog.leaflet.mail.config.RetryConfigurationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link NioJavaMailSender}.
+ *
+ * @author Peter Smith
+ */
+public class NioJavaMailSenderTest {
+
+    private static final String SENDER = "sender@dev.local";
+    private static final String RECIPIENT = "recipient@dev.local";
+    private static final String BCC_RECIPIENT = "bcc@dev.local";
+    private static final String REJECTED_RECIPIENT = "rejected@dev.local";
+    private static final String UNDISCLOSED_RECIPIENTS = "undisclosed-recipients:;";
+    private static final long TIMEOUT = 10000L;
+
+    private ScriptedSMTPServer server;
+    private NioSMTPEngine engine;
+    private NioJavaMailSender nioJavaMailSender;
+    private RetryPolicy retryPolicy;
+
+    @BeforeEach
+    public void setup() {
+        server = new ScriptedSMTPServer();
+        engine = new NioSMTPEngine(new NioSMTPConfigurationProperties(1, TIMEOUT, TIMEOUT, true, false, true, "client.dev.local"));
+        nioJavaMailSender = new NioJavaMailSender(engine);
+        retryPolicy = new RetryPolicy(new RetryConfigurationProperties(1, 1L, 1L, 1.0, 0.0, 1L));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        engine.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void shouldSendToMembersOfGroupAddressesOnly() throws Exception {
+
+        // given
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setHeader("To", UNDISCLOSED_RECIPIENTS);
+        mimeMessage.setRecipients(Message.RecipientType.CC, InternetAddress.parse("Team: " + RECIPIENT + ";"));
+        mimeMessage.setRecipient(Message.RecipientType.BCC, new InternetAddress(BCC_RECIPIENT));
+
+        // when
+        nioJavaMailSender.send(mimeMessage);
+
+        // then
+        assertThat(getRecipientCommands(), equalTo(Arrays.asList("RCPT TO:<" + RECIPIENT + ">", "RCPT TO:<" + BCC_RECIPIENT + ">")));
+        assertThat(server.getMessages().size(), equalTo(1));
+        assertThat(server.getMessages().get(0), containsString("To: " + UNDISCLOSED_RECIPIENTS));
+        assertThat(server.getMessages().get(0).contains(BCC_RECIPIENT), is(false));
+    }
+
+    @Test
+    public void shouldFailMessageHavingOnlyEmptyGroupAddressWithoutConnecting() throws Exception {
+
+        // given
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setHeader("To", UNDISCLOSED_RECIPIENTS);
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> nioJavaMailSender.send(mimeMessage));
+
+        // then
+        assertThat(result.getFailedMessages().get(mimeMessage), instanceOf(SendFailedException.class));
+        assertThat(server.getConnectionCount(), equalTo(0));
+    }
+
+    @Test
+    public void shouldReportRejectedRecipientsAsSendFailedExceptionOfPartiallySentMessage() throws Exception {
+
+        // given
+        server.withReply("RCPT TO:<" + REJECTED_RECIPIENT + ">", "550 5.1.1 User unknown");
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setRecipients(Message.RecipientType.TO, InternetAddress.parse(RECIPIENT + ", " + REJECTED_RECIPIENT));
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> nioJavaMailSender.send(mimeMessage));
+
+        // then
+        SendFailedException failure = (SendFailedException) result.getFailedMessages().get(mimeMessage);
+        assertThat(toAddresses(failure.getValidSentAddresses()), equalTo(Collections.singletonList(RECIPIENT)));
+        assertThat(toAddresses(failure.getInvalidAddresses()), equalTo(Collections.singletonList(REJECTED_RECIPIENT)));
+        assertThat(server.getMessages().size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldReportPermanentlyRejectedMessageContentAsNonRetryableSMTPSendFailedException() throws Exception {
+
+        // given
+        server.withReply(ScriptedSMTPServer.END_OF_DATA, "554 5.6.0 Message rejected");
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> nioJavaMailSender.send(mimeMessage));
+
+        // then
+        SMTPSendFailedException failure = (SMTPSendFailedException) result.getFailedMessages().get(mimeMessage);
+        assertThat(failure.getCommand(), equalTo("DATA"));
+        assertThat(failure.getReturnCode(), equalTo(554));
+        assertThat(failure.getValidSentAddresses().length, equalTo(0));
+        assertThat(toAddresses(failure.getValidUnsentAddresses()), equalTo(Collections.singletonList(RECIPIENT)));
+        assertThat(retryPolicy.isRetryable(result), is(false));
+        assertThat(retryPolicy.isServerFailure(result), is(false));
+    }
+
+    @Test
+    public void shouldReportTransientlyRejectedMessageContentAsRetryableSMTPSendFailedException() throws Exception {
+
+        // given
+        server.withReply(ScriptedSMTPServer.END_OF_DATA, "451 4.3.0 Temporary failure");
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> nioJavaMailSender.send(mimeMessage));
+
+        // then
+        SMTPSendFailedException failure = (SMTPSendFailedException) result.getFailedMessages().get(mimeMessage);
+        assertThat(failure.getReturnCode(), equalTo(451));
+        assertThat(retryPolicy.isRetryable(result), is(true));
+        assertThat(retryPolicy.isServerFailure(result), is(true));
+    }
+
+    @Test
+    public void shouldReportRejectedSenderAsSMTPSenderFailedException() throws Exception {
+
+        // given
+        server.withReply("MAIL FROM", "553 5.7.1 Sender address rejected");
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> nioJavaMailSender.send(mimeMessage));
+
+        // then
+        SMTPSenderFailedException failure = (SMTPSenderFailedException) result.getFailedMessages().get(mimeMessage);
+        assertThat(failure.getAddress(), equalTo(new InternetAddress(SENDER)));
+        assertThat(failure.getReturnCode(), equalTo(553));
+        assertThat(retryPolicy.isRetryable(result), is(false));
+        assertThat(server.getMessages().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldFailOnlyFailedMessagesOfBatch() throws Exception {
+
+        // given
+        server.withReply("RCPT TO:<" + REJECTED_RECIPIENT + ">", "550 5.1.1 User unknown");
+        startServer();
+        MimeMessage rejectedMessage = prepareMessage();
+        rejectedMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(REJECTED_RECIPIENT));
+        MimeMessage deliveredMessage = prepareMessage();
+        deliveredMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> nioJavaMailSender.send(rejectedMessage, deliveredMessage));
+
+        // then
+        assertThat(result.getFailedMessages().keySet(), equalTo(Collections.singleton(rejectedMessage)));
+        assertThat(result.getFailedMessages().get(rejectedMessage), instanceOf(SendFailedException.class));
+        assertThat(server.getMessages().size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldThrowMailAuthenticationExceptionIfCredentialsAreRejected() throws Exception {
+
+        // given
+        server.withExtensions("AUTH PLAIN").withCredentials("user", "secret");
+        startServer();
+        nioJavaMailSender.setUsername("user");
+        nioJavaMailSender.setPassword("wrong-secret");
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+
+        // when
+        assertThrows(MailAuthenticationException.class, () -> nioJavaMailSender.send(mimeMessage));
+
+        // then
+        assertThat(server.getMessages().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldFailEveryMessageIfSessionCannotBeEstablished() throws Exception {
+
+        // given
+        server.withReply(ScriptedSMTPServer.GREETING, "554 5.3.2 No service");
+        startServer();
+        MimeMessage firstMessage = prepareMessage();
+        firstMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+        MimeMessage secondMessage = prepareMessage();
+        secondMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(BCC_RECIPIENT));
+
+        // when
+        MailSendException result = assertThrows(MailSendException.class, () -> nioJavaMailSender.send(firstMessage, secondMessage));
+
+        // then
+        assertThat(result.getMessage(), containsString("Mail server connection failed"));
+        assertThat(result.getFailedMessages().keySet(), equalTo(new HashSet<>(Arrays.asList(firstMessage, secondMessage))));
+    }
+
+    @Test
+    public void shouldSendMessageAsynchronously() throws Exception {
+
+        // given
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+
+        // when
+        nioJavaMailSender.sendAsync(mimeMessage).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(getRecipientCommands(), equalTo(Collections.singletonList("RCPT TO:<" + RECIPIENT + ">")));
+        assertThat(server.getMessages().size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldFailAsynchronousSendWithFailedMessages() throws Exception {
+
+        // given
+        server.withReply("RCPT TO:<" + REJECTED_RECIPIENT + ">", "550 5.1.1 User unknown");
+        startServer();
+        MimeMessage mimeMessage = prepareMessage();
+        mimeMessage.setRecipient(Message.RecipientType.TO, new InternetAddress(REJECTED_RECIPIENT));
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> nioJavaMailSender.sendAsync(mimeMessage).get(5, TimeUnit.SECONDS));
+
+        // then
+        assertThat(result.getCause(), instanceOf(MailSendException.class));
+        assertThat(((MailSendException) result.getCause()).getFailedMessages().get(mimeMessage), instanceOf(SendFailedException.class));
+        assertThat(server.getMessages().size(), equalTo(0));
+    }
+
+    private void startServer() throws Exception {
+        server.start();
+        nioJavaMailSender.setHost(server.getHost());
+        nioJavaMailSender.setPort(server.getPort());
+    }
+
+    private MimeMessage prepareMessage() throws MessagingException {
+
+        MimeMessage mimeMessage = nioJavaMailSender.createMimeMessage();
+        mimeMessage.setFrom(new InternetAddress(SENDER));
+        mimeMessage.setSubject("Test");
+        mimeMessage.setText("Hello");
+
+        return mimeMessage;
+    }
+
+    private List<String> getRecipientCommands() {
+        return server.getCommands().stream()
+                .filter(command -> command.startsWith("RCPT"))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> toAddresses(Address[] addresses) {
+        return Arrays.stream(addresses)
+                .map(address -> ((InternetAddress) address).getAddress())
+                .collect(Collectors.toList());
+    }
+}
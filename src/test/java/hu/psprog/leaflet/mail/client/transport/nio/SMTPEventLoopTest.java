@@ -0,0 +1,100 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import hu.psprog.leaflet.mail.config.NioSMTPConfigurationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.mail.MessagingException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link SMTPEventLoop}.
+ *
+ * @author Peter Smith
+ */
+public class SMTPEventLoopTest {
+
+    private static final int SESSION_COUNT = 3;
+    private static final long TIMEOUT = 10000L;
+
+    private ScriptedSMTPServer server;
+    private SMTPEventLoop eventLoop;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new ScriptedSMTPServer();
+        eventLoop = new SMTPEventLoop(new CustomizableThreadFactory("smtp-event-loop-test-"));
+        eventLoop.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        eventLoop.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void shouldMultiplexRegisteredSessionsOnSingleThread() throws Exception {
+
+        // given
+        server.withExtensions("PIPELINING").start();
+        List<CompletableFuture<List<SMTPTransactionResult>>> results = new ArrayList<>();
+
+        // when
+        for (int index = 0; index < SESSION_COUNT; index++) {
+            SMTPSession session = prepareSession("recipient" + index + "@dev.local");
+            eventLoop.register(session);
+            results.add(session.getResult());
+        }
+
+        // then
+        for (CompletableFuture<List<SMTPTransactionResult>> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS).get(0).isDelivered(), is(true));
+        }
+        assertThat(server.getConnectionCount(), equalTo(SESSION_COUNT));
+        assertThat(server.getMessages().size(), equalTo(SESSION_COUNT));
+    }
+
+    @Test
+    public void shouldFailActiveSessionsOnShutdown() throws Exception {
+
+        // given
+        server.withReply(ScriptedSMTPServer.GREETING, ScriptedSMTPServer.NO_REPLY).start();
+        SMTPSession session = prepareSession("recipient@dev.local");
+        eventLoop.register(session);
+        int activeSessionsBeforeShutdown = eventLoop.getActiveSessions();
+
+        // when
+        eventLoop.shutdown();
+
+        // then
+        ExecutionException result = assertThrows(ExecutionException.class, () -> session.getResult().get(5, TimeUnit.SECONDS));
+        assertThat(result.getCause(), instanceOf(MessagingException.class));
+        assertThat(result.getCause().getMessage(), equalTo("SMTP event loop has been shut down"));
+        assertThat(activeSessionsBeforeShutdown, equalTo(1));
+        assertThat(eventLoop.getActiveSessions(), equalTo(0));
+    }
+
+    private SMTPSession prepareSession(String recipient) {
+        return new SMTPSession(new InetSocketAddress(server.getHost(), server.getPort()), null, null,
+                Collections.singletonList(new SMTPTransaction("sender@dev.local", Collections.singletonList(recipient),
+                        outputStream -> outputStream.write("Subject: Test\r\n\r\nHello\r\n".getBytes(StandardCharsets.US_ASCII)))),
+                new NioSMTPConfigurationProperties(1, TIMEOUT, TIMEOUT, true, false, true, "client.dev.local"),
+                "client.dev.local", null);
+    }
+}
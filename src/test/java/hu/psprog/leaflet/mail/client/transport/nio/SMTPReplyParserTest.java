@@ -0,0 +1,83 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import org.junit.jupiter.api.Test;
+
+import javax.mail.MessagingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link SMTPReplyParser}.
+ *
+ * @author Peter Smith
+ */
+public class SMTPReplyParserTest {
+
+    private final SMTPReplyParser smtpReplyParser = new SMTPReplyParser();
+
+    @Test
+    public void shouldParseMultilineReplySplitBetweenChunks() throws MessagingException {
+
+        // given
+        List<SMTPReply> firstChunkResult = smtpReplyParser.parse(toBuffer("250-smtp.example.com\r\n250-PIPEL"));
+
+        // when
+        List<SMTPReply> result = smtpReplyParser.parse(toBuffer("INING\r\n250 AUTH PLAIN LOGIN\r\n"));
+
+        // then
+        assertThat(firstChunkResult.isEmpty(), is(true));
+        assertThat(result.size(), equalTo(1));
+        assertThat(result.get(0).getCode(), equalTo(250));
+        assertThat(result.get(0).getLines(), equalTo(Arrays.asList("smtp.example.com", "PIPELINING", "AUTH PLAIN LOGIN")));
+        assertThat(result.get(0).isPositiveCompletion(), is(true));
+        assertThat(smtpReplyParser.hasPartialReply(), is(false));
+    }
+
+    @Test
+    public void shouldParsePipelinedRepliesInOrder() throws MessagingException {
+
+        // when
+        List<SMTPReply> result = smtpReplyParser.parse(toBuffer("250 2.1.0 Ok\r\n550 5.1.1 User unknown\r\n354 End data with <CR><LF>.<CR><LF>\n"));
+
+        // then
+        assertThat(result.size(), equalTo(3));
+        assertThat(result.get(1).toString(), equalTo("550 5.1.1 User unknown"));
+        assertThat(result.get(2).isPositiveIntermediate(), is(true));
+    }
+
+    @Test
+    public void shouldKeepPartialReplyAfterCompletedOne() throws MessagingException {
+
+        // when
+        List<SMTPReply> result = smtpReplyParser.parse(toBuffer("220 Ready to start TLS\r\n250 injec"));
+
+        // then
+        assertThat(result.size(), equalTo(1));
+        assertThat(smtpReplyParser.hasPartialReply(), is(true));
+    }
+
+    @Test
+    public void shouldRejectMalformedReplyLine() {
+
+        // when
+        assertThrows(MessagingException.class, () -> smtpReplyParser.parse(toBuffer("25O Ok\r\n")));
+    }
+
+    @Test
+    public void shouldRejectInconsistentReplyCodesOfMultilineReply() {
+
+        // when
+        assertThrows(MessagingException.class, () -> smtpReplyParser.parse(toBuffer("250-smtp.example.com\r\n251 PIPELINING\r\n")));
+    }
+
+    private ByteBuffer toBuffer(String data) {
+        return ByteBuffer.wrap(data.getBytes(StandardCharsets.US_ASCII));
+    }
+}
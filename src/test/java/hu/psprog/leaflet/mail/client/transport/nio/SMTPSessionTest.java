@@ -0,0 +1,408 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import hu.psprog.leaflet.mail.config.NioSMTPConfigurationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.net.ssl.SSLContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link SMTPSession}, driven by a {@link NioSMTPEngine} against a {@link ScriptedSMTPServer}.
+ *
+ * @author Peter Smith
+ */
+public class SMTPSessionTest {
+
+    private static final String HELO_NAME = "client.dev.local";
+    private static final String SENDER = "sender@dev.local";
+    private static final String RECIPIENT = "recipient@dev.local";
+    private static final String OTHER_RECIPIENT = "other@dev.local";
+    private static final String REJECTED_RECIPIENT = "rejected@dev.local";
+    private static final String USERNAME = "user";
+    private static final String PASSWORD = "secret";
+    private static final String CONTENT = "Subject: Test\r\n\r\nHello\r\n";
+    private static final long TIMEOUT = 300L;
+
+    private ScriptedSMTPServer server;
+    private NioSMTPEngine engine;
+
+    @BeforeEach
+    public void setup() {
+        server = new ScriptedSMTPServer();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (engine != null) {
+            engine.shutdown();
+        }
+        server.close();
+    }
+
+    @Test
+    public void shouldSendTransactionsOneCommandAtATimeIfServerDoesNotSupportPipelining() throws Exception {
+
+        // given
+        server.start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(RECIPIENT), prepareTransaction(OTHER_RECIPIENT));
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(result.get(0).getAcceptedRecipients(), equalTo(Collections.singletonList(RECIPIENT)));
+        assertThat(result.get(1).isDelivered(), is(true));
+        assertThat(server.getCommands(), equalTo(Arrays.asList("EHLO " + HELO_NAME,
+                "MAIL FROM:<" + SENDER + ">", "RCPT TO:<" + RECIPIENT + ">", "DATA",
+                "MAIL FROM:<" + SENDER + ">", "RCPT TO:<" + OTHER_RECIPIENT + ">", "DATA",
+                "QUIT")));
+        assertThat(server.getMessages(), equalTo(Arrays.asList(CONTENT, CONTENT)));
+        assertThat(server.isPipelined(), is(false));
+    }
+
+    @Test
+    public void shouldPipelineEnvelopeCommandsIfServerSupportsPipelining() throws Exception {
+
+        // given
+        server.withExtensions("PIPELINING").start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(RECIPIENT, OTHER_RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(result.get(0).getAcceptedRecipients(), equalTo(Arrays.asList(RECIPIENT, OTHER_RECIPIENT)));
+        assertThat(server.getMessages(), equalTo(Collections.singletonList(CONTENT)));
+        assertThat(server.isPipelined(), is(true));
+    }
+
+    @Test
+    public void shouldNotPipelineEnvelopeCommandsIfPipeliningIsDisabled() throws Exception {
+
+        // given
+        server.withExtensions("PIPELINING").start();
+        engine = prepareEngine(false, false, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(RECIPIENT, OTHER_RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(server.isPipelined(), is(false));
+    }
+
+    @Test
+    public void shouldFallBackToHeloIfEhloIsRejected() throws Exception {
+
+        // given
+        server.withExtensions("PIPELINING")
+                .withReply("EHLO", "502 5.5.2 Command not recognized")
+                .start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(server.getCommands().subList(0, 2), equalTo(Arrays.asList("EHLO " + HELO_NAME, "HELO " + HELO_NAME)));
+        assertThat(server.isPipelined(), is(false));
+    }
+
+    @Test
+    public void shouldFailSessionIfGreetingIsRejected() throws Exception {
+
+        // given
+        server.withReply(ScriptedSMTPServer.GREETING, "554 5.3.2 No service").start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> send(null, null, prepareTransaction(RECIPIENT)));
+
+        // then
+        assertThat(result.getCause(), instanceOf(MessagingException.class));
+        assertThat(result.getCause().getMessage(), containsString("554 5.3.2 No service"));
+    }
+
+    @Test
+    public void shouldUpgradeConnectionWithStartTLSAndRepeatEhlo(@TempDir Path keystoreDirectory) throws Exception {
+
+        // given
+        SSLContext[] sslContexts = ScriptedSMTPServer.createSSLContexts(keystoreDirectory);
+        server.withStartTLS(sslContexts[0]).start();
+        engine = prepareEngine(true, true, sslContexts[1]);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(server.getCommands().subList(0, 3), equalTo(Arrays.asList("EHLO " + HELO_NAME, "STARTTLS", "EHLO " + HELO_NAME)));
+        assertThat(server.getMessages(), equalTo(Collections.singletonList(CONTENT)));
+    }
+
+    @Test
+    public void shouldFailSessionIfRequiredStartTLSIsNotSupported() throws Exception {
+
+        // given
+        server.start();
+        engine = prepareEngine(true, true, null);
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> send(null, null, prepareTransaction(RECIPIENT)));
+
+        // then
+        assertThat(result.getCause().getMessage(), containsString("does not support STARTTLS"));
+        assertThat(server.getMessages().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldAuthenticateWithPlainMechanism() throws Exception {
+
+        // given
+        server.withExtensions("AUTH LOGIN PLAIN")
+                .withCredentials(USERNAME, PASSWORD)
+                .start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(USERNAME, PASSWORD, prepareTransaction(RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(server.getCommands().get(1), equalTo("AUTH PLAIN " + encode("\0" + USERNAME + "\0" + PASSWORD)));
+    }
+
+    @Test
+    public void shouldAuthenticateWithLoginMechanism() throws Exception {
+
+        // given
+        server.withExtensions("AUTH=LOGIN")
+                .withCredentials(USERNAME, PASSWORD)
+                .start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(USERNAME, PASSWORD, prepareTransaction(RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(server.getCommands().subList(1, 4), equalTo(Arrays.asList("AUTH LOGIN", encode(USERNAME), encode(PASSWORD))));
+    }
+
+    @Test
+    public void shouldFailSessionWithAuthenticationFailedExceptionIfCredentialsAreRejected() throws Exception {
+
+        // given
+        server.withExtensions("AUTH PLAIN")
+                .withCredentials(USERNAME, "other-secret")
+                .start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> send(USERNAME, PASSWORD, prepareTransaction(RECIPIENT)));
+
+        // then
+        assertThat(result.getCause(), instanceOf(AuthenticationFailedException.class));
+        assertThat(server.getMessages().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldResetSessionAfterFailedTransactionAndContinueWithNext() throws Exception {
+
+        // given
+        server.withReply("RCPT TO:<" + REJECTED_RECIPIENT + ">", "550 5.1.1 User unknown").start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(REJECTED_RECIPIENT),
+                prepareTransaction(RECIPIENT, REJECTED_RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(false));
+        assertThat(result.get(0).getRejectedRecipients().get(REJECTED_RECIPIENT).getCode(), equalTo(550));
+        assertThat(result.get(1).isDelivered(), is(true));
+        assertThat(result.get(1).getAcceptedRecipients(), equalTo(Collections.singletonList(RECIPIENT)));
+        assertThat(result.get(1).getRejectedRecipients().keySet(), equalTo(Collections.singleton(REJECTED_RECIPIENT)));
+        assertThat(server.getCommands().get(3), equalTo("RSET"));
+        assertThat(server.getMessages().size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldReportTransactionAsNotDeliveredIfMessageContentIsRejected() throws Exception {
+
+        // given
+        server.withReply(ScriptedSMTPServer.END_OF_DATA, "554 5.6.0 Message rejected").start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(false));
+        assertThat(result.get(0).getFailedCommand(), equalTo("DATA"));
+        assertThat(result.get(0).getFailureReply().getCode(), equalTo(554));
+    }
+
+    @Test
+    public void shouldStreamContentExceedingNetworkBufferWithDotStuffing() throws Exception {
+
+        // given
+        server.start();
+        engine = prepareEngine(false, true, null);
+        String content = prepareLargeContent();
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransactionWithContent(content, RECIPIENT), prepareTransaction(RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(result.get(1).isDelivered(), is(true));
+        assertThat(server.getMessages(), equalTo(Arrays.asList(content.replace("\r\n.", "\r\n.."), CONTENT)));
+    }
+
+    @Test
+    public void shouldStreamContentExceedingNetworkBufferOverTLS(@TempDir Path keystoreDirectory) throws Exception {
+
+        // given
+        SSLContext[] sslContexts = ScriptedSMTPServer.createSSLContexts(keystoreDirectory);
+        server.withStartTLS(sslContexts[0]).start();
+        engine = prepareEngine(true, true, sslContexts[1]);
+        String content = prepareLargeContent();
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransactionWithContent(content, RECIPIENT));
+
+        // then
+        assertThat(result.get(0).isDelivered(), is(true));
+        assertThat(server.getMessages(), equalTo(Collections.singletonList(content.replace("\r\n.", "\r\n.."))));
+    }
+
+    @Test
+    public void shouldFailSessionWithoutEndingDataIfContentCannotBeWritten() throws Exception {
+
+        // given
+        server.start();
+        engine = prepareEngine(false, true, null);
+        SMTPTransaction failingTransaction = new SMTPTransaction(SENDER, Collections.singletonList(RECIPIENT), outputStream -> {
+            outputStream.write(CONTENT.getBytes(StandardCharsets.US_ASCII));
+            throw new MessagingException("Attachment not available");
+        });
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, failingTransaction, prepareTransaction(OTHER_RECIPIENT));
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).isDelivered(), is(false));
+        assertThat(result.get(0).getFailure().getMessage(), equalTo("Attachment not available"));
+        assertThat(result.get(1).getFailure(), equalTo(result.get(0).getFailure()));
+        assertThat(server.getCommands(), equalTo(Arrays.asList("EHLO " + HELO_NAME,
+                "MAIL FROM:<" + SENDER + ">", "RCPT TO:<" + RECIPIENT + ">", "DATA")));
+    }
+
+    @Test
+    public void shouldFailSessionIfServerDoesNotGreetUntilTimeout() throws Exception {
+
+        // given
+        server.withReply(ScriptedSMTPServer.GREETING, ScriptedSMTPServer.NO_REPLY).start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class, () -> send(null, null, prepareTransaction(RECIPIENT)));
+
+        // then
+        assertThat(result.getCause().getMessage(), containsString("timed out in state GREETING"));
+    }
+
+    @Test
+    public void shouldFailInterruptedAndRemainingTransactionsIfServerStopsReplying() throws Exception {
+
+        // given
+        server.withReply("DATA", ScriptedSMTPServer.NO_REPLY).start();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        List<SMTPTransactionResult> result = send(null, null, prepareTransaction(RECIPIENT), prepareTransaction(OTHER_RECIPIENT));
+
+        // then
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).isDelivered(), is(false));
+        assertThat(result.get(0).getFailure(), notNullValue());
+        assertThat(result.get(0).getFailure().getMessage(), containsString("timed out in state TRANSACTION"));
+        assertThat(result.get(1).getFailure(), equalTo(result.get(0).getFailure()));
+    }
+
+    @Test
+    public void shouldFailSessionIfServerIsNotListening() throws Exception {
+
+        // given
+        server.start();
+        int port = server.getPort();
+        server.close();
+        engine = prepareEngine(false, true, null);
+
+        // when
+        ExecutionException result = assertThrows(ExecutionException.class,
+                () -> engine.send(server.getHost(), port, null, null, Collections.singletonList(prepareTransaction(RECIPIENT)))
+                        .get(5, TimeUnit.SECONDS));
+
+        // then
+        assertThat(result.getCause(), instanceOf(MessagingException.class));
+    }
+
+    private NioSMTPEngine prepareEngine(boolean starttlsRequired, boolean pipeliningEnabled, SSLContext sslContext) {
+        return new NioSMTPEngine(new NioSMTPConfigurationProperties(1, TIMEOUT, TIMEOUT, true, starttlsRequired, pipeliningEnabled, HELO_NAME),
+                sslContext);
+    }
+
+    private List<SMTPTransactionResult> send(String username, String password, SMTPTransaction... transactions) throws Exception {
+        return engine.send(server.getHost(), server.getPort(), username, password, Arrays.asList(transactions))
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    private SMTPTransaction prepareTransaction(String... recipients) {
+        return prepareTransactionWithContent(CONTENT, recipients);
+    }
+
+    private SMTPTransaction prepareTransactionWithContent(String content, String... recipients) {
+        return new SMTPTransaction(SENDER, Arrays.asList(recipients), outputStream -> outputStream.write(content.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static String prepareLargeContent() {
+
+        StringBuilder content = new StringBuilder("Subject: Test\r\n\r\n");
+        for (int line = 0; line < 2000; line++) {
+            content.append(line % 10 == 0 ? ".dotted line " : "line ").append(line).append("\r\n");
+        }
+
+        return content.toString();
+    }
+
+    private static String encode(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
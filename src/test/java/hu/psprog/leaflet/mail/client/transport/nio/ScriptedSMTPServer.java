@@ -0,0 +1,354 @@
+package hu.psprog.leaflet.mail.client.transport.nio;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scripted in-process SMTP server for testing the non-blocking SMTP engine.
+ * Listens on a random port of localhost and serves every connection on its own (daemon) thread.
+ * The server advertises the configured extensions (and STARTTLS, if TLS is enabled), accepts AUTH PLAIN and AUTH LOGIN
+ * with the configured credentials, and accepts every message. Replies can be overridden by the prefix of the command line,
+ * {@value #GREETING} for the greeting, or {@value #END_OF_DATA} for the end of the message content.
+ * Every received command line (including the lines of authentication) and message content is recorded.
+ *
+ * @author Peter Smith
+ */
+class ScriptedSMTPServer implements Closeable {
+
+    /**
+     * Reply override key of the greeting.
+     */
+    static final String GREETING = "CONNECT";
+
+    /**
+     * Reply override key of the end of the message content.
+     */
+    static final String END_OF_DATA = ".";
+
+    /**
+     * Reply override leaving the command unanswered.
+     */
+    static final String NO_REPLY = "";
+
+    private static final String HOST = "localhost";
+    private static final String KEYSTORE_PASSWORD = "changeit";
+    private static final long PIPELINING_DETECTION_DELAY = 50L;
+
+    private final List<String> extensions = new ArrayList<>();
+    private final Map<String, String> replies = new LinkedHashMap<>();
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicBoolean pipelined = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "scripted-smtp-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SSLContext sslContext;
+    private String username;
+    private String password;
+    private ServerSocket serverSocket;
+
+    ScriptedSMTPServer withExtensions(String... extensions) {
+        this.extensions.addAll(Arrays.asList(extensions));
+        return this;
+    }
+
+    ScriptedSMTPServer withReply(String commandPrefix, String reply) {
+        this.replies.put(commandPrefix, reply);
+        return this;
+    }
+
+    ScriptedSMTPServer withStartTLS(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
+
+    ScriptedSMTPServer withCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+        return this;
+    }
+
+    ScriptedSMTPServer start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName(HOST));
+        executor.execute(this::acceptConnections);
+        return this;
+    }
+
+    String getHost() {
+        return HOST;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    List<String> getCommands() {
+        return commands;
+    }
+
+    List<String> getMessages() {
+        return messages;
+    }
+
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Returns whether any MAIL command has been followed by further commands before being replied.
+     *
+     * @return {@code true} if the envelope commands have been pipelined
+     */
+    boolean isPipelined() {
+        return pipelined.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates a server and a client {@link SSLContext} sharing a self-signed certificate of localhost,
+     * generated by the keytool of the running JDK.
+     *
+     * @param directory directory to store the generated keystore in
+     * @return server and client {@link SSLContext}, in this order
+     */
+    static SSLContext[] createSSLContexts(Path directory) throws IOException, InterruptedException, GeneralSecurityException {
+
+        Path keystorePath = directory.resolve("smtp.p12");
+        Process keytool = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-keyalg", "RSA", "-keysize", "2048", "-alias", HOST, "-dname", "CN=" + HOST,
+                "-ext", "SAN=dns:" + HOST + ",ip:127.0.0.1", "-validity", "1", "-storetype", "PKCS12",
+                "-keystore", keystorePath.toString(), "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD)
+                .redirectErrorStream(true)
+                .start();
+        keytool.getInputStream().transferTo(OutputStream.nullOutputStream());
+        if (!keytool.waitFor(30, TimeUnit.SECONDS) || keytool.exitValue() != 0) {
+            throw new IOException("Failed to generate keystore for scripted SMTP server");
+        }
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream keystoreInput = Files.newInputStream(keystorePath)) {
+            keyStore.load(keystoreInput, KEYSTORE_PASSWORD.toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        KeyStore trustStore = KeyStore.getInstance("PKCS12");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry(HOST, keyStore.getCertificate(HOST));
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagerFactory.getTrustManagers(), null);
+
+        return new SSLContext[] {serverContext, clientContext};
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // server socket closed
+            }
+        }
+    }
+
+    private void serve(Socket plainSocket) {
+
+        Socket socket = plainSocket;
+        try {
+            BufferedReader reader = createReader(socket);
+            Writer writer = createWriter(socket);
+            reply(writer, replies.getOrDefault(GREETING, "220 localhost scripted SMTP server ready"));
+
+            boolean secured = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                commands.add(line);
+                String override = findReply(line);
+                if (override != null) {
+                    reply(writer, override);
+                    continue;
+                }
+                switch (line.length() < 4 ? line : line.substring(0, 4).toUpperCase(Locale.ROOT)) {
+                    case "EHLO":
+                        replyEhlo(writer, secured);
+                        break;
+                    case "HELO":
+                        reply(writer, "250 localhost");
+                        break;
+                    case "STAR":
+                        reply(writer, "220 2.0.0 Ready to start TLS");
+                        SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, HOST, socket.getPort(), true);
+                        sslSocket.setUseClientMode(false);
+                        sslSocket.startHandshake();
+                        socket = sslSocket;
+                        reader = createReader(socket);
+                        writer = createWriter(socket);
+                        secured = true;
+                        break;
+                    case "AUTH":
+                        reply(writer, authenticate(line, reader, writer)
+                                ? "235 2.7.0 Authentication successful"
+                                : "535 5.7.8 Authentication credentials invalid");
+                        break;
+                    case "MAIL":
+                        Thread.sleep(PIPELINING_DETECTION_DELAY);
+                        if (reader.ready()) {
+                            pipelined.set(true);
+                        }
+                        reply(writer, "250 2.1.0 OK");
+                        break;
+                    case "RCPT":
+                        reply(writer, "250 2.1.5 OK");
+                        break;
+                    case "DATA":
+                        reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+                        messages.add(readData(reader));
+                        reply(writer, replies.getOrDefault(END_OF_DATA, "250 2.0.0 OK queued"));
+                        break;
+                    case "RSET":
+                    case "NOOP":
+                        reply(writer, "250 2.0.0 OK");
+                        break;
+                    case "QUIT":
+                        reply(writer, "221 2.0.0 Bye");
+                        return;
+                    default:
+                        reply(writer, "502 5.5.2 Command not recognized");
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // connection closed by the client
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // closing connection, nothing else to do
+            }
+        }
+    }
+
+    private String findReply(String line) {
+        return replies.entrySet().stream()
+                .filter(reply -> !GREETING.equals(reply.getKey()) && !END_OF_DATA.equals(reply.getKey()))
+                .filter(reply -> line.startsWith(reply.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void replyEhlo(Writer writer, boolean secured) throws IOException {
+
+        List<String> lines = new ArrayList<>();
+        lines.add("localhost");
+        lines.addAll(extensions);
+        if (sslContext != null && !secured) {
+            lines.add("STARTTLS");
+        }
+
+        for (int index = 0; index < lines.size(); index++) {
+            writer.write(String.format("250%s%s\r\n", index < lines.size() - 1 ? "-" : " ", lines.get(index)));
+        }
+        writer.flush();
+    }
+
+    private boolean authenticate(String line, BufferedReader reader, Writer writer) throws IOException {
+
+        String[] parts = line.split(" ");
+        String credentials;
+        if ("PLAIN".equalsIgnoreCase(parts[1])) {
+            credentials = decode(parts[2]);
+        } else {
+            reply(writer, "334 VXNlcm5hbWU6");
+            String encodedUsername = reader.readLine();
+            commands.add(encodedUsername);
+            reply(writer, "334 UGFzc3dvcmQ6");
+            String encodedPassword = reader.readLine();
+            commands.add(encodedPassword);
+            credentials = "\0" + decode(encodedUsername) + "\0" + decode(encodedPassword);
+        }
+
+        return credentials.equals("\0" + username + "\0" + password);
+    }
+
+    private String readData(BufferedReader reader) throws IOException {
+
+        StringBuilder content = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null && !END_OF_DATA.equals(line)) {
+            content.append(line).append("\r\n");
+        }
+
+        return content.toString();
+    }
+
+    private void reply(Writer writer, String reply) throws IOException {
+        if (!NO_REPLY.equals(reply)) {
+            writer.write(reply);
+            writer.write("\r\n");
+            writer.flush();
+        }
+    }
+
+    private static BufferedReader createReader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+    }
+
+    private static Writer createWriter(Socket socket) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1));
+    }
+
+    private static String decode(String value) {
+        return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+}